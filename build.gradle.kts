@@ -1,4 +1,7 @@
 import org.gradle.internal.os.OperatingSystem
+import org.javamodularity.moduleplugin.extensions.CompileTestModuleOptions
+import org.javamodularity.moduleplugin.extensions.TestModuleOptions
+import java.security.MessageDigest
 
 plugins {
     java
@@ -74,6 +77,7 @@ dependencies {
 
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.13.3")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.13.3")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher:1.13.3")
     implementation(kotlin("stdlib-jdk8"))
 }
 
@@ -131,6 +135,36 @@ tasks.withType<Test> {
     useJUnitPlatform()
 }
 
+// The tests reach package-private members of the installer, so they run on the classpath instead of being patched into the module.
+tasks.compileTestJava {
+    extensions.configure<CompileTestModuleOptions> {
+        isCompileOnClasspath = true
+    }
+}
+
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("benchmark")
+    }
+    extensions.configure<TestModuleOptions> {
+        runOnClasspath = true
+    }
+}
+
+// The benchmarks take a while and their timings are not asserted, so they only run on demand.
+val benchmark by tasks.registering(Test::class) {
+    description = "Runs the transport benchmarks."
+    group = LifecycleBasePlugin.VERIFICATION_GROUP
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+    testLogging {
+        showStandardStreams = true
+    }
+}
+
 abstract class WriteFile : DefaultTask() {
     @get:OutputFile
     abstract val outputFile: RegularFileProperty
@@ -150,6 +184,57 @@ abstract class WriteFile : DefaultTask() {
     }
 }
 
+abstract class EmbedPayload : DefaultTask() {
+    @get:InputFile
+    abstract val payloadFile: RegularFileProperty
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @TaskAction
+    fun embed() {
+        val payload = payloadFile.get().asFile
+        val payloadDir = outputDir.get().asFile.resolve("io/github/tavstal/mmcinstaller/payload")
+        payloadDir.deleteRecursively()
+        payloadDir.mkdirs()
+
+        // The checksum is verified by the installer while it extracts the payload.
+        val digest = MessageDigest.getInstance("SHA-256")
+        payload.inputStream().use { input ->
+            val buffer = ByteArray(64 * 1024)
+            var read = input.read(buffer)
+            while (read >= 0) {
+                digest.update(buffer, 0, read)
+                read = input.read(buffer)
+            }
+        }
+        val sha256 = digest.digest().joinToString("") { "%02x".format(it) }
+
+        payload.copyTo(payloadDir.resolve("payload.bin"), overwrite = true)
+        payloadDir.resolve("payload.yml").writeText("""
+            file_name: "${payload.name}"
+            size: ${payload.length()}
+            sha256: "$sha256"
+        """.trimIndent())
+        logger.lifecycle("Embedded payload: ${payload.absolutePath} ($sha256)")
+    }
+}
+
+// Offline installer: ./gradlew buildPackage -PofflinePayload=/path/to/MesterMC.jar
+val offlinePayload = findProperty("offlinePayload")?.toString()
+if (offlinePayload != null) {
+    val embedPayload by tasks.registering(EmbedPayload::class) {
+        group = "application"
+        description = "Embeds the file given with -PofflinePayload into the installer, which then installs it without a network connection."
+        payloadFile.set(layout.projectDirectory.file(offlinePayload))
+        outputDir.set(layout.buildDirectory.dir("generated/payload"))
+    }
+
+    sourceSets.main {
+        resources.srcDir(embedPayload)
+    }
+}
+
 val writeAppRunScript by tasks.registering(WriteFile::class) {
     val appDirRoot = packageOutputDir.resolve("${projectName}.AppDir")
     outputFile.set(appDirRoot.resolve("AppRun"))
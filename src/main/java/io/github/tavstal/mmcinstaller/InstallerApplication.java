@@ -3,23 +3,33 @@ package io.github.tavstal.mmcinstaller;
 import io.github.tavstal.mmcinstaller.config.ConfigLoader;
 import io.github.tavstal.mmcinstaller.config.InstallerState;
 import io.github.tavstal.mmcinstaller.core.Constants;
+import io.github.tavstal.mmcinstaller.core.DownloadPrefetcher;
 import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
 import io.github.tavstal.mmcinstaller.core.InstallerTranslator;
+import io.github.tavstal.mmcinstaller.config.model.PeerConfig;
+import io.github.tavstal.mmcinstaller.core.download.ArtifactCache;
+import io.github.tavstal.mmcinstaller.core.download.BandwidthLimiter;
+import io.github.tavstal.mmcinstaller.core.download.EmbeddedPayload;
+import io.github.tavstal.mmcinstaller.core.download.PeerCacheServer;
+import io.github.tavstal.mmcinstaller.core.download.PeerLocator;
+import io.github.tavstal.mmcinstaller.core.transport.RemoteMetadata;
+import io.github.tavstal.mmcinstaller.core.transport.RemoteMetadataCache;
+import io.github.tavstal.mmcinstaller.core.transport.SharedTransport;
 import io.github.tavstal.mmcinstaller.utils.*;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
-import org.apache.hc.client5.http.classic.methods.HttpHead;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.core5.http.Header;
-import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class InstallerApplication extends Application {
     //#region Variables
@@ -43,6 +53,86 @@ public class InstallerApplication extends Application {
     public static InstallerTranslator getTranslator() {
         return _translator;
     }
+
+    private static BandwidthLimiter _bandwidthLimiter;
+    /**
+     * Gets the bandwidth limiter shared by every download. Its rate can be changed at runtime.
+     *
+     * @return The bandwidth limiter instance.
+     */
+    public static BandwidthLimiter getBandwidthLimiter() {
+        return _bandwidthLimiter;
+    }
+
+    private static DownloadPrefetcher _prefetcher;
+    /**
+     * Gets the prefetcher downloading the file while the wizard is open.
+     *
+     * @return The prefetcher instance, or null if prefetching is disabled or the uninstaller is running.
+     */
+    public static DownloadPrefetcher getPrefetcher() {
+        return _prefetcher;
+    }
+
+    private static EmbeddedPayload _embeddedPayload;
+    /**
+     * Gets the file embedded in an offline installer, which is installed instead of being downloaded.
+     *
+     * @return The embedded payload, or null if the installer downloads the file.
+     */
+    public static EmbeddedPayload getEmbeddedPayload() {
+        return _embeddedPayload;
+    }
+
+    private static PeerLocator _peerLocator;
+    /**
+     * Gets the locator finding installers on the local network that hold a file.
+     *
+     * @return The peer locator instance, or null if files are not taken from peers.
+     */
+    public static PeerLocator getPeerLocator() {
+        return _peerLocator;
+    }
+
+    private static PeerCacheServer _peerServer; // Serves the cached files to other installers, or null if disabled.
+
+    private static volatile RemoteMetadata _remoteMetadata; // The latest known metadata of the file, or null if unknown.
+    private static CompletableFuture<RemoteMetadata> _metadataRevalidation; // Asks the server for the current metadata.
+    /**
+     * Gets the metadata of the file, waiting a bounded time for the server to confirm the remembered metadata.
+     *
+     * @param timeoutMs The maximum time to wait for the server, in milliseconds.
+     * @return The confirmed metadata, the remembered metadata if the server did not answer in time,
+     * or null if neither is known.
+     */
+    public static RemoteMetadata awaitRemoteMetadata(long timeoutMs) {
+        CompletableFuture<RemoteMetadata> revalidation = _metadataRevalidation;
+        if (revalidation != null) {
+            try {
+                revalidation.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | TimeoutException e) {
+                _logger.Debug("Using the remembered metadata of the file, the server did not confirm it.");
+            }
+        }
+        return _remoteMetadata;
+    }
+
+    /**
+     * Gets the metadata of the file as confirmed by the server during this run, with a 304 or a fresh response.
+     * Unlike {@link #awaitRemoteMetadata(long)}, the metadata remembered from an earlier run is never returned,
+     * so its checksum can be trusted to verify the file.
+     *
+     * @return The confirmed metadata, or null if the server has not confirmed it (yet).
+     */
+    public static RemoteMetadata getConfirmedRemoteMetadata() {
+        CompletableFuture<RemoteMetadata> revalidation = _metadataRevalidation;
+        if (revalidation == null || !revalidation.isDone() || revalidation.isCompletedExceptionally()) {
+            return null;
+        }
+        return revalidation.join();
+    }
     //#endregion
 
     /**
@@ -58,6 +148,7 @@ public class InstallerApplication extends Application {
         InstallerState.setDebugMode(ConfigLoader.get().debug());
         _translator = new InstallerTranslator(new String[] {"eng", "hun"});
         _translator.Load();
+        _bandwidthLimiter = new BandwidthLimiter(getBandwidthLimitKb() * 1024L);
         _stage = stage;
 
         _stage.setTitle(_translator.Localize("Window.Title"));
@@ -110,50 +201,150 @@ public class InstallerApplication extends Application {
             }
         }
 
-        _logger.Debug("Checking file size to download.");
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            _logger.Debug("Sending HTTP request...");
-            HttpHead request = new HttpHead(ConfigLoader.get().download().link());
-
-            HttpClientResponseHandler<Void> responseHandler = response -> {
-                _logger.Debug("Received response. Status: " + response.getCode());
-
-                // We only care about headers for a HEAD request
-                Header contentTypeHeader = response.getFirstHeader("Content-Type");
-                if (contentTypeHeader != null) {
-                    _logger.Debug("Content-Type: " + contentTypeHeader.getValue());
-                } else {
-                    _logger.Debug("Content-Type header not found.");
-                }
-
-                Header contentLengthHeader = response.getFirstHeader("Content-Length");
-                if (contentLengthHeader != null) {
-                    try {
-                        long requiredSpace = Long.parseLong(contentLengthHeader.getValue());
-                        InstallerState.setRequiredSpace(requiredSpace);
-                        _logger.Debug("Content-Length: " + requiredSpace + " bytes");
-                    } catch (NumberFormatException e) {
-                        _logger.Error("Content-Length header value is not a valid number: " + contentLengthHeader.getValue());
-                    }
-                } else {
-                    _logger.Error("Content-Length header not found in response.");
-                }
-                return null;
-            };
-
-            httpClient.execute(request, responseHandler);
+        SharedTransport.init();
+        startPeerServer();
+        try {
+            _embeddedPayload = EmbeddedPayload.find();
         } catch (IOException e) {
-            _logger.Error("Failed to check file size to download.");
+            _logger.Error("Failed to read the embedded payload, the file will be downloaded: " + e.getMessage());
+        }
+        if (_embeddedPayload != null) {
+            // Offline installer, the file is taken from the installer and the network is never used.
+            InstallerState.setRequiredSpace(_embeddedPayload.size());
+            _logger.Debug(String.format("Offline installer carrying %s (%d bytes).", _embeddedPayload.fileName(), _embeddedPayload.size()));
+            return;
+        }
+
+        checkFileSize(ConfigLoader.get().download().link());
+
+        List<String> links = ConfigLoader.get().download().links();
+        if (links.size() > 1) {
+            SharedTransport.warmUp(links.subList(1, links.size()));
+        }
+
+        PeerConfig peerConfig = ConfigLoader.get().download().peer();
+        if (peerConfig.isFetchEnabled()) {
+            _peerLocator = new PeerLocator(SharedTransport.getTransport(), peerConfig.hosts(), peerConfig.discovery() ? peerConfig.port() : 0,
+                    _peerServer != null ? _peerServer.getPort() : 0);
+        }
+
+        if (ConfigLoader.get().download().prefetch()) {
+            _prefetcher = new DownloadPrefetcher(SharedTransport.getTransport(), PathUtils.getInstallerCacheDirectory(), _bandwidthLimiter, _peerLocator);
+            _prefetcher.start(ConfigLoader.get().download());
         }
     }
 
+    /**
+     * Application exit point. Closes the shared transport.
+     */
+    @Override
+    public void stop() {
+        if (_peerServer != null) {
+            _peerServer.close();
+        }
+        SharedTransport.shutdown();
+    }
+
     /**
      * Main method. Launches the JavaFX application.
      *
      * @param args Command-line arguments.
      */
     public static void main(String[] args) {
-        launch();
+        launch(args);
+    }
+
+    /**
+     * Determines the size of the file to download without blocking the wizard. The size remembered from the
+     * last run is used at once, while the server is asked in the background whether it changed.
+     *
+     * @param link The primary link of the file.
+     */
+    private void checkFileSize(String link) {
+        RemoteMetadataCache metadataCache = new RemoteMetadataCache(new File(PathUtils.getInstallerCacheDirectory(), "metadata.yml"));
+        RemoteMetadata cached = metadataCache.get(link);
+        if (cached != null) {
+            _logger.Debug("Using the remembered size of the file: " + cached.contentLength() + " bytes");
+            applyRemoteMetadata(cached);
+        }
+
+        _logger.Debug("Checking file size to download.");
+        // The connection stays in the pool, so the download reuses it.
+        _metadataRevalidation = CompletableFuture.supplyAsync(() -> {
+            try {
+                return metadataCache.revalidate(SharedTransport.getTransport(), link);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, runnable -> Thread.ofVirtual().name("metadata-revalidation").start(runnable));
+        _metadataRevalidation.whenComplete((metadata, e) -> {
+            if (e != null) {
+                _logger.Error("Failed to check file size to download: " + e.getMessage());
+                return;
+            }
+            _logger.Debug("Content-Length: " + metadata.contentLength() + " bytes");
+            applyRemoteMetadata(metadata);
+        });
+    }
+
+    /**
+     * Makes the metadata of the file the current one, and updates the required disk space.
+     *
+     * @param metadata The metadata of the file.
+     */
+    private static void applyRemoteMetadata(RemoteMetadata metadata) {
+        _remoteMetadata = metadata;
+        if (metadata.contentLength() >= 0) {
+            InstallerState.setRequiredSpace(metadata.contentLength());
+        } else {
+            _logger.Error("Content-Length header not found in response.");
+        }
+    }
+
+    /**
+     * Starts serving the files of the local cache to other installers on the local network,
+     * if enabled by `download.peer.serve`. Failures are only logged.
+     */
+    private void startPeerServer() {
+        PeerConfig peerConfig = ConfigLoader.get().download().peer();
+        if (!peerConfig.serve()) {
+            return;
+        }
+
+        PeerCacheServer server = new PeerCacheServer(new ArtifactCache(
+                new File(PathUtils.getInstallerCacheDirectory(), "artifacts"),
+                ConfigLoader.get().download().cacheSize() * 1024L * 1024L
+        ), peerConfig.port());
+        try {
+            server.start();
+            _peerServer = server;
+        } catch (IOException e) {
+            _logger.Error("Failed to serve the cached files to other installers: " + e.getMessage());
+            server.close();
+        }
+    }
+
+    /**
+     * Determines the download bandwidth limit. The `--bandwidth-limit=<KB/s>` command line argument
+     * takes precedence over the `download.bandwidth_limit` configuration value.
+     *
+     * @return The bandwidth limit in KB/s, or 0 for unlimited.
+     */
+    private int getBandwidthLimitKb() {
+        int limit = ConfigLoader.get().download().bandwidthLimit();
+        String argument = getParameters().getNamed().get("bandwidth-limit");
+        if (argument != null) {
+            try {
+                limit = Integer.parseInt(argument.trim());
+            } catch (NumberFormatException e) {
+                _logger.Warn("Invalid --bandwidth-limit value, expected KB/s: " + argument);
+            }
+        }
+
+        if (limit > 0) {
+            _logger.Debug("Download bandwidth limited to " + limit + " KB/s.");
+        }
+        return Math.max(0, limit);
     }
 
     //#region Functions
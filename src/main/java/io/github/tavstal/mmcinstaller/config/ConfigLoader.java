@@ -56,6 +56,37 @@ public class ConfigLoader {
             String downloadFileName = YamlHelper.getString(rawConfigMap, "download.file_name", "client.jar");
             String downloadUrl = YamlHelper.getString(rawConfigMap, "download.link", "");
             String downloadChecksum = YamlHelper.getString(rawConfigMap, "download.sha256", "");
+            int downloadSegments = YamlHelper.getInteger(rawConfigMap, "download.segments", 4);
+            Object mirrorsObj = YamlHelper.getObject(rawConfigMap, "download.mirrors", null);
+            List<String> downloadMirrors = new ArrayList<>();
+            if (mirrorsObj instanceof List) {
+                for (Object mirrorItem : (List<?>) mirrorsObj) {
+                    if (mirrorItem != null) {
+                        downloadMirrors.add(mirrorItem.toString());
+                    }
+                }
+            }
+            int downloadBandwidthLimit = YamlHelper.getInteger(rawConfigMap, "download.bandwidth_limit", 0);
+            String downloadManifest = YamlHelper.getString(rawConfigMap, "download.manifest", "");
+            int downloadWorkers = YamlHelper.getInteger(rawConfigMap, "download.workers", 8);
+            int downloadConnectionsPerHost = YamlHelper.getInteger(rawConfigMap, "download.connections_per_host", 6);
+            int downloadCacheSize = YamlHelper.getInteger(rawConfigMap, "download.cache_size", 2048);
+            String downloadChunks = YamlHelper.getString(rawConfigMap, "download.chunks", "");
+            boolean downloadPrefetch = YamlHelper.getBoolean(rawConfigMap, "download.prefetch", true);
+            String downloadTransport = YamlHelper.getString(rawConfigMap, "download.transport", "apache");
+            int downloadHedgePercentile = YamlHelper.getInteger(rawConfigMap, "download.hedge_percentile", 95);
+            boolean peerServe = YamlHelper.getBoolean(rawConfigMap, "download.peer.serve", false);
+            int peerPort = YamlHelper.getInteger(rawConfigMap, "download.peer.port", 47365);
+            boolean peerDiscovery = YamlHelper.getBoolean(rawConfigMap, "download.peer.discovery", false);
+            Object peerHostsObj = YamlHelper.getObject(rawConfigMap, "download.peer.hosts", null);
+            List<String> peerHosts = new ArrayList<>();
+            if (peerHostsObj instanceof List) {
+                for (Object peerHostItem : (List<?>) peerHostsObj) {
+                    if (peerHostItem != null) {
+                        peerHosts.add(peerHostItem.toString());
+                    }
+                }
+            }
 
             String appdataDir = YamlHelper.getString(rawConfigMap, "install.default_dirs.appdata", "app_data");
             String startMenuDir = YamlHelper.getString(rawConfigMap, "install.default_dirs.start_menu", "start_menu_data");
@@ -95,7 +126,24 @@ public class ConfigLoader {
                     new DownloadConfig(
                             downloadUrl,
                             downloadFileName,
-                            downloadChecksum
+                            downloadChecksum,
+                            downloadSegments,
+                            downloadMirrors,
+                            downloadBandwidthLimit,
+                            downloadManifest,
+                            downloadWorkers,
+                            downloadConnectionsPerHost,
+                            downloadCacheSize,
+                            downloadChunks,
+                            downloadPrefetch,
+                            new PeerConfig(
+                                    peerServe,
+                                    peerPort,
+                                    peerDiscovery,
+                                    peerHosts
+                            ),
+                            downloadTransport,
+                            downloadHedgePercentile
                     ),
                     new InstallConfig(
                             new DefaultDirsConfig(
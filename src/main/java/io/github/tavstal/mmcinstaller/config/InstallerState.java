@@ -1,5 +1,9 @@
 package io.github.tavstal.mmcinstaller.config;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
 /**
  * Represents the state of the installer during the installation process.
  * This class contains static fields and methods to manage and retrieve
@@ -21,7 +25,9 @@ public class InstallerState {
     // Indicates whether a Start Menu shortcut should be created.
     private static boolean createStartMenuShortcut = true;
     // Stores the required disk space for the installation in bytes.
-    private static long requiredSpace = 0;
+    private static volatile long requiredSpace = 0;
+    // Notified when the required disk space changes, e.g. once the server reported the current size.
+    private static final List<LongConsumer> requiredSpaceListeners = new CopyOnWriteArrayList<>();
     // Stores the application to be launched after installation.
     private static String applicationToLaunch = null;
     // Stores the selected language for the installer.
@@ -97,7 +103,32 @@ public class InstallerState {
      * @param requiredSpace The required disk space in bytes.
      */
     public static void setRequiredSpace(long requiredSpace) {
+        if (InstallerState.requiredSpace == requiredSpace) {
+            return;
+        }
         InstallerState.requiredSpace = requiredSpace;
+        for (LongConsumer listener : requiredSpaceListeners) {
+            listener.accept(requiredSpace);
+        }
+    }
+
+    /**
+     * Registers a listener notified when the required disk space changes.
+     * The listener is called on the thread changing the value.
+     *
+     * @param listener The listener receiving the new required disk space in bytes.
+     */
+    public static void addRequiredSpaceListener(LongConsumer listener) {
+        requiredSpaceListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener registered with {@link #addRequiredSpaceListener(LongConsumer)}.
+     *
+     * @param listener The listener to remove.
+     */
+    public static void removeRequiredSpaceListener(LongConsumer listener) {
+        requiredSpaceListeners.remove(listener);
     }
     //#endregion
 
@@ -1,14 +1,53 @@
 package io.github.tavstal.mmcinstaller.config.model;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Represents the configuration for downloading a resource.
  * <br/>
- * This record is used to store the download link, file name, and hash of the resource.
+ * This record is used to store the download link and mirrors, file name, hash, segment count and bandwidth limit of the resource,
+ * the manifest of the additional artifacts installed next to it, the checksums of the chunks of the resource,
+ * whether it is downloaded in the background while the wizard is open, how files are shared with other installers,
+ * the HTTP client used for the requests, and when slow requests are hedged.
  * It provides an immutable data structure with built-in methods for accessing these properties.
  *
  * @param link The URL from which the resource will be downloaded.
  * @param fileName The name of the file to be saved after downloading.
  * @param hash The hash value used to verify the integrity of the downloaded file.
+ * @param segments The number of byte ranges fetched in parallel when the server supports range requests.
+ * @param mirrors Additional URLs serving the same file, used when they are faster or the main link is down.
+ * @param bandwidthLimit The maximum combined download speed in KB/s, or 0 for unlimited.
+ * @param manifest The URL of the manifest listing the additional artifacts, or an empty string if there are none.
+ * @param workers The maximum number of artifacts downloaded in parallel.
+ * @param connectionsPerHost The maximum number of connections to a single host while downloading artifacts.
+ * @param cacheSize The maximum size of the local cache of downloaded files in MB, or 0 to disable the cache.
+ * @param chunks The URL of the chunk manifest of the resource, or an empty string if not published.
+ * @param prefetch True to start downloading the resource when the installer launches, before the installation is confirmed.
+ * @param peer The configuration for sharing downloaded files with other installers on the local network.
+ * @param transport The HTTP client used for the requests: `apache`, `apache-async` or `jdk`.
+ * @param hedgePercentile The percentile of the recent times to the first byte after which a request is duplicated, or 0 to never duplicate.
  */
-public record DownloadConfig(String link, String fileName, String hash) {
+public record DownloadConfig(String link, String fileName, String hash, int segments, List<String> mirrors, int bandwidthLimit,
+                             String manifest, int workers, int connectionsPerHost, int cacheSize,
+                             String chunks, boolean prefetch, PeerConfig peer, String transport, int hedgePercentile) {
+    /**
+     * Retrieves every URL the resource can be downloaded from, starting with the main link.
+     *
+     * @return The main link followed by the mirrors, without duplicates or empty entries.
+     */
+    public List<String> links() {
+        Set<String> links = new LinkedHashSet<>();
+        if (link != null && !link.isEmpty()) {
+            links.add(link);
+        }
+        for (String mirror : mirrors) {
+            if (mirror != null && !mirror.isEmpty()) {
+                links.add(mirror);
+            }
+        }
+        return new ArrayList<>(links);
+    }
 }
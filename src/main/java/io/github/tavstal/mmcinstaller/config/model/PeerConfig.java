@@ -0,0 +1,26 @@
+package io.github.tavstal.mmcinstaller.config.model;
+
+import java.util.List;
+
+/**
+ * Represents the configuration for sharing downloaded files between installers on the local network.
+ * <br/>
+ * This record is used to store whether the installer serves its verified files to other installers,
+ * the port it serves them on, and how the installer finds peers holding a file it needs.
+ * It provides an immutable data structure with built-in methods for accessing these properties.
+ *
+ * @param serve True to serve the files of the local cache to other installers.
+ * @param port The TCP port the files are served on, also used as the UDP port of the discovery.
+ * @param discovery True to look for peers with a UDP broadcast on the local network.
+ * @param hosts The peers asked for files, as `host:port` or an `http://` URL.
+ */
+public record PeerConfig(boolean serve, int port, boolean discovery, List<String> hosts) {
+    /**
+     * Checks if the installer asks peers for files before downloading them.
+     *
+     * @return True if peers are discovered or configured.
+     */
+    public boolean isFetchEnabled() {
+        return discovery || !hosts.isEmpty();
+    }
+}
@@ -5,6 +5,9 @@ import io.github.tavstal.mmcinstaller.config.InstallerState;
 import io.github.tavstal.mmcinstaller.core.DownloadManager;
 import io.github.tavstal.mmcinstaller.core.InstallerTranslator;
 import io.github.tavstal.mmcinstaller.core.UninstallManager;
+import io.github.tavstal.mmcinstaller.core.download.BandwidthLimiter;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressSnapshot;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
@@ -12,6 +15,8 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
 import javafx.scene.text.Text;
 
 import java.io.File;
@@ -24,10 +29,16 @@ import java.util.ResourceBundle;
  * Handles downloading files, creating shortcuts, and updating the UI.
  */
 public class InstallProgressController implements Initializable {
+    private InstallerLogger _logger; // Logger instance for logging messages related to this controller.
+    private InstallerTranslator _translator; // Translator instance for localization.
     public Label progressTitle; // Label for the progress title.
     public Label progressDescription; // Label for the progress description.
     public Text progressAction; // Text for the current progress action.
     public ProgressBar progressBar; // Progress bar for visualizing download progress.
+    public Label progressStatus; // Label showing the downloaded size, throughput and remaining time.
+    public HBox bandwidthLimitBox; // Box holding the bandwidth limit controls, hidden while uninstalling.
+    public Label bandwidthLimitLabel; // Label describing the bandwidth limit field.
+    public TextField bandwidthLimitField; // Text field for changing the bandwidth limit during the download, in KB/s.
     public TextArea logTextArea; // Text area for displaying log messages.
     public Button cancelButton; // Button to cancel the installation process.
 
@@ -41,11 +52,14 @@ public class InstallProgressController implements Initializable {
      */
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        InstallerTranslator _translator = InstallerApplication.getTranslator();
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _translator = InstallerApplication.getTranslator();
 
         // Set localized text for UI elements.
         cancelButton.setText(_translator.Localize("Common.Cancel"));
         if (InstallerState.isUninstallModeActive()) {
+            bandwidthLimitBox.setVisible(false);
+            bandwidthLimitBox.setManaged(false);
             progressTitle.setText(_translator.Localize("ProgressUninstall.Title"));
             progressDescription.setText(_translator.Localize("ProgressUninstall.Description"));
             progressAction.setText(_translator.Localize("ProgressUninstall.Action"));
@@ -60,6 +74,14 @@ public class InstallProgressController implements Initializable {
         progressTitle.setText(_translator.Localize("Progress.Title"));
         progressDescription.setText(_translator.Localize("Progress.Description"));
         progressAction.setText(_translator.Localize("Progress.Action"));
+        bandwidthLimitLabel.setText(_translator.Localize("Progress.Download.Limit"));
+        showBandwidthLimit();
+        // Apply the typed limit when the field loses focus, not only when Enter is pressed.
+        bandwidthLimitField.focusedProperty().addListener((observable, wasFocused, focused) -> {
+            if (!focused) {
+                onBandwidthLimitChanged();
+            }
+        });
 
         // Get the current installation directory.
         File dir = new File(InstallerState.getCurrentPath());
@@ -88,6 +110,33 @@ public class InstallProgressController implements Initializable {
         System.exit(0);
     }
 
+    /**
+     * Handles a change of the bandwidth limit field.
+     * Applies the new limit to every running download, or restores the current limit if the value is invalid.
+     */
+    @FXML
+    protected void onBandwidthLimitChanged() {
+        String text = bandwidthLimitField.getText().trim();
+        try {
+            long limitKb = Math.min(Long.parseLong(text), Long.MAX_VALUE / 1024);
+            BandwidthLimiter limiter = InstallerApplication.getBandwidthLimiter();
+            if (limitKb >= 0 && limiter.getRate() != limitKb * 1024) {
+                limiter.setRate(limitKb * 1024);
+                _logger.Debug("Download bandwidth limit changed to " + limitKb + " KB/s.");
+            }
+        } catch (NumberFormatException e) {
+            _logger.Warn("Invalid bandwidth limit, expected KB/s: " + text);
+        }
+        showBandwidthLimit();
+    }
+
+    /**
+     * Shows the current bandwidth limit in the bandwidth limit field.
+     */
+    private void showBandwidthLimit() {
+        bandwidthLimitField.setText(String.valueOf(InstallerApplication.getBandwidthLimiter().getRate() / 1024));
+    }
+
     /**
      * Logs a step in the installation or uninstallation process.
      * Appends the provided message to the log text area and scrolls to the end.
@@ -123,18 +172,40 @@ public class InstallProgressController implements Initializable {
     }
 
     /**
-     * Updates the progress bar based on the number of downloaded bytes and total bytes.
-     * Calculates the progress as a fraction and ensures the update is performed on the JavaFX Application Thread.
+     * Updates the progress bar and the status text from a download progress snapshot.
+     * Snapshots arrive at a fixed cadence, so this schedules at most one update per sample interval
+     * on the JavaFX Application Thread.
      *
-     * @param downloadedBytes The number of bytes downloaded so far.
-     * @param totalBytes      The total number of bytes to download.
+     * @param snapshot The latest download progress snapshot.
      */
-    public void updateDownloadProgress(long downloadedBytes, long totalBytes) {
+    public void updateDownloadProgress(ProgressSnapshot snapshot) {
         Platform.runLater(() -> {
-            if (totalBytes > 0) {
-                double value = (double) downloadedBytes / totalBytes;
-                progressBar.setProgress(value);
-            }
+            progressBar.setProgress(snapshot.overallFraction());
+            progressStatus.setText(_translator.Localize("Progress.Download.Status", Map.of("status", formatStatus(snapshot))));
         });
     }
+
+    /**
+     * Formats a snapshot as a short status line, e.g. `12.3 / 98.0 MB - 4.5 MB/s - 00:20`.
+     *
+     * @param snapshot The snapshot to format.
+     * @return The formatted status line.
+     */
+    private String formatStatus(ProgressSnapshot snapshot) {
+        double mb = 1024.0 * 1024.0;
+        StringBuilder status = new StringBuilder();
+        if (snapshot.totalBytes() > 0) {
+            status.append(String.format("%.1f / %.1f MB", snapshot.downloadedBytes() / mb, snapshot.totalBytes() / mb));
+        } else {
+            status.append(String.format("%.1f MB", snapshot.downloadedBytes() / mb));
+        }
+        status.append(String.format(" - %.1f MB/s", snapshot.averageBytesPerSecond() / mb));
+        if (snapshot.bandwidthLimit() > 0) {
+            status.append(String.format(" (max %.1f MB/s)", snapshot.bandwidthLimit() / mb));
+        }
+        if (snapshot.etaSeconds() >= 0) {
+            status.append(String.format(" - %02d:%02d", snapshot.etaSeconds() / 60, snapshot.etaSeconds() % 60));
+        }
+        return status.toString();
+    }
 }
\ No newline at end of file
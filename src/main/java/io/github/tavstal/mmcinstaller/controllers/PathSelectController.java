@@ -7,6 +7,7 @@ import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
 import io.github.tavstal.mmcinstaller.core.InstallerTranslator;
 import io.github.tavstal.mmcinstaller.utils.SceneManager;
 import io.github.tavstal.mmcinstaller.utils.PathUtils;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
@@ -20,6 +21,7 @@ import java.io.File;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.ResourceBundle;
+import java.util.function.LongConsumer;
 
 /**
  * Controller class for the Install Path view of the installer application.
@@ -29,6 +31,7 @@ public class PathSelectController implements Initializable {
     private InstallerLogger _logger; // Logger instance for logging events.
     private InstallerTranslator _translator; // Translator instance for localization.
     private String _defaultPath; // Default installation path based on the operating system.
+    private final LongConsumer _requiredSpaceListener = requiredSpace -> Platform.runLater(this::updateFreeSpaceText); // Refreshes the free space text, removed when the view is left.
     public Button backButton; // Button to navigate back to the previous screen.
     public Button nextButton; // Button to proceed to the next step.
     public Button cancelButton; // Button to cancel the installation process.
@@ -55,11 +58,9 @@ public class PathSelectController implements Initializable {
         installPathTitle.setText(_translator.Localize("InstallPath.Title"));
         installPathDescription.setText(_translator.Localize("InstallPath.Description"));
         installPathAction.setText(_translator.Localize("InstallPath.Action"));
-        freeSpaceText.setText(_translator.Localize("InstallPath.FreeSpace", new HashMap<>() {
-            {
-                put("freeSpace", InstallerState.getRequiredSpace());
-            }
-        }));
+        updateFreeSpaceText();
+        // The size shown first may be remembered from the last run, until the server confirms it.
+        InstallerState.addRequiredSpaceListener(_requiredSpaceListener);
 
         browseButton.setText(_translator.Localize("Common.Browse"));
         backButton.setText(_translator.Localize("Common.Back"));
@@ -86,12 +87,24 @@ public class PathSelectController implements Initializable {
         });
     }
 
+    /**
+     * Shows the required disk space in the free space text.
+     */
+    private void updateFreeSpaceText() {
+        freeSpaceText.setText(_translator.Localize("InstallPath.FreeSpace", new HashMap<>() {
+            {
+                put("freeSpace", InstallerState.getRequiredSpace());
+            }
+        }));
+    }
+
     /**
      * Handles the action when the "Next" button is clicked.
-     * Switches the scene to the Shortcut view.
+     * Switches the scene to the Shortcut view. A later visit loads a new view with its own listener.
      */
     @FXML
     protected void onNextButtonClick() {
+        InstallerState.removeRequiredSpaceListener(_requiredSpaceListener);
         InstallerApplication.setActiveScene(SceneManager.getShortcutScene());
         _logger.Debug("Switched to ShortcutView.fxml.");
     }
@@ -102,6 +115,7 @@ public class PathSelectController implements Initializable {
      */
     @FXML
     protected void onBackButtonClick() {
+        InstallerState.removeRequiredSpaceListener(_requiredSpaceListener);
         InstallerApplication.setActiveScene(SceneManager.getLicenseScene());
         _logger.Debug("Switched to LicenseView.fxml.");
     }
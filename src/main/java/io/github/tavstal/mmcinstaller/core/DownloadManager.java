@@ -3,21 +3,32 @@ package io.github.tavstal.mmcinstaller.core;
 import io.github.tavstal.mmcinstaller.InstallerApplication;
 import io.github.tavstal.mmcinstaller.config.ConfigLoader;
 import io.github.tavstal.mmcinstaller.config.InstallerState;
+import io.github.tavstal.mmcinstaller.config.model.DownloadConfig;
+import io.github.tavstal.mmcinstaller.core.download.ArtifactCache;
+import io.github.tavstal.mmcinstaller.core.download.ArtifactRequest;
+import io.github.tavstal.mmcinstaller.core.download.DownloadEngine;
+import io.github.tavstal.mmcinstaller.core.download.DownloadManifest;
+import io.github.tavstal.mmcinstaller.core.download.DiskSpace;
+import io.github.tavstal.mmcinstaller.core.download.DownloadRequest;
+import io.github.tavstal.mmcinstaller.core.download.EmbeddedPayload;
+import io.github.tavstal.mmcinstaller.core.download.InsufficientSpaceException;
+import io.github.tavstal.mmcinstaller.core.download.VirtualThreadDownloadEngine;
 import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressSnapshot;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.RemoteMetadata;
+import io.github.tavstal.mmcinstaller.core.transport.SharedTransport;
 import io.github.tavstal.mmcinstaller.utils.AlertUtils;
 import io.github.tavstal.mmcinstaller.utils.FileUtils;
-import javafx.application.Platform;
+import io.github.tavstal.mmcinstaller.utils.PathUtils;
 import javafx.concurrent.Task;
 import javafx.scene.control.Alert;
-import org.apache.hc.client5.http.classic.methods.HttpGet;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.core5.http.HttpEntity;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 
 import java.io.*;
 import java.util.Map;
-import java.util.function.BiConsumer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 
 /**
@@ -25,48 +36,52 @@ import java.util.function.Consumer;
  * It provides logging, progress updates, and UI callbacks to handle the download lifecycle.
  */
 public class DownloadManager {
+    private static final long METADATA_TIMEOUT_MS = 3000; // Time the start waits for the server to confirm the size of the file.
+
     private final InstallerLogger _logger; // Logger instance for logging download-related messages.
     private final InstallerTranslator _translator; // Translator instance for localizing messages.
     private final Consumer<String> _logCallback; // Callback for logging messages.
     private final Consumer<Double> _progressCallback; // Callback for progress updates.
-    private final BiConsumer<Long, Long> _progressBarCallBack; // Progress bar to update UI.
+    private final Consumer<ProgressSnapshot> _progressListener; // Receives rate-limited download progress snapshots.
+    private final DownloadEngine _engine; // Runs the download in the background.
+    private volatile String _expectedChecksum; // The checksum the file is verified against, decided when the task starts.
 
     /**
      * Constructs a new `DownloadManager` instance.
      *
      * @param logCallback         A callback function for logging messages during the download process.
      * @param progressCallback    A callback function for updating progress values (0.0 to 1.0).
-     * @param progressBarCallBack A callback function for updating the progress bar with downloaded and total bytes.
+     * @param progressListener    A callback function receiving download progress snapshots, at most every {@link ProgressTracker#SAMPLE_INTERVAL_MS} ms.
      */
-    public DownloadManager(Consumer<String> logCallback, Consumer<Double> progressCallback, BiConsumer<Long, Long> progressBarCallBack) {
+    public DownloadManager(Consumer<String> logCallback, Consumer<Double> progressCallback, Consumer<ProgressSnapshot> progressListener) {
         _logger = InstallerApplication.getLogger().WithModule(this.getClass());
         _translator = InstallerApplication.getTranslator();
         _logCallback = logCallback;
         _progressCallback = progressCallback;
-        _progressBarCallBack = progressBarCallBack;
+        _progressListener = progressListener;
+        _engine = new VirtualThreadDownloadEngine(
+                SharedTransport.getTransport(),
+                new File(PathUtils.getInstallerCacheDirectory(), "mirrors.yml"),
+                InstallerApplication.getBandwidthLimiter(),
+                new ArtifactCache(
+                        new File(PathUtils.getInstallerCacheDirectory(), "artifacts"),
+                        ConfigLoader.get().download().cacheSize() * 1024L * 1024L
+                ),
+                InstallerApplication.getPeerLocator()
+        );
     }
 
     /**
-     * Starts the download process by creating a task to download the required file.
+     * Starts the download process by creating a task to download the required file and the artifacts of the manifest.
      * Updates the UI with progress and handles success, failure, or cancellation of the task.
+     * Returns at once, the task runs in the background.
      */
     public void start() {
         // Define the installation directory, start menu directory, and output file for the download.
         File outputFile = new File(InstallerState.getCurrentPath(), ConfigLoader.get().download().fileName());
 
         // Create a Task for the download
-        if (outputFile.exists() && outputFile.length() == InstallerState.getRequiredSpaceInBytes() && outputFile.length() > 0) {
-            Platform.runLater(() -> { // Small delay to ensure UI is ready.
-                _progressCallback.accept(1.0);
-                handleDownloadedFile(outputFile);
-            });
-            return; // Skip download if file already exists and is valid.
-        }
-
-        Task<Void> downloadTask = createDownloadTask(
-                ConfigLoader.get().download().link(),
-                outputFile
-        );
+        Task<String> downloadTask = createDownloadTask(outputFile);
 
         // Handle the success of the download task.
         downloadTask.setOnSucceeded(event -> {
@@ -74,7 +89,7 @@ public class DownloadManager {
             //progressBar.progressProperty().unbind(); // Unbind after completion.
             _progressCallback.accept(1.0); // Ensure it shows 100%.
             _logCallback.accept(_translator.Localize("Progress.Scripts.Creating"));
-            handleDownloadedFile(outputFile); // Handle the downloaded file.
+            handleDownloadedFile(outputFile, downloadTask.getValue()); // Handle the downloaded file.
         });
 
         // Handle the failure of the download task.
@@ -92,8 +107,95 @@ public class DownloadManager {
             _logCallback.accept(_translator.Localize("Progress.Download.Cancelled"));
         });
 
-        // Start the task in a new thread.
-        new Thread(downloadTask).start();
+        // The task only waits for the engine, so a virtual thread is enough.
+        Thread.ofVirtual().name("download-task").start(downloadTask);
+    }
+
+    /**
+     * Decides how the file is obtained and prepares its request. Runs on the thread of the download task,
+     * since it waits for the background check of the file metadata.
+     *
+     * @param outputFile The file where the downloaded content will be saved.
+     * @return The request for the file.
+     * @throws InsufficientSpaceException If the disk cannot hold the file.
+     */
+    private DownloadRequest prepareRequest(File outputFile) throws InsufficientSpaceException {
+        // Let the background check of the file size finish, so an outdated remembered size is not used.
+        InstallerApplication.awaitRemoteMetadata(METADATA_TIMEOUT_MS);
+
+        // Refuse to start when the disk cannot hold the file, instead of failing once it is full.
+        try {
+            DiskSpace.ensureAvailable(outputFile, isAlreadyDownloaded(outputFile) ? 0 : InstallerState.getRequiredSpaceInBytes());
+        } catch (InsufficientSpaceException e) {
+            _logger.Error(e.getMessage());
+            _logCallback.accept(_translator.Localize("IO.DiskSpace.Insufficient", Map.of(
+                    "path", e.getTarget().getAbsolutePath(),
+                    "required", InsufficientSpaceException.toMegabytes(e.getRequiredBytes()) + " MB",
+                    "available", InsufficientSpaceException.toMegabytes(e.getAvailableBytes()) + " MB"
+            )));
+            throw e;
+        }
+
+        _expectedChecksum = getExpectedChecksum();
+        return new DownloadRequest(
+                ConfigLoader.get().download().links(),
+                outputFile,
+                ConfigLoader.get().download().segments(),
+                _expectedChecksum,
+                ConfigLoader.get().download().chunks(),
+                _progressListener
+        );
+    }
+
+    /**
+     * Checks if the file already exists with the size of the remote file, in which case it is not downloaded again.
+     *
+     * @param outputFile The file where the downloaded content will be saved.
+     * @return True if the file is already present.
+     */
+    private static boolean isAlreadyDownloaded(File outputFile) {
+        return outputFile.exists() && outputFile.length() == InstallerState.getRequiredSpaceInBytes() && outputFile.length() > 0;
+    }
+
+    /**
+     * Retrieves the expected checksum of the file. An offline installer expects the checksum of its embedded
+     * payload, which was computed when the payload was embedded. Without a configured checksum, the checksum
+     * advertised by the server is expected, but only once the server confirmed it during this run: a checksum
+     * remembered from an earlier run may belong to an older version of the file.
+     *
+     * @return The expected SHA-256 checksum, or an empty string if unknown.
+     */
+    private String getExpectedChecksum() {
+        EmbeddedPayload payload = InstallerApplication.getEmbeddedPayload();
+        if (payload != null) {
+            return payload.sha256();
+        }
+        String hash = ConfigLoader.get().download().hash();
+        if (hash == null || hash.isEmpty()) {
+            // Fall back to the checksum advertised by the server, if any.
+            RemoteMetadata metadata = InstallerApplication.getConfirmedRemoteMetadata();
+            if (metadata == null) {
+                _logger.Debug("The server has not confirmed the checksum of the file, not verifying it.");
+                return "";
+            }
+            return metadata.sha256();
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the SHA-256 checksum of a file that is already on disk.
+     *
+     * @param file The file to compute the checksum for.
+     * @return The checksum as a hexadecimal string, or an empty string if it could not be computed.
+     */
+    private String computeChecksum(File file) {
+        try {
+            return FileUtils.getFileChecksum(file.getAbsolutePath());
+        } catch (Exception ex) {
+            _logger.Error("Failed to calculate checksum: " + ex.getMessage());
+            return "";
+        }
     }
 
     /**
@@ -101,34 +203,27 @@ public class DownloadManager {
      * If the checksum validation fails, the file is deleted, and the application exits.
      * If the checksum is valid or the user chooses to proceed despite a mismatch, the setup process is initiated.
      *
-     * @param outputFile The downloaded file to be handled.
+     * @param outputFile     The downloaded file to be handled.
+     * @param outputChecksum The SHA-256 checksum of the file, or an empty string if it could not be computed.
      */
-    private void handleDownloadedFile(File outputFile) {
+    private void handleDownloadedFile(File outputFile, String outputChecksum) {
         // Localized strings for error and warning messages.
         String errorTitle = _translator.Localize("Common.Error");
         String errorHeader = _translator.Localize("IO.Checksum.Error");
         String errorContent = _translator.Localize("IO.Checksum.ErrorDetails");
         String yesButtonText = _translator.Localize("Common.Next");
         String noButtonText = _translator.Localize("Common.Cancel");
-        String outputChecksum = "";
         boolean checksumContinue;
 
         String outputFileAbPath = outputFile.getAbsolutePath();
 
-        try {
-            // Calculate the checksum of the downloaded file.
-            outputChecksum = FileUtils.getFileChecksum(outputFileAbPath);
-            if (outputChecksum.isEmpty()) {
-                // Log an error if the checksum is empty and show an error alert.
-                _logger.Error("Checksum is null or empty for file: " + outputFileAbPath);
-                checksumContinue = AlertUtils.show(errorTitle, errorHeader, errorContent, yesButtonText, noButtonText, Alert.AlertType.ERROR);
-            } else {
-                checksumContinue = true;
-            }
-        } catch (Exception ex) {
-            // Log an error if checksum calculation fails and show an error alert.
-            _logger.Error("Failed to calculate checksum: " + ex.getMessage());
+        if (outputChecksum == null || outputChecksum.isEmpty()) {
+            // Log an error if the checksum is empty and show an error alert.
+            _logger.Error("Checksum is null or empty for file: " + outputFileAbPath);
+            outputChecksum = "";
             checksumContinue = AlertUtils.show(errorTitle, errorHeader, errorContent, yesButtonText, noButtonText, Alert.AlertType.ERROR);
+        } else {
+            checksumContinue = true;
         }
 
         // If the user chooses not to continue, delete the file and exit the application.
@@ -140,8 +235,8 @@ public class DownloadManager {
             return;
         }
 
-        // Retrieve the expected checksum from the configuration.
-        String expectedChecksum = ConfigLoader.get().download().hash();
+        // The expected checksum from the embedded payload, the configuration or the server, decided when the task started.
+        String expectedChecksum = _expectedChecksum;
         if (!(expectedChecksum == null || expectedChecksum.isEmpty())) {
             // Compare the calculated checksum with the expected checksum.
             if (!outputChecksum.equals(expectedChecksum)) {
@@ -173,79 +268,132 @@ public class DownloadManager {
     }
 
     /**
-     * Creates a task to download a file from the specified URL and save it to the given output file.
-     * The task handles HTTP requests, progress updates, and error handling.
+     * Creates a task adapting the downloads of the engine to JavaFX, so their outcome is reported on the FX thread.
+     * The task downloads the file, then installs the artifacts of the manifest if one is configured.
+     * Cancelling the task cancels the download.
      *
-     * @param url        The URL of the file to download.
      * @param outputFile The file where the downloaded content will be saved.
-     * @return A `Task<Void>` that performs the download operation.
+     * @return A `Task<String>` that waits for the downloads and yields the checksum of the file, or null if cancelled.
      */
-    private Task<Void> createDownloadTask(String url, File outputFile) {
+    private Task<String> createDownloadTask(File outputFile) {
         return new Task<>() {
             @Override
-            protected Void call() throws Exception {
-                // Log the start of the download process.
-                _logCallback.accept(_translator.Localize("Progress.Download.Started", Map.of("file", outputFile.getAbsolutePath())));
-                try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-                    HttpGet request = new HttpGet(url);
-
-                    // Execute the HTTP request and handle the response.
-                    httpClient.execute(request, response -> {
-                        _logger.Debug("Received response. Status: " + response.getCode());
-                        if (response.getCode() != 200) {
-                            // Handle non-200 HTTP status codes.
-                            String errorMessage = _translator.Localize("Progress.Download.Failed") +
-                                    " HTTP Status: " + response.getCode();
-                            _logger.Error(errorMessage);
-                            _logCallback.accept(errorMessage);
-                            throw new IOException("Server returned non-200 status: " + response.getCode());
+            protected String call() throws Exception {
+                try {
+                    DownloadRequest request = prepareRequest(outputFile);
+                    // Skip the download if the file already exists and is valid, the artifacts are still checked.
+                    boolean alreadyDownloaded = isAlreadyDownloaded(outputFile);
+                    // An older version of the file is updated by only downloading the entries that changed.
+                    boolean outdated = !alreadyDownloaded && outputFile.isFile() && outputFile.length() > 0;
+                    String checksum;
+                    DownloadPrefetcher prefetcher = InstallerApplication.getPrefetcher();
+                    EmbeddedPayload payload = InstallerApplication.getEmbeddedPayload();
+                    if (alreadyDownloaded) {
+                        if (prefetcher != null) {
+                            prefetcher.discard();
                         }
+                        // The existing file was not downloaded by this run, so it has to be hashed from disk.
+                        checksum = computeChecksum(outputFile);
+                    } else if (payload != null) {
+                        // Offline installer, the file is copied from the installer itself.
+                        _logCallback.accept(_translator.Localize("Progress.Download.Embedded", Map.of("file", outputFile.getAbsolutePath())));
+                        checksum = await(_engine.extract(payload, request), outputFile.getName());
+                        _logCallback.accept(_translator.Localize("Progress.Download.Completed", Map.of("file", outputFile.getAbsolutePath())));
+                    } else if (prefetcher != null && (checksum = prefetcher.claim(outputFile, !outdated)) != null) {
+                        // The file was downloaded while the wizard was open, and only had to be moved.
+                        _logCallback.accept(_translator.Localize("Progress.Download.Prefetched", Map.of("file", outputFile.getAbsolutePath())));
+                    } else {
+                        // Log the start of the download process.
+                        _logCallback.accept(_translator.Localize("Progress.Download.Started", Map.of("file", outputFile.getAbsolutePath())));
+                        checksum = await(outdated ? _engine.update(request) : _engine.download(request), outputFile.getName());
+                        _logger.Debug("Download complete.");
+                        _logCallback.accept(_translator.Localize("Progress.Download.Completed", Map.of("file", outputFile.getAbsolutePath())));
+                    }
 
-                        HttpEntity entity = response.getEntity();
-                        if (entity != null) {
-                            long totalBytes = entity.getContentLength(); // Total size of the file.
-                            long downloadedBytes = 0; // Bytes downloaded so far.
-                            byte[] buffer = new byte[4096]; // Buffer for reading data.
-
-                            // Read the content and write it to the output file.
-                            try (InputStream is = entity.getContent();
-                                 OutputStream os = new FileOutputStream(outputFile)) {
-                                int bytesRead;
-                                while ((bytesRead = is.read(buffer)) != -1) {
-                                    if (isCancelled()) {
-                                        // Handle task cancellation.
-                                        _logger.Debug("Download cancelled.");
-                                        return null;
-                                    }
-                                    os.write(buffer, 0, bytesRead);
-                                    downloadedBytes += bytesRead;
-                                    _progressBarCallBack.accept(downloadedBytes, totalBytes); // Report progress.
-                                }
-                                _logger.Debug("Download complete.");
-                                _logCallback.accept(_translator.Localize("Progress.Download.Completed", Map.of("file", outputFile.getAbsolutePath())));
-                            } finally {
-                                EntityUtils.consume(entity); // Ensure the entity is fully consumed.
-                            }
-                        } else {
-                            // Handle null HTTP entity.
-                            _logCallback.accept(_translator.Localize("Progress.Download.Failed"));
-                            throw new IOException("HTTP Response entity is null. Cannot download.");
-                        }
-                        return null;
-                    });
-                } catch (IOException e) {
-                    // Log and handle IO exceptions.
-                    _logger.Error(String.format("Failed to download %s: %s", outputFile.getName(), e.getMessage()));
-                    _logCallback.accept(_translator.Localize("Progress.Download.Error", Map.of("error", e.getMessage())));
-                    throw e;
-                } catch (Exception e) {
-                    // Log and handle unexpected exceptions.
-                    _logger.Error("An unexpected error occurred during download: " + e.getMessage());
-                    _logCallback.accept(_translator.Localize("Progress.Download.Error", Map.of("error", e.getMessage())));
-                    throw e;
+                    installArtifacts();
+                    return checksum;
+                } catch (CancellationException e) {
+                    // Handle download cancellation.
+                    _logger.Debug("Download cancelled.");
+                    // The download was cancelled by the engine, not through the task, which would
+                    // otherwise succeed with a null checksum. Cancelling it runs the cancellation handler.
+                    cancel(false);
+                    return null;
+                } finally {
+                    _engine.close();
                 }
-                return null;
             }
         };
     }
+
+    /**
+     * Downloads the manifest configured in `download.manifest` and installs its artifacts
+     * into the installation directory. Does nothing if no manifest is configured.
+     *
+     * @throws Exception If the manifest or an artifact cannot be downloaded, or the wait was interrupted.
+     */
+    private void installArtifacts() throws Exception {
+        DownloadConfig config = ConfigLoader.get().download();
+        if (config.manifest() == null || config.manifest().isEmpty()) {
+            return;
+        }
+        if (InstallerApplication.getEmbeddedPayload() != null) {
+            _logger.Warn("The artifacts of the manifest are not installed by an offline installer: " + config.manifest());
+            return;
+        }
+
+        DownloadManifest manifest;
+        try {
+            manifest = DownloadManifest.fetch(SharedTransport.getTransport(), config.manifest());
+        } catch (IOException e) {
+            _logger.Error(String.format("Failed to download the manifest %s: %s", config.manifest(), e.getMessage()));
+            _logCallback.accept(_translator.Localize("Progress.Download.Error", Map.of("error", String.valueOf(e.getMessage()))));
+            throw e;
+        }
+
+        int count = manifest.getEntries().size();
+        _logCallback.accept(_translator.Localize("Progress.Artifacts.Started", Map.of("count", String.valueOf(count))));
+        await(_engine.downloadArtifacts(new ArtifactRequest(
+                manifest,
+                new File(InstallerState.getCurrentPath()),
+                config.workers(),
+                config.connectionsPerHost(),
+                config.segments(),
+                _progressListener
+        )), "artifacts");
+        _logger.Debug(String.format("Installed %d artifacts.", count));
+        _logCallback.accept(_translator.Localize("Progress.Artifacts.Completed", Map.of("count", String.valueOf(count))));
+    }
+
+    /**
+     * Waits for a download of the engine. If the waiting thread is interrupted, the download is cancelled.
+     * Failures are logged and reported to the log callback.
+     *
+     * @param download The future of the download.
+     * @param name     The name of the download used in log messages.
+     * @param <T>      The result type of the download.
+     * @return The result of the download.
+     * @throws CancellationException If the download was cancelled.
+     * @throws Exception             The cause of the failure, or an `InterruptedException` if the wait was interrupted.
+     */
+    private <T> T await(CompletableFuture<T> download, String name) throws Exception {
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            // The task was cancelled, stop the download as well.
+            download.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                // Log and handle IO exceptions.
+                _logger.Error(String.format("Failed to download %s: %s", name, cause.getMessage()));
+            } else {
+                // Log and handle unexpected exceptions.
+                _logger.Error("An unexpected error occurred during download: " + cause.getMessage());
+            }
+            _logCallback.accept(_translator.Localize("Progress.Download.Error", Map.of("error", String.valueOf(cause.getMessage()))));
+            throw cause instanceof Exception exception ? exception : e;
+        }
+    }
 }
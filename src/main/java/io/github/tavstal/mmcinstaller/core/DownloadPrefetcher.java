@@ -0,0 +1,183 @@
+package io.github.tavstal.mmcinstaller.core;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.config.model.DownloadConfig;
+import io.github.tavstal.mmcinstaller.core.download.BandwidthLimiter;
+import io.github.tavstal.mmcinstaller.core.download.DownloadEngine;
+import io.github.tavstal.mmcinstaller.core.download.DownloadRequest;
+import io.github.tavstal.mmcinstaller.core.download.PeerLocator;
+import io.github.tavstal.mmcinstaller.core.download.SegmentedDownloader;
+import io.github.tavstal.mmcinstaller.core.download.VirtualThreadDownloadEngine;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads the file speculatively while the user walks through the wizard, so the network is not idle
+ * until the installation starts.
+ * <br/>
+ * The file is staged in the installer cache directory over a single connection, leaving room for everything
+ * else on the network. When the installation starts, a finished file is moved into place and the checksum
+ * computed while downloading is used. An unfinished prefetch is stopped and its partial file handed over,
+ * so the installation continues it with every connection. Staged bytes that are never claimed are deleted
+ * when the installer exits.
+ */
+public class DownloadPrefetcher {
+    private static final int SEGMENTS = 1; // Connections used by the prefetch, fewer than the installation uses.
+    private static final long STOP_TIMEOUT_MS = 5000; // Time allowed for a stopped prefetch to release its files.
+
+    private final InstallerLogger _logger; // Logger instance for logging prefetch-related messages.
+    private final DownloadEngine _engine; // Runs the prefetch in the background.
+    private final File _stagingDirectory; // The directory the file is prefetched into.
+    private CompletableFuture<String> _future; // The running prefetch, or null if it was not started.
+    private File _stagedFile; // The file receiving the prefetched content.
+
+    /**
+     * Constructs a new `DownloadPrefetcher` instance.
+     *
+     * @param transport        The transport used by the prefetch. Not closed by the prefetcher.
+     * @param cacheDirectory   The installer cache directory, holding the mirror history and the staged file.
+     * @param bandwidthLimiter Limits the combined throughput of every download.
+     * @param peers            Finds installers on the local network holding the file, or null to only use the links.
+     */
+    public DownloadPrefetcher(Transport transport, File cacheDirectory, BandwidthLimiter bandwidthLimiter, PeerLocator peers) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _engine = new VirtualThreadDownloadEngine(transport, new File(cacheDirectory, "mirrors.yml"), bandwidthLimiter, null, peers);
+        _stagingDirectory = new File(cacheDirectory, "prefetch");
+    }
+
+    /**
+     * Starts prefetching the configured file in the background. Does nothing if a prefetch was already started.
+     *
+     * @param config The download configuration naming the file and its links.
+     */
+    public synchronized void start(DownloadConfig config) {
+        if (_future != null || config.links().isEmpty()) {
+            return;
+        }
+        if (!_stagingDirectory.isDirectory() && !_stagingDirectory.mkdirs()) {
+            _logger.Warn("Failed to create the prefetch directory: " + _stagingDirectory.getAbsolutePath());
+            return;
+        }
+
+        _stagedFile = new File(_stagingDirectory, config.fileName());
+        _future = _engine.download(new DownloadRequest(
+                config.links(),
+                _stagedFile,
+                SEGMENTS,
+                config.hash(),
+                config.chunks(),
+                snapshot -> {}
+        ));
+        _future.whenComplete((checksum, e) -> {
+            if (e == null) {
+                _logger.Debug("Prefetched " + _stagedFile.getName() + ".");
+            } else if (!(e instanceof CancellationException)) {
+                _logger.Debug("Prefetch failed, the file will be downloaded during the installation: " + e.getMessage());
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::discard, "prefetch-discard"));
+        _logger.Debug("Prefetching " + _stagedFile.getName() + " in the background.");
+    }
+
+    /**
+     * Checks whether the prefetch has downloaded and verified the whole file, which has not been claimed yet.
+     *
+     * @return True if the staged file is complete, false otherwise.
+     */
+    public synchronized boolean isFinished() {
+        return _future != null && _future.state() == Future.State.SUCCESS;
+    }
+
+    /**
+     * Hands the prefetch over to the installation. A finished file is moved to the output file; otherwise
+     * the prefetch is stopped and, if requested, its partial download is moved next to the output file, where
+     * the download of the installation continues it. Every staged file is removed afterwards, so the prefetch
+     * can only be claimed once.
+     *
+     * @param outputFile  The file the installation downloads.
+     * @param keepPartial True to hand over an unfinished download, false to discard it.
+     * @return The SHA-256 checksum of the prefetched file if it was moved to the output file, null otherwise.
+     */
+    public synchronized String claim(File outputFile, boolean keepPartial) {
+        if (_future == null) {
+            return null;
+        }
+
+        try {
+            if (isFinished()) {
+                FileUtils.moveReplacing(_stagedFile.toPath(), outputFile.toPath());
+                _logger.Debug("Using the prefetched file for " + outputFile.getAbsolutePath());
+                return _future.resultNow();
+            }
+            if (stop() && keepPartial && _stagedFile != null && SegmentedDownloader.getStateFile(_stagedFile).isFile()
+                    && !SegmentedDownloader.getPartFile(outputFile).exists()) {
+                FileUtils.moveReplacing(SegmentedDownloader.getPartFile(_stagedFile).toPath(), SegmentedDownloader.getPartFile(outputFile).toPath());
+                FileUtils.moveReplacing(SegmentedDownloader.getStateFile(_stagedFile).toPath(), SegmentedDownloader.getStateFile(outputFile).toPath());
+                _logger.Debug("Continuing the prefetched partial download in " + outputFile.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            _logger.Warn("Failed to hand over the prefetched file: " + e.getMessage());
+        } finally {
+            _engine.close();
+            deleteStagedFiles();
+            _future = null;
+        }
+        return null;
+    }
+
+    /**
+     * Stops the prefetch and deletes the staged bytes. Called when the installer exits and when the
+     * installation does not need the prefetched file.
+     */
+    public synchronized void discard() {
+        if (_future == null) {
+            return;
+        }
+        stop();
+        deleteStagedFiles();
+        _future = null;
+    }
+
+    /**
+     * Cancels the prefetch and waits for it to release its files.
+     *
+     * @return True if the prefetch stopped in time, false if it may still be writing.
+     */
+    private boolean stop() {
+        _future.cancel(false);
+        _engine.close();
+        try {
+            if (_engine.awaitTermination(STOP_TIMEOUT_MS)) {
+                return true;
+            }
+            _logger.Warn("The prefetch did not stop in time.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the staged file and its partial download, if they are still present.
+     */
+    private void deleteStagedFiles() {
+        if (_stagedFile == null) {
+            return;
+        }
+        for (File file : new File[]{_stagedFile, SegmentedDownloader.getPartFile(_stagedFile), SegmentedDownloader.getStateFile(_stagedFile)}) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                _logger.Warn("Failed to delete the prefetched file " + file.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A pooled direct buffer owned by a single connection, resized according to the measured throughput.
+ * <br/>
+ * Slow connections get small buffers so data reaches the disk (and the progress bar) regularly,
+ * fast connections get large buffers so every write syscall moves more data.
+ */
+public class AdaptiveBuffer implements AutoCloseable {
+    private static final long MEASURE_WINDOW_NANOS = 250_000_000L; // Length of a throughput measurement window (250 ms).
+    private static final long TARGET_FILL_MILLIS = 100; // How long filling the buffer should take at the measured throughput.
+
+    private ByteBuffer _buffer; // The current buffer, borrowed from the BufferPool.
+    private long _windowStart; // Start of the current measurement window, in nanoseconds.
+    private long _windowBytes; // Bytes transferred in the current measurement window.
+
+    /**
+     * Constructs a new `AdaptiveBuffer` instance starting with the smallest pooled buffer.
+     */
+    public AdaptiveBuffer() {
+        _buffer = BufferPool.acquire(BufferPool.MIN_BUFFER_SIZE);
+        _windowStart = System.nanoTime();
+    }
+
+    /**
+     * Retrieves the current buffer. The returned buffer may change after {@link #record(int)}.
+     *
+     * @return The current direct buffer.
+     */
+    public ByteBuffer get() {
+        return _buffer;
+    }
+
+    /**
+     * Records transferred bytes and, at the end of each measurement window, resizes the buffer
+     * to hold roughly {@value #TARGET_FILL_MILLIS} ms worth of data.
+     *
+     * @param bytes The number of bytes transferred since the last call.
+     */
+    public void record(int bytes) {
+        _windowBytes += bytes;
+        long now = System.nanoTime();
+        long elapsed = now - _windowStart;
+        if (elapsed < MEASURE_WINDOW_NANOS) {
+            return;
+        }
+
+        long bytesPerSecond = _windowBytes * 1_000_000_000L / elapsed;
+        int targetSize = BufferPool.normalizeSize((int) Math.min(Integer.MAX_VALUE, bytesPerSecond * TARGET_FILL_MILLIS / 1000));
+        if (targetSize != _buffer.capacity()) {
+            BufferPool.release(_buffer);
+            _buffer = BufferPool.acquire(targetSize);
+        }
+        _windowStart = now;
+        _windowBytes = 0;
+    }
+
+    /**
+     * Returns the buffer to the pool.
+     */
+    @Override
+    public void close() {
+        BufferPool.release(_buffer);
+        _buffer = null;
+    }
+}
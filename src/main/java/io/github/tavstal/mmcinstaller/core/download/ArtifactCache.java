@@ -0,0 +1,339 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+import io.github.tavstal.mmcinstaller.utils.YamlHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A user-level cache of downloaded files, addressed by their SHA-256 checksum.
+ * <br/>
+ * Every cached file (blob) is stored as `xx/<sha256>`, where `xx` are the first two characters of the checksum.
+ * A cached file is placed into an installation directory as a hard link when the file system allows it, and
+ * copied otherwise. Either way its checksum is verified first, so a blob corrupted on disk (e.g. through a hard
+ * link modified in place) is discarded instead of installed.
+ * <br/>
+ * The index (`index.yml`) remembers the size and last use of every blob for the least recently used eviction.
+ * Blobs are written with an atomic move, so they can be added without coordination. The index is only read
+ * and written while holding an exclusive lock on `index.lock`, which keeps it consistent when several installer
+ * processes share the cache. Uses are collected in memory and merged into the index by {@link #flush()}, which
+ * also evicts blobs until the cache fits its size cap.
+ */
+public class ArtifactCache {
+    private final static Pattern SHA256_PATTERN = Pattern.compile("[0-9a-f]{64}"); // A lowercase SHA-256 checksum.
+    private final static Object PROCESS_LOCK = new Object(); // File locks are held per process, so threads share this lock.
+
+    private final InstallerLogger _logger; // Logger instance for logging cache-related messages.
+    private final File _directory; // The directory of the cache.
+    private final long _maxBytes; // The maximum combined size of the blobs, 0 or less to disable the cache.
+    private final Map<String, Long> _lastUsed = new ConcurrentHashMap<>(); // Uses not merged into the index yet, by checksum.
+
+    /**
+     * Constructs a new `ArtifactCache` instance.
+     *
+     * @param directory The directory of the cache. Created when the first file is stored.
+     * @param maxBytes  The maximum combined size of the cached files in bytes, 0 or less to disable the cache.
+     */
+    public ArtifactCache(File directory, long maxBytes) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _directory = directory;
+        _maxBytes = maxBytes;
+    }
+
+    /**
+     * Places a cached file at the target path, replacing any existing file. Failures are logged
+     * and reported as a miss, since the file can still be downloaded.
+     *
+     * @param sha256 The SHA-256 checksum of the file.
+     * @param target The path to place the file at.
+     * @return True if the file was found in the cache and placed at the target, false otherwise.
+     */
+    public boolean materialize(String sha256, File target) {
+        String key = toKey(sha256);
+        if (key == null || !getBlob(key).isFile()) {
+            return false;
+        }
+
+        Path blob = getBlob(key).toPath();
+        Path temp = new File(target.getParentFile(), target.getName() + ".cache").toPath();
+        try {
+            Files.createDirectories(temp.getParent());
+            Files.deleteIfExists(temp);
+            boolean linked = link(blob, temp);
+            if (!key.equals(FileUtils.getFileChecksum(temp.toString()))) {
+                _logger.Warn("Discarding corrupted cache entry " + key);
+                Files.deleteIfExists(temp);
+                Files.deleteIfExists(blob);
+                return false;
+            }
+
+            FileUtils.moveReplacing(temp, target.toPath());
+            _lastUsed.put(key, System.currentTimeMillis());
+            _logger.Debug(String.format("%s %s from the cache.", linked ? "Linked" : "Copied", target.getName()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false; // Evicted by another process meanwhile.
+        } catch (Exception e) {
+            _logger.Warn(String.format("Failed to take %s from the cache: %s", target.getName(), e.getMessage()));
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Looks up the blob of a cached file, for reading it in place. The blob is not verified, so readers
+     * must check the checksum of what they read.
+     *
+     * @param sha256 The SHA-256 checksum of the file.
+     * @return The blob of the file, or null if the file is not cached.
+     */
+    public File find(String sha256) {
+        String key = toKey(sha256);
+        if (key == null || !getBlob(key).isFile()) {
+            return null;
+        }
+        return getBlob(key);
+    }
+
+    /**
+     * Adds a verified file to the cache, sharing its data through a hard link when possible.
+     * Files larger than the size cap are not cached. Failures are logged, since the cache is only an optimization.
+     *
+     * @param sha256 The SHA-256 checksum of the file, already verified by the caller.
+     * @param source The file to add.
+     */
+    public void store(String sha256, File source) {
+        String key = toKey(sha256);
+        if (key == null || _maxBytes <= 0 || source.length() > _maxBytes) {
+            return;
+        }
+
+        File blob = getBlob(key);
+        if (blob.isFile()) {
+            _lastUsed.put(key, System.currentTimeMillis());
+            return;
+        }
+
+        Path temp = new File(blob.getParentFile(), key + "." + UUID.randomUUID() + ".tmp").toPath();
+        try {
+            Files.createDirectories(temp.getParent());
+            link(source.toPath(), temp);
+            FileUtils.moveReplacing(temp, blob.toPath()); // A concurrent store of the same checksum writes the same content.
+            _lastUsed.put(key, System.currentTimeMillis());
+            _logger.Debug("Cached " + source.getName() + " as " + key);
+        } catch (IOException e) {
+            _logger.Warn(String.format("Failed to cache %s: %s", source.getName(), e.getMessage()));
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Merges the recorded uses into the index and evicts the least recently used blobs until
+     * the cache fits its size cap. Blobs on disk are the source of truth: blobs missing from the
+     * index are added, and index entries without a blob are dropped.
+     */
+    @SuppressWarnings("try") // The file lock is only held for the duration of the block, it is never referenced.
+    public void flush() {
+        if (_maxBytes <= 0 || !_directory.isDirectory()) {
+            return;
+        }
+
+        synchronized (PROCESS_LOCK) {
+            try (FileChannel channel = FileChannel.open(new File(_directory, "index.lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                Map<String, CacheEntry> index = scanBlobs(loadIndex());
+                Map<String, Long> merged = new HashMap<>(_lastUsed);
+                for (Map.Entry<String, Long> use : merged.entrySet()) {
+                    CacheEntry entry = index.get(use.getKey());
+                    if (entry != null) {
+                        entry.lastUsed = Math.max(entry.lastUsed, use.getValue());
+                    }
+                }
+
+                evict(index);
+                saveIndex(index);
+                merged.forEach(_lastUsed::remove); // Keeps uses recorded by other threads during the flush.
+            } catch (IOException e) {
+                _logger.Warn("Failed to update the cache index: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used blobs until the combined size fits the cap. Must be called while holding the index lock.
+     *
+     * @param index The entries of the cache, updated in place.
+     */
+    private void evict(Map<String, CacheEntry> index) {
+        long total = 0;
+        for (CacheEntry entry : index.values()) {
+            total += entry.size;
+        }
+
+        List<Map.Entry<String, CacheEntry>> entries = new ArrayList<>(index.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+        for (Map.Entry<String, CacheEntry> entry : entries) {
+            if (total <= _maxBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(getBlob(entry.getKey()).toPath());
+                index.remove(entry.getKey());
+                total -= entry.getValue().size;
+                _logger.Debug("Evicted " + entry.getKey() + " from the cache.");
+            } catch (IOException e) {
+                // The blob may be open in another process, try again on the next flush.
+                _logger.Debug(String.format("Failed to evict %s: %s", entry.getKey(), e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Loads the index file. A missing or invalid file means an empty index, which is rebuilt from the blobs.
+     *
+     * @return The entries of the index by checksum.
+     */
+    private Map<String, CacheEntry> loadIndex() {
+        Map<String, CacheEntry> index = new HashMap<>();
+        Map<String, Object> map = YamlHelper.readFromFile(new File(_directory, "index.yml"));
+        if (map == null) {
+            return index;
+        }
+
+        Object entriesObj = YamlHelper.getObject(map, "entries", null);
+        if (entriesObj instanceof List) {
+            for (Object entryItem : (List<?>) entriesObj) {
+                if (entryItem instanceof Map) {
+                    @SuppressWarnings("unchecked") Map<String, Object> entryMap = (Map<String, Object>) entryItem;
+                    CacheEntry entry = new CacheEntry();
+                    entry.size = YamlHelper.getLong(entryMap, "size", 0L);
+                    entry.lastUsed = YamlHelper.getLong(entryMap, "last_used", 0L);
+                    index.put(YamlHelper.getString(entryMap, "sha256", ""), entry);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Builds the entries of every blob on disk, keeping the last use known by the index.
+     *
+     * @param index The entries loaded from the index file.
+     * @return The entries of the blobs on disk by checksum.
+     */
+    private Map<String, CacheEntry> scanBlobs(Map<String, CacheEntry> index) {
+        Map<String, CacheEntry> blobs = new HashMap<>();
+        File[] prefixes = _directory.listFiles(File::isDirectory);
+        if (prefixes == null) {
+            return blobs;
+        }
+
+        for (File prefix : prefixes) {
+            File[] files = prefix.listFiles(File::isFile);
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (!SHA256_PATTERN.matcher(file.getName()).matches()) {
+                    continue; // Temporary files of a store in progress.
+                }
+                CacheEntry entry = new CacheEntry();
+                entry.size = file.length();
+                CacheEntry known = index.get(file.getName());
+                entry.lastUsed = known != null ? known.lastUsed : file.lastModified();
+                blobs.put(file.getName(), entry);
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Writes the index file through a temporary file, so readers never see a partial index.
+     * Must be called while holding the index lock.
+     *
+     * @param index The entries of the cache by checksum.
+     * @throws IOException If the file cannot be written.
+     */
+    private void saveIndex(Map<String, CacheEntry> index) throws IOException {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (Map.Entry<String, CacheEntry> entry : index.entrySet()) {
+            Map<String, Object> entryMap = new LinkedHashMap<>();
+            entryMap.put("sha256", entry.getKey());
+            entryMap.put("size", entry.getValue().size);
+            entryMap.put("last_used", entry.getValue().lastUsed);
+            entries.add(entryMap);
+        }
+
+        File temp = new File(_directory, "index.yml.tmp");
+        YamlHelper.writeToFile(temp, Map.of("entries", entries));
+        FileUtils.moveReplacing(temp.toPath(), new File(_directory, "index.yml").toPath());
+    }
+
+    /**
+     * Creates a hard link to a file, or copies it if the file system does not support the link.
+     *
+     * @param source The existing file.
+     * @param link   The path of the new file.
+     * @return True if a hard link was created, false if the file was copied.
+     * @throws IOException If the file can neither be linked nor copied.
+     */
+    private static boolean link(Path source, Path link) throws IOException {
+        try {
+            Files.createLink(link, source);
+            return true;
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+            // Different file systems or no hard link support.
+            Files.copy(source, link, StandardCopyOption.REPLACE_EXISTING);
+            return false;
+        }
+    }
+
+    /**
+     * Normalizes a checksum to the key of its blob.
+     *
+     * @param sha256 The SHA-256 checksum.
+     * @return The lowercase checksum, or null if the cache is disabled or the checksum is not valid.
+     */
+    private String toKey(String sha256) {
+        if (_maxBytes <= 0 || sha256 == null) {
+            return null;
+        }
+        String key = sha256.trim().toLowerCase(Locale.ROOT);
+        return SHA256_PATTERN.matcher(key).matches() ? key : null;
+    }
+
+    /**
+     * Retrieves the file of a blob.
+     *
+     * @param key The lowercase checksum of the blob.
+     * @return The file of the blob, which may not exist.
+     */
+    private File getBlob(String key) {
+        return new File(new File(_directory, key.substring(0, 2)), key);
+    }
+
+    /**
+     * The metadata remembered for a single blob.
+     */
+    private static class CacheEntry {
+        private long size; // The size of the blob in bytes.
+        private long lastUsed; // The time of the last use, in milliseconds since the epoch.
+    }
+}
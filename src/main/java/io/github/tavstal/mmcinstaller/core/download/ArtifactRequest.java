@@ -0,0 +1,19 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.core.progress.ProgressSnapshot;
+
+import java.io.File;
+import java.util.function.Consumer;
+
+/**
+ * Describes the artifacts of a manifest to be installed by a {@link DownloadEngine}.
+ *
+ * @param manifest           The artifacts to install.
+ * @param baseDirectory      The directory the artifact paths are relative to.
+ * @param workers            The maximum number of artifacts downloaded in parallel.
+ * @param connectionsPerHost The maximum number of connections to a single host.
+ * @param segments           The maximum number of connections used for a large artifact.
+ * @param progressListener   Receives the combined progress snapshots of all artifacts. Called from a background thread.
+ */
+public record ArtifactRequest(DownloadManifest manifest, File baseDirectory, int workers, int connectionsPerHost, int segments, Consumer<ProgressSnapshot> progressListener) {
+}
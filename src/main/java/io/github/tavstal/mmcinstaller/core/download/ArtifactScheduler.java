@@ -0,0 +1,409 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressPhase;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.FileTransport;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Installs the artifacts of a {@link DownloadManifest} with a bounded number of parallel downloads.
+ * <br/>
+ * A fixed number of workers take the artifacts in order of priority, then size (largest first), so long
+ * downloads start early and do not trail at the end. An artifact is only handed out when its host has a
+ * free connection, so many small files cannot flood a single server; workers skip ahead to artifacts of
+ * other hosts meanwhile. Large artifacts are downloaded in segments, small ones over a single connection.
+ * <br/>
+ * Every artifact reports to a child of the shared {@link ProgressTracker}, so the progress of thousands of
+ * files is published as one aggregated snapshot at a fixed cadence. Artifacts already present with the
+ * expected size and checksum are skipped, and artifacts found in the {@link ArtifactCache} are not downloaded.
+ * An outdated artifact with published {@link BlockChecksums} only downloads the blocks its old copy lacks.
+ * Artifacts held by an installer on the local network are downloaded from it (see {@link PeerLocator}).
+ * <br/>
+ * All downloads of an installation share one {@link StallWatchdog} and one {@link MirrorHistory}, and an
+ * artifact whose size is listed in the manifest is downloaded without probing its URL first.
+ */
+public class ArtifactScheduler {
+    private final static long SEGMENTED_MIN_SIZE = 8 * 1024 * 1024; // Artifacts smaller than this use a single connection (8 MB).
+    private final static long WAIT_INTERVAL_MS = 100; // Longest wait for a free host connection, so cancellation is noticed quickly.
+
+    private final InstallerLogger _logger; // Logger instance for logging download-related messages.
+    private final Transport _transport; // The shared transport, not closed by the scheduler.
+    private final BandwidthLimiter _bandwidthLimiter; // Limits the combined throughput of all connections.
+    private final int _workers; // The maximum number of artifacts downloaded in parallel.
+    private final int _connectionsPerHost; // The maximum number of connections to a single host.
+    private final int _segments; // The maximum number of connections used for a large artifact.
+    private final ArtifactCache _cache; // The local cache of downloaded files, or null to always download.
+    private final PeerLocator _peers; // Finds installers on the local network holding an artifact, or null to only use the URLs.
+    private final ProgressTracker _progress; // Receives the combined progress of all artifacts.
+    private final BooleanSupplier _cancelledSupplier; // Returns true when the owner requested cancellation.
+    private final AtomicBoolean _aborted = new AtomicBoolean(); // Set when an artifact failed, stops the other workers.
+    private final List<ManifestEntry> _pending = new ArrayList<>(); // Artifacts not handed out yet, in download order.
+    private final Map<String, Integer> _activeConnections = new HashMap<>(); // Connections in use by host.
+    private final MirrorHistory _mirrorHistory = new MirrorHistory(null); // The throughput and failures of the artifact URLs, shared by all downloads.
+    private volatile StallWatchdog _watchdog; // Aborts stalled connections of the running installation.
+
+    /**
+     * Constructs a new `ArtifactScheduler` instance.
+     *
+     * @param transport          The transport used for every request. Must not decode response bodies itself.
+     * @param bandwidthLimiter   Limits the combined throughput of all connections.
+     * @param workers            The maximum number of artifacts downloaded in parallel.
+     * @param connectionsPerHost The maximum number of connections to a single host.
+     * @param segments           The maximum number of connections used for a large artifact.
+     * @param cache              The local cache of downloaded files, or null to always download.
+     * @param peers              Finds installers on the local network holding an artifact, or null to only use the URLs.
+     * @param progress           The tracker receiving the combined progress of all artifacts.
+     * @param cancelledSupplier  A supplier returning true when the installation should be cancelled.
+     */
+    public ArtifactScheduler(Transport transport, BandwidthLimiter bandwidthLimiter, int workers, int connectionsPerHost, int segments, ArtifactCache cache, PeerLocator peers, ProgressTracker progress, BooleanSupplier cancelledSupplier) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _transport = transport;
+        _bandwidthLimiter = bandwidthLimiter;
+        _workers = Math.max(1, workers);
+        _connectionsPerHost = Math.max(1, connectionsPerHost);
+        _segments = Math.max(1, segments);
+        _cache = cache;
+        _peers = peers;
+        _progress = progress;
+        _cancelledSupplier = cancelledSupplier;
+    }
+
+    /**
+     * Installs every artifact of the manifest. Returns once all artifacts are installed, or as soon as one of them fails.
+     *
+     * @param manifest         The artifacts to install.
+     * @param baseDirectory    The directory the artifact paths are relative to.
+     * @return True if every artifact was installed, false if the installation was cancelled.
+     * @throws IOException If an artifact cannot be downloaded or does not match its checksum.
+     */
+    public boolean install(DownloadManifest manifest, File baseDirectory) throws IOException {
+        synchronized (this) {
+            _pending.clear();
+            _pending.addAll(manifest.getEntries());
+            _pending.sort(Comparator
+                    .comparingInt(ManifestEntry::priority).reversed()
+                    .thenComparing(Comparator.comparingLong(ManifestEntry::size).reversed()));
+        }
+        DiskSpace.ensureAvailable(baseDirectory, getMissingBytes(manifest, baseDirectory));
+        _aborted.set(false);
+        _progress.setPhase(ProgressPhase.DOWNLOADING, 0.0);
+        _progress.reset(0, manifest.getTotalBytes());
+        _logger.Debug(String.format("Installing %d artifacts (%d bytes) with %d workers.", manifest.getEntries().size(), manifest.getTotalBytes(), _workers));
+
+        int workers = Math.min(_workers, Math.max(1, manifest.getEntries().size()));
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        _watchdog = SegmentedDownloader.createWatchdog(_bandwidthLimiter, workers * Math.min(_segments, _connectionsPerHost));
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> runWorker(baseDirectory)));
+            }
+
+            boolean completed = true;
+            for (Future<Boolean> future : futures) {
+                completed &= awaitWorker(future);
+            }
+            return completed;
+        } finally {
+            executor.shutdownNow();
+            _watchdog.close();
+        }
+    }
+
+    /**
+     * Estimates the disk space the artifacts still need, from their sizes and the files already present.
+     *
+     * @param manifest      The manifest listing the artifacts.
+     * @param baseDirectory The directory the artifact paths are relative to.
+     * @return The number of bytes the installation will add to the disk.
+     */
+    private static long getMissingBytes(DownloadManifest manifest, File baseDirectory) {
+        long missingBytes = 0;
+        for (ManifestEntry entry : manifest.getEntries()) {
+            File target = new File(baseDirectory, entry.path());
+            missingBytes += Math.max(0, entry.size() - (target.isFile() ? target.length() : 0));
+        }
+        return missingBytes;
+    }
+
+    /**
+     * Installs artifacts until none are left.
+     *
+     * @param baseDirectory The directory the artifact paths are relative to.
+     * @return True if no artifacts are left, false if the installation was cancelled or aborted.
+     * @throws IOException If an artifact fails.
+     */
+    private boolean runWorker(File baseDirectory) throws IOException {
+        try {
+            ManifestEntry entry;
+            while ((entry = takeNext()) != null) {
+                try {
+                    if (!installArtifact(entry, baseDirectory)) {
+                        return false;
+                    }
+                } finally {
+                    release(entry);
+                }
+            }
+            return !isStopped();
+        } catch (IOException e) {
+            _aborted.set(true); // Stop the other workers, the installation cannot complete anymore.
+            synchronized (this) {
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a worker to finish.
+     *
+     * @param future The future of the worker.
+     * @return True if the worker completed, false if it was cancelled.
+     * @throws IOException If the worker failed or the wait was interrupted.
+     */
+    private boolean awaitWorker(Future<Boolean> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            _aborted.set(true);
+            throw new InterruptedIOException("Interrupted while waiting for the artifacts.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Artifact worker failed unexpectedly.", cause);
+        }
+    }
+
+    /**
+     * Hands out the next artifact whose host has enough free connections, waiting while every host is busy.
+     *
+     * @return The artifact to install, or null if none are left or the installation was stopped.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    private synchronized ManifestEntry takeNext() throws InterruptedIOException {
+        while (!isStopped() && !_pending.isEmpty()) {
+            Iterator<ManifestEntry> iterator = _pending.iterator();
+            while (iterator.hasNext()) {
+                ManifestEntry entry = iterator.next();
+                String host = getHost(entry);
+                int active = _activeConnections.getOrDefault(host, 0);
+                // A host without connections always gets the artifact, even if it needs more than the limit.
+                if (active == 0 || active + getConnections(entry) <= _connectionsPerHost) {
+                    iterator.remove();
+                    _activeConnections.put(host, active + getConnections(entry));
+                    return entry;
+                }
+            }
+
+            try {
+                wait(WAIT_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a free connection.");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the connections of an installed artifact to its host and wakes up the waiting workers.
+     *
+     * @param entry The artifact that finished.
+     */
+    private synchronized void release(ManifestEntry entry) {
+        _activeConnections.merge(getHost(entry), -getConnections(entry), Integer::sum);
+        notifyAll();
+    }
+
+    /**
+     * Downloads an artifact to its path and verifies it, unless it is already installed.
+     *
+     * @param entry         The artifact to install.
+     * @param baseDirectory The directory the artifact path is relative to.
+     * @return True if the artifact was installed, false if the installation was cancelled.
+     * @throws IOException If the download fails or the artifact does not match its size or checksum.
+     */
+    private boolean installArtifact(ManifestEntry entry, File baseDirectory) throws IOException {
+        File target = resolveTarget(baseDirectory, entry.path());
+        ProgressTracker progress = _progress.createChild();
+        if (isInstalled(target, entry)) {
+            _logger.Debug("Artifact already installed: " + entry.path());
+            progress.reset(entry.size(), entry.size());
+            return true;
+        }
+        if (_cache != null && _cache.materialize(entry.sha256(), target)) {
+            progress.reset(target.length(), target.length());
+            return true;
+        }
+
+        Files.createDirectories(target.getParentFile().toPath());
+        String checksum = null;
+        if (_peers != null && _peers.fetch(entry.sha256(), target, progress, _bandwidthLimiter, this::isStopped)) {
+            checksum = entry.sha256();
+        } else if (target.isFile()) {
+            checksum = updateFromBlocks(entry, target, progress);
+        }
+        if (checksum == null) {
+            SegmentedDownloader downloader = new SegmentedDownloader(
+                    _transport,
+                    new MirrorSelector(_mirrorHistory, List.of(entry.url())),
+                    target,
+                    getConnections(entry),
+                    null,
+                    progress,
+                    _bandwidthLimiter,
+                    this::isStopped,
+                    _watchdog,
+                    entry.size()
+            );
+            if (!downloader.download()) {
+                return false;
+            }
+            checksum = downloader.getChecksum();
+        }
+
+        if (entry.size() >= 0 && target.length() != entry.size()) {
+            Files.deleteIfExists(target.toPath());
+            throw new IOException(String.format("Artifact %s has %d bytes, expected %d.", entry.path(), target.length(), entry.size()));
+        }
+        if (!entry.sha256().isEmpty() && !entry.sha256().equalsIgnoreCase(checksum)) {
+            Files.deleteIfExists(target.toPath());
+            throw new IOException(String.format("Artifact %s does not match its checksum, expected %s but got %s.", entry.path(), entry.sha256(), checksum));
+        }
+        if (_cache != null && !entry.sha256().isEmpty()) {
+            _cache.store(entry.sha256(), target);
+        }
+        _logger.Debug("Installed artifact: " + entry.path());
+        return true;
+    }
+
+    /**
+     * Updates an outdated artifact by reusing the blocks of the old copy, if block checksums are published for it.
+     *
+     * @param entry    The artifact.
+     * @param target   The file of the artifact, holding an old copy.
+     * @param progress Tracks the progress of the artifact.
+     * @return The checksum of the updated artifact, or null if it has to be downloaded as a whole.
+     * @throws InsufficientSpaceException If the disk has no room for the new version.
+     */
+    private String updateFromBlocks(ManifestEntry entry, File target, ProgressTracker progress) throws InsufficientSpaceException {
+        BlockChecksums checksums;
+        try {
+            checksums = BlockChecksums.fetch(_transport, BlockChecksums.getUrl(entry.url()));
+        } catch (IOException e) {
+            _logger.Debug("No block checksums available for " + entry.path() + ": " + e.getMessage());
+            return null;
+        }
+
+        BlockDeltaDownloader downloader = new BlockDeltaDownloader(
+                _transport,
+                entry.url(),
+                checksums,
+                target,
+                target,
+                entry.sha256(),
+                getConnections(entry),
+                progress,
+                _bandwidthLimiter,
+                this::isStopped
+        );
+        try {
+            return downloader.download() ? downloader.getChecksum() : null;
+        } catch (InsufficientSpaceException e) {
+            throw e;
+        } catch (IOException e) {
+            _logger.Warn(String.format("Block delta update of %s failed, downloading it as a whole: %s", entry.path(), e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Checks if an artifact is already present with the expected size and checksum.
+     *
+     * @param target The file of the artifact.
+     * @param entry  The artifact.
+     * @return True if the file can be kept.
+     */
+    private boolean isInstalled(File target, ManifestEntry entry) {
+        if (!target.isFile() || entry.size() < 0 || entry.sha256().isEmpty() || target.length() != entry.size()) {
+            return false;
+        }
+        try {
+            return entry.sha256().equalsIgnoreCase(FileUtils.getFileChecksum(target.getAbsolutePath()));
+        } catch (Exception e) {
+            _logger.Warn(String.format("Failed to verify the existing artifact %s: %s", entry.path(), e.getMessage()));
+            return false;
+        }
+    }
+
+    /**
+     * Resolves the path of an artifact against the installation directory.
+     *
+     * @param baseDirectory The directory the path is relative to.
+     * @param path          The path of the artifact from the manifest.
+     * @return The file of the artifact.
+     * @throws IOException If the path points outside the installation directory.
+     */
+    private static File resolveTarget(File baseDirectory, String path) throws IOException {
+        Path base = baseDirectory.toPath().toAbsolutePath().normalize();
+        Path target = base.resolve(path).normalize();
+        if (!target.startsWith(base) || target.equals(base)) {
+            throw new IOException("Artifact path points outside the installation directory: " + path);
+        }
+        return target.toFile();
+    }
+
+    /**
+     * Retrieves the host of an artifact, which the connection limit applies to.
+     *
+     * @param entry The artifact.
+     * @return The host and port of the artifact URL, or an empty string for local files.
+     */
+    private static String getHost(ManifestEntry entry) {
+        if (FileTransport.isLocal(entry.url())) {
+            return "";
+        }
+        String authority = URI.create(entry.url()).getAuthority();
+        return authority == null ? "" : authority;
+    }
+
+    /**
+     * Retrieves the number of connections used for an artifact.
+     *
+     * @param entry The artifact.
+     * @return The number of segments for large artifacts, 1 for small ones.
+     */
+    private int getConnections(ManifestEntry entry) {
+        return entry.size() >= SEGMENTED_MIN_SIZE ? Math.min(_segments, _connectionsPerHost) : 1;
+    }
+
+    /**
+     * Checks if the workers should stop, because the installation was cancelled or an artifact failed.
+     *
+     * @return True if the workers should stop.
+     */
+    private boolean isStopped() {
+        return _cancelledSupplier.getAsBoolean() || _aborted.get();
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A token bucket limiting the combined throughput of every download connection.
+ * <br/>
+ * Tokens (bytes) are refilled continuously at the configured rate, up to a quarter of a second worth of data.
+ * A connection takes tokens for every chunk it receives. If the bucket is empty, the connection parks until
+ * enough tokens have been refilled, which stops it from reading the socket and lets TCP flow control slow down
+ * the sender. The rate can be changed at any time; parked connections pick up the new rate within
+ * {@link #MAX_PARK_NANOS} ns.
+ */
+public class BandwidthLimiter {
+    private final static long MAX_PARK_NANOS = 100_000_000L; // Longest single park, so rate changes and cancellation are noticed quickly.
+    private final static double BURST_SECONDS = 0.25; // Size of the bucket, in seconds worth of data at the current rate.
+
+    private long _bytesPerSecond; // The allowed rate, 0 if unlimited.
+    private double _tokens; // Bytes that may be transferred right now. Negative while connections are in debt.
+    private long _lastRefillNanos = System.nanoTime(); // Time of the last refill.
+
+    /**
+     * Constructs a new `BandwidthLimiter` instance.
+     *
+     * @param bytesPerSecond The allowed rate in bytes per second, 0 or less for unlimited.
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        setRate(bytesPerSecond);
+    }
+
+    /**
+     * Retrieves the allowed rate.
+     *
+     * @return The allowed rate in bytes per second, or 0 if unlimited.
+     */
+    public synchronized long getRate() {
+        return _bytesPerSecond;
+    }
+
+    /**
+     * Changes the allowed rate. Takes effect immediately for every connection.
+     *
+     * @param bytesPerSecond The allowed rate in bytes per second, 0 or less for unlimited.
+     */
+    public final synchronized void setRate(long bytesPerSecond) {
+        refill();
+        _bytesPerSecond = Math.max(0, bytesPerSecond);
+        _tokens = Math.min(_tokens, getCapacity());
+    }
+
+    /**
+     * Takes tokens for transferred bytes, parking the calling thread while the bucket is in debt.
+     * The bytes are always granted, a large chunk only delays the following chunks.
+     *
+     * @param bytes     The number of bytes transferred.
+     * @param cancelled Returns true when the caller should stop waiting.
+     * @return True if the tokens were taken, false if the wait was cancelled.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    public boolean acquire(int bytes, BooleanSupplier cancelled) throws InterruptedIOException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                if (_bytesPerSecond <= 0) {
+                    return true;
+                }
+
+                refill();
+                if (_tokens >= 0) {
+                    _tokens -= bytes;
+                    return true;
+                }
+                waitNanos = (long) Math.ceil(-_tokens / _bytesPerSecond * TimeUnit.SECONDS.toNanos(1));
+            }
+
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(waitNanos, MAX_PARK_NANOS));
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth.");
+            }
+        }
+    }
+
+    /**
+     * Adds the tokens earned since the last refill. Must be called while holding the lock.
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        if (_bytesPerSecond > 0) {
+            double earned = (now - _lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1) * _bytesPerSecond;
+            _tokens = Math.min(getCapacity(), _tokens + earned);
+        }
+        _lastRefillNanos = now;
+    }
+
+    /**
+     * Retrieves the size of the bucket. Must be called while holding the lock.
+     *
+     * @return The maximum number of tokens.
+     */
+    private double getCapacity() {
+        return _bytesPerSecond * BURST_SECONDS;
+    }
+}
@@ -0,0 +1,198 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.core.transport.TransportRequest;
+import io.github.tavstal.mmcinstaller.utils.YamlHelper;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * The checksums of the fixed-size blocks of a file, published as a static file next to it, in the
+ * manner of zsync.
+ * <br/>
+ * Every block has a weak {@link RollingChecksum}, used to find candidate blocks at any offset of an old
+ * local copy, and a SHA-256 checksum confirming a candidate. The file is published under the URL of the
+ * file with `.blocks` appended to its path, as a YAML document:
+ * <pre>
+ * size: 52428800        # Size of the file in bytes.
+ * block_size: 4096      # Size of every block but the last one.
+ * blocks:
+ *   - "0a1b2c3d ..."    # Rolling checksum and SHA-256 of each block in hexadecimal, in file order.
+ * </pre>
+ */
+public class BlockChecksums {
+    public final static String SUFFIX = ".blocks"; // Appended to the path of a file to get the URL of its block checksums.
+
+    private final long _fileSize; // The size of the file in bytes.
+    private final int _blockSize; // The size of every block but the last one.
+    private final int[] _weakChecksums; // The rolling checksum of every block, in file order.
+    private final List<byte[]> _strongChecksums; // The SHA-256 checksum of every block, in file order.
+
+    /**
+     * Constructs a new `BlockChecksums` instance.
+     *
+     * @param fileSize        The size of the file in bytes.
+     * @param blockSize       The size of every block but the last one.
+     * @param weakChecksums   The rolling checksum of every block, in file order.
+     * @param strongChecksums The SHA-256 checksum of every block, in file order.
+     * @throws IllegalArgumentException If the number of checksums does not match the file and block size.
+     */
+    public BlockChecksums(long fileSize, int blockSize, int[] weakChecksums, List<byte[]> strongChecksums) {
+        long blockCount = blockSize <= 0 ? -1 : (fileSize + blockSize - 1) / blockSize;
+        if (fileSize < 0 || blockCount != weakChecksums.length || blockCount != strongChecksums.size()) {
+            throw new IllegalArgumentException(String.format("%d block checksums do not describe %d bytes in blocks of %d bytes.", strongChecksums.size(), fileSize, blockSize));
+        }
+        _fileSize = fileSize;
+        _blockSize = blockSize;
+        _weakChecksums = weakChecksums.clone();
+        _strongChecksums = List.copyOf(strongChecksums);
+    }
+
+    /**
+     * Retrieves the URL of the block checksums published next to a file.
+     *
+     * @param fileUrl The URL of the file.
+     * @return The URL of its block checksums, with the query string of the file URL kept.
+     */
+    public static String getUrl(String fileUrl) {
+        int end = fileUrl.length();
+        for (char separator : new char[]{'?', '#'}) {
+            int index = fileUrl.indexOf(separator);
+            if (index >= 0) {
+                end = Math.min(end, index);
+            }
+        }
+        return fileUrl.substring(0, end) + SUFFIX + fileUrl.substring(end);
+    }
+
+    /**
+     * Downloads and parses block checksums.
+     *
+     * @param transport  The transport used for the request.
+     * @param url        The URL of the block checksums.
+     * @return The parsed block checksums.
+     * @throws IOException If the block checksums cannot be downloaded or are invalid.
+     */
+    public static BlockChecksums fetch(Transport transport, String url) throws IOException {
+        return transport.execute(TransportRequest.get(url), response -> {
+            if (response.getStatus() != HttpStatus.SC_OK) {
+                throw new IOException(String.format("Server returned status %d for the block checksums %s.", response.getStatus(), url));
+            }
+
+            try (InputStream is = response.getBody()) {
+                Map<String, Object> map = YamlHelper.readFromStream(is, url);
+                if (map == null) {
+                    throw new IOException("The block checksums " + url + " are not a valid YAML document.");
+                }
+                return parse(map);
+            }
+        });
+    }
+
+    /**
+     * Parses block checksums from their YAML representation.
+     *
+     * @param map The parsed YAML document.
+     * @return The parsed block checksums.
+     * @throws IOException If the block checksums are invalid.
+     */
+    public static BlockChecksums parse(Map<String, Object> map) throws IOException {
+        HexFormat hex = HexFormat.of();
+        List<Integer> weakChecksums = new ArrayList<>();
+        List<byte[]> strongChecksums = new ArrayList<>();
+        Object blocksObj = YamlHelper.getObject(map, "blocks", null);
+        try {
+            if (blocksObj instanceof List) {
+                for (Object blockItem : (List<?>) blocksObj) {
+                    String[] parts = String.valueOf(blockItem).trim().split("\\s+");
+                    if (parts.length != 2) {
+                        throw new IllegalArgumentException("a block needs a rolling checksum and a SHA-256 checksum: " + blockItem);
+                    }
+                    weakChecksums.add(HexFormat.fromHexDigits(parts[0]));
+                    strongChecksums.add(hex.parseHex(parts[1]));
+                }
+            }
+
+            return new BlockChecksums(
+                    YamlHelper.getLong(map, "size", -1L),
+                    YamlHelper.getInteger(map, "block_size", 0),
+                    weakChecksums.stream().mapToInt(Integer::intValue).toArray(),
+                    strongChecksums
+            );
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid block checksums: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Retrieves the size of the described file.
+     *
+     * @return The size of the file in bytes.
+     */
+    public long getFileSize() {
+        return _fileSize;
+    }
+
+    /**
+     * Retrieves the size of every block but the last one.
+     *
+     * @return The block size in bytes.
+     */
+    public int getBlockSize() {
+        return _blockSize;
+    }
+
+    /**
+     * Retrieves the number of blocks.
+     *
+     * @return The number of blocks.
+     */
+    public int getBlockCount() {
+        return _weakChecksums.length;
+    }
+
+    /**
+     * Retrieves the offset of the first byte of a block.
+     *
+     * @param index The index of the block.
+     * @return The offset of the block in the file.
+     */
+    public long getBlockStart(int index) {
+        return (long) index * _blockSize;
+    }
+
+    /**
+     * Retrieves the length of a block, which is the block size except for the last block.
+     *
+     * @param index The index of the block.
+     * @return The length of the block in bytes.
+     */
+    public int getBlockLength(int index) {
+        return (int) Math.min(_blockSize, _fileSize - getBlockStart(index));
+    }
+
+    /**
+     * Retrieves the rolling checksum of a block.
+     *
+     * @param index The index of the block.
+     * @return The rolling checksum.
+     */
+    public int getWeakChecksum(int index) {
+        return _weakChecksums[index];
+    }
+
+    /**
+     * Checks a SHA-256 checksum against the checksum of a block.
+     *
+     * @param index    The index of the block.
+     * @param checksum The SHA-256 checksum of the candidate data.
+     * @return True if the checksums are equal.
+     */
+    public boolean matches(int index, byte[] checksum) {
+        return MessageDigest.isEqual(_strongChecksums.get(index), checksum);
+    }
+}
@@ -0,0 +1,329 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressPhase;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Downloads a new version of a file by reusing the blocks of an old local copy, in the manner of zsync,
+ * so only a static HTTP server supporting range requests is needed.
+ * <br/>
+ * The old copy is scanned with a {@link RollingChecksum} over a window of the block size, moving one byte
+ * at a time, so blocks are found even if data was inserted or removed before them. A window whose rolling
+ * checksum matches a block of the {@link BlockChecksums} is confirmed with SHA-256 and copied to the offset
+ * of the block. The blocks that were not found are downloaded with range requests, and every block of the
+ * result is verified before it replaces the output file.
+ */
+public class BlockDeltaDownloader {
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024; // Size of the buffer the old copy is scanned through (1 MB).
+    private static final int FILTER_BITS = 20; // Bits of the filter rejecting most windows before the map lookup.
+    private static final long MERGE_GAP = 16 * 1024; // Missing blocks closer than this are downloaded with a single request (16 KB).
+
+    private final InstallerLogger _logger; // Logger instance for logging delta-related messages.
+    private final RangeFetcher _fetcher; // Downloads the missing blocks.
+    private final BlockChecksums _checksums; // The checksums of the blocks of the new version.
+    private final File _localFile; // The old copy of the file.
+    private final File _outputFile; // The file receiving the new version.
+    private final File _deltaFile; // The file the new version is assembled in.
+    private final String _expectedChecksum; // The SHA-256 checksum of the new version, or an empty string if unknown.
+    private final ProgressTracker _progress; // Tracks the progress of the download.
+    private final BooleanSupplier _cancelledSupplier; // Returns true when the download should stop.
+    private String _checksum; // The SHA-256 checksum of the assembled file.
+
+    /**
+     * Constructs a new `BlockDeltaDownloader` instance.
+     *
+     * @param transport         The transport used for the range requests.
+     * @param url               The URL of the new version of the file.
+     * @param checksums         The checksums of the blocks of the new version.
+     * @param localFile         The old copy of the file. Left untouched unless it is the output file.
+     * @param outputFile        The file receiving the new version. Replaced only once the download is verified.
+     * @param expectedChecksum  The SHA-256 checksum of the new version, or an empty string if unknown.
+     * @param maxConnections    The maximum number of range requests running in parallel.
+     * @param progress          Tracks the progress of the download.
+     * @param bandwidthLimiter  Limits the combined throughput of all connections.
+     * @param cancelledSupplier Returns true when the download should stop.
+     */
+    public BlockDeltaDownloader(Transport transport, String url, BlockChecksums checksums, File localFile, File outputFile,
+                                String expectedChecksum, int maxConnections, ProgressTracker progress, BandwidthLimiter bandwidthLimiter,
+                                BooleanSupplier cancelledSupplier) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _fetcher = new RangeFetcher(transport, url, maxConnections, progress, bandwidthLimiter, cancelledSupplier);
+        _checksums = checksums;
+        _localFile = localFile;
+        _outputFile = outputFile;
+        _deltaFile = new File(outputFile.getParentFile(), outputFile.getName() + ".delta");
+        _expectedChecksum = expectedChecksum == null ? "" : expectedChecksum;
+        _progress = progress;
+        _cancelledSupplier = cancelledSupplier;
+    }
+
+    /**
+     * Assembles the new version of the file from the blocks of the old copy and the downloaded blocks,
+     * verifies it, and moves it to the output file. Must only be called once.
+     *
+     * @return True if the download completed, false if it was cancelled.
+     * @throws IOException If the download fails, the block checksums are stale, or the result does not match.
+     */
+    public boolean download() throws IOException {
+        try {
+            if (!assemble()) {
+                Files.deleteIfExists(_deltaFile.toPath());
+                return false;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(_deltaFile.toPath());
+            throw e;
+        }
+
+        FileUtils.moveReplacing(_deltaFile.toPath(), _outputFile.toPath());
+        _progress.setPhase(ProgressPhase.VERIFYING, 1.0);
+        return true;
+    }
+
+    /**
+     * Retrieves the SHA-256 checksum of the downloaded file.
+     *
+     * @return The checksum as a hexadecimal string, or null if the download has not completed.
+     */
+    public String getChecksum() {
+        return _checksum;
+    }
+
+    /**
+     * Finds the reusable blocks, writes them and the downloaded blocks into the delta file and verifies it.
+     *
+     * @return True if the delta file is complete and verified, false if the download was cancelled.
+     * @throws IOException If the download fails, the block checksums are stale, or the result does not match.
+     */
+    private boolean assemble() throws IOException {
+        _progress.setPhase(ProgressPhase.CONNECTING, 0.0);
+        long fileSize = _fetcher.probe();
+        if (fileSize != _checksums.getFileSize()) {
+            throw new IOException(String.format("The block checksums describe %d bytes but the file has %d.", _checksums.getFileSize(), fileSize));
+        }
+        DiskSpace.ensureAvailable(_deltaFile, fileSize);
+
+        try (FileChannel local = FileChannel.open(_localFile.toPath(), StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(_deltaFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long[] found = findBlocks(local);
+            if (found == null) {
+                return false;
+            }
+
+            long reusedBytes = 0;
+            List<RangeFetcher.Range> missing = new ArrayList<>();
+            ByteBuffer buffer = ByteBuffer.allocate(_checksums.getBlockSize());
+            for (int i = 0; i < found.length; i++) {
+                long start = _checksums.getBlockStart(i);
+                int length = _checksums.getBlockLength(i);
+                if (found[i] < 0) {
+                    RangeFetcher.addRange(missing, start, start + length, MERGE_GAP);
+                    continue;
+                }
+                buffer.clear().limit(length);
+                readFully(local, buffer, found[i]);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    output.write(buffer, start + buffer.position());
+                }
+                reusedBytes += length;
+            }
+            long fetchedBytes = missing.stream().mapToLong(RangeFetcher.Range::length).sum();
+            _logger.Debug(String.format("Reusing %d bytes of %s, downloading %d bytes in %d requests.", reusedBytes, _localFile.getName(), fetchedBytes, missing.size()));
+
+            _progress.reset(fileSize - fetchedBytes, fileSize);
+            _progress.setPhase(ProgressPhase.DOWNLOADING, 0.0);
+            if (!_fetcher.fetchAll(output, missing)) {
+                return false;
+            }
+
+            _progress.setPhase(ProgressPhase.VERIFYING, 0.0);
+            _checksum = verify(output);
+            output.force(false);
+        }
+
+        if (!_expectedChecksum.isEmpty() && !_expectedChecksum.equalsIgnoreCase(_checksum)) {
+            throw new IOException(String.format("The downloaded file does not match its checksum, expected %s but got %s.", _expectedChecksum, _checksum));
+        }
+        return true;
+    }
+
+    /**
+     * Scans the old copy for the full-size blocks of the new version.
+     *
+     * @param local The channel of the old copy.
+     * @return The offset of every block in the old copy, or -1 for blocks that were not found, or null if cancelled.
+     * @throws IOException If the old copy cannot be read.
+     */
+    private long[] findBlocks(FileChannel local) throws IOException {
+        int blockSize = _checksums.getBlockSize();
+        long[] found = new long[_checksums.getBlockCount()];
+        Arrays.fill(found, -1);
+
+        // The last block is usually shorter and cannot be found with a window of the block size.
+        Map<Integer, List<Integer>> blocksByChecksum = new HashMap<>();
+        BitSet filter = new BitSet(1 << FILTER_BITS);
+        for (int i = 0; i < found.length; i++) {
+            if (_checksums.getBlockLength(i) == blockSize) {
+                int weak = _checksums.getWeakChecksum(i);
+                blocksByChecksum.computeIfAbsent(weak, key -> new ArrayList<>()).add(i);
+                filter.set(getFilterIndex(weak));
+            }
+        }
+
+        byte[] buffer = new byte[Math.max(SCAN_BUFFER_SIZE, 2 * blockSize)];
+        int filled = fill(local, buffer, 0, 0);
+        if (blocksByChecksum.isEmpty() || filled < blockSize) {
+            return found;
+        }
+        MessageDigest digest = createDigest();
+        RollingChecksum rolling = new RollingChecksum(blockSize);
+        rolling.reset(buffer, 0);
+        long bufferOffset = 0; // Offset of the first byte of the buffer in the old copy.
+        int position = 0; // Start of the window in the buffer.
+        int remaining = blocksByChecksum.values().stream().mapToInt(List::size).sum();
+        while (remaining > 0) {
+            boolean matched = false;
+            int weak = rolling.getValue();
+            if (filter.get(getFilterIndex(weak))) {
+                List<Integer> candidates = blocksByChecksum.get(weak);
+                if (candidates != null) {
+                    digest.update(buffer, position, blockSize);
+                    byte[] strong = digest.digest();
+                    for (int index : candidates) {
+                        if (found[index] < 0 && _checksums.matches(index, strong)) {
+                            found[index] = bufferOffset + position;
+                            remaining--;
+                            matched = true;
+                        }
+                    }
+                }
+            }
+
+            // A matched window is skipped as a whole, otherwise the window moves by one byte.
+            int step = matched ? blockSize : 1;
+            if (position + step + blockSize > filled) {
+                if (_cancelledSupplier.getAsBoolean()) {
+                    return null;
+                }
+                System.arraycopy(buffer, position, buffer, 0, filled - position);
+                bufferOffset += position;
+                filled = fill(local, buffer, filled - position, bufferOffset);
+                position = 0;
+                if (step + blockSize > filled) {
+                    break; // End of the old copy.
+                }
+            }
+
+            if (matched) {
+                position += blockSize;
+                rolling.reset(buffer, position);
+            } else {
+                rolling.roll(buffer[position], buffer[position + blockSize]);
+                position++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads the assembled file back, checks every block against its checksum and computes the checksum of the file.
+     *
+     * @param output The channel of the delta file.
+     * @return The SHA-256 checksum of the file as a hexadecimal string.
+     * @throws IOException If the file cannot be read or a block does not match its checksum.
+     */
+    private String verify(FileChannel output) throws IOException {
+        MessageDigest fileDigest = createDigest();
+        MessageDigest blockDigest = createDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(_checksums.getBlockSize());
+        for (int i = 0; i < _checksums.getBlockCount(); i++) {
+            buffer.clear().limit(_checksums.getBlockLength(i));
+            readFully(output, buffer, _checksums.getBlockStart(i));
+            buffer.flip();
+            fileDigest.update(buffer.duplicate());
+            blockDigest.update(buffer);
+            if (!_checksums.matches(i, blockDigest.digest())) {
+                throw new IOException(String.format("Block %d of the downloaded file does not match its checksum.", i));
+            }
+        }
+        return HexFormat.of().formatHex(fileDigest.digest());
+    }
+
+    /**
+     * Maps a rolling checksum to a bit of the filter, mixing both sums into the index.
+     *
+     * @param weak The rolling checksum.
+     * @return The index of the bit.
+     */
+    private static int getFilterIndex(int weak) {
+        return (weak * 0x9E3779B9) >>> (32 - FILTER_BITS);
+    }
+
+    /**
+     * Fills a buffer from a file, starting after the bytes already in the buffer.
+     *
+     * @param channel      The channel to read from.
+     * @param buffer       The buffer to fill.
+     * @param kept         The number of bytes already at the start of the buffer.
+     * @param bufferOffset The offset of the first byte of the buffer in the file.
+     * @return The number of valid bytes in the buffer, less than its length at the end of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    private static int fill(FileChannel channel, byte[] buffer, int kept, long bufferOffset) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, kept, buffer.length - kept);
+        while (target.hasRemaining()) {
+            if (channel.read(target, bufferOffset + target.position()) < 0) {
+                break;
+            }
+        }
+        return target.position();
+    }
+
+    /**
+     * Reads from a file until the buffer is full.
+     *
+     * @param channel  The channel to read from.
+     * @param buffer   The buffer to fill up to its limit.
+     * @param position The offset of the first byte to read.
+     * @throws IOException If the file ends early or cannot be read.
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at byte " + (start + buffer.position()) + ".");
+            }
+        }
+    }
+
+    /**
+     * Creates a SHA-256 digest.
+     *
+     * @return The digest.
+     */
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
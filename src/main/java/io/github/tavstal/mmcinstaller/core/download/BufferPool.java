@@ -0,0 +1,69 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A utility class that pools direct byte buffers used by download connections.
+ * <br/>
+ * Direct buffers are expensive to allocate and are only freed by the garbage collector,
+ * so they are reused between connections and downloads. Buffer sizes are always powers of two
+ * between {@link #MIN_BUFFER_SIZE} and {@link #MAX_BUFFER_SIZE}.
+ */
+public class BufferPool {
+    /** The smallest buffer size handed out by the pool. */
+    public final static int MIN_BUFFER_SIZE = 16 * 1024;
+
+    /** The largest buffer size handed out by the pool. */
+    public final static int MAX_BUFFER_SIZE = 1024 * 1024;
+
+    private final static int MAX_POOLED_PER_SIZE = 8; // Buffers of a single size kept for reuse.
+    private final static Map<Integer, Queue<ByteBuffer>> _pools = new ConcurrentHashMap<>(); // Released buffers by capacity.
+
+    /**
+     * Retrieves a cleared direct buffer of at least the requested size, rounded up to a power of two.
+     *
+     * @param size The requested size in bytes.
+     * @return A direct buffer, either reused from the pool or newly allocated.
+     */
+    public static ByteBuffer acquire(int size) {
+        int capacity = normalizeSize(size);
+        ByteBuffer buffer = _pools.computeIfAbsent(capacity, key -> new ConcurrentLinkedQueue<>()).poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers beyond the pool limit are left to the garbage collector.
+     *
+     * @param buffer The buffer to return.
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != normalizeSize(buffer.capacity())) {
+            return;
+        }
+
+        Queue<ByteBuffer> pool = _pools.computeIfAbsent(buffer.capacity(), key -> new ConcurrentLinkedQueue<>());
+        if (pool.size() < MAX_POOLED_PER_SIZE) {
+            pool.offer(buffer);
+        }
+    }
+
+    /**
+     * Rounds a size up to the next power of two within the pool limits.
+     *
+     * @param size The requested size in bytes.
+     * @return The buffer capacity used for the requested size.
+     */
+    public static int normalizeSize(int size) {
+        int clamped = Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, size));
+        int highest = Integer.highestOneBit(clamped);
+        return highest == clamped ? clamped : highest << 1;
+    }
+}
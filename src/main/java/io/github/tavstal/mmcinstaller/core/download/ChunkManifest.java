@@ -0,0 +1,211 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.core.transport.TransportRequest;
+import io.github.tavstal.mmcinstaller.utils.YamlHelper;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The SHA-256 checksums of the fixed-size chunks of a file, published next to the file.
+ * <br/>
+ * The chunk checksums are the leaves of a Merkle tree: every inner node is the SHA-256 of its two children
+ * concatenated, and a node without a sibling is carried up unchanged. The root of the tree must match the
+ * `root` of the manifest, so a damaged or truncated chunk list is rejected as a whole. The manifest is a
+ * YAML document:
+ * <pre>
+ * size: 52428800        # Size of the file in bytes.
+ * chunk_size: 1048576   # Size of every chunk but the last one.
+ * root: "..."           # Merkle root of the chunk checksums.
+ * chunks:
+ *   - "..."             # SHA-256 of each chunk, in file order.
+ * </pre>
+ */
+public class ChunkManifest {
+    private final long _fileSize; // The size of the file in bytes.
+    private final int _chunkSize; // The size of every chunk but the last one.
+    private final List<byte[]> _chunkHashes; // The SHA-256 checksum of every chunk, in file order.
+
+    /**
+     * Constructs a new `ChunkManifest` instance.
+     *
+     * @param fileSize    The size of the file in bytes.
+     * @param chunkSize   The size of every chunk but the last one.
+     * @param chunkHashes The SHA-256 checksum of every chunk, in file order.
+     * @throws IllegalArgumentException If the number of checksums does not match the file and chunk size.
+     */
+    public ChunkManifest(long fileSize, int chunkSize, List<byte[]> chunkHashes) {
+        if (chunkSize <= 0 || fileSize < 0 || chunkHashes.size() != (fileSize + chunkSize - 1) / chunkSize) {
+            throw new IllegalArgumentException(String.format("%d chunk checksums do not describe %d bytes in chunks of %d bytes.", chunkHashes.size(), fileSize, chunkSize));
+        }
+        _fileSize = fileSize;
+        _chunkSize = chunkSize;
+        _chunkHashes = List.copyOf(chunkHashes);
+    }
+
+    /**
+     * Downloads and parses a chunk manifest, and checks the chunk checksums against the Merkle root.
+     *
+     * @param transport  The transport used for the request.
+     * @param url        The URL of the chunk manifest.
+     * @return The parsed manifest.
+     * @throws IOException If the manifest cannot be downloaded, is invalid, or does not match its root.
+     */
+    public static ChunkManifest fetch(Transport transport, String url) throws IOException {
+        return transport.execute(TransportRequest.get(url), response -> {
+            if (response.getStatus() != HttpStatus.SC_OK) {
+                throw new IOException(String.format("Server returned status %d for the chunk manifest %s.", response.getStatus(), url));
+            }
+
+            try (InputStream is = response.getBody()) {
+                Map<String, Object> map = YamlHelper.readFromStream(is, url);
+                if (map == null) {
+                    throw new IOException("The chunk manifest " + url + " is not a valid YAML document.");
+                }
+                return parse(map);
+            }
+        });
+    }
+
+    /**
+     * Parses a chunk manifest from its YAML representation and checks it against its Merkle root.
+     *
+     * @param map The parsed YAML document.
+     * @return The parsed manifest.
+     * @throws IOException If the manifest is invalid or does not match its root.
+     */
+    public static ChunkManifest parse(Map<String, Object> map) throws IOException {
+        HexFormat hex = HexFormat.of();
+        List<byte[]> chunkHashes = new ArrayList<>();
+        Object chunksObj = YamlHelper.getObject(map, "chunks", null);
+        try {
+            if (chunksObj instanceof List) {
+                for (Object chunkItem : (List<?>) chunksObj) {
+                    chunkHashes.add(hex.parseHex(String.valueOf(chunkItem)));
+                }
+            }
+
+            ChunkManifest manifest = new ChunkManifest(
+                    YamlHelper.getLong(map, "size", -1L),
+                    YamlHelper.getInteger(map, "chunk_size", 0),
+                    chunkHashes
+            );
+            byte[] root = hex.parseHex(YamlHelper.getString(map, "root", ""));
+            if (!MessageDigest.isEqual(root, computeRoot(chunkHashes))) {
+                throw new IOException("The chunk checksums do not match the Merkle root of the chunk manifest.");
+            }
+            return manifest;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid chunk manifest: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Computes the Merkle root of a list of chunk checksums.
+     *
+     * @param leaves The SHA-256 checksum of every chunk, in file order.
+     * @return The root of the tree, or the SHA-256 of nothing for an empty list.
+     */
+    public static byte[] computeRoot(List<byte[]> leaves) {
+        MessageDigest digest = createDigest();
+        if (leaves.isEmpty()) {
+            return digest.digest();
+        }
+
+        List<byte[]> level = leaves;
+        while (level.size() > 1) {
+            List<byte[]> parents = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                if (i + 1 == level.size()) {
+                    parents.add(level.get(i)); // Carried up without a sibling.
+                } else {
+                    digest.update(level.get(i));
+                    digest.update(level.get(i + 1));
+                    parents.add(digest.digest());
+                }
+            }
+            level = parents;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Retrieves the size of the described file.
+     *
+     * @return The size of the file in bytes.
+     */
+    public long getFileSize() {
+        return _fileSize;
+    }
+
+    /**
+     * Retrieves the number of chunks.
+     *
+     * @return The number of chunks.
+     */
+    public int getChunkCount() {
+        return _chunkHashes.size();
+    }
+
+    /**
+     * Retrieves the index of the chunk containing a byte.
+     *
+     * @param offset The offset of the byte in the file.
+     * @return The index of the chunk.
+     */
+    public int getChunkIndex(long offset) {
+        return (int) (offset / _chunkSize);
+    }
+
+    /**
+     * Retrieves the offset of the first byte of a chunk.
+     *
+     * @param index The index of the chunk.
+     * @return The offset of the chunk in the file.
+     */
+    public long getChunkStart(int index) {
+        return (long) index * _chunkSize;
+    }
+
+    /**
+     * Retrieves the length of a chunk, which is the chunk size except for the last chunk.
+     *
+     * @param index The index of the chunk.
+     * @return The length of the chunk in bytes.
+     */
+    public int getChunkLength(int index) {
+        return (int) Math.min(_chunkSize, _fileSize - getChunkStart(index));
+    }
+
+    /**
+     * Checks the data of a chunk against its checksum.
+     *
+     * @param index The index of the chunk.
+     * @param data  The data of the chunk, from the buffer position to its limit. The buffer is consumed.
+     * @return True if the data matches the checksum of the chunk.
+     */
+    public boolean verify(int index, ByteBuffer data) {
+        MessageDigest digest = createDigest();
+        digest.update(data);
+        return MessageDigest.isEqual(digest.digest(), _chunkHashes.get(index));
+    }
+
+    /**
+     * Creates the SHA-256 digest.
+     *
+     * @return The SHA-256 digest.
+     */
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this runtime.", e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Verifies the chunks of a {@link ChunkManifest} while a file is being downloaded.
+ * <br/>
+ * Every write to the file is reported with {@link #onWritten(long, long)}. Once the last byte of a chunk has
+ * been written, the chunk is read back from the file (usually still in the page cache) and hashed on a pool
+ * with one thread per core, so verification runs in parallel to the download and to each other. Chunks that
+ * do not match their checksum are collected, so only they have to be downloaded again.
+ */
+public class ChunkVerifier implements AutoCloseable {
+    private final ChunkManifest _manifest; // The checksums of the chunks.
+    private final FileChannel _channel; // The channel of the output file.
+    private final AtomicLongArray _missingBytes; // Bytes of every chunk not written yet.
+    private final ExecutorService _executor; // Hashes the completed chunks, one thread per core.
+    private final List<Future<Integer>> _results = new CopyOnWriteArrayList<>(); // The index of each verified chunk, or -1 - index if corrupt.
+
+    /**
+     * Constructs a new `ChunkVerifier` instance. No byte of the file counts as written yet.
+     *
+     * @param manifest The checksums of the chunks.
+     * @param channel  The channel of the output file, which must be readable.
+     */
+    public ChunkVerifier(ChunkManifest manifest, FileChannel channel) {
+        _manifest = manifest;
+        _channel = channel;
+        _missingBytes = new AtomicLongArray(manifest.getChunkCount());
+        for (int i = 0; i < manifest.getChunkCount(); i++) {
+            _missingBytes.set(i, manifest.getChunkLength(i));
+        }
+        _executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "chunk-verifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Records that bytes have been written to the file, and starts verifying the chunks they complete.
+     * Every byte must be reported only once. Safe to call from any thread.
+     *
+     * @param offset The offset of the first written byte.
+     * @param length The number of written bytes.
+     */
+    public void onWritten(long offset, long length) {
+        long end = offset + length;
+        while (offset < end) {
+            int index = _manifest.getChunkIndex(offset);
+            long chunkEnd = _manifest.getChunkStart(index) + _manifest.getChunkLength(index);
+            long written = Math.min(end, chunkEnd) - offset;
+            if (_missingBytes.addAndGet(index, -written) == 0) {
+                _results.add(_executor.submit(() -> verify(index) ? index : -1 - index));
+            }
+            offset += written;
+        }
+    }
+
+    /**
+     * Waits until every started verification has finished.
+     *
+     * @return The indexes of the chunks that did not match their checksum.
+     * @throws IOException If a chunk cannot be read back, or the wait was interrupted.
+     */
+    public List<Integer> awaitCorruptChunks() throws IOException {
+        List<Integer> corrupt = new ArrayList<>();
+        for (Future<Integer> result : _results) {
+            try {
+                int index = result.get();
+                if (index < 0) {
+                    corrupt.add(-1 - index);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while verifying the chunks.");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+            }
+        }
+        return corrupt;
+    }
+
+    /**
+     * Reads a chunk back from the file and checks it against its checksum.
+     *
+     * @param index The index of the chunk.
+     * @return True if the chunk matches its checksum.
+     * @throws IOException If the chunk cannot be read.
+     */
+    public boolean verify(int index) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(_manifest.getChunkLength(index));
+        long position = _manifest.getChunkStart(index);
+        while (buffer.hasRemaining()) {
+            int bytesRead = _channel.read(buffer, position + buffer.position());
+            if (bytesRead < 0) {
+                throw new EOFException(String.format("Unexpected end of file while verifying chunk %d.", index));
+            }
+        }
+        buffer.flip();
+        return _manifest.verify(index, buffer);
+    }
+
+    /**
+     * Stops the verification threads.
+     */
+    @Override
+    public void close() {
+        _executor.shutdownNow();
+    }
+}
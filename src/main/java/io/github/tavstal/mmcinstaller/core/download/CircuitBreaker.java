@@ -0,0 +1,105 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to a mirror that keeps failing.
+ * <br/>
+ * The breaker starts closed, letting every request through. After a number of failures in a row it
+ * opens, and requests are refused so the connections move to other mirrors. Once the cool-down has
+ * passed, the breaker is half-open and lets a single trial request through: a success closes it
+ * again, a failure opens it for another cool-down.
+ */
+public class CircuitBreaker {
+    private final int _failureThreshold; // Failures in a row after which the breaker opens.
+    private final long _openNanos; // Time the breaker stays open before allowing a trial request.
+    private State _state = State.CLOSED; // The current state.
+    private int _consecutiveFailures; // Failures since the last success.
+    private long _openedAt; // Time the breaker was last opened, from System.nanoTime().
+
+    /**
+     * Constructs a new `CircuitBreaker` instance.
+     *
+     * @param failureThreshold Failures in a row after which the breaker opens.
+     * @param openMillis       Time the breaker stays open before allowing a trial request, in milliseconds.
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        _failureThreshold = Math.max(1, failureThreshold);
+        _openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * Checks if a request may be sent. While half-open, only the first caller is allowed,
+     * and it must report the outcome with {@link #recordSuccess()} or {@link #recordFailure()}.
+     *
+     * @return True if the request may be sent.
+     */
+    public synchronized boolean allowRequest() {
+        switch (_state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - _openedAt < _openNanos) {
+                    return false;
+                }
+                _state = State.HALF_OPEN; // This caller sends the trial request.
+                return true;
+            default:
+                return false; // A trial request is already in flight.
+        }
+    }
+
+    /**
+     * Records a successful request, closing the breaker.
+     */
+    public synchronized void recordSuccess() {
+        _consecutiveFailures = 0;
+        _state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed request.
+     *
+     * @return True if the failure opened the breaker.
+     */
+    public synchronized boolean recordFailure() {
+        _consecutiveFailures++;
+        if (_state == State.OPEN) {
+            return false;
+        }
+        if (_state == State.HALF_OPEN || _consecutiveFailures >= _failureThreshold) {
+            _state = State.OPEN;
+            _openedAt = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives back a trial request that ended without an outcome, e.g. a hedged duplicate that was cancelled
+     * because the other attempt answered first. The next call to {@link #allowRequest()} may send a new trial.
+     */
+    public synchronized void releaseTrial() {
+        if (_state == State.HALF_OPEN) {
+            _state = State.OPEN; // The cool-down has already passed.
+        }
+    }
+
+    /**
+     * Checks if the breaker is refusing requests.
+     *
+     * @return True if the breaker is open and the cool-down has not passed yet.
+     */
+    public synchronized boolean isOpen() {
+        return _state == State.OPEN && System.nanoTime() - _openedAt < _openNanos;
+    }
+
+    /**
+     * The states of a circuit breaker.
+     */
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+}
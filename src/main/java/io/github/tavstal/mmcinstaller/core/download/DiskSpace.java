@@ -0,0 +1,31 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+
+import java.io.File;
+
+/**
+ * Admission control for downloads: checks the usable space of the disk before any byte is written.
+ * <br/>
+ * Every check keeps a fixed reserve free on top of the data itself, for the scripts, shortcuts and
+ * uninstaller written by the setup once the download has finished.
+ */
+public class DiskSpace {
+    public final static long SETUP_RESERVE_BYTES = 16 * 1024 * 1024; // Space kept free for the setup after the download (16 MB).
+
+    /**
+     * Checks that the disk of a file has room for the given number of bytes and the setup reserve.
+     * Passes if the free space cannot be determined, so an unusual file system never blocks the download.
+     *
+     * @param target        The file that will be written.
+     * @param requiredBytes The number of bytes that will be written.
+     * @throws InsufficientSpaceException If the disk does not have enough usable space.
+     */
+    public static void ensureAvailable(File target, long requiredBytes) throws InsufficientSpaceException {
+        long availableBytes = FileUtils.getUsableSpace(target);
+        long neededBytes = Math.max(0, requiredBytes) + SETUP_RESERVE_BYTES;
+        if (availableBytes >= 0 && availableBytes < neededBytes) {
+            throw new InsufficientSpaceException(target, neededBytes, availableBytes);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs downloads in the background and reports their outcome through futures.
+ * <br/>
+ * The returned future completes with the SHA-256 checksum of the downloaded file (or with nothing for a set of
+ * artifacts), completes exceptionally if the download fails, and is cancelled if the download is cancelled.
+ * Cancelling the future stops the download.
+ */
+public interface DownloadEngine extends AutoCloseable {
+    /**
+     * Starts downloading a file.
+     *
+     * @param request The file to download.
+     * @return A future completing with the SHA-256 checksum of the file as a hexadecimal string.
+     */
+    CompletableFuture<String> download(DownloadRequest request);
+
+    /**
+     * Starts updating an installed file, the output file of the request, to the version served by the
+     * primary link, downloading only the zip entries or blocks that changed. Downloads the whole file if a
+     * delta update is not possible.
+     *
+     * @param request The file to update.
+     * @return A future completing with the SHA-256 checksum of the file as a hexadecimal string.
+     */
+    CompletableFuture<String> update(DownloadRequest request);
+
+    /**
+     * Starts copying the payload embedded in the installer to the output file of the request, without
+     * using the network.
+     *
+     * @param payload The embedded payload.
+     * @param request The file receiving the payload.
+     * @return A future completing with the SHA-256 checksum of the file as a hexadecimal string.
+     */
+    CompletableFuture<String> extract(EmbeddedPayload payload, DownloadRequest request);
+
+    /**
+     * Starts installing the artifacts of a manifest.
+     *
+     * @param request The artifacts to install.
+     * @return A future completing once every artifact is installed and verified.
+     */
+    CompletableFuture<Void> downloadArtifacts(ArtifactRequest request);
+
+    /**
+     * Stops accepting new downloads. Running downloads continue until they complete or are cancelled.
+     */
+    @Override
+    void close();
+
+    /**
+     * Waits for the running downloads to stop after the engine was closed.
+     *
+     * @param timeoutMs The maximum time to wait in milliseconds.
+     * @return True if every download stopped, false if the timeout elapsed first.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    boolean awaitTermination(long timeoutMs) throws InterruptedException;
+}
@@ -0,0 +1,125 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.core.transport.FileTransport;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.core.transport.TransportRequest;
+import io.github.tavstal.mmcinstaller.utils.YamlHelper;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of artifacts to install next to the main file, such as libraries, natives and asset packs.
+ * <br/>
+ * The manifest is a YAML document with an `artifacts` list. Every artifact has a `url` (relative URLs are
+ * resolved against the manifest URL), a `path` relative to the installation directory, and optionally a
+ * `size` in bytes, a `sha256` checksum and a `priority`:
+ * <pre>
+ * artifacts:
+ *   - url: "libraries/lwjgl.jar"
+ *     path: "libraries/lwjgl.jar"
+ *     size: 724342
+ *     sha256: "..."
+ *     priority: 10
+ * </pre>
+ */
+public class DownloadManifest {
+    private final List<ManifestEntry> _entries; // The artifacts, in manifest order.
+
+    /**
+     * Constructs a new `DownloadManifest` instance.
+     *
+     * @param entries The artifacts to install.
+     */
+    public DownloadManifest(List<ManifestEntry> entries) {
+        _entries = List.copyOf(entries);
+    }
+
+    /**
+     * Downloads and parses a manifest.
+     *
+     * @param transport  The transport used for the request.
+     * @param url        The URL of the manifest.
+     * @return The parsed manifest.
+     * @throws IOException If the manifest cannot be downloaded or is invalid.
+     */
+    public static DownloadManifest fetch(Transport transport, String url) throws IOException {
+        return transport.execute(TransportRequest.get(url), response -> {
+            if (response.getStatus() != HttpStatus.SC_OK) {
+                throw new IOException(String.format("Server returned status %d for the manifest %s.", response.getStatus(), url));
+            }
+
+            try (InputStream is = response.getBody()) {
+                Map<String, Object> map = YamlHelper.readFromStream(is, url);
+                if (map == null) {
+                    throw new IOException("The manifest " + url + " is not a valid YAML document.");
+                }
+                return parse(map, FileTransport.isLocal(url) ? FileTransport.toUri(url) : URI.create(url));
+            }
+        });
+    }
+
+    /**
+     * Parses a manifest from its YAML representation.
+     *
+     * @param map     The parsed YAML document.
+     * @param baseUri The URI relative artifact URLs are resolved against.
+     * @return The parsed manifest.
+     * @throws IOException If an artifact is missing its URL or path.
+     */
+    public static DownloadManifest parse(Map<String, Object> map, URI baseUri) throws IOException {
+        List<ManifestEntry> entries = new ArrayList<>();
+        Object artifactsObj = YamlHelper.getObject(map, "artifacts", null);
+        if (artifactsObj instanceof List) {
+            int index = 0;
+            for (Object artifactItem : (List<?>) artifactsObj) {
+                if (!(artifactItem instanceof Map)) {
+                    throw new IOException(String.format("Artifact #%d of the manifest is not a map.", index));
+                }
+
+                @SuppressWarnings("unchecked") Map<String, Object> artifactMap = (Map<String, Object>) artifactItem;
+                String url = YamlHelper.getString(artifactMap, "url", "");
+                String path = YamlHelper.getString(artifactMap, "path", "");
+                if (url.isEmpty() || path.isEmpty()) {
+                    throw new IOException(String.format("Artifact #%d of the manifest has no url or path.", index));
+                }
+                entries.add(new ManifestEntry(
+                        baseUri == null ? url : baseUri.resolve(url).toString(),
+                        YamlHelper.getLong(artifactMap, "size", -1L),
+                        YamlHelper.getString(artifactMap, "sha256", ""),
+                        path,
+                        YamlHelper.getInteger(artifactMap, "priority", 0)
+                ));
+                index++;
+            }
+        }
+        return new DownloadManifest(entries);
+    }
+
+    /**
+     * Retrieves the artifacts of the manifest.
+     *
+     * @return The artifacts, in manifest order.
+     */
+    public List<ManifestEntry> getEntries() {
+        return _entries;
+    }
+
+    /**
+     * Calculates the combined size of the artifacts.
+     *
+     * @return The sum of the known artifact sizes, in bytes.
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (ManifestEntry entry : _entries) {
+            total += Math.max(0, entry.size());
+        }
+        return total;
+    }
+}
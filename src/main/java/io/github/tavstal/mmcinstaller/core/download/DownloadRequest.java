@@ -0,0 +1,20 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.core.progress.ProgressSnapshot;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Describes a file to be downloaded by a {@link DownloadEngine}.
+ *
+ * @param urls             The URLs serving the file, the primary link first.
+ * @param outputFile       The file where the downloaded content will be saved.
+ * @param segments         The maximum number of connections used for the file.
+ * @param sha256           The expected SHA-256 checksum of the file, used to look it up in the cache, or an empty string if unknown.
+ * @param chunksUrl        The URL of the chunk manifest of the file, or an empty string if not published.
+ * @param progressListener Receives the progress snapshots of the download. Called from a background thread.
+ */
+public record DownloadRequest(List<String> urls, File outputFile, int segments, String sha256, String chunksUrl, Consumer<ProgressSnapshot> progressListener) {
+}
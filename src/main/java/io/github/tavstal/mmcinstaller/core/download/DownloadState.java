@@ -0,0 +1,362 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+import io.github.tavstal.mmcinstaller.utils.YamlHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents the progress of a partial download, stored in a small sidecar file next to the `.part` file.
+ * <br/>
+ * The state records the URL and validators (ETag/Last-Modified) of the remote file, and how far each
+ * byte range has been written, so an interrupted download can continue where it stopped.
+ * <br/>
+ * Connections take unassigned ranges with {@link #acquireSegment(long)}. Once every range is assigned,
+ * a connection that runs out of work splits the largest remaining range and takes over its tail, so
+ * fast connections keep working until the whole file is done.
+ */
+public class DownloadState {
+    private final String _url; // The URL the partial file was downloaded from.
+    private final long _contentLength; // The size of the complete file in bytes.
+    private final String _etag; // The ETag of the remote file when the download started.
+    private final String _lastModified; // The Last-Modified date of the remote file when the download started.
+    private final List<Segment> _segments; // The byte ranges of the file, ordered by offset. Grows when ranges are split.
+
+    /**
+     * Constructs a new `DownloadState` instance.
+     *
+     * @param url           The URL the file is downloaded from.
+     * @param contentLength The size of the complete file in bytes.
+     * @param etag          The ETag of the remote file.
+     * @param lastModified  The Last-Modified date of the remote file.
+     * @param segments      The byte ranges of the file.
+     */
+    private DownloadState(String url, long contentLength, String etag, String lastModified, List<Segment> segments) {
+        _url = url;
+        _contentLength = contentLength;
+        _etag = etag;
+        _lastModified = lastModified;
+        _segments = new CopyOnWriteArrayList<>(segments);
+    }
+
+    /**
+     * Creates a fresh state that splits the remote file into equally sized byte ranges.
+     *
+     * @param url          The URL the file is downloaded from.
+     * @param info         The metadata of the remote file.
+     * @param segmentCount The number of byte ranges.
+     * @return The new state.
+     */
+    public static DownloadState create(String url, RemoteFileInfo info, int segmentCount) {
+        long totalBytes = info.contentLength();
+        long segmentSize = totalBytes / segmentCount;
+        List<Segment> segments = new ArrayList<>();
+        for (int i = 0; i < segmentCount; i++) {
+            long start = i * segmentSize;
+            long end = (i == segmentCount - 1) ? totalBytes - 1 : start + segmentSize - 1;
+            segments.add(new Segment(start, end, 0));
+        }
+        return new DownloadState(url, totalBytes, info.etag(), info.lastModified(), segments);
+    }
+
+    /**
+     * Loads a state from its sidecar file.
+     *
+     * @param stateFile The sidecar file.
+     * @return The loaded state, or null if the file is missing or invalid.
+     */
+    public static DownloadState load(File stateFile) {
+        Map<String, Object> map = YamlHelper.readFromFile(stateFile);
+        if (map == null) {
+            return null;
+        }
+
+        String url = YamlHelper.getString(map, "url", "");
+        long contentLength = YamlHelper.getLong(map, "contentLength", -1);
+        String etag = YamlHelper.getString(map, "etag", "");
+        String lastModified = YamlHelper.getString(map, "lastModified", "");
+
+        List<Segment> segments = new ArrayList<>();
+        long nextStart = 0;
+        Object segmentsObj = YamlHelper.getObject(map, "segments", null);
+        if (segmentsObj instanceof List) {
+            for (Object segmentItem : (List<?>) segmentsObj) {
+                if (segmentItem instanceof Map) {
+                    @SuppressWarnings("unchecked") Map<String, Object> segmentMap = (Map<String, Object>) segmentItem;
+                    long start = YamlHelper.getLong(segmentMap, "start", -1);
+                    long end = YamlHelper.getLong(segmentMap, "end", -1);
+                    long downloaded = YamlHelper.getLong(segmentMap, "downloaded", 0);
+                    if (start != nextStart || end < start || end >= contentLength || downloaded < 0 || downloaded > end - start + 1) {
+                        return null; // Corrupt sidecar, the download has to start over.
+                    }
+                    segments.add(new Segment(start, end, downloaded));
+                    nextStart = end + 1;
+                }
+            }
+        }
+
+        if (url.isEmpty() || contentLength <= 0 || nextStart != contentLength) {
+            return null;
+        }
+        return new DownloadState(url, contentLength, etag, lastModified, segments);
+    }
+
+    /**
+     * Saves the state to its sidecar file. The file is written to a temporary file first and then
+     * moved into place, so a crash never leaves a half-written sidecar behind.
+     *
+     * @param stateFile The sidecar file.
+     * @throws IOException If the file cannot be written.
+     */
+    public synchronized void save(File stateFile) throws IOException {
+        List<Map<String, Object>> segments = new ArrayList<>();
+        for (Segment segment : _segments) {
+            Map<String, Object> segmentMap = new LinkedHashMap<>();
+            segmentMap.put("start", segment.getStart());
+            segmentMap.put("end", segment.getEnd());
+            segmentMap.put("downloaded", segment.getDownloaded());
+            segments.add(segmentMap);
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("url", _url);
+        map.put("contentLength", _contentLength);
+        map.put("etag", _etag);
+        map.put("lastModified", _lastModified);
+        map.put("segments", segments);
+
+        File tempFile = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp");
+        YamlHelper.writeToFile(tempFile, map);
+        FileUtils.moveReplacing(tempFile.toPath(), stateFile.toPath());
+    }
+
+    /**
+     * Checks if this state belongs to the given remote file, meaning the partial data can be reused.
+     * A file without a usable validator is never resumed, since there is no way to detect changes.
+     *
+     * @param url  The URL of the remote file.
+     * @param info The metadata of the remote file.
+     * @return True if the partial download can be resumed.
+     */
+    public boolean matches(String url, RemoteFileInfo info) {
+        return info.validator() != null
+                && _url.equals(url)
+                && _contentLength == info.contentLength()
+                && _etag.equals(info.etag())
+                && _lastModified.equals(info.lastModified());
+    }
+
+    /**
+     * Retrieves the validator to send in an If-Range header when continuing the download.
+     *
+     * @return The validator, or null if the file cannot be validated.
+     */
+    public String getValidator() {
+        return new RemoteFileInfo(_contentLength, true, _etag, _lastModified).validator();
+    }
+
+    /**
+     * Retrieves the size of the complete file.
+     *
+     * @return The size of the complete file in bytes.
+     */
+    public long getContentLength() {
+        return _contentLength;
+    }
+
+    /**
+     * Retrieves the byte ranges of the file.
+     *
+     * @return The byte ranges of the file.
+     */
+    public List<Segment> getSegments() {
+        return _segments;
+    }
+
+    /**
+     * Assigns a byte range to a connection. Unassigned incomplete ranges are handed out first.
+     * If there are none, the largest range still being downloaded is split and its tail is assigned.
+     *
+     * @param minSplitSize The smallest range worth splitting off, in bytes.
+     * @return The assigned range, or null if there is nothing left to download.
+     */
+    public synchronized Segment acquireSegment(long minSplitSize) {
+        Segment largest = null;
+        for (Segment segment : _segments) {
+            if (segment.isComplete()) {
+                continue;
+            }
+            if (!segment._assigned) {
+                segment._assigned = true;
+                return segment;
+            }
+            if (largest == null || segment.getRemaining() > largest.getRemaining()) {
+                largest = segment;
+            }
+        }
+
+        if (largest == null) {
+            return null;
+        }
+        Segment tail = largest.splitTail(minSplitSize);
+        if (tail == null) {
+            return null;
+        }
+        tail._assigned = true;
+        _segments.add(_segments.indexOf(largest) + 1, tail);
+        return tail;
+    }
+
+    /**
+     * Returns a byte range assigned with {@link #acquireSegment(long)}, so other connections can continue it.
+     *
+     * @param segment The range to return.
+     */
+    public synchronized void releaseSegment(Segment segment) {
+        segment._assigned = false;
+    }
+
+    /**
+     * Retrieves the number of bytes already written to the partial file.
+     *
+     * @return The sum of the downloaded bytes of all segments.
+     */
+    public long getDownloadedBytes() {
+        long downloaded = 0;
+        for (Segment segment : _segments) {
+            downloaded += segment.getDownloaded();
+        }
+        return downloaded;
+    }
+
+    /**
+     * Represents a single byte range of the file. Bytes are written from the start of the range
+     * without gaps, so the completed part is always `[start, start + downloaded)`.
+     * <br/>
+     * The end of the range moves back when its tail is split off. Writers claim bytes with
+     * {@link #claim(long, int)} before writing them, so a split never takes bytes that are being written.
+     */
+    public static class Segment {
+        private final long _start; // The first byte of the range (inclusive).
+        private volatile long _end; // The last byte of the range (inclusive).
+        private final AtomicLong _downloaded; // The number of bytes written from the start of the range.
+        private long _claimed; // The offset after the last byte claimed by the writer.
+        private boolean _assigned; // Whether a connection is downloading the range, guarded by the owning state.
+
+        /**
+         * Constructs a new `Segment` instance.
+         *
+         * @param start      The first byte of the range (inclusive).
+         * @param end        The last byte of the range (inclusive).
+         * @param downloaded The number of bytes already written.
+         */
+        public Segment(long start, long end, long downloaded) {
+            _start = start;
+            _end = end;
+            _downloaded = new AtomicLong(downloaded);
+            _claimed = start + downloaded;
+        }
+
+        /**
+         * Retrieves the first byte of the range.
+         *
+         * @return The first byte of the range (inclusive).
+         */
+        public long getStart() {
+            return _start;
+        }
+
+        /**
+         * Retrieves the last byte of the range.
+         *
+         * @return The last byte of the range (inclusive).
+         */
+        public long getEnd() {
+            return _end;
+        }
+
+        /**
+         * Retrieves the number of bytes written from the start of the range.
+         *
+         * @return The number of downloaded bytes.
+         */
+        public long getDownloaded() {
+            return _downloaded.get();
+        }
+
+        /**
+         * Retrieves the offset of the next byte that has to be downloaded.
+         *
+         * @return The offset of the next missing byte.
+         */
+        public long getNextOffset() {
+            return _start + _downloaded.get();
+        }
+
+        /**
+         * Checks if every byte of the range has been written.
+         *
+         * @return True if the range is complete.
+         */
+        public boolean isComplete() {
+            return getNextOffset() > _end;
+        }
+
+        /**
+         * Retrieves the number of bytes that still have to be downloaded.
+         *
+         * @return The number of missing bytes.
+         */
+        public long getRemaining() {
+            return Math.max(0, _end + 1 - getNextOffset());
+        }
+
+        /**
+         * Claims bytes for writing. Must be called before writing, so the bytes cannot be split off meanwhile.
+         *
+         * @param position The offset of the first byte to write.
+         * @param length   The number of bytes to write.
+         * @return The number of bytes that may be written, less than requested if the tail was split off.
+         */
+        public synchronized int claim(long position, int length) {
+            int allowed = (int) Math.max(0, Math.min(length, _end + 1 - position));
+            _claimed = position + allowed;
+            return allowed;
+        }
+
+        /**
+         * Splits the unclaimed part of the range in half and shortens this range to the first half.
+         *
+         * @param minSize The smallest size of each half, in bytes.
+         * @return The second half as a new range, or null if the range is too small to split.
+         */
+        private synchronized Segment splitTail(long minSize) {
+            long from = Math.max(_claimed, getNextOffset());
+            long remaining = _end + 1 - from;
+            if (remaining < 2 * minSize) {
+                return null;
+            }
+
+            long middle = from + remaining / 2;
+            Segment tail = new Segment(middle, _end, 0);
+            _end = middle - 1;
+            return tail;
+        }
+
+        /**
+         * Records that more bytes have been written to the range.
+         *
+         * @param bytes The number of bytes written.
+         */
+        public void advance(long bytes) {
+            _downloaded.addAndGet(bytes);
+        }
+    }
+}
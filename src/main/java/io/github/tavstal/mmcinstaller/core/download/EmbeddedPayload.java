@@ -0,0 +1,72 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.utils.YamlHelper;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The file embedded in an offline installer by the `embedPayload` Gradle task. An installer carrying a
+ * payload installs it instead of downloading the file, and never uses the network.
+ * <br/>
+ * The task stores the file as the `payload/payload.bin` resource of the installer, described by the
+ * `payload/payload.yml` resource:
+ * <pre>
+ * file_name: "MesterMC.jar"   # Name of the embedded file.
+ * size: 52428800              # Size of the file in bytes.
+ * sha256: "1d5198df..."       # SHA-256 checksum of the file, verified while it is extracted.
+ * </pre>
+ *
+ * @param fileName The name of the embedded file.
+ * @param size     The size of the embedded file in bytes.
+ * @param sha256   The SHA-256 checksum of the embedded file.
+ */
+public record EmbeddedPayload(String fileName, long size, String sha256) {
+    private static final String DESCRIPTOR_RESOURCE = "payload/payload.yml"; // The resource describing the payload.
+    private static final String CONTENT_RESOURCE = "payload/payload.bin"; // The resource holding the payload.
+
+    /**
+     * Looks up the payload embedded in the installer.
+     *
+     * @return The embedded payload, or null if the installer does not carry one.
+     * @throws IOException If the payload is described but the description is invalid.
+     */
+    public static EmbeddedPayload find() throws IOException {
+        try (InputStream is = InstallerApplication.class.getResourceAsStream(DESCRIPTOR_RESOURCE)) {
+            if (is == null) {
+                return null;
+            }
+
+            Map<String, Object> map = YamlHelper.readFromStream(is, DESCRIPTOR_RESOURCE);
+            if (map == null) {
+                throw new IOException("The embedded payload description is not a valid YAML document.");
+            }
+            EmbeddedPayload payload = new EmbeddedPayload(
+                    YamlHelper.getString(map, "file_name", ""),
+                    YamlHelper.getLong(map, "size", -1L),
+                    YamlHelper.getString(map, "sha256", "")
+            );
+            if (payload.size() < 0 || payload.sha256().isEmpty()) {
+                throw new IOException("The embedded payload description lacks the size or the checksum of the file.");
+            }
+            return payload;
+        }
+    }
+
+    /**
+     * Opens the content of the payload.
+     *
+     * @return A stream reading the embedded file. Must be closed by the caller.
+     * @throws IOException If the payload is described but its content is missing from the installer.
+     */
+    public InputStream open() throws IOException {
+        InputStream is = InstallerApplication.class.getResourceAsStream(CONTENT_RESOURCE);
+        if (is == null) {
+            throw new FileNotFoundException("The embedded payload is missing from the installer: " + CONTENT_RESOURCE);
+        }
+        return is;
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serial;
+
+/**
+ * Thrown before a download starts when the disk it is written to does not have enough free space,
+ * so the download fails immediately instead of when the disk runs full.
+ */
+public class InsufficientSpaceException extends IOException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final File _target; // The file that would have been written.
+    private final long _requiredBytes; // The free space the download needs.
+    private final long _availableBytes; // The free space of the disk.
+
+    /**
+     * Constructs a new `InsufficientSpaceException` instance.
+     *
+     * @param target         The file that would have been written.
+     * @param requiredBytes  The free space the download needs.
+     * @param availableBytes The free space of the disk.
+     */
+    public InsufficientSpaceException(File target, long requiredBytes, long availableBytes) {
+        super(String.format("Not enough free space for %s: %d MB required, but only %d MB available.",
+                target.getAbsolutePath(), toMegabytes(requiredBytes), toMegabytes(availableBytes)));
+        _target = target;
+        _requiredBytes = requiredBytes;
+        _availableBytes = availableBytes;
+    }
+
+    /**
+     * Retrieves the file that would have been written.
+     *
+     * @return The target file.
+     */
+    public File getTarget() {
+        return _target;
+    }
+
+    /**
+     * Retrieves the free space the download needs.
+     *
+     * @return The required space in bytes.
+     */
+    public long getRequiredBytes() {
+        return _requiredBytes;
+    }
+
+    /**
+     * Retrieves the free space of the disk.
+     *
+     * @return The available space in bytes.
+     */
+    public long getAvailableBytes() {
+        return _availableBytes;
+    }
+
+    /**
+     * Converts a number of bytes to whole megabytes, rounding up.
+     *
+     * @param bytes The number of bytes.
+     * @return The number of megabytes.
+     */
+    public static long toMegabytes(long bytes) {
+        return (bytes + 1024 * 1024 - 1) / (1024 * 1024);
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+/**
+ * Describes a single artifact of a {@link DownloadManifest}.
+ *
+ * @param url      The URL serving the artifact.
+ * @param size     The size of the artifact in bytes, or -1 if unknown.
+ * @param sha256   The expected SHA-256 checksum as a hexadecimal string, or an empty string to skip verification.
+ * @param path     The path of the artifact, relative to the installation directory.
+ * @param priority Artifacts with a higher priority are downloaded first. Equal priorities download the largest artifact first.
+ */
+public record ManifestEntry(String url, long size, String sha256, String path, int priority) {
+}
@@ -0,0 +1,77 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Wraps the raw response body of a connection, before any content decoding, to count the bytes received
+ * on the wire and to apply the {@link BandwidthLimiter} to them.
+ */
+public class MeteredInputStream extends FilterInputStream {
+    private final LongConsumer _wireBytesListener; // Receives the number of bytes of every read.
+    private final BandwidthLimiter _bandwidthLimiter; // Delays reads beyond the allowed rate.
+    private final BooleanSupplier _cancelledSupplier; // Returns true when waiting for bandwidth should stop.
+
+    /**
+     * Constructs a new `MeteredInputStream` instance.
+     *
+     * @param in                The raw response body.
+     * @param wireBytesListener Receives the number of bytes of every read.
+     * @param bandwidthLimiter  Delays reads beyond the allowed rate.
+     * @param cancelledSupplier Returns true when waiting for bandwidth should stop.
+     */
+    public MeteredInputStream(InputStream in, LongConsumer wireBytesListener, BandwidthLimiter bandwidthLimiter, BooleanSupplier cancelledSupplier) {
+        super(in);
+        _wireBytesListener = wireBytesListener;
+        _bandwidthLimiter = bandwidthLimiter;
+        _cancelledSupplier = cancelledSupplier;
+    }
+
+    /**
+     * Reads a single byte, see {@link InputStream#read()}.
+     *
+     * @return The byte, or -1 at the end of the stream.
+     * @throws IOException If reading fails.
+     */
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            record(1);
+        }
+        return value;
+    }
+
+    /**
+     * Reads into an array, see {@link InputStream#read(byte[], int, int)}.
+     *
+     * @param buffer The array receiving the bytes.
+     * @param offset The first index written.
+     * @param length The maximum number of bytes to read.
+     * @return The number of bytes read, or -1 at the end of the stream.
+     * @throws IOException If reading fails.
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int bytesRead = super.read(buffer, offset, length);
+        if (bytesRead > 0) {
+            record(bytesRead);
+        }
+        return bytesRead;
+    }
+
+    /**
+     * Reports the received bytes and waits for bandwidth. A cancelled wait is not an error,
+     * the caller notices the cancellation on its own.
+     *
+     * @param bytes The number of bytes received.
+     * @throws IOException If the thread is interrupted while waiting.
+     */
+    private void record(int bytes) throws IOException {
+        _wireBytesListener.accept(bytes);
+        _bandwidthLimiter.acquire(bytes, _cancelledSupplier);
+    }
+}
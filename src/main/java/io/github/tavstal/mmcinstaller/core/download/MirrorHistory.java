@@ -0,0 +1,169 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+import io.github.tavstal.mmcinstaller.utils.YamlHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the throughput and recent failures of mirrors, optionally in a small history file.
+ * <br/>
+ * A history can be shared by the {@link MirrorSelector}s of many files, so what one download learns
+ * about a mirror is known to the next one. Safe to use from several threads.
+ */
+public class MirrorHistory {
+    private static final double HISTORY_ALPHA = 0.3; // Weight of the newest measurement in the stored throughput.
+
+    private final InstallerLogger _logger; // Logger instance for logging mirror-related messages.
+    private final File _historyFile; // The file storing the throughput history, or null to keep it in memory.
+    private final Map<String, MirrorStats> _history = new LinkedHashMap<>(); // The known statistics by URL.
+    private final Object _saveLock = new Object(); // Orders concurrent saves, which share the temporary file.
+
+    /**
+     * Constructs a new `MirrorHistory` instance and loads the history file.
+     *
+     * @param historyFile The file storing the throughput history. Created when the first result is recorded.
+     *                    If null, the history is only kept for the lifetime of the instance.
+     */
+    public MirrorHistory(File historyFile) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _historyFile = historyFile;
+        loadHistory();
+    }
+
+    /**
+     * Retrieves the remembered throughput of a mirror.
+     *
+     * @param mirror The URL of the mirror.
+     * @return The moving average of the throughput in bytes per second, or 0 if the mirror is not known.
+     */
+    public double getThroughput(String mirror) {
+        synchronized (_history) {
+            MirrorStats stats = _history.get(mirror);
+            return stats == null ? 0.0 : stats.throughput;
+        }
+    }
+
+    /**
+     * Checks if the last transfer from a mirror failed.
+     *
+     * @param mirror The URL of the mirror.
+     * @return True if the mirror failed since its last success.
+     */
+    public boolean hasRecentFailure(String mirror) {
+        synchronized (_history) {
+            MirrorStats stats = _history.get(mirror);
+            return stats != null && stats.failures > 0;
+        }
+    }
+
+    /**
+     * Records a successful transfer from a mirror and saves the history.
+     *
+     * @param mirror       The URL of the mirror.
+     * @param bytes        The number of bytes transferred.
+     * @param elapsedNanos The time the transfer took, in nanoseconds.
+     */
+    public void recordSuccess(String mirror, long bytes, long elapsedNanos) {
+        if (bytes <= 0 || elapsedNanos <= 0) {
+            return;
+        }
+
+        double throughput = bytes * 1_000_000_000.0 / elapsedNanos;
+        synchronized (_history) {
+            MirrorStats stats = _history.computeIfAbsent(mirror, key -> new MirrorStats());
+            stats.throughput = stats.throughput > 0
+                    ? HISTORY_ALPHA * throughput + (1 - HISTORY_ALPHA) * stats.throughput
+                    : throughput;
+            stats.failures = 0;
+        }
+        saveHistory();
+    }
+
+    /**
+     * Records a failed transfer from a mirror and saves the history.
+     *
+     * @param mirror The URL of the mirror.
+     */
+    public void recordFailure(String mirror) {
+        synchronized (_history) {
+            _history.computeIfAbsent(mirror, key -> new MirrorStats()).failures++;
+        }
+        saveHistory();
+    }
+
+    /**
+     * Loads the history file. A missing or invalid file means no history.
+     */
+    private void loadHistory() {
+        if (_historyFile == null) {
+            return;
+        }
+
+        Map<String, Object> map = YamlHelper.readFromFile(_historyFile);
+        if (map == null) {
+            return;
+        }
+
+        Object mirrorsObj = YamlHelper.getObject(map, "mirrors", null);
+        if (mirrorsObj instanceof List) {
+            for (Object mirrorItem : (List<?>) mirrorsObj) {
+                if (mirrorItem instanceof Map) {
+                    @SuppressWarnings("unchecked") Map<String, Object> mirrorMap = (Map<String, Object>) mirrorItem;
+                    MirrorStats stats = new MirrorStats();
+                    stats.throughput = YamlHelper.getDouble(mirrorMap, "throughput", 0.0);
+                    stats.failures = YamlHelper.getInteger(mirrorMap, "failures", 0);
+                    _history.put(YamlHelper.getString(mirrorMap, "url", ""), stats);
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the history file. It is written to a temporary file first and moved into place, so a
+     * crash while saving leaves the previous history intact. Failures are logged, since the history
+     * is only an optimization.
+     */
+    private void saveHistory() {
+        if (_historyFile == null) {
+            return;
+        }
+
+        File tempFile = new File(_historyFile.getParentFile(), _historyFile.getName() + ".tmp");
+        synchronized (_saveLock) {
+            // The snapshot is taken under the save lock, so an older snapshot never replaces a newer one.
+            List<Map<String, Object>> mirrors = new ArrayList<>();
+            synchronized (_history) {
+                for (Map.Entry<String, MirrorStats> entry : _history.entrySet()) {
+                    Map<String, Object> mirrorMap = new LinkedHashMap<>();
+                    mirrorMap.put("url", entry.getKey());
+                    mirrorMap.put("throughput", entry.getValue().throughput);
+                    mirrorMap.put("failures", entry.getValue().failures);
+                    mirrors.add(mirrorMap);
+                }
+            }
+
+            try {
+                YamlHelper.writeToFile(tempFile, Map.of("mirrors", mirrors));
+                FileUtils.moveReplacing(tempFile.toPath(), _historyFile.toPath());
+            } catch (IOException e) {
+                _logger.Warn("Failed to save mirror history: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The statistics remembered for a single mirror.
+     */
+    private static class MirrorStats {
+        private double throughput; // Moving average of the measured throughput, in bytes per second.
+        private int failures; // Number of failures since the last success.
+    }
+}
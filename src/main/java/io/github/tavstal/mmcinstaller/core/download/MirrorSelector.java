@@ -0,0 +1,206 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.core.transport.TransportRequest;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Orders the mirrors of a file from fastest to slowest.
+ * <br/>
+ * The throughput of every mirror is remembered in a {@link MirrorHistory}. If the history knows
+ * any of the mirrors, the order is taken from it directly, and the mirrors it does not know yet
+ * get the average throughput of the known ones, so a newly added mirror is neither preferred nor
+ * ignored. Otherwise, every mirror is probed in parallel with a small range request, and the mirrors
+ * are ordered by the measured throughput. Mirrors that failed recently are always tried last.
+ */
+public class MirrorSelector {
+    private static final int PROBE_BYTES = 64 * 1024; // Size of the range requested by a probe.
+    private static final long PROBE_TIMEOUT_MS = 5000; // Time after which a probe counts as failed.
+
+    private final InstallerLogger _logger; // Logger instance for logging mirror-related messages.
+    private final List<String> _mirrors; // The mirrors in configuration order, the first one identifies the file.
+    private final MirrorHistory _history; // The throughput and failures of the mirrors, possibly shared with other selectors.
+
+    /**
+     * Constructs a new `MirrorSelector` instance.
+     *
+     * @param mirrors     The URLs serving the file, in configuration order. Must not be empty.
+     * @param historyFile The file storing the throughput history. Created when the first result is recorded.
+     *                    If null, the history is only kept for the lifetime of the selector.
+     */
+    public MirrorSelector(List<String> mirrors, File historyFile) {
+        this(new MirrorHistory(historyFile), mirrors);
+    }
+
+    /**
+     * Constructs a new `MirrorSelector` instance sharing a history with other selectors.
+     *
+     * @param history The history of the mirrors, updated with the results of this file.
+     * @param mirrors The URLs serving the file, in configuration order. Must not be empty.
+     */
+    public MirrorSelector(MirrorHistory history, List<String> mirrors) {
+        if (mirrors.isEmpty()) {
+            throw new IllegalArgumentException("At least one download URL is required.");
+        }
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _mirrors = List.copyOf(mirrors);
+        _history = history;
+    }
+
+    /**
+     * Retrieves the URL identifying the file, which is the first configured URL.
+     *
+     * @return The primary URL.
+     */
+    public String getPrimaryUrl() {
+        return _mirrors.get(0);
+    }
+
+    /**
+     * Retrieves the mirrors in configuration order.
+     *
+     * @return The configured mirrors.
+     */
+    public List<String> getMirrors() {
+        return _mirrors;
+    }
+
+    /**
+     * Orders the mirrors from fastest to slowest. Uses the history when it knows any of the mirrors,
+     * scoring the unknown ones with the average of the known throughputs, otherwise probes all mirrors
+     * in parallel. Mirrors with the same score keep their configuration order.
+     *
+     * @param transport  The transport used for the probes.
+     * @return The mirrors, fastest first.
+     */
+    public List<String> rank(Transport transport) {
+        if (_mirrors.size() == 1) {
+            return _mirrors;
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+        for (String mirror : _mirrors) {
+            double throughput = _history.getThroughput(mirror);
+            if (throughput > 0) {
+                scores.put(mirror, throughput);
+            }
+        }
+
+        if (scores.isEmpty()) {
+            _logger.Debug("No mirror history found, probing " + _mirrors.size() + " mirrors.");
+            scores = probeAll(transport);
+        } else if (scores.size() < _mirrors.size()) {
+            double neutral = scores.values().stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
+            for (String mirror : _mirrors) {
+                scores.putIfAbsent(mirror, neutral);
+            }
+        }
+
+        Map<String, Double> finalScores = scores;
+        List<String> ranked = new ArrayList<>(_mirrors);
+        ranked.sort(Comparator
+                .comparing((String mirror) -> _history.hasRecentFailure(mirror))
+                .thenComparing(mirror -> -finalScores.getOrDefault(mirror, 0.0)));
+        _logger.Debug("Mirror order: " + ranked);
+        return ranked;
+    }
+
+    /**
+     * Records a successful transfer from a mirror and saves the history.
+     *
+     * @param mirror      The URL of the mirror.
+     * @param bytes       The number of bytes transferred.
+     * @param elapsedNanos The time the transfer took, in nanoseconds.
+     */
+    public void recordSuccess(String mirror, long bytes, long elapsedNanos) {
+        _history.recordSuccess(mirror, bytes, elapsedNanos);
+    }
+
+    /**
+     * Records a failed transfer from a mirror and saves the history.
+     *
+     * @param mirror The URL of the mirror.
+     */
+    public void recordFailure(String mirror) {
+        _history.recordFailure(mirror);
+    }
+
+    /**
+     * Probes every mirror in parallel and records the results.
+     *
+     * @param transport  The transport used for the probes.
+     * @return The measured throughput of each mirror, 0 for failed mirrors.
+     */
+    private Map<String, Double> probeAll(Transport transport) {
+        Map<String, Double> scores = new HashMap<>();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Map<String, Future<Double>> futures = new LinkedHashMap<>();
+            for (String mirror : _mirrors) {
+                futures.put(mirror, executor.submit(() -> probe(transport, mirror)));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS);
+            for (Map.Entry<String, Future<Double>> entry : futures.entrySet()) {
+                double score = 0.0;
+                try {
+                    score = entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException | TimeoutException e) {
+                    _logger.Warn(String.format("Probe of mirror %s failed: %s", entry.getKey(), e.getCause() == null ? "timed out" : e.getCause().getMessage()));
+                    recordFailure(entry.getKey());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                scores.put(entry.getKey(), score);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return scores;
+    }
+
+    /**
+     * Downloads the first bytes of the file from a mirror and measures the throughput,
+     * including the time to the first byte.
+     *
+     * @param transport  The transport used for the probe.
+     * @param mirror     The URL of the mirror.
+     * @return The measured throughput in bytes per second.
+     * @throws IOException If the mirror cannot serve the file.
+     */
+    private double probe(Transport transport, String mirror) throws IOException {
+        TransportRequest request = TransportRequest.get(mirror);
+        request.setHeader(HttpHeaders.RANGE, "bytes=0-" + (PROBE_BYTES - 1));
+        request.setTimeout(PROBE_TIMEOUT_MS);
+
+        long start = System.nanoTime();
+        return transport.execute(request, response -> {
+            if (response.getStatus() != HttpStatus.SC_PARTIAL_CONTENT && response.getStatus() != HttpStatus.SC_OK) {
+                throw new IOException("Server returned status " + response.getStatus());
+            }
+
+            long received = 0;
+            byte[] buffer = new byte[8192];
+            try (InputStream is = response.getBody()) {
+                int bytesRead;
+                // A server ignoring the range sends the whole file, so stop after the probe size.
+                while (received < PROBE_BYTES && (bytesRead = is.read(buffer)) != -1) {
+                    received += bytesRead;
+                }
+            }
+            double throughput = received * 1_000_000_000.0 / Math.max(1, System.nanoTime() - start);
+            _logger.Debug(String.format("Mirror %s: %.1f KB/s", mirror, throughput / 1024));
+            return throughput;
+        });
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressPhase;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Copies the {@link EmbeddedPayload} of an offline installer to disk, streaming it from the resource
+ * instead of loading it into memory.
+ * <br/>
+ * The copy goes through the same steps as a download: the free space is checked, the bytes are reported
+ * to the {@link ProgressTracker} and hashed as they are written to the `.part` file, and the file replaces
+ * the output file only once its checksum matches the payload description.
+ */
+public class PayloadExtractor {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024; // Size of the buffer used to copy the payload (64 KB).
+
+    private final InstallerLogger _logger; // Logger instance for logging extraction-related messages.
+    private final EmbeddedPayload _payload; // The payload to extract.
+    private final File _outputFile; // The file receiving the payload.
+    private final File _partFile; // The file receiving the data until the extraction completes.
+    private final ProgressTracker _progress; // Tracks the progress of the extraction.
+    private final BooleanSupplier _cancelledSupplier; // Returns true when the extraction should stop.
+    private String _checksum; // The SHA-256 checksum of the extracted file.
+
+    /**
+     * Constructs a new `PayloadExtractor` instance.
+     *
+     * @param payload           The payload to extract.
+     * @param outputFile        The file receiving the payload.
+     * @param progress          Tracks the progress of the extraction.
+     * @param cancelledSupplier Returns true when the extraction should stop.
+     */
+    public PayloadExtractor(EmbeddedPayload payload, File outputFile, ProgressTracker progress, BooleanSupplier cancelledSupplier) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _payload = payload;
+        _outputFile = outputFile;
+        _partFile = SegmentedDownloader.getPartFile(outputFile);
+        _progress = progress;
+        _cancelledSupplier = cancelledSupplier;
+    }
+
+    /**
+     * Extracts and verifies the payload, and moves it to the output file. Must only be called once.
+     *
+     * @return True if the extraction completed, false if it was cancelled.
+     * @throws IOException If the payload cannot be read or written, or its checksum does not match.
+     */
+    public boolean extract() throws IOException {
+        DiskSpace.ensureAvailable(_partFile, _payload.size());
+        _progress.reset(0, _payload.size());
+        _progress.setPhase(ProgressPhase.DOWNLOADING, 0.0);
+        _logger.Debug(String.format("Extracting the embedded %s (%d bytes).", _payload.fileName(), _payload.size()));
+
+        StreamingChecksum checksum = new StreamingChecksum();
+        try (InputStream is = _payload.open();
+             FileChannel channel = FileChannel.open(_partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            long position = 0;
+            int bytesRead;
+            while ((bytesRead = is.read(buffer.array())) >= 0) {
+                if (_cancelledSupplier.getAsBoolean()) {
+                    channel.close();
+                    Files.deleteIfExists(_partFile.toPath());
+                    return false;
+                }
+                buffer.position(0).limit(bytesRead);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position());
+                }
+                checksum.update(position, buffer.flip());
+                position += bytesRead;
+                _progress.addBytes(bytesRead);
+            }
+            if (position != _payload.size()) {
+                throw new EOFException(String.format("The embedded payload has %d bytes instead of %d.", position, _payload.size()));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(_partFile.toPath());
+            throw e;
+        }
+
+        _progress.setPhase(ProgressPhase.VERIFYING, 0.0);
+        _checksum = checksum.getChecksum();
+        if (!_checksum.equalsIgnoreCase(_payload.sha256())) {
+            Files.deleteIfExists(_partFile.toPath());
+            throw new IOException(String.format("The embedded payload is corrupt: expected checksum %s but got %s.", _payload.sha256(), _checksum));
+        }
+
+        FileUtils.moveReplacing(_partFile.toPath(), _outputFile.toPath());
+        _progress.setPhase(ProgressPhase.VERIFYING, 1.0);
+        return true;
+    }
+
+    /**
+     * Retrieves the SHA-256 checksum of the extracted file.
+     *
+     * @return The checksum as a hexadecimal string, or null if the extraction has not completed.
+     */
+    public String getChecksum() {
+        return _checksum;
+    }
+}
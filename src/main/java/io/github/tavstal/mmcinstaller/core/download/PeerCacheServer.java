@@ -0,0 +1,161 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the verified files of the {@link ArtifactCache} to other installers on the local network, so a room
+ * of machines installing at once downloads every file from the internet only once.
+ * <br/>
+ * Files are only served by their SHA-256 checksum, as `GET /sha256/<checksum>`, and the receiving installer
+ * verifies them against the checksum it asked for (see {@link PeerLocator}). The server also answers the
+ * discovery queries of other installers on the UDP port of the same number.
+ */
+public class PeerCacheServer implements AutoCloseable {
+    public final static String PATH_PREFIX = "/sha256/"; // The path of the served files, followed by their checksum.
+    public final static String DISCOVERY_QUERY = "MMC-PEER?"; // The datagram asking for serving installers.
+    public final static String DISCOVERY_REPLY = "MMC-PEER!"; // The start of the reply, followed by the HTTP port.
+    private final static int MAX_DATAGRAM_SIZE = 512; // Size of the buffer receiving the discovery queries.
+
+    private final InstallerLogger _logger; // Logger instance for logging peer-related messages.
+    private final ArtifactCache _cache; // The cache holding the served files.
+    private final int _port; // The requested TCP and UDP port, 0 to pick a free TCP port.
+    private final ExecutorService _executor = Executors.newVirtualThreadPerTaskExecutor(); // Handles every request on its own virtual thread.
+    private HttpServer _server; // Serves the files, null until started.
+    private DatagramSocket _discoverySocket; // Receives the discovery queries, null until started.
+
+    /**
+     * Constructs a new `PeerCacheServer` instance.
+     *
+     * @param cache The cache holding the served files.
+     * @param port  The TCP port to serve the files on, also used as the UDP port of the discovery.
+     */
+    public PeerCacheServer(ArtifactCache cache, int port) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _cache = cache;
+        _port = port;
+    }
+
+    /**
+     * Starts serving files on every network interface, and answering discovery queries.
+     * The discovery is skipped with a warning if its port is taken.
+     *
+     * @throws IOException If the HTTP port cannot be bound.
+     */
+    public void start() throws IOException {
+        _server = HttpServer.create(new InetSocketAddress(_port), 0);
+        _server.createContext(PATH_PREFIX, this::handle);
+        _server.setExecutor(_executor);
+        _server.start();
+        _logger.Debug("Serving cached files to peers on port " + getPort());
+
+        try {
+            _discoverySocket = new DatagramSocket(getPort());
+            Thread.ofVirtual().name("peer-discovery").start(this::answerQueries);
+        } catch (SocketException e) {
+            _logger.Warn("Failed to listen for peer discovery queries: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves the port the files are served on.
+     *
+     * @return The bound TCP port.
+     */
+    public int getPort() {
+        return _server.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving files and answering discovery queries.
+     */
+    @Override
+    public void close() {
+        if (_discoverySocket != null) {
+            _discoverySocket.close();
+        }
+        if (_server != null) {
+            _server.stop(0);
+        }
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Serves a cached file by its checksum. Only GET and HEAD requests are answered.
+     * Failures are only logged, since the peer falls back to another source.
+     *
+     * @param exchange The request and its response.
+     */
+    private void handle(HttpExchange exchange) {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            boolean head = method.equals("HEAD");
+            if (!head && !method.equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            String sha256 = exchange.getRequestURI().getPath().substring(PATH_PREFIX.length());
+            File blob = _cache.find(sha256);
+            if (blob == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            long length = blob.length();
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.getResponseHeaders().set("ETag", "\"" + blob.getName() + "\"");
+            if (head) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, length);
+            try (InputStream is = Files.newInputStream(blob.toPath());
+                 OutputStream os = exchange.getResponseBody()) {
+                is.transferTo(os);
+            }
+            _logger.Debug(String.format("Served %s to %s.", blob.getName(), exchange.getRemoteAddress()));
+        } catch (IOException e) {
+            _logger.Debug("Failed to serve a peer request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replies to discovery queries with the HTTP port, until the socket is closed.
+     */
+    private void answerQueries() {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        byte[] reply = (DISCOVERY_REPLY + " " + getPort()).getBytes(StandardCharsets.US_ASCII);
+        while (!_discoverySocket.isClosed()) {
+            try {
+                DatagramPacket query = new DatagramPacket(buffer, buffer.length);
+                _discoverySocket.receive(query);
+                String message = new String(query.getData(), query.getOffset(), query.getLength(), StandardCharsets.US_ASCII);
+                if (message.trim().equals(DISCOVERY_QUERY)) {
+                    _discoverySocket.send(new DatagramPacket(reply, reply.length, query.getSocketAddress()));
+                }
+            } catch (IOException e) {
+                if (!_discoverySocket.isClosed()) {
+                    _logger.Debug("Failed to answer a peer discovery query: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.core.transport.TransportRequest;
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Finds installers on the local network holding a file (see {@link PeerCacheServer}) and downloads the
+ * file from them instead of the internet.
+ * <br/>
+ * Peers are taken from the configured hosts and, if the discovery is enabled, from the replies to a UDP
+ * query sent to the broadcast address and the local machine. Every peer is asked with a HEAD request if
+ * it holds the file, and the file is downloaded from the first one that does. The download is verified
+ * against the expected checksum before it replaces the target, so a faulty peer only costs time.
+ * The {@link PeerCacheServer} of this installer answers its own queries too; that reply is skipped.
+ */
+public class PeerLocator {
+    private final static int DISCOVERY_TIMEOUT_MS = 500; // Time waited for the replies to a discovery query.
+    private final static long DISCOVERY_TTL_MS = 60_000; // Time the discovered peers are remembered.
+    private final static long PROBE_TIMEOUT_MS = 2000; // Time allowed for the peers to tell if they hold a file.
+    private final static int MAX_DATAGRAM_SIZE = 512; // Size of the buffer receiving the discovery replies.
+
+    private final InstallerLogger _logger; // Logger instance for logging peer-related messages.
+    private final Transport _transport; // The transport used for the requests to the peers.
+    private final List<String> _hosts; // The base URLs of the configured peers.
+    private final int _discoveryPort; // The UDP port of the discovery, or 0 to only use the configured peers.
+    private final int _ownPort; // The port of the peer server of this installer, 0 if it serves no files.
+    private List<String> _discovered = List.of(); // The base URLs of the peers found by the last discovery.
+    private long _discoveredAt; // The time of the last discovery in milliseconds since the epoch, 0 if none yet.
+
+    /**
+     * Constructs a new `PeerLocator` instance.
+     *
+     * @param transport     The transport used for the requests to the peers.
+     * @param hosts         The configured peers, as `host:port` or an `http://` URL.
+     * @param discoveryPort The UDP port of the discovery, or 0 to only use the configured peers.
+     * @param ownPort       The port of the {@link PeerCacheServer} of this installer, or 0 if it serves no files.
+     */
+    public PeerLocator(Transport transport, List<String> hosts, int discoveryPort, int ownPort) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _transport = transport;
+        _discoveryPort = discoveryPort;
+        _ownPort = ownPort;
+        _hosts = new ArrayList<>();
+        for (String host : hosts) {
+            String url = host.trim();
+            if (url.isEmpty()) {
+                continue;
+            }
+            url = url.contains("://") ? url : "http://" + url;
+            _hosts.add(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+        }
+    }
+
+    /**
+     * Downloads a file from the first peer holding it, and verifies it against its checksum. Peers failing
+     * or serving a different file are skipped.
+     *
+     * @param sha256            The SHA-256 checksum of the file.
+     * @param target            The file receiving the download. Only replaced once the download is verified.
+     * @param progress          Tracks the progress of the download.
+     * @param bandwidthLimiter  Limits the combined throughput of all connections.
+     * @param cancelledSupplier Returns true when the download should stop.
+     * @return True if the file was downloaded and verified, false if no peer served it or the download was cancelled.
+     * @throws InsufficientSpaceException If the disk has no room for the file, which no other source would change.
+     */
+    public boolean fetch(String sha256, File target, ProgressTracker progress, BandwidthLimiter bandwidthLimiter,
+                         BooleanSupplier cancelledSupplier) throws InsufficientSpaceException {
+        if (sha256 == null || sha256.isEmpty()) {
+            return false;
+        }
+
+        File staged = new File(target.getParentFile(), target.getName() + ".peer");
+        try {
+            for (String url : locate(sha256)) {
+                if (cancelledSupplier.getAsBoolean()) {
+                    return false;
+                }
+                try {
+                    SegmentedDownloader downloader = new SegmentedDownloader(
+                            _transport,
+                            new MirrorSelector(List.of(url), null),
+                            staged,
+                            1,
+                            null,
+                            progress,
+                            bandwidthLimiter,
+                            cancelledSupplier
+                    );
+                    if (!downloader.download()) {
+                        return false;
+                    }
+                    if (downloader.getChecksum().equalsIgnoreCase(sha256)) {
+                        FileUtils.moveReplacing(staged.toPath(), target.toPath());
+                        _logger.Debug(String.format("Downloaded %s from the peer %s", target.getName(), url));
+                        return true;
+                    }
+                    _logger.Warn(String.format("The peer %s served %s with checksum %s instead of %s.", url, target.getName(), downloader.getChecksum(), sha256));
+                } catch (InsufficientSpaceException e) {
+                    throw e;
+                } catch (IOException e) {
+                    _logger.Warn(String.format("Failed to download %s from the peer %s: %s", target.getName(), url, e.getMessage()));
+                }
+            }
+            return false;
+        } finally {
+            deleteStagedFiles(staged);
+        }
+    }
+
+    /**
+     * Finds the peers holding a file.
+     *
+     * @param sha256 The SHA-256 checksum of the file.
+     * @return The URLs of the file on every peer holding it, the configured peers first.
+     */
+    public List<String> locate(String sha256) {
+        List<String> peers = new ArrayList<>(_hosts);
+        for (String peer : discover()) {
+            if (!peers.contains(peer)) {
+                peers.add(peer);
+            }
+        }
+        if (peers.isEmpty()) {
+            return List.of();
+        }
+
+        // Every peer is asked in parallel, so an unreachable host only costs the probe timeout once.
+        String path = PeerCacheServer.PATH_PREFIX + sha256.trim().toLowerCase(Locale.ROOT);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<Boolean>> probes = new ArrayList<>();
+            for (String peer : peers) {
+                probes.add(executor.submit(() -> holds(peer + path)));
+            }
+
+            List<String> urls = new ArrayList<>();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS);
+            for (int i = 0; i < peers.size(); i++) {
+                try {
+                    if (probes.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                        urls.add(peers.get(i) + path);
+                    }
+                } catch (ExecutionException | TimeoutException e) {
+                    _logger.Debug("The peer " + peers.get(i) + " did not answer.");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return urls;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Asks a peer if it holds a file.
+     *
+     * @param url The URL of the file on the peer.
+     * @return True if the peer serves the file.
+     * @throws IOException If the request fails.
+     */
+    private boolean holds(String url) throws IOException {
+        return _transport.execute(TransportRequest.head(url), response -> response.getStatus() == HttpStatus.SC_OK);
+    }
+
+    /**
+     * Sends a discovery query and collects the replies, unless the peers of the last discovery are recent enough.
+     *
+     * @return The base URLs of the peers that replied.
+     */
+    private synchronized List<String> discover() {
+        if (_discoveryPort <= 0) {
+            return List.of();
+        }
+        if (_discoveredAt != 0 && System.currentTimeMillis() - _discoveredAt < DISCOVERY_TTL_MS) {
+            return _discovered;
+        }
+
+        List<String> peers = new ArrayList<>();
+        byte[] query = PeerCacheServer.DISCOVERY_QUERY.getBytes(StandardCharsets.US_ASCII);
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setBroadcast(true);
+            for (InetAddress address : new InetAddress[]{InetAddress.getByName("255.255.255.255"), InetAddress.getLoopbackAddress()}) {
+                try {
+                    socket.send(new DatagramPacket(query, query.length, address, _discoveryPort));
+                } catch (IOException e) {
+                    _logger.Debug(String.format("Failed to send a peer discovery query to %s: %s", address.getHostAddress(), e.getMessage()));
+                }
+            }
+
+            byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+            long deadline = System.currentTimeMillis() + DISCOVERY_TIMEOUT_MS;
+            long remaining;
+            while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+                socket.setSoTimeout((int) remaining);
+                DatagramPacket reply = new DatagramPacket(buffer, buffer.length);
+                try {
+                    socket.receive(reply);
+                } catch (SocketTimeoutException e) {
+                    break;
+                }
+
+                String message = new String(reply.getData(), reply.getOffset(), reply.getLength(), StandardCharsets.US_ASCII).trim();
+                if (!message.startsWith(PeerCacheServer.DISCOVERY_REPLY)) {
+                    continue;
+                }
+                try {
+                    int port = Integer.parseInt(message.substring(PeerCacheServer.DISCOVERY_REPLY.length()).trim());
+                    if (port == _ownPort && isLocal(reply.getAddress())) {
+                        continue; // The own server only holds the files this installer already has.
+                    }
+                    String host = reply.getAddress() instanceof Inet6Address ? "[" + reply.getAddress().getHostAddress() + "]" : reply.getAddress().getHostAddress();
+                    String url = "http://" + host + ":" + port;
+                    if (!peers.contains(url)) {
+                        peers.add(url);
+                    }
+                } catch (NumberFormatException e) {
+                    _logger.Debug("Ignoring an invalid peer discovery reply: " + message);
+                }
+            }
+        } catch (IOException e) {
+            _logger.Debug("Peer discovery failed: " + e.getMessage());
+        }
+
+        _logger.Debug(String.format("Discovered %d peers.", peers.size()));
+        _discovered = peers;
+        _discoveredAt = System.currentTimeMillis();
+        return peers;
+    }
+
+    /**
+     * Checks if an address belongs to this machine.
+     *
+     * @param address The address.
+     * @return True for the loopback address and the addresses of the network interfaces of this machine.
+     */
+    private static boolean isLocal(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isAnyLocalAddress()) {
+            return true;
+        }
+        try {
+            return NetworkInterface.getByInetAddress(address) != null;
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the file a peer download was staged in and its partial download, if they are still present.
+     *
+     * @param staged The staged file.
+     */
+    private void deleteStagedFiles(File staged) {
+        for (File file : new File[]{staged, SegmentedDownloader.getPartFile(staged), SegmentedDownloader.getStateFile(staged)}) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                _logger.Debug("Failed to delete " + file.getAbsolutePath() + ": " + e.getMessage());
+            }
+        }
+    }
+}
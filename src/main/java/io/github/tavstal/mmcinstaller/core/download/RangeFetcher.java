@@ -0,0 +1,378 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.ContentDecoders;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.core.transport.TransportRequest;
+import io.github.tavstal.mmcinstaller.core.transport.TransportResponse;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Downloads selected byte ranges of a remote file, as needed by the delta updates
+ * ({@link ZipDeltaUpdater}, {@link BlockDeltaDownloader}).
+ * <br/>
+ * The validator (strong ETag or Last-Modified) of the first response is sent with If-Range on every later
+ * request, so a file replaced on the server in the middle of an update is detected instead of mixing
+ * two versions. The ETag of every later response is compared too, which also catches a change when
+ * only a weak ETag is known. Ranges are always requested unencoded, since their offsets refer to the stored file.
+ */
+public class RangeFetcher {
+    private static final RetryPolicy RETRY_POLICY = new RetryPolicy(6, 500, 30_000); // Retries of failed range requests.
+    private static final int COPY_BUFFER_SIZE = 64 * 1024; // Size of the buffer used to copy a range into the file.
+
+    private final InstallerLogger _logger; // Logger instance for logging range-related messages.
+    private final Transport _transport; // The transport used for the range requests.
+    private final String _url; // The URL of the remote file.
+    private final int _maxConnections; // The maximum number of range requests running in parallel.
+    private final ProgressTracker _progress; // Receives the downloaded and received byte counts.
+    private final BandwidthLimiter _bandwidthLimiter; // Limits the combined throughput of all connections.
+    private final BooleanSupplier _cancelledSupplier; // Returns true when the download should stop.
+    private volatile String _validator; // The strong ETag or Last-Modified value of the remote file sent with If-Range, empty if none is usable.
+    private volatile String _etag; // The ETag of the first response, empty if none was sent.
+
+    /**
+     * Constructs a new `RangeFetcher` instance.
+     *
+     * @param transport         The transport used for the range requests.
+     * @param url               The URL of the remote file.
+     * @param maxConnections    The maximum number of range requests running in parallel.
+     * @param progress          Receives the downloaded and received byte counts.
+     * @param bandwidthLimiter  Limits the combined throughput of all connections.
+     * @param cancelledSupplier Returns true when the download should stop.
+     */
+    public RangeFetcher(Transport transport, String url, int maxConnections, ProgressTracker progress,
+                        BandwidthLimiter bandwidthLimiter, BooleanSupplier cancelledSupplier) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _transport = transport;
+        _url = url;
+        _maxConnections = Math.max(1, maxConnections);
+        _progress = progress;
+        _bandwidthLimiter = bandwidthLimiter;
+        _cancelledSupplier = cancelledSupplier;
+    }
+
+    /**
+     * Requests the first byte of the remote file to find out its size and validator.
+     *
+     * @return The size of the remote file.
+     * @throws IOException If the request fails or the server does not support range requests.
+     */
+    public long probe() throws IOException {
+        return read("bytes=0-0").fileSize();
+    }
+
+    /**
+     * Downloads the end of the remote file into memory.
+     *
+     * @param length The number of bytes to download, fewer are returned if the file is smaller.
+     * @return The downloaded part.
+     * @throws IOException If the request fails or the server does not support range requests.
+     */
+    public Part readTail(int length) throws IOException {
+        return read("bytes=-" + length);
+    }
+
+    /**
+     * Downloads a range of the remote file into memory.
+     *
+     * @param start The offset of the first byte.
+     * @param end   The offset after the last byte.
+     * @return The downloaded part.
+     * @throws IOException If the request fails, the server does not support range requests, or the file changed.
+     */
+    public Part read(long start, long end) throws IOException {
+        Part part = read("bytes=" + start + "-" + (end - 1));
+        if (part.start() != start || part.data().length != end - start) {
+            throw new IOException(String.format("Server returned %d bytes from %d instead of %d-%d.", part.data().length, part.start(), start, end - 1));
+        }
+        return part;
+    }
+
+    /**
+     * Downloads every range into a file at the same offsets, running up to the maximum number of requests
+     * in parallel. A failed request is retried after a back-off, continuing from where it stopped.
+     *
+     * @param output The channel of the file receiving the ranges.
+     * @param ranges The ranges to download.
+     * @return True if every range was downloaded, false if the download was cancelled.
+     * @throws IOException If a range still fails after every retry, or the remote file changed.
+     */
+    public boolean fetchAll(FileChannel output, List<Range> ranges) throws IOException {
+        Queue<Range> pending = new ConcurrentLinkedQueue<>(ranges);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < Math.min(_maxConnections, ranges.size()); i++) {
+                futures.add(executor.submit(() -> {
+                    Range range;
+                    while ((range = pending.poll()) != null) {
+                        if (!fetchWithRetry(output, range)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+
+            boolean completed = true;
+            for (Future<Boolean> future : futures) {
+                try {
+                    completed &= future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while downloading the ranges.");
+                } catch (ExecutionException e) {
+                    pending.clear(); // Lets the other connections finish their current range and stop.
+                    throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+                }
+            }
+            return completed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Adds a range to download, merging it with the previous range if they are close. Merging downloads the
+     * bytes in between once more, which is cheaper than another request for small gaps.
+     *
+     * @param ranges   The ranges to download, ordered by offset.
+     * @param start    The offset of the first byte of the range.
+     * @param end      The offset after the last byte of the range.
+     * @param mergeGap The largest gap in bytes bridged by merging.
+     */
+    public static void addRange(List<Range> ranges, long start, long end, long mergeGap) {
+        if (!ranges.isEmpty()) {
+            Range last = ranges.getLast();
+            if (start - last.end() <= mergeGap) {
+                ranges.set(ranges.size() - 1, new Range(last.start(), Math.max(last.end(), end)));
+                return;
+            }
+        }
+        ranges.add(new Range(start, end));
+    }
+
+    /**
+     * Sends a range request and reads the whole body into memory.
+     *
+     * @param range The value of the `Range` header.
+     * @return The downloaded part.
+     * @throws IOException If the request fails or the server did not return a usable partial response.
+     */
+    private Part read(String range) throws IOException {
+        TransportRequest request = createRequest(range);
+        return _transport.execute(request, response -> {
+            long[] contentRange = checkPartialContent(response, request);
+            int length = (int) (contentRange[1] - contentRange[0] + 1);
+            try (InputStream is = openBody(response)) {
+                byte[] body = is.readNBytes(length);
+                if (body.length != length) {
+                    throw new EOFException(String.format("The response ended after %d of %d bytes.", body.length, length));
+                }
+                return new Part(contentRange[0], contentRange[2], body);
+            }
+        });
+    }
+
+    /**
+     * Downloads a range, continuing from where a failed attempt stopped after a back-off.
+     *
+     * @param output The channel of the file receiving the range.
+     * @param range  The range to download.
+     * @return True if the range was downloaded, false if the download was cancelled.
+     * @throws IOException If the remote file changed, or the range still fails after every retry.
+     */
+    private boolean fetchWithRetry(FileChannel output, Range range) throws IOException {
+        long[] position = {range.start()};
+        for (int failedAttempts = 1; ; failedAttempts++) {
+            try {
+                return fetchRange(output, position, range.end());
+            } catch (RemoteChangedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (_cancelledSupplier.getAsBoolean() || !RETRY_POLICY.canRetry(failedAttempts)) {
+                    throw e;
+                }
+                _logger.Warn(String.format("Range request to %s failed (attempt %d of %d), retrying from byte %d: %s",
+                        _url, failedAttempts, RETRY_POLICY.getMaxAttempts(), position[0], e.getMessage()));
+                if (!RETRY_POLICY.backOff(failedAttempts, _cancelledSupplier)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Downloads a range into the file.
+     *
+     * @param output   The channel of the file receiving the range.
+     * @param position Holds the offset of the first byte to download, advanced as bytes are written.
+     * @param end      The offset after the last byte of the range.
+     * @return True if the range was downloaded, false if the download was cancelled.
+     * @throws IOException If the request fails or the remote file changed.
+     */
+    private boolean fetchRange(FileChannel output, long[] position, long end) throws IOException {
+        TransportRequest request = createRequest("bytes=" + position[0] + "-" + (end - 1));
+        return _transport.execute(request, response -> {
+            long[] range = checkPartialContent(response, request);
+            if (range[0] != position[0] || range[1] != end - 1) {
+                throw new IOException(String.format("Server returned range %d-%d instead of %d-%d.", range[0], range[1], position[0], end - 1));
+            }
+
+            try (InputStream is = openBody(response)) {
+                ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+                while (position[0] < end) {
+                    if (_cancelledSupplier.getAsBoolean()) {
+                        request.cancel(); // Stops the client from draining the rest of the body.
+                        return false;
+                    }
+                    int bytesRead = is.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), end - position[0]));
+                    if (bytesRead < 0) {
+                        throw new EOFException(String.format("The response ended at byte %d instead of %d.", position[0], end));
+                    }
+                    buffer.position(0).limit(bytesRead);
+                    while (buffer.hasRemaining()) {
+                        position[0] += output.write(buffer, position[0]);
+                    }
+                    _progress.addBytes(bytesRead);
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Creates a range request for the remote file, which is ignored by the server if the file has
+     * changed since the validator was received.
+     *
+     * @param range The value of the `Range` header.
+     * @return The request.
+     */
+    private TransportRequest createRequest(String range) {
+        TransportRequest request = TransportRequest.get(_url);
+        request.setHeader(HttpHeaders.RANGE, range);
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity"); // Offsets refer to the file as stored.
+        String validator = _validator;
+        if (validator != null && !validator.isEmpty()) {
+            request.setHeader(HttpHeaders.IF_RANGE, validator);
+        }
+        return request;
+    }
+
+    /**
+     * Checks that a response carries the requested part of the remote file unencoded, remembers the
+     * validator of the first response, and rejects a later response with a different ETag. A weak ETag
+     * is never used as the validator, see {@link RemoteFileInfo#validator()}.
+     *
+     * @param response The response.
+     * @param request  The request the response belongs to.
+     * @return The first and last offset of the returned range, and the size of the remote file.
+     * @throws IOException If the server did not return a usable partial response.
+     */
+    private long[] checkPartialContent(TransportResponse response, TransportRequest request) throws IOException {
+        if (response.getStatus() == HttpStatus.SC_OK && request.containsHeader(HttpHeaders.IF_RANGE)) {
+            throw new RemoteChangedException();
+        }
+        if (response.getStatus() != HttpStatus.SC_PARTIAL_CONTENT) {
+            throw new IOException(String.format("Server returned status %d instead of a partial response.", response.getStatus()));
+        }
+        if (!ContentDecoders.isIdentity(response.getContentEncoding())) {
+            throw new IOException("Server sent an unusable body for a range request.");
+        }
+
+        String etag = response.getHeader(HttpHeaders.ETAG);
+        if (_validator == null) {
+            String lastModified = response.getHeader(HttpHeaders.LAST_MODIFIED);
+            String validator = new RemoteFileInfo(-1, true, etag == null ? "" : etag, lastModified == null ? "" : lastModified).validator();
+            _etag = etag == null ? "" : etag;
+            _validator = validator == null ? "" : validator;
+        } else if (etag != null && !_etag.isEmpty() && !etag.equals(_etag)) {
+            throw new RemoteChangedException();
+        }
+
+        String contentRange = response.getHeader(HttpHeaders.CONTENT_RANGE);
+        try {
+            // bytes <first>-<last>/<size>
+            String value = contentRange.trim();
+            int dash = value.indexOf('-');
+            int slash = value.indexOf('/');
+            return new long[]{
+                    Long.parseLong(value.substring(6, dash).trim()),
+                    Long.parseLong(value.substring(dash + 1, slash).trim()),
+                    Long.parseLong(value.substring(slash + 1).trim())
+            };
+        } catch (RuntimeException e) {
+            throw new IOException("Server sent an invalid Content-Range header: " + contentRange);
+        }
+    }
+
+    /**
+     * Opens a response body, counting the received bytes and applying the bandwidth limit.
+     *
+     * @param response The response.
+     * @return The metered body.
+     * @throws IOException If the body cannot be opened.
+     */
+    private InputStream openBody(TransportResponse response) throws IOException {
+        return new MeteredInputStream(response.getBody(), _progress::addWireBytes, _bandwidthLimiter, _cancelledSupplier);
+    }
+
+    /**
+     * A range of the remote file.
+     *
+     * @param start The offset of the first byte.
+     * @param end   The offset after the last byte.
+     */
+    public record Range(long start, long end) {
+        /**
+         * Retrieves the number of bytes in the range.
+         *
+         * @return The length of the range.
+         */
+        public long length() {
+            return end - start;
+        }
+    }
+
+    /**
+     * A part of the remote file downloaded into memory.
+     *
+     * @param start    The offset of the first byte of the part.
+     * @param fileSize The size of the remote file.
+     * @param data     The bytes of the part.
+     */
+    public record Part(long start, long fileSize, byte[] data) {
+    }
+
+    /**
+     * Thrown when the server ignores an If-Range request because the remote file has changed
+     * since the first range was received.
+     */
+    private static class RemoteChangedException extends IOException {
+        /**
+         * Constructs a new `RemoteChangedException` instance.
+         */
+        public RemoteChangedException() {
+            super("The remote file changed during the download.");
+        }
+    }
+}
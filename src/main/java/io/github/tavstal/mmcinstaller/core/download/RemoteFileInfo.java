@@ -0,0 +1,52 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+/**
+ * Represents the metadata of a remote file, as reported by the server.
+ * <br/>
+ * This record is used to decide how a file should be downloaded (single stream or segmented)
+ * and whether a previously interrupted download can be resumed.
+ *
+ * @param contentLength The size of the remote file in bytes, or -1 if unknown.
+ * @param acceptsRanges True if the server advertised support for byte range requests.
+ * @param etag          The value of the ETag header, or an empty string if not sent.
+ * @param lastModified  The value of the Last-Modified header, or an empty string if not sent.
+ */
+public record RemoteFileInfo(long contentLength, boolean acceptsRanges, String etag, String lastModified) {
+    /**
+     * Checks if the file can be split into byte ranges and downloaded in parallel.
+     *
+     * @return True if the server supports range requests and the content length is known.
+     */
+    public boolean isSegmentable() {
+        return acceptsRanges && contentLength > 0;
+    }
+
+    /**
+     * Retrieves the validator to send in an If-Range header.
+     * Weak ETags are not allowed in If-Range, so Last-Modified is used in that case.
+     *
+     * @return The strong ETag, the Last-Modified date, or null if the file cannot be validated.
+     */
+    public String validator() {
+        if (!etag.isEmpty() && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified.isEmpty() ? null : lastModified;
+    }
+
+    /**
+     * Checks if another server serves exactly the same file, so byte ranges from both can be combined.
+     * Both must report the same size and ETag, and a usable validator, otherwise a different version
+     * of the file could not be detected.
+     *
+     * @param other The metadata reported by the other server.
+     * @return True if both servers serve the same file.
+     */
+    public boolean isSameFile(RemoteFileInfo other) {
+        String validator = validator();
+        return validator != null
+                && contentLength == other.contentLength
+                && etag.equals(other.etag)
+                && validator.equals(other.validator());
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides how often a failed request is retried and how long to wait before each retry.
+ * <br/>
+ * The delay grows exponentially with the number of failed attempts, up to a maximum, and the actual
+ * wait is picked uniformly between zero and that delay ("full jitter"). The randomness spreads the
+ * retries of parallel connections, so they do not hit a recovering server at the same moment.
+ */
+public class RetryPolicy {
+    private final static long MAX_PARK_NANOS = 100_000_000L; // Longest single park, so cancellation is noticed quickly.
+
+    private final int _maxAttempts; // The number of attempts before giving up, including the first one.
+    private final long _baseDelayMillis; // The delay ceiling after the first failed attempt.
+    private final long _maxDelayMillis; // The largest delay ceiling.
+
+    /**
+     * Constructs a new `RetryPolicy` instance.
+     *
+     * @param maxAttempts     The number of attempts before giving up, including the first one.
+     * @param baseDelayMillis The delay ceiling after the first failed attempt, in milliseconds.
+     * @param maxDelayMillis  The largest delay ceiling, in milliseconds.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        _maxAttempts = Math.max(1, maxAttempts);
+        _baseDelayMillis = Math.max(1, baseDelayMillis);
+        _maxDelayMillis = Math.max(_baseDelayMillis, maxDelayMillis);
+    }
+
+    /**
+     * Retrieves the number of attempts before giving up.
+     *
+     * @return The maximum number of attempts, including the first one.
+     */
+    public int getMaxAttempts() {
+        return _maxAttempts;
+    }
+
+    /**
+     * Checks if another attempt is allowed after the given number of failed attempts.
+     *
+     * @param failedAttempts The number of attempts that failed in a row.
+     * @return True if the request should be retried.
+     */
+    public boolean canRetry(int failedAttempts) {
+        return failedAttempts < _maxAttempts;
+    }
+
+    /**
+     * Picks the delay before the next attempt.
+     *
+     * @param failedAttempts The number of attempts that failed in a row, at least 1.
+     * @return A random delay between 0 and the exponential ceiling, in milliseconds.
+     */
+    public long getDelayMillis(int failedAttempts) {
+        int exponent = Math.min(Math.max(0, failedAttempts - 1), 30);
+        long ceiling = Math.min(_maxDelayMillis, _baseDelayMillis << exponent);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Waits before the next attempt.
+     *
+     * @param failedAttempts The number of attempts that failed in a row, at least 1.
+     * @param cancelled      Returns true when the caller should stop waiting.
+     * @return True if the wait completed, false if it was cancelled.
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    public boolean backOff(int failedAttempts, BooleanSupplier cancelled) throws InterruptedIOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getDelayMillis(failedAttempts));
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, MAX_PARK_NANOS));
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry.");
+            }
+        }
+        return !cancelled.getAsBoolean();
+    }
+}
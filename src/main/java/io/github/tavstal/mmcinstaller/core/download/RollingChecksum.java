@@ -0,0 +1,75 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+/**
+ * The weak checksum of rsync and zsync over a window of fixed length, which can be moved forward
+ * by one byte in constant time.
+ * <br/>
+ * The checksum consists of two 16-bit sums: `a` is the sum of the bytes in the window, and `b` is the
+ * sum of the bytes weighted by their distance to the end of the window. The value is `b << 16 | a`.
+ */
+public class RollingChecksum {
+    private final int _length; // The length of the window.
+    private int _a; // Sum of the bytes in the window, only the lower 16 bits are used.
+    private int _b; // Sum of the weighted bytes in the window, only the lower 16 bits are used.
+
+    /**
+     * Constructs a new `RollingChecksum` instance over an empty window.
+     *
+     * @param length The length of the window.
+     */
+    public RollingChecksum(int length) {
+        _length = length;
+    }
+
+    /**
+     * Computes the checksum of a block.
+     *
+     * @param data   The buffer holding the block.
+     * @param offset The offset of the block in the buffer.
+     * @param length The length of the block.
+     * @return The checksum of the block.
+     */
+    public static int of(byte[] data, int offset, int length) {
+        RollingChecksum checksum = new RollingChecksum(length);
+        checksum.reset(data, offset);
+        return checksum.getValue();
+    }
+
+    /**
+     * Computes the checksum of the window starting at the given offset.
+     *
+     * @param data   The buffer holding the window.
+     * @param offset The offset of the window in the buffer.
+     */
+    public void reset(byte[] data, int offset) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < _length; i++) {
+            int value = data[offset + i] & 0xFF;
+            a += value;
+            b += (_length - i) * value;
+        }
+        _a = a;
+        _b = b;
+    }
+
+    /**
+     * Moves the window forward by one byte.
+     *
+     * @param removed The first byte of the window, which leaves it.
+     * @param added   The byte following the window, which enters it.
+     */
+    public void roll(byte removed, byte added) {
+        _a += (added & 0xFF) - (removed & 0xFF);
+        _b += _a - _length * (removed & 0xFF);
+    }
+
+    /**
+     * Retrieves the checksum of the current window.
+     *
+     * @return The checksum.
+     */
+    public int getValue() {
+        return (_b & 0xFFFF) << 16 | (_a & 0xFFFF);
+    }
+}
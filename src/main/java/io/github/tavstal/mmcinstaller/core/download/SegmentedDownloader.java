@@ -0,0 +1,1209 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressPhase;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.ContentDecoders;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.core.transport.TransportRequest;
+import io.github.tavstal.mmcinstaller.core.transport.TransportResponse;
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The `SegmentedDownloader` class downloads a remote file over HTTP.
+ * If the server supports byte range requests, the file is split into segments which are fetched
+ * concurrently and written directly to their offsets in a preallocated output file.
+ * Otherwise, the file is downloaded over a single connection.
+ * <br/>
+ * Before any byte is written, the free space of the disk is checked against the missing bytes (see
+ * {@link DiskSpace}), so a full disk fails the download up front instead of halfway through.
+ * <br/>
+ * Data is written to a `.part` file next to the output file. For segmented downloads the progress
+ * of every segment is saved to a sidecar file, so an interrupted download continues from where it
+ * stopped on the next run. The `.part` file is renamed to the output file once it is complete.
+ * <br/>
+ * The SHA-256 checksum of the file is computed while downloading, see {@link StreamingChecksum}.
+ * Response bodies are copied through pooled direct buffers (see {@link AdaptiveBuffer}) with
+ * positional {@link FileChannel} writes. Single stream downloads accept compressed bodies, which are
+ * decoded on the way to disk (see {@link ContentDecoders}); byte ranges are always requested unencoded.
+ * <br/>
+ * The file can be served by several mirrors, ranked by the {@link MirrorSelector}. Mirrors serving the
+ * same version of the file (same size and validator) download byte ranges at the same time, and a
+ * connection that runs out of work takes over the tail of the largest remaining range, so faster
+ * mirrors end up serving more of the file.
+ * <br/>
+ * Failed requests are retried with a jittered exponential back-off (see {@link RetryPolicy}), moving to
+ * the next mirror whose {@link CircuitBreaker} is closed. A {@link StallWatchdog} aborts connections that
+ * stop moving data, and only the affected byte range reconnects, continuing from its current offset.
+ * <br/>
+ * If a {@link ChunkManifest} is published for the file, every chunk is verified as soon as it has landed
+ * (see {@link ChunkVerifier}), and chunks failing verification are downloaded again with a range request
+ * once the segments are done, instead of failing the whole file.
+ */
+public class SegmentedDownloader {
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024; // Smallest byte range worth its own connection (1 MB).
+    private static final long CHECKPOINT_INTERVAL_MS = 1000; // Minimum time between two saves of the sidecar file.
+    private static final RetryPolicy RETRY_POLICY = new RetryPolicy(6, 500, 30_000); // Retries of failed requests, up to 30 s apart.
+    private static final int BREAKER_FAILURE_THRESHOLD = 3; // Failures in a row after which a mirror is paused.
+    private static final long BREAKER_OPEN_MS = 30_000; // Time a paused mirror receives no requests.
+    private static final long STALL_WINDOW_MS = 10_000; // Window over which the throughput of a connection is measured.
+    private static final long STALL_MIN_BYTES_PER_SECOND = 8 * 1024; // Throughput below which a connection counts as stalled (8 KB/s).
+
+    private final InstallerLogger _logger; // Logger instance for logging download-related messages.
+    private final Transport _transport; // The shared transport, not closed by the downloader.
+    private final MirrorSelector _mirrors; // Ranks the URLs serving the file and remembers their throughput.
+    private final File _outputFile; // The file where the downloaded content will be saved.
+    private final File _partFile; // The file receiving the data until the download completes.
+    private final File _stateFile; // The sidecar file storing the progress of the segments.
+    private final int _maxSegments; // The maximum number of ranges fetched in parallel.
+    private final ChunkManifest _chunkManifest; // The checksums of the chunks of the file, or null if not published.
+    private final ProgressTracker _progress; // Receives the combined progress of all segments.
+    private final BandwidthLimiter _bandwidthLimiter; // Limits the combined throughput of all connections.
+    private final BooleanSupplier _cancelledSupplier; // Returns true when the owner requested cancellation.
+    private final StallWatchdog _watchdog; // Aborts connections that stopped moving data.
+    private final boolean _ownsWatchdog; // Whether the watchdog was created by the downloader and is closed with it.
+    private final long _knownSize; // The size of the file given by the caller, or -1 if unknown.
+    private final AtomicLong _lastCheckpoint = new AtomicLong(); // Time of the last save of the sidecar file.
+    private String _checksum; // The SHA-256 checksum of the completed file.
+
+    /**
+     * Constructs a new `SegmentedDownloader` instance.
+     *
+     * @param transport         The transport used for every request. Should allow `maxSegments` connections per host,
+     *                          and must not decode response bodies itself.
+     * @param mirrors           The selector providing the URLs of the file to download.
+     * @param outputFile        The file where the downloaded content will be saved.
+     * @param maxSegments       The maximum number of byte ranges fetched in parallel.
+     * @param chunkManifest     The checksums of the chunks of the file, or null to only compute the checksum of the whole file.
+     * @param progress          The tracker receiving the combined progress of all segments.
+     * @param bandwidthLimiter  Limits the combined throughput of all connections.
+     * @param cancelledSupplier A supplier returning true when the download should be cancelled.
+     */
+    public SegmentedDownloader(Transport transport, MirrorSelector mirrors, File outputFile, int maxSegments, ChunkManifest chunkManifest, ProgressTracker progress, BandwidthLimiter bandwidthLimiter, BooleanSupplier cancelledSupplier) {
+        this(transport, mirrors, outputFile, maxSegments, chunkManifest, progress, bandwidthLimiter, cancelledSupplier, null, -1);
+    }
+
+    /**
+     * Constructs a new `SegmentedDownloader` instance that shares a watchdog with other downloads, and
+     * may skip the probe of the mirrors.
+     *
+     * @param transport         The transport used for every request. Should allow `maxSegments` connections per host,
+     *                          and must not decode response bodies itself.
+     * @param mirrors           The selector providing the URLs of the file to download.
+     * @param outputFile        The file where the downloaded content will be saved.
+     * @param maxSegments       The maximum number of byte ranges fetched in parallel.
+     * @param chunkManifest     The checksums of the chunks of the file, or null to only compute the checksum of the whole file.
+     * @param progress          The tracker receiving the combined progress of all segments.
+     * @param bandwidthLimiter  Limits the combined throughput of all connections.
+     * @param cancelledSupplier A supplier returning true when the download should be cancelled.
+     * @param watchdog          The watchdog of the connections, not closed by the downloader, or null to create one
+     *                          (see {@link #createWatchdog(BandwidthLimiter, int)}).
+     * @param knownSize         The size of the file if the caller knows it, or -1. A download over a single connection
+     *                          of a file with a known size does not probe the mirrors first.
+     */
+    public SegmentedDownloader(Transport transport, MirrorSelector mirrors, File outputFile, int maxSegments, ChunkManifest chunkManifest, ProgressTracker progress,
+                               BandwidthLimiter bandwidthLimiter, BooleanSupplier cancelledSupplier, StallWatchdog watchdog, long knownSize) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _transport = transport;
+        _mirrors = mirrors;
+        _outputFile = outputFile;
+        _partFile = getPartFile(outputFile);
+        _stateFile = getStateFile(outputFile);
+        _maxSegments = Math.max(1, maxSegments);
+        _chunkManifest = chunkManifest;
+        _progress = progress;
+        _bandwidthLimiter = bandwidthLimiter;
+        _cancelledSupplier = cancelledSupplier;
+        _ownsWatchdog = watchdog == null;
+        _watchdog = watchdog != null ? watchdog : createWatchdog(bandwidthLimiter, _maxSegments);
+        _knownSize = knownSize;
+    }
+
+    /**
+     * Creates a watchdog for the connections of downloads. With a bandwidth limit, the stall threshold is
+     * lowered so connections slowed down by the limit are not mistaken for stalls.
+     *
+     * @param bandwidthLimiter Limits the combined throughput of the connections.
+     * @param connections      The maximum number of connections open at the same time, which share the limit.
+     * @return The watchdog, which must be closed once the downloads are done.
+     */
+    public static StallWatchdog createWatchdog(BandwidthLimiter bandwidthLimiter, int connections) {
+        return new StallWatchdog(STALL_WINDOW_MS, () -> getStallThreshold(bandwidthLimiter, Math.max(1, connections)));
+    }
+
+    /**
+     * Retrieves the file receiving the data of a download until it completes.
+     *
+     * @param outputFile The file where the downloaded content will be saved.
+     * @return The partial file next to the output file.
+     */
+    public static File getPartFile(File outputFile) {
+        return new File(outputFile.getParentFile(), outputFile.getName() + ".part");
+    }
+
+    /**
+     * Retrieves the sidecar file storing the progress of the segments of a download, which lets
+     * another downloader of the same output file continue it.
+     *
+     * @param outputFile The file where the downloaded content will be saved.
+     * @return The state file next to the output file.
+     */
+    public static File getStateFile(File outputFile) {
+        return new File(outputFile.getParentFile(), outputFile.getName() + ".part.state");
+    }
+
+    /**
+     * Downloads the file. The mirrors are probed first to decide between a segmented and a single stream
+     * download, and whether a previous partial download can be continued, unless the download is limited
+     * to a single connection and the size of the file is known. Segmented downloads stripe the
+     * byte ranges across every mirror serving the same version of the file. Must only be called once.
+     *
+     * @return True if the download completed, false if it was cancelled.
+     * @throws IOException If the download still fails after every retry.
+     */
+    public boolean download() throws IOException {
+        try {
+            return downloadFile();
+        } finally {
+            if (_ownsWatchdog) {
+                _watchdog.close();
+            }
+        }
+    }
+
+    /**
+     * Downloads the file, see {@link #download()}.
+     *
+     * @return True if the download completed, false if it was cancelled.
+     * @throws IOException If the download still fails after every retry.
+     */
+    private boolean downloadFile() throws IOException {
+        _progress.setPhase(ProgressPhase.CONNECTING, 0.0);
+        List<Source> sources = _maxSegments == 1 && _knownSize >= 0
+                ? assumeSources(_mirrors.rank(_transport))
+                : probeSourcesWithRetry(_mirrors.rank(_transport));
+        if (sources == null) {
+            return false;
+        }
+        try {
+            return downloadFrom(sources, true);
+        } catch (ResourceChangedException e) {
+            _logger.Warn("The remote file changed since the partial download, starting over.");
+            // The sizes and validators of the first probe describe the old file, so the mirrors are probed again.
+            sources = probeSourcesWithRetry(_mirrors.rank(_transport));
+            if (sources == null) {
+                return false;
+            }
+            return downloadFrom(sources, false);
+        }
+    }
+
+    /**
+     * Downloads the file from the probed mirrors, over a single connection if range requests are not usable,
+     * otherwise in byte ranges striped across the mirrors serving the same version of the file.
+     *
+     * @param sources The reachable mirrors, fastest first.
+     * @param resume  Whether a previous partial download may be continued.
+     * @return True if the download completed, false if it was cancelled.
+     * @throws IOException If the download still fails after every retry.
+     */
+    private boolean downloadFrom(List<Source> sources, boolean resume) throws IOException {
+        _progress.setPhase(ProgressPhase.DOWNLOADING, 0.0);
+        if (!sources.get(0)._info.isSegmentable()) {
+            _logger.Debug("Range requests are not usable, downloading over a single connection.");
+            DiskSpace.ensureAvailable(_partFile, sources.get(0)._info.contentLength());
+            if (!downloadSingle(sources)) {
+                return false;
+            }
+            completeDownload();
+            return true;
+        }
+
+        List<Source> stripeSources = selectStripeSources(sources);
+        RemoteFileInfo info = stripeSources.get(0)._info;
+        DownloadState state = resume ? prepareState(info) : resetState(info);
+        DiskSpace.ensureAvailable(_partFile, info.contentLength() - state.getDownloadedBytes());
+        if (!downloadSegmented(state, stripeSources)) {
+            saveState(state);
+            return false;
+        }
+        for (Source source : stripeSources) {
+            _mirrors.recordSuccess(source._url, source._bytes.sum(), source._busyNanos.get());
+        }
+        completeDownload();
+        return true;
+    }
+
+    /**
+     * Retrieves the SHA-256 checksum computed while downloading.
+     *
+     * @return The checksum as a hexadecimal string, or null if the download has not completed.
+     */
+    public String getChecksum() {
+        return _checksum;
+    }
+
+    /**
+     * Sends a HEAD request to find out the size and validators of the remote file and whether range requests are supported.
+     * If the server rejects the HEAD request, the file is reported as not segmentable.
+     *
+     * @param url        The URL of the mirror.
+     * @return The metadata of the remote file.
+     * @throws IOException If the request fails.
+     */
+    private RemoteFileInfo probe(String url) throws IOException {
+        TransportRequest request = TransportRequest.head(url);
+        return _transport.execute(request, response -> {
+            _logger.Debug("Received probe response. Status: " + response.getStatus());
+            if (response.getStatus() != HttpStatus.SC_OK) {
+                return new RemoteFileInfo(-1, false, "", "");
+            }
+
+            long contentLength = -1;
+            String contentLengthHeader = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+            if (contentLengthHeader != null) {
+                try {
+                    contentLength = Long.parseLong(contentLengthHeader.trim());
+                } catch (NumberFormatException e) {
+                    _logger.Warn("Content-Length header value is not a valid number: " + contentLengthHeader);
+                }
+            }
+
+            String acceptRangesHeader = response.getHeader(HttpHeaders.ACCEPT_RANGES);
+            boolean acceptsRanges = acceptRangesHeader != null && acceptRangesHeader.trim().equalsIgnoreCase("bytes");
+            String etagHeader = response.getHeader(HttpHeaders.ETAG);
+            String lastModifiedHeader = response.getHeader(HttpHeaders.LAST_MODIFIED);
+            return new RemoteFileInfo(
+                    contentLength,
+                    acceptsRanges,
+                    etagHeader == null ? "" : etagHeader,
+                    lastModifiedHeader == null ? "" : lastModifiedHeader
+            );
+        });
+    }
+
+    /**
+     * Creates the mirrors of a download over a single connection from the size known by the caller,
+     * without probing them. Unreachable mirrors are found by the download itself.
+     *
+     * @param urls The URLs of the mirrors, fastest first.
+     * @return The mirrors in the given order.
+     */
+    private List<Source> assumeSources(List<String> urls) {
+        List<Source> sources = new ArrayList<>();
+        for (String url : urls) {
+            sources.add(new Source(url, new RemoteFileInfo(_knownSize, false, "", "")));
+        }
+        return sources;
+    }
+
+    /**
+     * Probes every mirror in parallel. Mirrors that cannot be reached are recorded as failed and left out.
+     *
+     * @param urls       The URLs of the mirrors, fastest first.
+     * @return The reachable mirrors in the given order.
+     * @throws IOException If none of the mirrors can be reached.
+     */
+    private List<Source> probeSources(List<String> urls) throws IOException {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<RemoteFileInfo>> futures = new ArrayList<>();
+            for (String url : urls) {
+                futures.add(executor.submit(() -> probe(url)));
+            }
+
+            List<Source> sources = new ArrayList<>();
+            IOException lastError = null;
+            for (int i = 0; i < urls.size(); i++) {
+                try {
+                    sources.add(new Source(urls.get(i), futures.get(i).get()));
+                } catch (ExecutionException e) {
+                    _logger.Warn(String.format("Failed to reach %s: %s", urls.get(i), e.getCause().getMessage()));
+                    _mirrors.recordFailure(urls.get(i));
+                    lastError = e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while probing the mirrors.");
+                }
+            }
+
+            if (sources.isEmpty()) {
+                throw lastError;
+            }
+            return sources;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Probes the mirrors, backing off and probing again while none of them can be reached.
+     *
+     * @param urls       The URLs of the mirrors, fastest first.
+     * @return The reachable mirrors in the given order, or null if the download was cancelled while waiting.
+     * @throws IOException If none of the mirrors can be reached after every retry.
+     */
+    private List<Source> probeSourcesWithRetry(List<String> urls) throws IOException {
+        for (int failedAttempts = 1; ; failedAttempts++) {
+            try {
+                return probeSources(urls);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (!RETRY_POLICY.canRetry(failedAttempts)) {
+                    throw e;
+                }
+                _logger.Warn(String.format("No mirror could be reached (attempt %d of %d), retrying: %s", failedAttempts, RETRY_POLICY.getMaxAttempts(), e.getMessage()));
+                if (!RETRY_POLICY.backOff(failedAttempts, _cancelledSupplier)) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Selects the mirrors serving exactly the same file as the reference mirror, which can share the byte ranges.
+     * The reference is the primary link if it is reachable, since the configured checksum belongs to it,
+     * otherwise the fastest mirror. Mirrors with a different size or validator are left out, as mixing them
+     * would corrupt the file.
+     *
+     * @param sources The reachable mirrors, fastest first.
+     * @return The mirrors to download the byte ranges from, starting with the reference mirror.
+     */
+    private List<Source> selectStripeSources(List<Source> sources) {
+        Source reference = sources.get(0);
+        for (Source source : sources) {
+            if (source._url.equals(_mirrors.getPrimaryUrl())) {
+                reference = source;
+            }
+        }
+
+        List<Source> stripeSources = new ArrayList<>();
+        stripeSources.add(reference);
+        for (Source source : sources) {
+            if (source == reference) {
+                continue;
+            }
+            if (source._info.isSegmentable() && reference._info.isSameFile(source._info)) {
+                stripeSources.add(source);
+            } else {
+                _logger.Warn(String.format("Mirror %s does not serve the same file as %s, not using it.", source._url, reference._url));
+            }
+        }
+        _logger.Debug(String.format("Downloading from %d mirrors.", stripeSources.size()));
+        return stripeSources;
+    }
+
+    /**
+     * Loads the state of a previous partial download if it belongs to the same remote file,
+     * otherwise discards the partial data and creates a fresh state.
+     *
+     * @param info The metadata of the remote file.
+     * @return The state to continue the download with.
+     * @throws IOException If the stale partial files cannot be deleted.
+     */
+    private DownloadState prepareState(RemoteFileInfo info) throws IOException {
+        DownloadState state = DownloadState.load(_stateFile);
+        if (state != null && state.matches(_mirrors.getPrimaryUrl(), info) && _partFile.length() == info.contentLength()) {
+            _logger.Debug(String.format("Resuming partial download, %d of %d bytes already present.", state.getDownloadedBytes(), info.contentLength()));
+            return state;
+        }
+        return resetState(info);
+    }
+
+    /**
+     * Deletes any partial data and creates a fresh state for the remote file.
+     *
+     * @param info The metadata of the remote file.
+     * @return The fresh state.
+     * @throws IOException If the stale partial files cannot be deleted.
+     */
+    private DownloadState resetState(RemoteFileInfo info) throws IOException {
+        Files.deleteIfExists(_partFile.toPath());
+        Files.deleteIfExists(_stateFile.toPath());
+        int segments = (int) Math.min(_maxSegments, Math.max(1, info.contentLength() / MIN_SEGMENT_SIZE));
+        _logger.Debug(String.format("Downloading %d bytes in %d segments.", info.contentLength(), segments));
+        return DownloadState.create(_mirrors.getPrimaryUrl(), info, segments);
+    }
+
+    /**
+     * Saves the state to the sidecar file. Failures are logged, since a missing sidecar only
+     * means the next run starts from the beginning.
+     *
+     * @param state The state to save.
+     */
+    private void saveState(DownloadState state) {
+        try {
+            state.save(_stateFile);
+        } catch (IOException e) {
+            _logger.Warn("Failed to save download state: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the state if enough time has passed since the last save.
+     *
+     * @param state The state to save.
+     */
+    private void checkpoint(DownloadState state) {
+        long now = System.currentTimeMillis();
+        long last = _lastCheckpoint.get();
+        if (now - last >= CHECKPOINT_INTERVAL_MS && _lastCheckpoint.compareAndSet(last, now)) {
+            saveState(state);
+        }
+    }
+
+    /**
+     * Moves the completed `.part` file to the output file and removes the sidecar file.
+     *
+     * @throws IOException If the file cannot be moved.
+     */
+    private void completeDownload() throws IOException {
+        _progress.setPhase(ProgressPhase.VERIFYING, 0.0);
+        FileUtils.moveReplacing(_partFile.toPath(), _outputFile.toPath());
+        Files.deleteIfExists(_stateFile.toPath());
+        _progress.setPhase(ProgressPhase.VERIFYING, 1.0);
+    }
+
+    /**
+     * Downloads the whole file over a single connection. A failed attempt starts over after a back-off,
+     * from the next mirror that is not paused. A slow first response is hedged to the next mirror.
+     *
+     * @param sources    The reachable mirrors, fastest first.
+     * @return True if the download completed, false if it was cancelled.
+     * @throws IOException If the download still fails after every retry.
+     */
+    private boolean downloadSingle(List<Source> sources) throws IOException {
+        Source source = sources.get(0);
+        for (int failedAttempts = 1; ; failedAttempts++) {
+            Source hedge = selectHedge(sources, source);
+            AtomicBoolean hedgeLaunched = new AtomicBoolean(); // Set once the breaker of the hedge let the duplicate through.
+            TransportRequest request = TransportRequest.get(source._url);
+            request.setHeader(HttpHeaders.ACCEPT_ENCODING, ContentDecoders.getAcceptEncoding());
+            if (hedge != null) {
+                // The breaker is only asked when the duplicate is actually sent, so an unused hedge does not use up its trial.
+                request.setHedgeUrl(hedge._url, () -> {
+                    hedgeLaunched.set(hedge._breaker.allowRequest());
+                    return hedgeLaunched.get();
+                });
+            }
+
+            long startBytes = source._bytes.sum();
+            long hedgeStartBytes = hedge == null ? 0 : hedge._bytes.sum();
+            long startNanos = System.nanoTime();
+            Source served = source;
+            try {
+                if (!downloadSingle(request, source, hedge)) {
+                    return false;
+                }
+                served = getServedSource(request, source, hedge);
+                served._breaker.recordSuccess();
+                _mirrors.recordSuccess(served._url, served._bytes.sum() - (served == source ? startBytes : hedgeStartBytes), System.nanoTime() - startNanos);
+                return true;
+            } catch (IOException e) {
+                served = getServedSource(request, source, hedge);
+                if (_cancelledSupplier.getAsBoolean()) {
+                    throw e;
+                }
+                recordFailure(served, e); // The mirror whose response failed, which is the hedge if it answered first.
+                if (!RETRY_POLICY.canRetry(failedAttempts)) {
+                    throw e;
+                }
+                _logger.Warn(String.format("Download from %s failed (attempt %d of %d), retrying: %s", served._url, failedAttempts, RETRY_POLICY.getMaxAttempts(), e.getMessage()));
+                if (!RETRY_POLICY.backOff(failedAttempts, _cancelledSupplier)) {
+                    return false;
+                }
+                source = selectSource(sources, served);
+            } finally {
+                if (hedgeLaunched.get() && served != hedge) {
+                    hedge._breaker.releaseTrial(); // The duplicate lost the race, so its trial has no outcome.
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the mirror that answered a single stream request.
+     *
+     * @param request The request.
+     * @param source  The mirror the request was sent to.
+     * @param hedge   The mirror a hedged duplicate may have been sent to, or null.
+     * @return The hedge if its duplicate answered first, otherwise the mirror of the request.
+     */
+    private static Source getServedSource(TransportRequest request, Source source, Source hedge) {
+        return hedge != null && request.getServedUrl().equals(hedge._url) ? hedge : source;
+    }
+
+    /**
+     * Downloads the whole file from a mirror over a single connection.
+     *
+     * @param request    The prepared request for the file.
+     * @param source     The mirror to download from.
+     * @param hedge      The mirror a hedged duplicate of the request is sent to if the first response is slow, or null.
+     * @return True if the download completed, false if it was cancelled.
+     * @throws IOException If the download fails or stalls.
+     */
+    private boolean downloadSingle(TransportRequest request, Source source, Source hedge) throws IOException {
+        StallWatchdog.Watch watch = _watchdog.watch(request::cancel);
+        try {
+            return executeSingle(request, source, hedge, watch);
+        } catch (IOException e) {
+            throw watch.isStalled() ? stalled(getServedSource(request, source, hedge), e) : e;
+        } finally {
+            watch.close();
+        }
+    }
+
+    /**
+     * Sends the request for the whole file and writes the body to the `.part` file.
+     *
+     * @param request    The prepared request.
+     * @param source     The mirror to download from.
+     * @param hedge      The mirror a hedged duplicate of the request is sent to, or null.
+     * @param watch      The watch receiving the progress of the connection.
+     * @return True if the download completed, false if it was cancelled.
+     * @throws IOException If the download fails.
+     */
+    private boolean executeSingle(TransportRequest request, Source source, Source hedge, StallWatchdog.Watch watch) throws IOException {
+        return _transport.execute(request, response -> {
+            Source served = getServedSource(request, source, hedge);
+            _logger.Debug("Received response from " + served._url + ". Status: " + response.getStatus());
+            if (response.getStatus() != HttpStatus.SC_OK) {
+                throw new IOException("Server returned non-200 status: " + response.getStatus());
+            }
+
+            // The size of an encoded body is not the size of the file, use the size reported by the probe instead.
+            String contentEncoding = response.getContentEncoding();
+            boolean encoded = !ContentDecoders.isIdentity(contentEncoding);
+            long totalBytes = encoded ? served._info.contentLength() : response.getContentLength();
+            if (encoded) {
+                _logger.Debug(String.format("Receiving %s encoded body of %d bytes.", contentEncoding, response.getContentLength()));
+            }
+
+            StreamingChecksum checksum = new StreamingChecksum();
+            _progress.reset(0, totalBytes);
+            try (InputStream is = ContentDecoders.decode(contentEncoding, openBody(response, watch, _cancelledSupplier));
+                 FileChannel channel = FileChannel.open(_partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long written = copyToChannel(is, channel, 0, null, _cancelledSupplier, (offset, chunk) -> {
+                    int length = chunk.remaining();
+                    checksum.update(offset, chunk);
+                    served._bytes.add(length);
+                    _progress.addBytes(length);
+                });
+                if (written < 0) {
+                    request.cancel(); // Do not drain the rest of the body.
+                    return false;
+                }
+            }
+            _checksum = checksum.getChecksum();
+            return true;
+        });
+    }
+
+    /**
+     * Downloads the missing parts of every byte range concurrently into the preallocated `.part` file.
+     * The connections are spread over the mirrors, and each connection keeps taking ranges until none are left.
+     *
+     * @param state      The state describing the byte ranges and their progress.
+     * @param sources    The mirrors serving the file, fastest first.
+     * @return True if the download completed, false if it was cancelled.
+     * @throws IOException If the download fails on every mirror.
+     */
+    private boolean downloadSegmented(DownloadState state, List<Source> sources) throws IOException {
+        long totalBytes = state.getContentLength();
+        AtomicBoolean aborted = new AtomicBoolean(); // Set when a connection failed, stops the others of this pass.
+        _progress.reset(state.getDownloadedBytes(), totalBytes);
+
+        int connections = (int) Math.min(_maxSegments, Math.max(1, (totalBytes - state.getDownloadedBytes()) / MIN_SEGMENT_SIZE));
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        ChunkVerifier verifier = null;
+        try (RandomAccessFile file = new RandomAccessFile(_partFile, "rw")) {
+            if (file.length() != totalBytes) {
+                // Reserves the full size up front, so every segment writes at its final offset. The file is
+                // sparse on most file systems; the free space was already checked by the caller.
+                file.setLength(totalBytes);
+            }
+            FileChannel channel = file.getChannel();
+            StreamingChecksum checksum = new StreamingChecksum(channel, state.getSegments());
+            verifier = createVerifier(channel, state);
+
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                Source source = sources.get(i % sources.size());
+                ChunkVerifier connectionVerifier = verifier;
+                futures.add(executor.submit(() -> runConnection(channel, state, checksum, connectionVerifier, sources, source, aborted)));
+            }
+
+            boolean completed = true;
+            for (Future<Boolean> future : futures) {
+                completed &= awaitSegment(future, aborted);
+            }
+            if (!completed) {
+                return false;
+            }
+
+            StreamingChecksum result = checksum;
+            if (verifier != null) {
+                List<Integer> corrupt = verifier.awaitCorruptChunks();
+                if (!corrupt.isEmpty()) {
+                    repairChunks(channel, state, sources, corrupt);
+                    // The corrupt data went into the streaming checksum, so the repaired file is hashed again.
+                    result = new StreamingChecksum(channel, state.getSegments());
+                }
+            }
+
+            if (result.getHashedBytes() != totalBytes) {
+                throw new IOException(String.format("Only %d of %d bytes were hashed.", result.getHashedBytes(), totalBytes));
+            }
+            _checksum = result.getChecksum();
+            return true;
+        } catch (IOException e) {
+            saveState(state); // Keep the progress of the segments that did succeed.
+            throw e;
+        } finally {
+            executor.shutdownNow();
+            executor.close(); // Waits for the stopped connections, so none of them outlives this pass.
+            if (verifier != null) {
+                verifier.close();
+            }
+        }
+    }
+
+    /**
+     * Creates the verifier of the chunks if a chunk manifest matching the file is available.
+     * The chunks already present from a previous run are verified as well.
+     *
+     * @param channel The channel of the preallocated output file.
+     * @param state   The state describing the byte ranges and their progress.
+     * @return The verifier, or null if the chunks cannot be verified.
+     */
+    private ChunkVerifier createVerifier(FileChannel channel, DownloadState state) {
+        if (_chunkManifest == null) {
+            return null;
+        }
+        if (_chunkManifest.getFileSize() != state.getContentLength()) {
+            _logger.Warn(String.format("The chunk manifest describes %d bytes but the file has %d, not verifying chunks.", _chunkManifest.getFileSize(), state.getContentLength()));
+            return null;
+        }
+
+        ChunkVerifier verifier = new ChunkVerifier(_chunkManifest, channel);
+        for (DownloadState.Segment segment : state.getSegments()) {
+            verifier.onWritten(segment.getStart(), segment.getNextOffset() - segment.getStart());
+        }
+        return verifier;
+    }
+
+    /**
+     * Downloads the chunks that failed verification again, each with its own range request. A chunk is only
+     * written to the file once its data matches the checksum, and is retried on the other mirrors otherwise.
+     *
+     * @param channel The channel of the output file.
+     * @param state   The state of the download, providing the validator.
+     * @param sources The mirrors serving the file, fastest first.
+     * @param corrupt The indexes of the corrupt chunks.
+     * @throws IOException If a chunk still does not match its checksum after every retry.
+     */
+    private void repairChunks(FileChannel channel, DownloadState state, List<Source> sources, List<Integer> corrupt) throws IOException {
+        for (int index : corrupt) {
+            long start = _chunkManifest.getChunkStart(index);
+            long end = start + _chunkManifest.getChunkLength(index) - 1;
+            _logger.Warn(String.format("Chunk %d (bytes %d-%d) failed verification, downloading it again.", index, start, end));
+
+            boolean repaired = false;
+            for (int failedAttempts = 1; !repaired; failedAttempts++) {
+                Source source = sources.get((index + failedAttempts) % sources.size()); // Rotates over the mirrors.
+                String error;
+                try {
+                    repaired = fetchChunk(channel, state, source, index);
+                    error = "checksum mismatch";
+                } catch (ResourceChangedException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (_cancelledSupplier.getAsBoolean()) {
+                        throw e;
+                    }
+                    error = e.getMessage();
+                }
+
+                if (!repaired) {
+                    if (!RETRY_POLICY.canRetry(failedAttempts)) {
+                        throw new IOException(String.format("Chunk %d could not be repaired: %s", index, error));
+                    }
+                    if (!RETRY_POLICY.backOff(failedAttempts, _cancelledSupplier)) {
+                        throw new InterruptedIOException("Cancelled while repairing chunk " + index + ".");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Downloads a single chunk into memory and writes it to the file if it matches its checksum.
+     *
+     * @param channel The channel of the output file.
+     * @param state   The state of the download, providing the validator.
+     * @param source  The mirror to download from.
+     * @param index   The index of the chunk.
+     * @return True if the chunk matched its checksum and was written, false if it did not match.
+     * @throws IOException If the request fails or the server does not honor the range.
+     */
+    private boolean fetchChunk(FileChannel channel, DownloadState state, Source source, int index) throws IOException {
+        long start = _chunkManifest.getChunkStart(index);
+        int length = _chunkManifest.getChunkLength(index);
+        TransportRequest request = TransportRequest.get(source._url);
+        request.setHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + (start + length - 1));
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        String validator = state.getValidator();
+        if (validator != null) {
+            request.setHeader(HttpHeaders.IF_RANGE, validator);
+        }
+
+        return _transport.execute(request, response -> {
+            if (response.getStatus() == HttpStatus.SC_OK && request.containsHeader(HttpHeaders.IF_RANGE)) {
+                throw new ResourceChangedException();
+            }
+            if (response.getStatus() != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new IOException(String.format("Server returned status %d for chunk %d.", response.getStatus(), index));
+            }
+
+            if (!ContentDecoders.isIdentity(response.getContentEncoding())) {
+                throw new IOException(String.format("Server sent an unusable body for chunk %d.", index));
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            try (InputStream is = openBody(response, null, _cancelledSupplier)) {
+                if (fill(Channels.newChannel(is), buffer) != length) {
+                    throw new IOException(String.format("Chunk %d ended early.", index));
+                }
+            }
+            buffer.flip();
+            if (!_chunkManifest.verify(index, buffer.duplicate())) {
+                return false;
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, start + buffer.position());
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Waits for a connection to finish. If the connection failed, the remaining connections are stopped.
+     *
+     * @param future  The future of the connection.
+     * @param aborted The flag stopping the connections of the download pass.
+     * @return True if the connection completed, false if it was cancelled.
+     * @throws IOException If the connection failed or the wait was interrupted.
+     */
+    private boolean awaitSegment(Future<Boolean> future, AtomicBoolean aborted) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            aborted.set(true);
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Segment download failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            aborted.set(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for segment download.");
+        }
+    }
+
+    /**
+     * Downloads byte ranges over a single connection until the whole file is assigned. A failed request
+     * releases its range, which continues from its current offset after a back-off, from the next mirror
+     * that is not paused. Only failures in a row without any progress count towards the retry limit.
+     *
+     * @param channel    The channel of the preallocated output file.
+     * @param state      The state of the download, handing out the byte ranges.
+     * @param checksum   The checksum fed with the written bytes.
+     * @param verifier   The verifier of the chunks fed with the written bytes, or null.
+     * @param sources    The mirrors serving the file, fastest first.
+     * @param source     The mirror the connection starts with.
+     * @param aborted    The flag stopping the connections of the download pass, set if this connection fails.
+     * @return True if no ranges are left, false if the download was cancelled or aborted.
+     * @throws IOException If a range still fails after every retry or the remote file changed.
+     */
+    private boolean runConnection(FileChannel channel, DownloadState state, StreamingChecksum checksum, ChunkVerifier verifier, List<Source> sources, Source source, AtomicBoolean aborted) throws IOException {
+        try {
+            int failedAttempts = 0;
+            while (!isStopped(aborted)) {
+                DownloadState.Segment segment = state.acquireSegment(MIN_SEGMENT_SIZE);
+                if (segment == null) {
+                    return true; // Every remaining range is being downloaded and too small to split.
+                }
+
+                long startOffset = segment.getNextOffset();
+                IOException error = null;
+                try {
+                    if (!downloadRange(channel, state, segment, checksum, verifier, source, aborted)) {
+                        return false;
+                    }
+                } catch (ResourceChangedException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (_cancelledSupplier.getAsBoolean()) {
+                        throw e;
+                    }
+                    error = e;
+                } finally {
+                    state.releaseSegment(segment); // Another connection may continue the range during the back-off.
+                }
+
+                if (error == null) {
+                    source._breaker.recordSuccess();
+                    failedAttempts = 0;
+                    continue;
+                }
+
+                failedAttempts = segment.getNextOffset() > startOffset ? 1 : failedAttempts + 1;
+                recordFailure(source, error);
+                if (!RETRY_POLICY.canRetry(failedAttempts)) {
+                    throw error;
+                }
+                _logger.Warn(String.format("Range request to %s failed (attempt %d of %d), retrying from byte %d: %s",
+                        source._url, failedAttempts, RETRY_POLICY.getMaxAttempts(), segment.getNextOffset(), error.getMessage()));
+                if (!RETRY_POLICY.backOff(failedAttempts, () -> isStopped(aborted))) {
+                    return false;
+                }
+                source = selectSource(sources, source);
+            }
+            return false;
+        } catch (IOException e) {
+            aborted.set(true); // Stop the other connections, the download cannot complete anymore.
+            throw e;
+        }
+    }
+
+    /**
+     * Records a failed request to a mirror. The mirror is paused and remembered as failed
+     * once its circuit breaker opens.
+     *
+     * @param source The mirror that failed.
+     * @param error  The error the mirror failed with.
+     */
+    private void recordFailure(Source source, IOException error) {
+        if (source._breaker.recordFailure()) {
+            _logger.Warn(String.format("Pausing mirror %s for %d s after repeated failures: %s", source._url, BREAKER_OPEN_MS / 1000, error.getMessage()));
+            _mirrors.recordFailure(source._url);
+        }
+    }
+
+    /**
+     * Picks the mirror for the next attempt of a connection: the next mirror after the current one,
+     * in ranking order, whose circuit breaker lets requests through.
+     *
+     * @param sources The mirrors serving the file, fastest first.
+     * @param current The mirror of the failed attempt.
+     * @return The mirror to use, or the current one if every mirror is paused.
+     */
+    private Source selectSource(List<Source> sources, Source current) {
+        int index = sources.indexOf(current);
+        for (int i = 1; i <= sources.size(); i++) {
+            Source candidate = sources.get((index + i) % sources.size());
+            if (candidate._breaker.allowRequest()) {
+                return candidate;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Picks the mirror a slow single stream request is hedged to: the next mirror after the current one
+     * whose circuit breaker is not open. The breaker itself is only asked once the duplicate is sent.
+     *
+     * @param sources The reachable mirrors, fastest first.
+     * @param current The mirror of the request.
+     * @return The mirror to hedge to, or null if there is no other mirror available.
+     */
+    private Source selectHedge(List<Source> sources, Source current) {
+        int index = sources.indexOf(current);
+        for (int i = 1; i < sources.size(); i++) {
+            Source candidate = sources.get((index + i) % sources.size());
+            if (!candidate._breaker.isOpen()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the connections should stop, because the download was cancelled or another connection failed.
+     *
+     * @param aborted The flag stopping the connections of the download pass.
+     * @return True if the connections should stop.
+     */
+    private boolean isStopped(AtomicBoolean aborted) {
+        return _cancelledSupplier.getAsBoolean() || aborted.get();
+    }
+
+    /**
+     * Calculates the throughput below which a connection counts as stalled. With a bandwidth limit,
+     * the threshold is lowered so connections slowed down by the limit are not mistaken for stalls.
+     *
+     * @param bandwidthLimiter Limits the combined throughput of the connections.
+     * @param connections      The maximum number of connections sharing the limit.
+     * @return The minimum throughput of a connection, in bytes per second.
+     */
+    private static long getStallThreshold(BandwidthLimiter bandwidthLimiter, int connections) {
+        long limit = bandwidthLimiter.getRate();
+        if (limit <= 0) {
+            return STALL_MIN_BYTES_PER_SECOND;
+        }
+        return Math.min(STALL_MIN_BYTES_PER_SECOND, limit / (2L * connections));
+    }
+
+    /**
+     * Creates the error reported for a connection aborted by the stall watchdog.
+     *
+     * @param source The mirror of the connection.
+     * @param cause  The error the aborted request failed with.
+     * @return The error describing the stall.
+     */
+    private IOException stalled(Source source, IOException cause) {
+        return new IOException(String.format("Connection to %s stalled below %d B/s for %d s.",
+                source._url, _watchdog.getMinBytesPerSecond(), STALL_WINDOW_MS / 1000), cause);
+    }
+
+    /**
+     * Downloads the missing part of a byte range from a mirror and writes it to its offset in the output file.
+     * If another connection takes over the tail of the range meanwhile, the download stops at the new end.
+     *
+     * @param channel    The channel of the preallocated output file.
+     * @param state      The state of the download, saved periodically.
+     * @param segment    The byte range to download.
+     * @param checksum   The checksum fed with the written bytes.
+     * @param verifier   The verifier of the chunks fed with the written bytes, or null.
+     * @param source     The mirror to download from.
+     * @param aborted    The flag stopping the connections of the download pass.
+     * @return True if the range was downloaded, false if the download was cancelled or aborted.
+     * @throws IOException If the request fails or stalls, or the server does not honor the range.
+     */
+    private boolean downloadRange(FileChannel channel, DownloadState state, DownloadState.Segment segment, StreamingChecksum checksum, ChunkVerifier verifier, Source source, AtomicBoolean aborted) throws IOException {
+        long start = segment.getNextOffset();
+        long end = segment.getEnd();
+        TransportRequest request = TransportRequest.get(source._url);
+        request.setHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + end);
+        // Ranges of an encoded body cannot be decoded on their own, so ranges are always requested unencoded.
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        String validator = state.getValidator();
+        if (validator != null) {
+            // If the file changed on the server, the whole file is sent instead of the range.
+            request.setHeader(HttpHeaders.IF_RANGE, validator);
+        }
+
+        StallWatchdog.Watch watch = _watchdog.watch(request::cancel);
+        long startNanos = System.nanoTime();
+        try {
+            return _transport.execute(request, response -> {
+                if (response.getStatus() == HttpStatus.SC_OK && request.containsHeader(HttpHeaders.IF_RANGE)) {
+                    throw new ResourceChangedException();
+                }
+                if (response.getStatus() != HttpStatus.SC_PARTIAL_CONTENT) {
+                    throw new IOException(String.format("Server returned status %d for range %d-%d.", response.getStatus(), start, end));
+                }
+
+                if (!ContentDecoders.isIdentity(response.getContentEncoding())) {
+                    throw new IOException(String.format("Server sent range %d-%d with Content-Encoding %s.", start, end, response.getContentEncoding()));
+                }
+
+                try (InputStream is = openBody(response, watch, () -> isStopped(aborted))) {
+                    long position = copyToChannel(is, channel, start, segment, () -> isStopped(aborted), (offset, chunk) -> {
+                        int length = chunk.remaining();
+                        segment.advance(length);
+                        if (verifier != null) {
+                            verifier.onWritten(offset, length);
+                        }
+                        checksum.update(offset, chunk);
+                        source._bytes.add(length);
+                        _progress.addBytes(length);
+                        checkpoint(state);
+                    });
+
+                    if (position < 0) {
+                        request.cancel(); // Do not drain the rest of the range.
+                        return false;
+                    }
+                    if (position != segment.getEnd() + 1) {
+                        throw new IOException(String.format("Range %d-%d ended early at byte %d.", start, end, position));
+                    }
+                    if (segment.getEnd() < end) {
+                        request.cancel(); // The tail was taken over by another connection, do not drain it.
+                    } else if (is.read() != -1) {
+                        throw new IOException(String.format("Server sent more data than requested, expected the body to end at byte %d.", end));
+                    }
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            throw watch.isStalled() ? stalled(source, e) : e;
+        } finally {
+            watch.close();
+            source._busyNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Opens the raw body of a response, counting the received bytes and applying the bandwidth limit.
+     * The watch of the connection is fed on every read rather than every write to the file, since filling
+     * a large buffer from a slow or throttled connection can take longer than the stall window.
+     *
+     * @param response The response.
+     * @param watch    The watch receiving the progress of the connection, or null if it is not watched.
+     * @param stopped  Tells if the download was cancelled or aborted, ending a wait for the bandwidth limit.
+     * @return The metered body, before any content decoding.
+     * @throws IOException If the body cannot be opened.
+     */
+    private InputStream openBody(TransportResponse response, StallWatchdog.Watch watch, BooleanSupplier stopped) throws IOException {
+        return new MeteredInputStream(response.getBody(), bytes -> {
+            _progress.addWireBytes(bytes);
+            if (watch != null) {
+                watch.addBytes(bytes);
+            }
+        }, _bandwidthLimiter, stopped);
+    }
+
+    /**
+     * Copies a response body into the file at the given offset, using a pooled direct buffer
+     * sized according to the throughput of the connection.
+     *
+     * @param is       The response body.
+     * @param channel  The channel of the output file.
+     * @param position The offset in the file where the first byte is written.
+     * @param segment  The byte range being written, whose end may move back while copying, or null if the length is unknown.
+     * @param stopped  Tells if the download was cancelled or aborted.
+     * @param listener Notified after every write with the offset and a view of the written bytes.
+     * @return The offset after the last written byte, or -1 if the download was cancelled or aborted.
+     * @throws IOException If reading or writing fails.
+     */
+    private long copyToChannel(InputStream is, FileChannel channel, long position, DownloadState.Segment segment, BooleanSupplier stopped, ChunkListener listener) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(is);
+        try (AdaptiveBuffer adaptiveBuffer = new AdaptiveBuffer()) {
+            while (segment == null || position <= segment.getEnd()) {
+                if (stopped.getAsBoolean()) {
+                    return -1;
+                }
+
+                ByteBuffer buffer = adaptiveBuffer.get();
+                buffer.clear();
+                if (segment != null) {
+                    buffer.limit((int) Math.min(buffer.capacity(), segment.getEnd() + 1 - position));
+                }
+                int bytesRead = fill(source, buffer);
+                if (bytesRead <= 0) {
+                    return position; // End of the body.
+                }
+
+                buffer.flip();
+                if (segment != null) {
+                    // The tail of the range may have been taken over while the buffer was filling.
+                    buffer.limit(segment.claim(position, bytesRead));
+                }
+                if (buffer.hasRemaining()) {
+                    ByteBuffer chunk = buffer.duplicate(); // View of the written bytes for the listener.
+                    long writeOffset = position;
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    listener.onChunk(writeOffset, chunk);
+                }
+                adaptiveBuffer.record(bytesRead);
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Reads from the channel until the buffer is full or the end of the stream is reached,
+     * so every write to the file moves as much data as possible.
+     *
+     * @param source The channel to read from.
+     * @param buffer The buffer to fill.
+     * @return The number of bytes read, or -1 if the stream ended before any byte was read.
+     * @throws IOException If reading fails.
+     */
+    private static int fill(ReadableByteChannel source, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int bytesRead = source.read(buffer);
+            if (bytesRead < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    /**
+     * Receives the chunks written to the output file.
+     */
+    @FunctionalInterface
+    private interface ChunkListener {
+        /**
+         * Called after a chunk has been written to the output file.
+         *
+         * @param offset The offset in the file where the chunk was written.
+         * @param chunk  A view of the written bytes, positioned at the first byte.
+         * @throws IOException If processing the chunk fails.
+         */
+        void onChunk(long offset, ByteBuffer chunk) throws IOException;
+    }
+
+    /**
+     * A mirror serving the file, together with the statistics of this download.
+     */
+    private static class Source {
+        private final String _url; // The URL of the mirror.
+        private final RemoteFileInfo _info; // The metadata of the file on the mirror.
+        private final LongAdder _bytes = new LongAdder(); // Bytes downloaded from the mirror.
+        private final AtomicLong _busyNanos = new AtomicLong(); // Time spent in requests to the mirror, summed over connections.
+        private final CircuitBreaker _breaker = new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MS); // Pauses the mirror after repeated failures.
+
+        /**
+         * Constructs a new `Source` instance.
+         *
+         * @param url  The URL of the mirror.
+         * @param info The metadata of the file on the mirror.
+         */
+        private Source(String url, RemoteFileInfo info) {
+            _url = url;
+            _info = info;
+        }
+    }
+
+    /**
+     * Thrown when the server ignores an If-Range request because the remote file has changed,
+     * meaning the partial data on disk belongs to an older version of the file.
+     */
+    private static class ResourceChangedException extends IOException {
+        /**
+         * Constructs a new `ResourceChangedException` instance.
+         */
+        public ResourceChangedException() {
+            super("The remote file changed while resuming the download.");
+        }
+    }
+}
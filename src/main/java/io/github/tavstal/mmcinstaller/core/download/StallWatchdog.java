@@ -0,0 +1,146 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Detects connections that are still open but no longer move data at a useful rate.
+ * <br/>
+ * Every connection registers a {@link Watch} and reports the bytes it receives. A single checker thread
+ * measures the throughput of each watch over a fixed window. When a window ends below the minimum rate,
+ * the watch is marked as stalled and its stall action runs, which usually aborts the request so the
+ * connection can reconnect. A blocked read never reports anything, so it is caught the same way.
+ */
+public class StallWatchdog implements AutoCloseable {
+    private final static long CHECK_INTERVAL_MS = 1000; // Time between two checks of the watches.
+
+    private final long _windowNanos; // Length of the window the throughput is measured over.
+    private final LongSupplier _minBytesPerSecond; // Returns the rate below which a connection counts as stalled.
+    private final Set<Watch> _watches = ConcurrentHashMap.newKeySet(); // The connections being watched.
+    private final ScheduledExecutorService _scheduler; // Runs the checks at a fixed rate.
+
+    /**
+     * Constructs a new `StallWatchdog` instance and starts checking.
+     *
+     * @param windowMillis      Length of the window the throughput is measured over, in milliseconds.
+     * @param minBytesPerSecond Returns the rate in bytes per second below which a connection counts as stalled,
+     *                          0 or less to disable the check. Queried at the end of every window.
+     */
+    public StallWatchdog(long windowMillis, LongSupplier minBytesPerSecond) {
+        _windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        _minBytesPerSecond = minBytesPerSecond;
+        _scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stall-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _scheduler.scheduleAtFixedRate(this::check, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts watching a connection. The first window starts now.
+     *
+     * @param onStall Called once from the checker thread when the connection stalls.
+     * @return The watch, which must be closed when the connection is done.
+     */
+    public Watch watch(Runnable onStall) {
+        Watch watch = new Watch(onStall);
+        _watches.add(watch);
+        return watch;
+    }
+
+    /**
+     * Retrieves the current rate below which a connection counts as stalled.
+     *
+     * @return The minimum rate in bytes per second, 0 or less if the check is disabled.
+     */
+    public long getMinBytesPerSecond() {
+        return _minBytesPerSecond.getAsLong();
+    }
+
+    /**
+     * Stops checking. Open watches are never marked as stalled afterwards.
+     */
+    @Override
+    public void close() {
+        _scheduler.shutdownNow();
+        _watches.clear();
+    }
+
+    /**
+     * Ends the window of every watch whose window has passed, and stalls the ones below the minimum rate.
+     */
+    private void check() {
+        long now = System.nanoTime();
+        long minBytesPerSecond = _minBytesPerSecond.getAsLong();
+        for (Watch watch : _watches) {
+            long elapsed = now - watch._windowStartNanos;
+            if (watch._stalled || elapsed < _windowNanos) {
+                continue;
+            }
+
+            long bytes = watch._bytes.get();
+            double bytesPerSecond = (bytes - watch._windowStartBytes) * 1_000_000_000.0 / elapsed;
+            if (minBytesPerSecond > 0 && bytesPerSecond < minBytesPerSecond) {
+                watch._stalled = true;
+                _watches.remove(watch);
+                watch._onStall.run();
+            } else {
+                watch._windowStartNanos = now;
+                watch._windowStartBytes = bytes;
+            }
+        }
+    }
+
+    /**
+     * The progress of a single watched connection.
+     */
+    public class Watch implements AutoCloseable {
+        private final Runnable _onStall; // Called when the connection stalls.
+        private final AtomicLong _bytes = new AtomicLong(); // Bytes received since the watch started.
+        private volatile boolean _stalled; // Set when the connection was found stalled.
+        // Window state, only accessed by the checker thread.
+        private long _windowStartNanos = System.nanoTime();
+        private long _windowStartBytes;
+
+        /**
+         * Constructs a new `Watch` instance.
+         *
+         * @param onStall Called when the connection stalls.
+         */
+        private Watch(Runnable onStall) {
+            _onStall = onStall;
+        }
+
+        /**
+         * Records bytes received by the connection. Safe to call from any thread.
+         *
+         * @param bytes The number of bytes received.
+         */
+        public void addBytes(long bytes) {
+            _bytes.addAndGet(bytes);
+        }
+
+        /**
+         * Checks if the connection was found stalled.
+         *
+         * @return True if the stall action has run.
+         */
+        public boolean isStalled() {
+            return _stalled;
+        }
+
+        /**
+         * Stops watching the connection.
+         */
+        @Override
+        public void close() {
+            _watches.remove(this);
+        }
+    }
+}
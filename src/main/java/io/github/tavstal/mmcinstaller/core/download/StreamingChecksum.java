@@ -0,0 +1,146 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Computes the SHA-256 checksum of a file while it is being downloaded, so it does not have to be
+ * read again from disk once the download is complete.
+ * <br/>
+ * The digest must be fed in file order. Bytes written at the current hash position are hashed
+ * straight from the download buffer. Bytes written further ahead by other segments are already on
+ * disk, and are read back from the channel (usually still in the page cache) once the hash position
+ * reaches them.
+ */
+public class StreamingChecksum {
+    private static final int READ_BUFFER_SIZE = 64 * 1024; // Size of the buffer used to catch up on data written ahead.
+
+    private final MessageDigest _digest; // The digest fed in file order.
+    private final FileChannel _channel; // The channel of the output file, or null for sequential downloads.
+    private final List<DownloadState.Segment> _segments; // The byte ranges of the file, ordered by offset.
+    private ByteBuffer _readBuffer; // Buffer used to read back data written ahead of the hash position.
+    private long _hashedBytes; // The number of bytes hashed from the start of the file.
+
+    /**
+     * Constructs a new `StreamingChecksum` instance for a sequential download.
+     * Every update must continue exactly where the previous one ended.
+     */
+    public StreamingChecksum() {
+        _digest = createDigest();
+        _channel = null;
+        _segments = List.of();
+    }
+
+    /**
+     * Constructs a new `StreamingChecksum` instance for a segmented download.
+     * Data already present in the file (from a resumed download) is hashed immediately.
+     *
+     * @param channel  The channel of the output file.
+     * @param segments The byte ranges of the file, ordered by offset. Ranges added later are picked up.
+     * @throws IOException If the existing data cannot be read.
+     */
+    public StreamingChecksum(FileChannel channel, List<DownloadState.Segment> segments) throws IOException {
+        _digest = createDigest();
+        _channel = channel;
+        _segments = segments;
+        synchronized (this) {
+            catchUp();
+        }
+    }
+
+    /**
+     * Records that bytes have been written to the file. The segment owning the bytes must already
+     * have been advanced past them.
+     *
+     * @param position The offset in the file where the bytes were written.
+     * @param data     The written bytes, from the buffer position to its limit. The buffer is consumed.
+     * @throws IOException If data written ahead of the hash position cannot be read back.
+     */
+    public synchronized void update(long position, ByteBuffer data) throws IOException {
+        if (position == _hashedBytes) {
+            int length = data.remaining();
+            _digest.update(data);
+            _hashedBytes += length;
+        } else if (_channel == null) {
+            throw new IllegalStateException(String.format("Sequential checksum expected offset %d but got %d.", _hashedBytes, position));
+        }
+        catchUp();
+    }
+
+    /**
+     * Retrieves the number of bytes hashed from the start of the file.
+     *
+     * @return The number of hashed bytes.
+     */
+    public synchronized long getHashedBytes() {
+        return _hashedBytes;
+    }
+
+    /**
+     * Completes the digest and returns the checksum. Must only be called once, after every byte has been hashed.
+     *
+     * @return The SHA-256 checksum as a hexadecimal string.
+     */
+    public synchronized String getChecksum() {
+        return HexFormat.of().formatHex(_digest.digest());
+    }
+
+    /**
+     * Hashes the contiguous data that is on disk beyond the hash position.
+     *
+     * @throws IOException If the data cannot be read.
+     */
+    private void catchUp() throws IOException {
+        if (_channel == null) {
+            return;
+        }
+
+        for (DownloadState.Segment segment : _segments) {
+            if (_hashedBytes > segment.getEnd()) {
+                continue; // Already hashed.
+            }
+            if (segment.getStart() > _hashedBytes) {
+                return; // A range split off meanwhile is not in this snapshot of the list yet.
+            }
+
+            long available = segment.getNextOffset();
+            while (_hashedBytes < available) {
+                if (_readBuffer == null) {
+                    _readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                }
+                _readBuffer.clear();
+                _readBuffer.limit((int) Math.min(READ_BUFFER_SIZE, available - _hashedBytes));
+                int bytesRead = _channel.read(_readBuffer, _hashedBytes);
+                if (bytesRead <= 0) {
+                    throw new EOFException("Unexpected end of file at byte " + _hashedBytes + " while computing checksum.");
+                }
+                _readBuffer.flip();
+                _digest.update(_readBuffer);
+                _hashedBytes += bytesRead;
+            }
+
+            if (_hashedBytes <= segment.getEnd()) {
+                return; // The segment is still downloading, the rest of the file is not contiguous yet.
+            }
+        }
+    }
+
+    /**
+     * Creates the SHA-256 digest.
+     *
+     * @return The SHA-256 digest.
+     */
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this runtime.", e);
+        }
+    }
+}
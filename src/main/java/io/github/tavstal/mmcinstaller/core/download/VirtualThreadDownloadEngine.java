@@ -0,0 +1,350 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressPhase;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DownloadEngine} running every download on its own virtual thread.
+ * <br/>
+ * The segments of a download run on virtual threads as well (see {@link SegmentedDownloader}), so a thread
+ * blocked on the network only holds a small heap object instead of a platform thread and its stack.
+ * <br/>
+ * Files with a known checksum are taken from the {@link ArtifactCache} when possible, and added to it
+ * once downloaded and verified. If the request names a {@link ChunkManifest}, the chunks of the file are
+ * verified during the download. Installed files can be updated by downloading only their changed zip
+ * entries (see {@link ZipDeltaUpdater}), or the blocks missing from the old copy if {@link BlockChecksums}
+ * are published (see {@link BlockDeltaDownloader}). Offline installers copy their {@link EmbeddedPayload}
+ * instead of downloading the file. Files with a known checksum are taken from installers on the local network
+ * when a {@link PeerLocator} finds one holding them (see {@link PeerCacheServer}).
+ */
+public class VirtualThreadDownloadEngine implements DownloadEngine {
+    private final InstallerLogger _logger; // Logger instance for logging download-related messages.
+    private final Transport _transport; // The shared transport used by every download.
+    private final File _mirrorHistoryFile; // The file storing the throughput history of the mirrors.
+    private final BandwidthLimiter _bandwidthLimiter; // Limits the combined throughput of every download.
+    private final ArtifactCache _cache; // The local cache of downloaded files, or null to always download.
+    private final PeerLocator _peers; // Finds installers on the local network holding a file, or null to only use the links.
+    private final ExecutorService _executor = Executors.newVirtualThreadPerTaskExecutor(); // Starts a virtual thread per download.
+
+    /**
+     * Constructs a new `VirtualThreadDownloadEngine` instance.
+     *
+     * @param transport         The transport used by every download. Not closed by the engine.
+     * @param mirrorHistoryFile The file storing the throughput history of the mirrors.
+     * @param bandwidthLimiter  Limits the combined throughput of every download.
+     * @param cache             The local cache of downloaded files, or null to always download.
+     * @param peers             Finds installers on the local network holding a file, or null to only use the links.
+     */
+    public VirtualThreadDownloadEngine(Transport transport, File mirrorHistoryFile, BandwidthLimiter bandwidthLimiter, ArtifactCache cache, PeerLocator peers) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _transport = transport;
+        _mirrorHistoryFile = mirrorHistoryFile;
+        _bandwidthLimiter = bandwidthLimiter;
+        _cache = cache;
+        _peers = peers;
+    }
+
+    /**
+     * Starts downloading a file on a new virtual thread, unless it can be taken from the cache.
+     *
+     * @param request The file to download.
+     * @return A future completing with the SHA-256 checksum of the file as a hexadecimal string.
+     */
+    @Override
+    public CompletableFuture<String> download(DownloadRequest request) {
+        return start(request, false);
+    }
+
+    /**
+     * Starts updating an installed zip file on a new virtual thread, unless it can be taken from the cache.
+     * The whole file is downloaded if the delta update fails.
+     *
+     * @param request The file to update.
+     * @return A future completing with the SHA-256 checksum of the file as a hexadecimal string.
+     */
+    @Override
+    public CompletableFuture<String> update(DownloadRequest request) {
+        return start(request, true);
+    }
+
+    /**
+     * Starts downloading or updating a file on a new virtual thread, unless it can be taken from the cache.
+     *
+     * @param request The file to download.
+     * @param update  True to try a delta update of the installed file first.
+     * @return A future completing with the SHA-256 checksum of the file as a hexadecimal string.
+     */
+    private CompletableFuture<String> start(DownloadRequest request, boolean update) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        _executor.execute(() -> {
+            try (ProgressTracker progress = new ProgressTracker(request.progressListener(), _bandwidthLimiter::getRate)) {
+                progress.start();
+                if (_cache != null && _cache.materialize(request.sha256(), request.outputFile())) {
+                    long size = request.outputFile().length();
+                    progress.reset(size, size);
+                    progress.setPhase(ProgressPhase.VERIFYING, 1.0);
+                    future.complete(request.sha256());
+                    return;
+                }
+                if (_peers != null && _peers.fetch(request.sha256(), request.outputFile(), progress, _bandwidthLimiter, future::isCancelled)) {
+                    if (_cache != null) {
+                        _cache.store(request.sha256(), request.outputFile());
+                    }
+                    future.complete(request.sha256());
+                    return;
+                }
+
+                if (update && (updateZip(request, progress, future) || updateFromBlocks(request, progress, future))) {
+                    if (!future.isCancelled() && _cache != null) {
+                        _cache.store(request.sha256(), request.outputFile());
+                    }
+                    return;
+                }
+
+                SegmentedDownloader downloader = new SegmentedDownloader(
+                        _transport,
+                        new MirrorSelector(request.urls(), _mirrorHistoryFile),
+                        request.outputFile(),
+                        request.segments(),
+                        fetchChunkManifest(request.chunksUrl()),
+                        progress,
+                        _bandwidthLimiter,
+                        future::isCancelled
+                );
+
+                if (downloader.download()) {
+                    if (_cache != null && downloader.getChecksum().equalsIgnoreCase(request.sha256())) {
+                        _cache.store(downloader.getChecksum(), request.outputFile());
+                    }
+                    future.complete(downloader.getChecksum());
+                } else {
+                    _logger.Debug("Download of " + request.outputFile().getName() + " cancelled.");
+                    future.cancel(false);
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                flushCache();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Starts copying an embedded payload to disk on a new virtual thread, see {@link PayloadExtractor}.
+     *
+     * @param payload The embedded payload.
+     * @param request The file receiving the payload.
+     * @return A future completing with the SHA-256 checksum of the file as a hexadecimal string.
+     */
+    @Override
+    public CompletableFuture<String> extract(EmbeddedPayload payload, DownloadRequest request) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        _executor.execute(() -> {
+            try (ProgressTracker progress = new ProgressTracker(request.progressListener(), _bandwidthLimiter::getRate)) {
+                progress.start();
+                PayloadExtractor extractor = new PayloadExtractor(payload, request.outputFile(), progress, future::isCancelled);
+                if (extractor.extract()) {
+                    future.complete(extractor.getChecksum());
+                } else {
+                    _logger.Debug("Extraction of " + request.outputFile().getName() + " cancelled.");
+                    future.cancel(false);
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Starts installing the artifacts of a manifest on a new virtual thread. The workers of the
+     * {@link ArtifactScheduler} run on virtual threads as well.
+     *
+     * @param request The artifacts to install.
+     * @return A future completing once every artifact is installed and verified.
+     */
+    @Override
+    public CompletableFuture<Void> downloadArtifacts(ArtifactRequest request) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        _executor.execute(() -> {
+            try (ProgressTracker progress = new ProgressTracker(request.progressListener(), _bandwidthLimiter::getRate)) {
+                progress.start();
+                ArtifactScheduler scheduler = new ArtifactScheduler(
+                        _transport,
+                        _bandwidthLimiter,
+                        request.workers(),
+                        request.connectionsPerHost(),
+                        request.segments(),
+                        _cache,
+                        _peers,
+                        progress,
+                        future::isCancelled
+                );
+
+                if (scheduler.install(request.manifest(), request.baseDirectory())) {
+                    future.complete(null);
+                } else {
+                    _logger.Debug("Installation of the artifacts cancelled.");
+                    future.cancel(false);
+                }
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                flushCache();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Tries to update the installed file by downloading only the zip entries that changed.
+     *
+     * @param request  The file to update.
+     * @param progress Tracks the progress of the update.
+     * @param future   The future of the download, completed or cancelled if the update ended.
+     * @return True if the future was completed or cancelled, false if the whole file has to be downloaded.
+     * @throws InsufficientSpaceException If the disk has no room for the new version, which a full download would not have either.
+     */
+    private boolean updateZip(DownloadRequest request, ProgressTracker progress, CompletableFuture<String> future) throws InsufficientSpaceException {
+        if (request.sha256() == null || request.sha256().isEmpty() || !ZipDeltaUpdater.isZipFile(request.outputFile())) {
+            return false; // Not a zip file, or the assembled file could not be verified.
+        }
+
+        ZipDeltaUpdater updater = new ZipDeltaUpdater(
+                _transport,
+                request.urls().get(0),
+                request.outputFile(),
+                request.outputFile(),
+                request.sha256(),
+                request.segments(),
+                progress,
+                _bandwidthLimiter,
+                future::isCancelled
+        );
+        try {
+            if (updater.update()) {
+                _logger.Debug("Updated " + request.outputFile().getName() + " from the changed entries.");
+                future.complete(updater.getChecksum());
+            } else {
+                _logger.Debug("Update of " + request.outputFile().getName() + " cancelled.");
+                future.cancel(false);
+            }
+            return true;
+        } catch (InsufficientSpaceException e) {
+            throw e;
+        } catch (IOException e) {
+            _logger.Warn("Delta update failed, downloading the whole file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Tries to update the installed file by reusing its blocks, if block checksums are published for the file.
+     *
+     * @param request  The file to update.
+     * @param progress Tracks the progress of the update.
+     * @param future   The future of the download, completed or cancelled if the update ended.
+     * @return True if the future was completed or cancelled, false if the whole file has to be downloaded.
+     * @throws InsufficientSpaceException If the disk has no room for the new version, which a full download would not have either.
+     */
+    private boolean updateFromBlocks(DownloadRequest request, ProgressTracker progress, CompletableFuture<String> future) throws InsufficientSpaceException {
+        if (!request.outputFile().isFile()) {
+            return false;
+        }
+
+        String url = request.urls().get(0);
+        BlockChecksums checksums;
+        try {
+            checksums = BlockChecksums.fetch(_transport, BlockChecksums.getUrl(url));
+        } catch (IOException e) {
+            _logger.Debug("No block checksums available for " + url + ": " + e.getMessage());
+            return false;
+        }
+
+        BlockDeltaDownloader downloader = new BlockDeltaDownloader(
+                _transport,
+                url,
+                checksums,
+                request.outputFile(),
+                request.outputFile(),
+                request.sha256(),
+                request.segments(),
+                progress,
+                _bandwidthLimiter,
+                future::isCancelled
+        );
+        try {
+            if (downloader.download()) {
+                _logger.Debug("Updated " + request.outputFile().getName() + " from the blocks of the old copy.");
+                future.complete(downloader.getChecksum());
+            } else {
+                _logger.Debug("Update of " + request.outputFile().getName() + " cancelled.");
+                future.cancel(false);
+            }
+            return true;
+        } catch (InsufficientSpaceException e) {
+            throw e;
+        } catch (IOException e) {
+            _logger.Warn("Block delta update failed, downloading the whole file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Downloads the chunk manifest of a file. The download goes on without chunk verification if it fails.
+     *
+     * @param url The URL of the chunk manifest, or an empty string if not published.
+     * @return The chunk manifest, or null if not available.
+     */
+    private ChunkManifest fetchChunkManifest(String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        try {
+            return ChunkManifest.fetch(_transport, url);
+        } catch (Exception e) {
+            _logger.Warn("Failed to load the chunk manifest, only the whole file will be verified: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records the uses of the cache and evicts old files, if a cache is used.
+     */
+    private void flushCache() {
+        if (_cache != null) {
+            _cache.flush();
+        }
+    }
+
+    /**
+     * Stops accepting new downloads. Running downloads continue until they complete or are cancelled.
+     */
+    @Override
+    public void close() {
+        _executor.shutdown();
+    }
+
+    /**
+     * Waits for the virtual threads of the running downloads to finish after the engine was closed.
+     *
+     * @param timeoutMs The maximum time to wait in milliseconds.
+     * @return True if every download stopped, false if the timeout elapsed first.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    @Override
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        return _executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
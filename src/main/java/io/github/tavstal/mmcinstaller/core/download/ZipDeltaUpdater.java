@@ -0,0 +1,532 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressPhase;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.utils.FileUtils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Updates an installed zip file (such as a jar) to the version served by a URL, downloading only the
+ * entries that changed.
+ * <br/>
+ * The central directory of the remote file is read with range requests and compared with the central
+ * directory of the installed file. Entries with the same name, CRC-32, sizes and compression method
+ * are taken from the installed file: their compressed data is copied as is, and their local header is
+ * rebuilt from the remote central directory. Everything else is downloaded with range requests, with
+ * nearby ranges merged into a single request. The result is laid out exactly like the remote file, so
+ * it is only accepted if its SHA-256 checksum matches the expected one.
+ * <br/>
+ * ZIP64 archives and servers without range support are not handled; the update fails with an
+ * {@link IOException} and the caller is expected to download the whole file instead.
+ */
+public class ZipDeltaUpdater {
+    private static final int END_OF_DIRECTORY_SIGNATURE = 0x06054b50; // Signature of the end of central directory record.
+    private static final int DIRECTORY_ENTRY_SIGNATURE = 0x02014b50; // Signature of a central directory entry.
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50; // Signature of a local file header.
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50; // Optional signature of a data descriptor.
+    private static final int END_OF_DIRECTORY_SIZE = 22; // Size of the end of central directory record without its comment.
+    private static final int MAX_TAIL_SIZE = END_OF_DIRECTORY_SIZE + 0xFFFF; // The record followed by the longest possible comment.
+    private static final int MAX_DIRECTORY_SIZE = 64 * 1024 * 1024; // Largest central directory read into memory (64 MB).
+    private static final long MERGE_GAP = 64 * 1024; // Ranges closer than this are downloaded with a single request (64 KB).
+
+    private final InstallerLogger _logger; // Logger instance for logging update-related messages.
+    private final RangeFetcher _fetcher; // Downloads the central directory and the changed entries.
+    private final File _installedFile; // The installed version of the file.
+    private final File _outputFile; // The file receiving the new version.
+    private final File _deltaFile; // The file the new version is assembled in.
+    private final String _expectedChecksum; // The SHA-256 checksum of the new version.
+    private final ProgressTracker _progress; // Tracks the progress of the update.
+    private final BooleanSupplier _cancelledSupplier; // Returns true when the update should stop.
+    private String _checksum; // The SHA-256 checksum of the assembled file.
+
+    /**
+     * Constructs a new `ZipDeltaUpdater` instance.
+     *
+     * @param transport         The transport used for the range requests.
+     * @param url               The URL of the new version of the file.
+     * @param installedFile     The installed version of the file. Left untouched unless it is the output file.
+     * @param outputFile        The file receiving the new version. Replaced only once the update is verified.
+     * @param expectedChecksum  The SHA-256 checksum of the new version.
+     * @param maxConnections    The maximum number of range requests running in parallel.
+     * @param progress          Tracks the progress of the update.
+     * @param bandwidthLimiter  Limits the combined throughput of all connections.
+     * @param cancelledSupplier Returns true when the update should stop.
+     */
+    public ZipDeltaUpdater(Transport transport, String url, File installedFile, File outputFile, String expectedChecksum,
+                           int maxConnections, ProgressTracker progress, BandwidthLimiter bandwidthLimiter, BooleanSupplier cancelledSupplier) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _fetcher = new RangeFetcher(transport, url, maxConnections, progress, bandwidthLimiter, cancelledSupplier);
+        _installedFile = installedFile;
+        _outputFile = outputFile;
+        _deltaFile = new File(outputFile.getParentFile(), outputFile.getName() + ".delta");
+        _expectedChecksum = expectedChecksum;
+        _progress = progress;
+        _cancelledSupplier = cancelledSupplier;
+    }
+
+    /**
+     * Assembles the new version of the file from the installed file and the changed entries, verifies it,
+     * and moves it to the output file. Must only be called once.
+     *
+     * @return True if the update completed, false if it was cancelled.
+     * @throws IOException If a delta update is not possible, the download fails, or the result does not match the checksum.
+     */
+    public boolean update() throws IOException {
+        try {
+            if (!assemble()) {
+                Files.deleteIfExists(_deltaFile.toPath());
+                return false;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(_deltaFile.toPath());
+            throw e;
+        }
+
+        FileUtils.moveReplacing(_deltaFile.toPath(), _outputFile.toPath());
+        _progress.setPhase(ProgressPhase.VERIFYING, 1.0);
+        return true;
+    }
+
+    /**
+     * Checks if a file starts like a zip file, meaning a delta update is worth trying.
+     *
+     * @param file The file to check.
+     * @return True if the file starts with a local file header.
+     */
+    public static boolean isZipFile(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.size() >= 4 && readFully(channel, 0, 4).getInt(0) == LOCAL_HEADER_SIGNATURE;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Retrieves the SHA-256 checksum of the updated file.
+     *
+     * @return The checksum as a hexadecimal string, or null if the update has not completed.
+     */
+    public String getChecksum() {
+        return _checksum;
+    }
+
+    /**
+     * Plans the update, writes the reused and downloaded parts into the delta file and verifies it.
+     *
+     * @return True if the delta file is complete and verified, false if the update was cancelled.
+     * @throws IOException If a delta update is not possible, the download fails, or the result does not match the checksum.
+     */
+    private boolean assemble() throws IOException {
+        _progress.setPhase(ProgressPhase.CONNECTING, 0.0);
+        ZipDirectory remote = readRemoteDirectory(_fetcher.readTail(MAX_TAIL_SIZE));
+        DiskSpace.ensureAvailable(_deltaFile, remote.directoryOffset() + remote.directory().length);
+
+        try (FileChannel installed = FileChannel.open(_installedFile.toPath(), StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(_deltaFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ZipDirectory local = readLocalDirectory(installed);
+            Plan plan = createPlan(remote, local, installed);
+            _logger.Debug(String.format("Reusing %d of %d entries (%d bytes), downloading %d bytes in %d requests.",
+                    plan.copies().size(), remote.entries().size(), plan.getReusedBytes(), plan.getFetchedBytes(), plan.fetches().size()));
+
+            long fileSize = remote.directoryOffset() + remote.directory().length;
+            _progress.reset(fileSize - plan.getFetchedBytes(), fileSize);
+            _progress.setPhase(ProgressPhase.DOWNLOADING, 0.0);
+
+            output.write(ByteBuffer.wrap(remote.directory()), remote.directoryOffset());
+            for (Copy copy : plan.copies()) {
+                if (_cancelledSupplier.getAsBoolean()) {
+                    return false;
+                }
+                writeCopy(installed, output, copy);
+            }
+            if (!_fetcher.fetchAll(output, plan.fetches())) {
+                return false;
+            }
+            output.force(false);
+        }
+
+        _progress.setPhase(ProgressPhase.VERIFYING, 0.0);
+        try {
+            _checksum = FileUtils.getFileChecksum(_deltaFile.getAbsolutePath());
+        } catch (Exception e) {
+            throw new IOException("Failed to compute the checksum of the updated file: " + e.getMessage(), e);
+        }
+        if (!_checksum.equalsIgnoreCase(_expectedChecksum)) {
+            throw new IOException(String.format("The updated file does not match its checksum, expected %s but got %s.", _expectedChecksum, _checksum));
+        }
+        return true;
+    }
+
+    /**
+     * Reads the central directory of the remote file, downloading it if it is not part of the tail.
+     *
+     * @param tail The end of the remote file.
+     * @return The central directory of the remote file.
+     * @throws IOException If the directory cannot be downloaded or is invalid.
+     */
+    private ZipDirectory readRemoteDirectory(RangeFetcher.Part tail) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(tail.data()).order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEndOfDirectory(buffer);
+        long directoryOffset = readDirectoryOffset(buffer, end, tail.start());
+
+        byte[] directory;
+        if (directoryOffset >= tail.start()) {
+            directory = Arrays.copyOfRange(tail.data(), (int) (directoryOffset - tail.start()), tail.data().length);
+        } else {
+            long length = tail.fileSize() - directoryOffset;
+            if (length > MAX_DIRECTORY_SIZE) {
+                throw new IOException(String.format("The central directory of %d bytes is too large for a delta update.", length));
+            }
+            byte[] head = _fetcher.read(directoryOffset, tail.start()).data();
+            directory = new byte[(int) length];
+            System.arraycopy(head, 0, directory, 0, head.length);
+            System.arraycopy(tail.data(), 0, directory, head.length, tail.data().length);
+        }
+        return parseDirectory(directory, directoryOffset);
+    }
+
+    /**
+     * Reads the central directory of the installed file.
+     *
+     * @param channel The channel of the installed file.
+     * @return The central directory of the installed file.
+     * @throws IOException If the file cannot be read or is not a valid zip file.
+     */
+    private ZipDirectory readLocalDirectory(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int tailLength = (int) Math.min(fileSize, MAX_TAIL_SIZE);
+        ByteBuffer tail = readFully(channel, fileSize - tailLength, tailLength);
+        int end = findEndOfDirectory(tail);
+        long directoryOffset = readDirectoryOffset(tail, end, fileSize - tailLength);
+        if (fileSize - directoryOffset > MAX_DIRECTORY_SIZE) {
+            throw new IOException("The central directory of the installed file is too large for a delta update.");
+        }
+        return parseDirectory(readFully(channel, directoryOffset, (int) (fileSize - directoryOffset)).array(), directoryOffset);
+    }
+
+    /**
+     * Decides for every remote entry whether it can be taken from the installed file, and merges the
+     * parts that have to be downloaded into as few ranges as reasonable.
+     *
+     * @param remote    The central directory of the remote file.
+     * @param local     The central directory of the installed file.
+     * @param installed The channel of the installed file.
+     * @return The parts to copy and the ranges to download.
+     * @throws IOException If the installed file cannot be read.
+     */
+    private Plan createPlan(ZipDirectory remote, ZipDirectory local, FileChannel installed) throws IOException {
+        Map<String, Entry> localEntries = new HashMap<>();
+        for (Entry entry : local.entries()) {
+            localEntries.put(entry.name(), entry);
+        }
+
+        List<Entry> entries = new ArrayList<>(remote.entries());
+        entries.sort(Comparator.comparingLong(Entry::headerOffset));
+        List<Copy> copies = new ArrayList<>();
+        List<RangeFetcher.Range> fetches = new ArrayList<>();
+        long position = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            // An entry runs until the next one starts, which includes its data descriptor.
+            long entryEnd = i + 1 < entries.size() ? entries.get(i + 1).headerOffset() : remote.directoryOffset();
+            if (entry.headerOffset() < position || entryEnd < entry.headerOffset()) {
+                throw new IOException("The entries of the remote file overlap, which is not supported for a delta update.");
+            }
+            if (entry.headerOffset() > position) {
+                RangeFetcher.addRange(fetches, position, entry.headerOffset(), MERGE_GAP); // Data that belongs to no entry, such as a prefix.
+            }
+
+            Copy copy = planCopy(entry, entryEnd - entry.headerOffset(), localEntries.get(entry.name()), installed);
+            if (copy != null) {
+                copies.add(copy);
+            } else {
+                RangeFetcher.addRange(fetches, entry.headerOffset(), entryEnd, MERGE_GAP);
+            }
+            position = entryEnd;
+        }
+        if (position < remote.directoryOffset()) {
+            RangeFetcher.addRange(fetches, position, remote.directoryOffset(), MERGE_GAP);
+        }
+
+        // Entries swallowed by a merged range are downloaded with it.
+        copies.removeIf(copy -> fetches.stream().anyMatch(range -> range.start() <= copy.offset() && copy.offset() < range.end()));
+        return new Plan(copies, fetches);
+    }
+
+    /**
+     * Checks if an entry of the remote file can be taken from the installed file.
+     *
+     * @param entry     The entry of the remote file.
+     * @param length    The number of bytes the entry occupies in the remote file.
+     * @param local     The entry with the same name in the installed file, or null if there is none.
+     * @param installed The channel of the installed file.
+     * @return The part to copy, or null if the entry has to be downloaded.
+     * @throws IOException If the installed file cannot be read.
+     */
+    private Copy planCopy(Entry entry, long length, Entry local, FileChannel installed) throws IOException {
+        if (local == null || local.crc() != entry.crc() || local.compressedSize() != entry.compressedSize()
+                || local.size() != entry.size() || local.method() != entry.method()) {
+            return null;
+        }
+
+        // The rebuilt local header must account for every byte of the entry, otherwise the local
+        // header of the remote file differs from its central directory and cannot be rebuilt.
+        long descriptorLength = length - entry.localHeader().length - entry.compressedSize();
+        boolean hasDescriptor = (entry.flags() & 0x08) != 0;
+        if (hasDescriptor ? descriptorLength != 12 && descriptorLength != 16 : descriptorLength != 0) {
+            return null;
+        }
+
+        ByteBuffer header = readFully(installed, local.headerOffset(), 30).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            return null;
+        }
+        long dataOffset = local.headerOffset() + 30 + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+        if (dataOffset + local.compressedSize() > installed.size()) {
+            return null;
+        }
+
+        ByteBuffer descriptor = ByteBuffer.allocate((int) descriptorLength).order(ByteOrder.LITTLE_ENDIAN);
+        if (descriptorLength == 16) {
+            descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE);
+        }
+        if (descriptorLength > 0) {
+            descriptor.putInt((int) entry.crc()).putInt((int) entry.compressedSize()).putInt((int) entry.size());
+        }
+        return new Copy(entry.headerOffset(), entry.localHeader(), dataOffset, entry.compressedSize(), descriptor.array());
+    }
+
+    /**
+     * Writes an entry taken from the installed file: its rebuilt local header, its compressed data and its data descriptor.
+     *
+     * @param installed The channel of the installed file.
+     * @param output    The channel of the delta file.
+     * @param copy      The entry to write.
+     * @throws IOException If reading or writing fails.
+     */
+    private void writeCopy(FileChannel installed, FileChannel output, Copy copy) throws IOException {
+        long position = copy.offset();
+        position += writeFully(output, ByteBuffer.wrap(copy.header()), position);
+        long copied = 0;
+        while (copied < copy.dataLength()) {
+            long transferred = output.transferFrom(installed.position(copy.dataOffset() + copied), position + copied, copy.dataLength() - copied);
+            if (transferred <= 0) {
+                throw new EOFException("Unexpected end of the installed file.");
+            }
+            copied += transferred;
+        }
+        writeFully(output, ByteBuffer.wrap(copy.descriptor()), position + copied);
+    }
+
+    /**
+     * Finds the end of central directory record, searching backwards since the record is followed by a comment.
+     *
+     * @param tail The end of the file, in little-endian order.
+     * @return The offset of the record within the buffer.
+     * @throws IOException If the buffer holds no record.
+     */
+    private static int findEndOfDirectory(ByteBuffer tail) throws IOException {
+        for (int i = tail.limit() - END_OF_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_DIRECTORY_SIGNATURE && i + END_OF_DIRECTORY_SIZE + Short.toUnsignedInt(tail.getShort(i + 20)) == tail.limit()) {
+                return i;
+            }
+        }
+        throw new IOException("The file is not a zip file, no end of central directory record was found.");
+    }
+
+    /**
+     * Reads the offset of the central directory from the end of central directory record.
+     *
+     * @param tail      The end of the file, in little-endian order.
+     * @param end       The offset of the record within the buffer.
+     * @param tailStart The offset of the buffer in the file.
+     * @return The offset of the central directory in the file.
+     * @throws IOException If the archive is a ZIP64 or multi-disk archive, or the directory does not fit before the record.
+     */
+    private static long readDirectoryOffset(ByteBuffer tail, int end, long tailStart) throws IOException {
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        if (tail.getShort(end + 4) != 0 || directoryOffset == 0xFFFFFFFFL || directorySize == 0xFFFFFFFFL
+                || Short.toUnsignedInt(tail.getShort(end + 10)) == 0xFFFF) {
+            throw new IOException("ZIP64 and multi-disk archives are not supported for a delta update.");
+        }
+        if (directoryOffset + directorySize > tailStart + end) {
+            throw new IOException("The central directory does not fit before the end of central directory record.");
+        }
+        return directoryOffset;
+    }
+
+    /**
+     * Parses the entries of a central directory.
+     *
+     * @param directory       The central directory followed by the end of central directory record.
+     * @param directoryOffset The offset of the central directory in the file.
+     * @return The parsed directory.
+     * @throws IOException If the directory is invalid.
+     */
+    private static ZipDirectory parseDirectory(byte[] directory, long directoryOffset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(directory).order(ByteOrder.LITTLE_ENDIAN);
+        List<Entry> entries = new ArrayList<>();
+        int position = 0;
+        try {
+            while (buffer.getInt(position) == DIRECTORY_ENTRY_SIGNATURE) {
+                int nameLength = Short.toUnsignedInt(buffer.getShort(position + 28));
+                int extraLength = Short.toUnsignedInt(buffer.getShort(position + 30));
+                int commentLength = Short.toUnsignedInt(buffer.getShort(position + 32));
+                int flags = Short.toUnsignedInt(buffer.getShort(position + 8));
+                long compressedSize = Integer.toUnsignedLong(buffer.getInt(position + 20));
+                long size = Integer.toUnsignedLong(buffer.getInt(position + 24));
+                long headerOffset = Integer.toUnsignedLong(buffer.getInt(position + 42));
+                if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || headerOffset == 0xFFFFFFFFL) {
+                    throw new IOException("ZIP64 entries are not supported for a delta update.");
+                }
+
+                // The local header repeats the central directory fields from "version needed" to the
+                // name length, followed by the name and the extra field.
+                byte[] localHeader = new byte[30 + nameLength + extraLength];
+                ByteBuffer header = ByteBuffer.wrap(localHeader).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(LOCAL_HEADER_SIGNATURE);
+                header.put(directory, position + 6, 22);
+                header.putShort((short) nameLength).putShort((short) extraLength);
+                header.put(directory, position + 46, nameLength + extraLength);
+                if ((flags & 0x08) != 0) {
+                    // With a data descriptor the checksum and sizes follow the data instead.
+                    header.putInt(14, 0).putInt(18, 0).putInt(22, 0);
+                }
+
+                String name = new String(directory, position + 46, nameLength, (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+                entries.add(new Entry(
+                        name,
+                        flags,
+                        Short.toUnsignedInt(buffer.getShort(position + 10)),
+                        Integer.toUnsignedLong(buffer.getInt(position + 16)),
+                        compressedSize,
+                        size,
+                        headerOffset,
+                        localHeader
+                ));
+                position += 46 + nameLength + extraLength + commentLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("The central directory is truncated.");
+        }
+        if (buffer.getInt(position) != END_OF_DIRECTORY_SIGNATURE) {
+            throw new IOException("The central directory is invalid.");
+        }
+        return new ZipDirectory(entries, directoryOffset, directory);
+    }
+
+    /**
+     * Reads a part of a file into memory.
+     *
+     * @param channel  The channel to read from.
+     * @param position The offset of the first byte.
+     * @param length   The number of bytes to read.
+     * @return The bytes, in a buffer positioned at 0.
+     * @throws IOException If the file ends early or cannot be read.
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of the installed file.");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Writes a whole buffer to a file.
+     *
+     * @param channel  The channel to write to.
+     * @param buffer   The bytes to write.
+     * @param position The offset of the first byte.
+     * @return The number of bytes written.
+     * @throws IOException If writing fails.
+     */
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + length - buffer.remaining());
+        }
+        return length;
+    }
+
+    /**
+     * The central directory of a zip file.
+     *
+     * @param entries         The entries in directory order.
+     * @param directoryOffset The offset of the central directory in the file.
+     * @param directory       The central directory followed by the end of central directory record, up to the end of the file.
+     */
+    private record ZipDirectory(List<Entry> entries, long directoryOffset, byte[] directory) {
+    }
+
+    /**
+     * An entry of a central directory.
+     *
+     * @param name           The name of the entry.
+     * @param flags          The general purpose flags.
+     * @param method         The compression method.
+     * @param crc            The CRC-32 of the uncompressed data.
+     * @param compressedSize The size of the compressed data.
+     * @param size           The size of the uncompressed data.
+     * @param headerOffset   The offset of the local header of the entry.
+     * @param localHeader    The local header rebuilt from the central directory.
+     */
+    private record Entry(String name, int flags, int method, long crc, long compressedSize, long size, long headerOffset, byte[] localHeader) {
+    }
+
+    /**
+     * An entry taken from the installed file.
+     *
+     * @param offset     The offset of the entry in the new file.
+     * @param header     The local header of the entry in the new file.
+     * @param dataOffset The offset of the compressed data in the installed file.
+     * @param dataLength The length of the compressed data.
+     * @param descriptor The data descriptor following the data, or an empty array.
+     */
+    private record Copy(long offset, byte[] header, long dataOffset, long dataLength, byte[] descriptor) {
+    }
+
+    /**
+     * The parts of the new file taken from the installed file and the ranges to download.
+     *
+     * @param copies  The entries taken from the installed file.
+     * @param fetches The ranges to download, ordered by offset.
+     */
+    private record Plan(List<Copy> copies, List<RangeFetcher.Range> fetches) {
+        /**
+         * Retrieves the number of bytes taken from the installed file.
+         *
+         * @return The number of reused bytes.
+         */
+        long getReusedBytes() {
+            return copies.stream().mapToLong(copy -> copy.header().length + copy.dataLength() + copy.descriptor().length).sum();
+        }
+
+        /**
+         * Retrieves the number of bytes to download.
+         *
+         * @return The number of downloaded bytes.
+         */
+        long getFetchedBytes() {
+            return fetches.stream().mapToLong(RangeFetcher.Range::length).sum();
+        }
+    }
+}
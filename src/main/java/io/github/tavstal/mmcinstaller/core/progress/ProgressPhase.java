@@ -0,0 +1,51 @@
+package io.github.tavstal.mmcinstaller.core.progress;
+
+/**
+ * Represents the phases of a download, in the order they happen.
+ * Each phase has a weight describing its share of the overall progress.
+ */
+public enum ProgressPhase {
+    /** Probing the server for the size and capabilities of the file. */
+    CONNECTING(0.02),
+    /** Transferring the bytes of the file. */
+    DOWNLOADING(0.95),
+    /** Checking and moving the completed file into place. */
+    VERIFYING(0.03);
+
+    private final double _weight; // The share of the overall progress (0.0 to 1.0).
+
+    /**
+     * Constructs a new `ProgressPhase` instance.
+     *
+     * @param weight The share of the overall progress (0.0 to 1.0).
+     */
+    ProgressPhase(double weight) {
+        _weight = weight;
+    }
+
+    /**
+     * Retrieves the share of the overall progress this phase represents.
+     *
+     * @return The weight of the phase (0.0 to 1.0).
+     */
+    public double getWeight() {
+        return _weight;
+    }
+
+    /**
+     * Calculates the overall progress when this phase is at the given fraction.
+     *
+     * @param phaseFraction The progress within this phase (0.0 to 1.0).
+     * @return The overall progress (0.0 to 1.0).
+     */
+    public double toOverallFraction(double phaseFraction) {
+        double completed = 0;
+        for (ProgressPhase phase : values()) {
+            if (phase == this) {
+                break;
+            }
+            completed += phase.getWeight();
+        }
+        return Math.min(1.0, completed + _weight * Math.max(0.0, Math.min(1.0, phaseFraction)));
+    }
+}
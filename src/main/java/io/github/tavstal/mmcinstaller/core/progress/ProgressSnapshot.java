@@ -0,0 +1,21 @@
+package io.github.tavstal.mmcinstaller.core.progress;
+
+/**
+ * Represents the state of a download at a single point in time, as published by the {@link ProgressTracker}.
+ *
+ * @param phase                 The current phase of the download.
+ * @param phaseFraction         The progress within the current phase (0.0 to 1.0).
+ * @param overallFraction       The progress of the whole download, weighted by phase (0.0 to 1.0).
+ * @param downloadedBytes       The number of decoded bytes downloaded so far, including bytes resumed from a previous run.
+ * @param totalBytes            The total number of bytes to download, or -1 if unknown.
+ * @param bytesPerSecond        The throughput measured over the last sample interval.
+ * @param averageBytesPerSecond The exponentially weighted moving average of the throughput.
+ * @param etaSeconds            The estimated number of seconds until the download completes, or -1 if unknown.
+ * @param wireBytes             The number of bytes received on the wire in this run, before content decoding.
+ * @param bandwidthLimit        The bandwidth limit in effect, in bytes per second, or 0 if unlimited.
+ */
+public record ProgressSnapshot(ProgressPhase phase, double phaseFraction, double overallFraction,
+                               long downloadedBytes, long totalBytes,
+                               double bytesPerSecond, double averageBytesPerSecond, long etaSeconds,
+                               long wireBytes, long bandwidthLimit) {
+}
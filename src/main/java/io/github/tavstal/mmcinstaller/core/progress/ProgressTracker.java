@@ -0,0 +1,242 @@
+package io.github.tavstal.mmcinstaller.core.progress;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Aggregates the progress of any number of download workers and publishes it at a fixed cadence.
+ * <br/>
+ * Workers only add byte counts to a lock-free counter, which makes reporting cheap enough to do for
+ * every chunk. A single sampler thread turns the counter into {@link ProgressSnapshot}s (with throughput,
+ * moving average and ETA) every {@link #SAMPLE_INTERVAL_MS} ms, so the UI receives a bounded number of
+ * updates no matter how fast the bytes arrive.
+ * <br/>
+ * Downloads of many files share one tracker through child trackers (see {@link #createChild()}), which
+ * forward their counts to the parent and never publish anything themselves.
+ */
+public class ProgressTracker implements AutoCloseable {
+    /** The interval between two published snapshots, in milliseconds. */
+    public final static long SAMPLE_INTERVAL_MS = 200;
+
+    private final static double EWMA_ALPHA = 0.2; // Weight of the newest sample in the moving average.
+
+    private final ProgressTracker _parent; // The tracker receiving the counts of this child, or null for a root tracker.
+    private final Consumer<ProgressSnapshot> _listener; // Receives the published snapshots.
+    private final LongSupplier _bandwidthLimit; // Returns the bandwidth limit in effect, 0 if unlimited.
+    private final LongSupplier _clock; // Returns the current time in nanoseconds.
+    private final ScheduledExecutorService _scheduler; // Runs the sampler at a fixed rate.
+    private final LongAdder _transferredBytes = new LongAdder(); // Bytes transferred by the workers in this run.
+    private final LongAdder _wireBytes = new LongAdder(); // Bytes received on the wire in this run, before content decoding.
+    private final AtomicLong _baseBytes = new AtomicLong(); // Bytes already present before this run (resumed data).
+    private final AtomicLong _totalBytes = new AtomicLong(-1); // The total number of bytes, or -1 if unknown.
+    private volatile ProgressPhase _phase = ProgressPhase.CONNECTING; // The current phase.
+    private volatile double _phaseFraction; // Progress of phases not measured in bytes.
+
+    // Sampler state, only accessed by the sampler thread.
+    private long _lastTransferredBytes;
+    private long _lastSampleNanos;
+    private double _averageBytesPerSecond = -1;
+
+    /**
+     * Constructs a new `ProgressTracker` instance.
+     *
+     * @param listener A callback receiving the snapshots. Called from the sampler thread.
+     */
+    public ProgressTracker(Consumer<ProgressSnapshot> listener) {
+        this(listener, () -> 0);
+    }
+
+    /**
+     * Constructs a new `ProgressTracker` instance reporting a bandwidth limit in its snapshots.
+     *
+     * @param listener       A callback receiving the snapshots. Called from the sampler thread.
+     * @param bandwidthLimit Returns the bandwidth limit in effect, in bytes per second, or 0 if unlimited.
+     */
+    public ProgressTracker(Consumer<ProgressSnapshot> listener, LongSupplier bandwidthLimit) {
+        this(listener, bandwidthLimit, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new `ProgressTracker` instance measuring the throughput with the given clock.
+     *
+     * @param listener       A callback receiving the snapshots. Called from the sampler thread.
+     * @param bandwidthLimit Returns the bandwidth limit in effect, in bytes per second, or 0 if unlimited.
+     * @param clock          Returns the current time in nanoseconds, like {@link System#nanoTime()}.
+     */
+    ProgressTracker(Consumer<ProgressSnapshot> listener, LongSupplier bandwidthLimit, LongSupplier clock) {
+        _parent = null;
+        _listener = listener;
+        _bandwidthLimit = bandwidthLimit;
+        _clock = clock;
+        _lastSampleNanos = clock.getAsLong();
+        _scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Constructs a new child `ProgressTracker` instance, see {@link #createChild()}.
+     *
+     * @param parent The tracker receiving the counts of the child.
+     */
+    private ProgressTracker(ProgressTracker parent) {
+        _parent = parent;
+        _listener = null;
+        _bandwidthLimit = parent._bandwidthLimit;
+        _clock = parent._clock;
+        _scheduler = null;
+    }
+
+    /**
+     * Creates a tracker for a single file of a larger download. The bytes it records, including the
+     * resumed bytes passed to {@link #reset(long, long)}, are added to this tracker. Its phase and total
+     * are ignored, and it does not need to be started or closed.
+     *
+     * @return The child tracker.
+     */
+    public ProgressTracker createChild() {
+        return new ProgressTracker(this);
+    }
+
+    /**
+     * Starts publishing snapshots. Does nothing for a child tracker.
+     */
+    public void start() {
+        if (_parent != null) {
+            return;
+        }
+        _lastSampleNanos = _clock.getAsLong();
+        _scheduler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records bytes transferred by a worker, after content decoding. Safe to call from any thread.
+     *
+     * @param bytes The number of bytes written to the file.
+     */
+    public void addBytes(long bytes) {
+        _transferredBytes.add(bytes);
+        if (_parent != null) {
+            _parent.addBytes(bytes);
+        }
+    }
+
+    /**
+     * Records bytes received on the wire, before content decoding. Safe to call from any thread.
+     *
+     * @param bytes The number of bytes received.
+     */
+    public void addWireBytes(long bytes) {
+        _wireBytes.add(bytes);
+        if (_parent != null) {
+            _parent.addWireBytes(bytes);
+        }
+    }
+
+    /**
+     * Retrieves the number of bytes transferred by the workers since the tracker was created.
+     *
+     * @return The number of transferred bytes, excluding resumed data.
+     */
+    public long getTransferredBytes() {
+        return _transferredBytes.sum();
+    }
+
+    /**
+     * Starts counting from the given number of bytes, e.g. when a download is resumed or restarted.
+     * The bytes passed here do not count towards the throughput.
+     *
+     * @param baseBytes  The number of bytes already present.
+     * @param totalBytes The total number of bytes, or -1 if unknown.
+     */
+    public void reset(long baseBytes, long totalBytes) {
+        long transferred = _transferredBytes.sum();
+        long previousBase = _baseBytes.getAndSet(baseBytes - transferred);
+        _totalBytes.set(totalBytes);
+        if (_parent != null) {
+            // Moves the downloaded count of the parent by the change of this child's downloaded count.
+            _parent._baseBytes.addAndGet(baseBytes - transferred - previousBase);
+        }
+    }
+
+    /**
+     * Switches to another phase.
+     *
+     * @param phase         The new phase.
+     * @param phaseFraction The progress within the phase (0.0 to 1.0). Ignored while downloading,
+     *                      where the progress is calculated from the byte counts.
+     */
+    public void setPhase(ProgressPhase phase, double phaseFraction) {
+        _phase = phase;
+        _phaseFraction = phaseFraction;
+    }
+
+    /**
+     * Stops the sampler and publishes a final snapshot. Does nothing for a child tracker.
+     */
+    @Override
+    public void close() {
+        if (_parent != null) {
+            return;
+        }
+        _scheduler.shutdownNow();
+        try {
+            if (_scheduler.awaitTermination(SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                sample(); // The sampler is stopped, so the final sample cannot race with it.
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates a snapshot from the counters and publishes it. Called by the sampler thread, or by tests
+     * that never start it.
+     */
+    void sample() {
+        long now = _clock.getAsLong();
+        long transferred = _transferredBytes.sum();
+        long delta = Math.max(0, transferred - _lastTransferredBytes);
+        double elapsedSeconds = Math.max(1e-9, (now - _lastSampleNanos) / 1_000_000_000.0);
+        _lastTransferredBytes = transferred;
+        _lastSampleNanos = now;
+
+        double bytesPerSecond = delta / elapsedSeconds;
+        _averageBytesPerSecond = _averageBytesPerSecond < 0
+                ? bytesPerSecond
+                : EWMA_ALPHA * bytesPerSecond + (1 - EWMA_ALPHA) * _averageBytesPerSecond;
+
+        long downloaded = _baseBytes.get() + transferred;
+        long total = _totalBytes.get();
+        ProgressPhase phase = _phase;
+        double phaseFraction = _phaseFraction;
+        if (phase == ProgressPhase.DOWNLOADING) {
+            phaseFraction = total > 0 ? Math.min(1.0, (double) downloaded / total) : 0.0;
+        }
+
+        long etaSeconds = -1;
+        if (total > 0 && _averageBytesPerSecond > 0) {
+            etaSeconds = (long) Math.ceil(Math.max(0, total - downloaded) / _averageBytesPerSecond);
+        }
+
+        _listener.accept(new ProgressSnapshot(
+                phase,
+                phaseFraction,
+                phase.toOverallFraction(phaseFraction),
+                downloaded,
+                total,
+                bytesPerSecond,
+                _averageBytesPerSecond,
+                etaSeconds,
+                _wireBytes.sum(),
+                _bandwidthLimit.getAsLong()
+        ));
+    }
+}
@@ -0,0 +1,462 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SchemePortResolver;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionOperator;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Sends the requests with the async (non-blocking) client of Apache HttpClient 5. A few I/O threads serve
+ * every connection, and HTTP/2 is negotiated where the server supports it. Hosts with IPv6 and IPv4 addresses
+ * are connected with the session that answers first (see {@link DualStackAsyncConnectionOperator}).
+ * <br/>
+ * Bodies are handed to the caller as a stream: the I/O threads queue the received data, and the server is
+ * only allowed to send more once the caller has read it (see {@link CapacityChannel}), so at most
+ * {@link #WINDOW_SIZE} bytes per response are held in memory.
+ */
+public class ApacheAsyncTransport implements Transport {
+    private final static Timeout CONNECT_TIMEOUT = Timeout.ofSeconds(10); // Time allowed to establish a connection.
+    private final static TimeValue MAX_IDLE_TIME = TimeValue.ofMinutes(1); // Idle time after which a pooled connection is closed.
+    private final static int WINDOW_SIZE = 256 * 1024; // Bytes a response may receive ahead of the caller (256 KB).
+
+    private final CloseableHttpAsyncClient _client; // The pooling client sending every request.
+    private final DualStackResolver _resolver = new DualStackResolver(); // Races the addresses of a host for every new connection.
+
+    /**
+     * Constructs a new `ApacheAsyncTransport` instance with its own connection pool, and starts its I/O threads.
+     *
+     * @param maxPerRoute The maximum number of connections to a single host.
+     * @param maxTotal    The maximum number of connections to all hosts.
+     */
+    public ApacheAsyncTransport(int maxPerRoute, int maxTotal) {
+        _client = HttpAsyncClients.custom()
+                .setConnectionManager(new PoolingAsyncClientConnectionManagerBuilder() {
+                            @Override
+                            protected AsyncClientConnectionOperator createConnectionOperator(TlsStrategy tlsStrategy, SchemePortResolver schemePortResolver, DnsResolver dnsResolver) {
+                                return new DualStackAsyncConnectionOperator(super.createConnectionOperator(tlsStrategy, schemePortResolver,
+                                        DualStackAsyncConnectionOperator.singleAddress(dnsResolver)), _resolver);
+                            }
+                        }
+                        .setDnsResolver(_resolver)
+                        .setMaxConnPerRoute(maxPerRoute)
+                        .setMaxConnTotal(maxTotal)
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(CONNECT_TIMEOUT)
+                                .build())
+                        .build())
+                .evictIdleConnections(MAX_IDLE_TIME)
+                .build();
+        _client.start();
+    }
+
+    /**
+     * Sends a request and waits for the status and headers. Cancelling the request aborts the exchange.
+     *
+     * @param request The request to send.
+     * @return The response, streaming its body as it arrives.
+     * @throws IOException If the request fails or was cancelled.
+     */
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        AsyncRequestBuilder builder = request.isHead() ? AsyncRequestBuilder.head(request.getUrl()) : AsyncRequestBuilder.get(request.getUrl());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.setHeader(header.getKey(), header.getValue());
+        }
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(DualStackResolver.REQUEST_ATTRIBUTE, request); // Bounds and cancels the race of a new connection.
+        if (request.getTimeout() > 0) {
+            context.setRequestConfig(RequestConfig.custom()
+                    .setConnectionRequestTimeout(Timeout.ofMilliseconds(request.getTimeout()))
+                    .setResponseTimeout(Timeout.ofMilliseconds(request.getTimeout()))
+                    .build());
+        }
+
+        StreamingResponse response = new StreamingResponse();
+        // The exchange completes once the body was received, the caller is handed the response at the headers.
+        Future<TransportResponse> future = _client.execute(builder.build(), response, context, new FutureCallback<>() {
+            @Override
+            public void completed(TransportResponse result) {
+            }
+
+            @Override
+            public void failed(Exception cause) {
+                response.failed(cause);
+            }
+
+            @Override
+            public void cancelled() {
+                response.failed(new InterruptedIOException("The request was cancelled."));
+            }
+        });
+        response.setFuture(future);
+        request.onCancel(() -> response.abort(new InterruptedIOException("The request was cancelled.")));
+        return response.awaitHeaders();
+    }
+
+    /**
+     * Retrieves the name of the transport.
+     *
+     * @return `apache-async`.
+     */
+    @Override
+    public String getName() {
+        return "apache-async";
+    }
+
+    /**
+     * Closes the client, its connections and its I/O threads.
+     */
+    @Override
+    public void close() {
+        _client.close(CloseMode.GRACEFUL);
+    }
+
+    /**
+     * Receives a response on the I/O threads of the client and streams its body to the caller.
+     */
+    private static class StreamingResponse extends InputStream implements AsyncResponseConsumer<TransportResponse>, TransportResponse {
+        private final ArrayDeque<ByteBuffer> _chunks = new ArrayDeque<>(); // The received data not yet read by the caller.
+        private HttpResponse _response; // The status and headers, null until received.
+        private FutureCallback<TransportResponse> _resultCallback; // Completes the exchange once the body was received, null until the headers are.
+        private Future<TransportResponse> _future; // The exchange, cancelled to abort it.
+        private CapacityChannel _capacityChannel; // Lets the server send more data, null until the body starts.
+        private int _buffered; // Bytes received but not yet read by the caller.
+        private int _granted; // Bytes the server may still send without a capacity update.
+        private boolean _ended; // True once the body was received completely.
+        private IOException _failure; // The failure of the exchange, or null.
+
+        /**
+         * Sets the exchange of the response, cancelled when the response is aborted.
+         *
+         * @param future The exchange.
+         */
+        private synchronized void setFuture(Future<TransportResponse> future) {
+            _future = future;
+            if (_failure != null && !_ended) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * Waits for the status and headers.
+         *
+         * @return This response.
+         * @throws IOException If the exchange failed or was cancelled before the headers were received.
+         */
+        private TransportResponse awaitHeaders() throws IOException {
+            synchronized (this) {
+                while (_response == null && _failure == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if (_response != null) {
+                    return this;
+                }
+                if (_failure != null) {
+                    throw _failure;
+                }
+            }
+            abort(new InterruptedIOException("Interrupted while waiting for the response."));
+            throw new InterruptedIOException("Interrupted while waiting for the response.");
+        }
+
+        /**
+         * Aborts the exchange and fails any read of the body.
+         * <br/>
+         * The client loses the cancellation of an exchange sent over a pooled connection, which would keep the
+         * connection leased while the server waits for capacity. The server is therefore let to send once more,
+         * and the next data fails the exchange in {@link #consume(ByteBuffer)}, which closes the connection.
+         *
+         * @param cause The failure reported to the reader.
+         */
+        private void abort(IOException cause) {
+            Future<TransportResponse> future;
+            CapacityChannel capacityChannel;
+            synchronized (this) {
+                if (_failure == null && !_ended) {
+                    _failure = cause;
+                }
+                future = _future;
+                capacityChannel = _ended ? null : _capacityChannel;
+                notifyAll();
+            }
+            if (future != null) {
+                future.cancel(true);
+            }
+            if (capacityChannel != null) {
+                try {
+                    capacityChannel.update(1);
+                } catch (IOException ignored) {
+                    // The connection is already failing.
+                }
+            }
+        }
+
+        //#region AsyncResponseConsumer, called on the I/O threads
+        /**
+         * Receives the status and headers and hands the response to the caller. The exchange itself is only
+         * completed at the end of the body: a completed exchange can no longer be cancelled, and the client
+         * cancels an exchange completed before it was fully started.
+         *
+         * @param response       The status and headers.
+         * @param entityDetails  The details of the body, or null if there is none.
+         * @param context        The context of the exchange.
+         * @param resultCallback Completes the exchange.
+         */
+        @Override
+        public void consumeResponse(HttpResponse response, EntityDetails entityDetails, HttpContext context,
+                                    FutureCallback<TransportResponse> resultCallback) {
+            synchronized (this) {
+                _response = response;
+                _resultCallback = resultCallback;
+                if (entityDetails == null) {
+                    _ended = true;
+                }
+                notifyAll();
+            }
+            if (entityDetails == null) {
+                resultCallback.completed(this);
+            }
+        }
+
+        /**
+         * Ignores interim (1xx) responses.
+         *
+         * @param response The interim response.
+         * @param context  The context of the exchange.
+         */
+        @Override
+        public void informationResponse(HttpResponse response, HttpContext context) {
+        }
+
+        /**
+         * Lets the server send as much as fits in the window.
+         *
+         * @param capacityChannel The channel receiving the capacity updates.
+         * @throws IOException If the response was aborted, or the capacity cannot be updated.
+         */
+        @Override
+        public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+            int increment;
+            synchronized (this) {
+                if (_failure != null) {
+                    throw _failure;
+                }
+                _capacityChannel = capacityChannel;
+                increment = Math.max(0, WINDOW_SIZE - _buffered - _granted);
+                _granted += increment;
+            }
+            if (increment > 0) {
+                capacityChannel.update(increment);
+            }
+        }
+
+        /**
+         * Queues received data for the caller.
+         *
+         * @param src The received data.
+         * @throws IOException If the response was aborted, which fails the exchange and closes its connection.
+         */
+        @Override
+        public void consume(ByteBuffer src) throws IOException {
+            ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+            copy.put(src).flip();
+            synchronized (this) {
+                if (_failure != null) {
+                    throw _failure;
+                }
+                _chunks.add(copy);
+                _buffered += copy.remaining();
+                _granted = Math.max(0, _granted - copy.remaining());
+                notifyAll();
+            }
+        }
+
+        /**
+         * Marks the body as complete and completes the exchange.
+         *
+         * @param trailers The trailing headers, ignored.
+         */
+        @Override
+        public void streamEnd(List<? extends Header> trailers) {
+            FutureCallback<TransportResponse> resultCallback;
+            synchronized (this) {
+                _ended = true;
+                resultCallback = _resultCallback;
+                notifyAll();
+            }
+            if (resultCallback != null) {
+                resultCallback.completed(this);
+            }
+        }
+
+        /**
+         * Fails the wait for the headers and any read of the body.
+         *
+         * @param cause The failure of the exchange.
+         */
+        @Override
+        public synchronized void failed(Exception cause) {
+            if (_failure == null && !_ended) {
+                _failure = cause instanceof IOException ioException ? ioException : new IOException(cause);
+            }
+            notifyAll();
+        }
+
+        /**
+         * Releases nothing, the queued data is dropped with the response.
+         */
+        @Override
+        public void releaseResources() {
+        }
+        //#endregion
+
+        //#region TransportResponse, called by the caller
+        /**
+         * Retrieves the status code of the response.
+         *
+         * @return The HTTP status code.
+         */
+        @Override
+        public synchronized int getStatus() {
+            return _response.getCode();
+        }
+
+        /**
+         * Retrieves the first value of a response header.
+         *
+         * @param name The name of the header, case-insensitive.
+         * @return The value of the header, or null if it was not sent.
+         */
+        @Override
+        public synchronized String getHeader(String name) {
+            Header header = _response.getFirstHeader(name);
+            return header == null ? null : header.getValue();
+        }
+
+        /**
+         * Retrieves the body of the response.
+         *
+         * @return This response, read as a stream.
+         */
+        @Override
+        public InputStream getBody() {
+            return this;
+        }
+
+        /**
+         * Reads a single byte of the body.
+         *
+         * @return The byte, or -1 at the end of the body.
+         * @throws IOException If the exchange failed or was cancelled.
+         */
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        /**
+         * Reads bytes of the body, waiting for the I/O threads if none are queued.
+         * The read bytes are granted to the server again.
+         *
+         * @param buffer The array receiving the bytes.
+         * @param offset The offset in the array.
+         * @param length The maximum number of bytes to read.
+         * @return The number of bytes read, or -1 at the end of the body.
+         * @throws IOException If the exchange failed or was cancelled.
+         */
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            int bytesRead = 0;
+            int increment = 0;
+            CapacityChannel capacityChannel;
+            synchronized (this) {
+                while (_chunks.isEmpty() && !_ended && _failure == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while reading the response.");
+                    }
+                }
+                if (_failure != null) {
+                    throw _failure;
+                }
+                while (bytesRead < length && !_chunks.isEmpty()) {
+                    ByteBuffer chunk = _chunks.peek();
+                    int count = Math.min(length - bytesRead, chunk.remaining());
+                    chunk.get(buffer, offset + bytesRead, count);
+                    bytesRead += count;
+                    if (!chunk.hasRemaining()) {
+                        _chunks.poll();
+                    }
+                }
+                if (bytesRead == 0) {
+                    return -1;
+                }
+                _buffered -= bytesRead;
+
+                // Capacity is granted in larger steps, so the I/O threads are not woken for every read.
+                capacityChannel = _capacityChannel;
+                if (!_ended && capacityChannel != null && WINDOW_SIZE - _buffered - _granted >= WINDOW_SIZE / 4) {
+                    increment = WINDOW_SIZE - _buffered - _granted;
+                    _granted += increment;
+                }
+            }
+            if (increment > 0) {
+                capacityChannel.update(increment);
+            }
+            return bytesRead;
+        }
+
+        /**
+         * Aborts the exchange if the body was not received completely, so the connection is not reused.
+         */
+        @Override
+        public void close() {
+            boolean ended;
+            synchronized (this) {
+                ended = _ended;
+            }
+            if (!ended) {
+                abort(new IOException("The response was closed."));
+            }
+        }
+        //#endregion
+    }
+}
@@ -0,0 +1,212 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SchemePortResolver;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpHead;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.io.HttpClientConnectionOperator;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.ssl.TlsSocketStrategy;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Map;
+
+/**
+ * Sends the requests with the blocking (classic) client of Apache HttpClient 5.
+ * <br/>
+ * The client pools its connections and keeps them alive between requests, so the DNS lookup, TCP handshake
+ * and TLS handshake paid by the startup request are reused by the download. New connections to the same
+ * host resume the cached TLS session of the shared SSL context. Hosts with IPv6 and IPv4 addresses are connected
+ * with the socket that answers first (see {@link DualStackConnectionOperator}).
+ */
+public class ApacheClassicTransport implements Transport {
+    private final static Timeout CONNECT_TIMEOUT = Timeout.ofSeconds(10); // Time allowed to establish a connection.
+    private final static TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(2); // Idle time after which a pooled connection is checked before reuse.
+    private final static TimeValue MAX_IDLE_TIME = TimeValue.ofMinutes(1); // Idle time after which a pooled connection is closed.
+
+    private final CloseableHttpClient _client; // The pooling client sending every request.
+    private final DualStackResolver _resolver = new DualStackResolver(); // Races the addresses of a host for every new connection.
+
+    /**
+     * Constructs a new `ApacheClassicTransport` instance with its own connection pool.
+     *
+     * @param maxPerRoute The maximum number of connections to a single host.
+     * @param maxTotal    The maximum number of connections to all hosts.
+     */
+    public ApacheClassicTransport(int maxPerRoute, int maxTotal) {
+        _client = HttpClients.custom()
+                .setConnectionManager(new PoolingHttpClientConnectionManagerBuilder() {
+                            @Override
+                            protected HttpClientConnectionOperator createConnectionOperator(SchemePortResolver schemePortResolver, DnsResolver dnsResolver, TlsSocketStrategy tlsSocketStrategy) {
+                                SchemePortResolver portResolver = schemePortResolver != null ? schemePortResolver : DefaultSchemePortResolver.INSTANCE;
+                                return new DualStackConnectionOperator(super.createConnectionOperator(portResolver, dnsResolver, tlsSocketStrategy), _resolver, portResolver);
+                            }
+                        }
+                        .setDnsResolver(_resolver)
+                        .setMaxConnPerRoute(maxPerRoute)
+                        .setMaxConnTotal(maxTotal)
+                        .setDefaultConnectionConfig(ConnectionConfig.custom()
+                                .setConnectTimeout(CONNECT_TIMEOUT)
+                                .setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY)
+                                .build())
+                        .build())
+                .evictIdleConnections(MAX_IDLE_TIME)
+                .disableContentCompression() // Bodies are decoded by the downloader, which also counts the wire bytes.
+                .build();
+    }
+
+    /**
+     * Sends a request over a pooled connection. Cancelling the request aborts the connection.
+     *
+     * @param request The request to send.
+     * @return The response, holding its connection until closed.
+     * @throws IOException If the request fails or was cancelled.
+     */
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        HttpUriRequestBase httpRequest = request.isHead() ? new HttpHead(request.getUrl()) : new HttpGet(request.getUrl());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            httpRequest.setHeader(header.getKey(), header.getValue());
+        }
+        if (request.getTimeout() > 0) {
+            httpRequest.setConfig(RequestConfig.custom()
+                    .setConnectionRequestTimeout(Timeout.ofMilliseconds(request.getTimeout()))
+                    .setResponseTimeout(Timeout.ofMilliseconds(request.getTimeout()))
+                    .build());
+        }
+        request.onCancel(httpRequest::cancel);
+        if (request.isCancelled()) {
+            throw new InterruptedIOException("The request was cancelled.");
+        }
+
+        HttpClientContext context = HttpClientContext.create();
+        context.setAttribute(DualStackResolver.REQUEST_ATTRIBUTE, request); // Bounds and cancels the race of a new connection.
+        ClassicHttpResponse response = _client.executeOpen(null, httpRequest, context);
+        return new Response(response, request);
+    }
+
+    /**
+     * Retrieves the name of the transport.
+     *
+     * @return `apache`.
+     */
+    @Override
+    public String getName() {
+        return "apache";
+    }
+
+    /**
+     * Closes the client and every pooled connection.
+     */
+    @Override
+    public void close() {
+        _client.close(CloseMode.GRACEFUL);
+    }
+
+    /**
+     * A response of the classic client.
+     */
+    private static class Response implements TransportResponse {
+        private final ClassicHttpResponse _response; // The response of the client.
+        private final TransportRequest _request; // The request the response belongs to.
+
+        /**
+         * Constructs a new `Response` instance.
+         *
+         * @param response The response of the client.
+         * @param request  The request the response belongs to.
+         */
+        private Response(ClassicHttpResponse response, TransportRequest request) {
+            _response = response;
+            _request = request;
+        }
+
+        /**
+         * Retrieves the status code of the response.
+         *
+         * @return The HTTP status code.
+         */
+        @Override
+        public int getStatus() {
+            return _response.getCode();
+        }
+
+        /**
+         * Retrieves the first value of a response header.
+         *
+         * @param name The name of the header, case-insensitive.
+         * @return The value of the header, or null if it was not sent.
+         */
+        @Override
+        public String getHeader(String name) {
+            Header header = _response.getFirstHeader(name);
+            return header == null ? null : header.getValue();
+        }
+
+        /**
+         * Retrieves the size of the body as sent.
+         *
+         * @return The size of the body in bytes, or -1 if unknown.
+         */
+        @Override
+        public long getContentLength() {
+            HttpEntity entity = _response.getEntity();
+            return entity == null ? -1 : entity.getContentLength();
+        }
+
+        /**
+         * Retrieves the content encoding of the body.
+         *
+         * @return The content encoding, or null if the body is not encoded.
+         */
+        @Override
+        public String getContentEncoding() {
+            HttpEntity entity = _response.getEntity();
+            return entity == null ? null : entity.getContentEncoding();
+        }
+
+        /**
+         * Retrieves the body of the response.
+         *
+         * @return The body, empty if the response has no content.
+         * @throws IOException If the body cannot be opened.
+         */
+        @Override
+        public InputStream getBody() throws IOException {
+            HttpEntity entity = _response.getEntity();
+            return entity == null ? InputStream.nullInputStream() : entity.getContent();
+        }
+
+        /**
+         * Reads the rest of the body, so the connection returns to the pool, unless the request was cancelled.
+         *
+         * @throws IOException If the connection cannot be released.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!_request.isCancelled()) {
+                    EntityUtils.consume(_response.getEntity());
+                }
+            } finally {
+                _response.close();
+            }
+        }
+    }
+}
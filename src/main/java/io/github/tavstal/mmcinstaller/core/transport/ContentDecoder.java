@@ -0,0 +1,29 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a response body sent with a `Content-Encoding`, e.g. `gzip`.
+ * <br/>
+ * gzip and deflate are built in. Additional encodings (like zstd) can be added by providing an
+ * implementation through {@link java.util.ServiceLoader}, see {@link ContentDecoders}.
+ */
+public interface ContentDecoder {
+    /**
+     * Retrieves the content coding handled by this decoder, as sent in `Accept-Encoding`.
+     *
+     * @return The lowercase name of the content coding.
+     */
+    String getEncoding();
+
+    /**
+     * Wraps an encoded stream into a stream returning the decoded bytes. Decoding must be streaming,
+     * the whole body must never be buffered in memory.
+     *
+     * @param encoded The encoded response body.
+     * @return A stream of the decoded bytes. Closing it closes the encoded stream.
+     * @throws IOException If the stream header is invalid.
+     */
+    InputStream decode(InputStream encoded) throws IOException;
+}
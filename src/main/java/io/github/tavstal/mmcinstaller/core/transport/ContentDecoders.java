@@ -0,0 +1,157 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A utility class holding the available {@link ContentDecoder}s: the built-in gzip and deflate decoders,
+ * and any decoder provided through {@link ServiceLoader}.
+ */
+public class ContentDecoders {
+    private final static int STREAM_BUFFER_SIZE = 64 * 1024; // Size of the buffers used by the built-in decoders.
+    private final static Map<String, ContentDecoder> _decoders = loadDecoders(); // Decoders by content coding.
+
+    /**
+     * Retrieves the value of the `Accept-Encoding` header listing every supported content coding.
+     *
+     * @return The supported content codings, separated by commas.
+     */
+    public static String getAcceptEncoding() {
+        return String.join(", ", _decoders.keySet());
+    }
+
+    /**
+     * Checks if a `Content-Encoding` header value means the body is sent as is.
+     *
+     * @param contentEncoding The header value, or null if the header is missing.
+     * @return True if the body is not encoded.
+     */
+    public static boolean isIdentity(String contentEncoding) {
+        return contentEncoding == null || contentEncoding.isBlank() || contentEncoding.trim().equalsIgnoreCase("identity");
+    }
+
+    /**
+     * Wraps a response body into a stream returning the decoded bytes.
+     * Multiple codings are undone in the reverse order they were applied.
+     *
+     * @param contentEncoding The value of the `Content-Encoding` header, or null if the header is missing.
+     * @param body            The response body.
+     * @return A stream of the decoded bytes.
+     * @throws IOException If a content coding is not supported or the stream header is invalid.
+     */
+    public static InputStream decode(String contentEncoding, InputStream body) throws IOException {
+        if (isIdentity(contentEncoding)) {
+            return body;
+        }
+
+        List<String> codings = new ArrayList<>(Arrays.asList(contentEncoding.split(",")));
+        Collections.reverse(codings);
+        InputStream stream = body;
+        for (String coding : codings) {
+            String name = coding.trim().toLowerCase(Locale.ROOT);
+            if (name.isEmpty() || name.equals("identity")) {
+                continue;
+            }
+
+            ContentDecoder decoder = _decoders.get(name);
+            if (decoder == null) {
+                throw new IOException("Unsupported Content-Encoding: " + coding.trim());
+            }
+            stream = decoder.decode(stream);
+        }
+        return stream;
+    }
+
+    /**
+     * Creates the decoder map from the built-in decoders and the ones found by the service loader.
+     *
+     * @return The decoders by content coding, in preference order.
+     */
+    private static Map<String, ContentDecoder> loadDecoders() {
+        Map<String, ContentDecoder> decoders = new LinkedHashMap<>();
+        for (ContentDecoder decoder : ServiceLoader.load(ContentDecoder.class)) {
+            decoders.put(decoder.getEncoding().toLowerCase(Locale.ROOT), decoder); // Usually better than gzip, so preferred.
+        }
+        decoders.putIfAbsent("gzip", new GzipDecoder("gzip"));
+        decoders.putIfAbsent("x-gzip", new GzipDecoder("x-gzip"));
+        decoders.putIfAbsent("deflate", new DeflateDecoder());
+        return decoders;
+    }
+
+    /**
+     * Decodes the `gzip` content coding.
+     */
+    private static class GzipDecoder implements ContentDecoder {
+        private final String _encoding; // The name the coding is registered under.
+
+        /**
+         * Constructs a new `GzipDecoder` instance.
+         *
+         * @param encoding The name the coding is registered under.
+         */
+        private GzipDecoder(String encoding) {
+            _encoding = encoding;
+        }
+
+        /**
+         * Retrieves the name the coding is registered under.
+         *
+         * @return The name of the content coding.
+         */
+        @Override
+        public String getEncoding() {
+            return _encoding;
+        }
+
+        /**
+         * Wraps a gzip stream into a decompressing stream.
+         *
+         * @param encoded The gzip-encoded response body.
+         * @return A stream of the decompressed bytes.
+         * @throws IOException If the gzip header is invalid.
+         */
+        @Override
+        public InputStream decode(InputStream encoded) throws IOException {
+            return new GZIPInputStream(encoded, STREAM_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Decodes the `deflate` content coding. The coding is specified as zlib-wrapped, but some
+     * servers send raw deflate data, so the zlib header is detected.
+     */
+    private static class DeflateDecoder implements ContentDecoder {
+        /**
+         * Retrieves the name of the deflate coding.
+         *
+         * @return Always `deflate`.
+         */
+        @Override
+        public String getEncoding() {
+            return "deflate";
+        }
+
+        /**
+         * Wraps a deflate stream into a decompressing stream.
+         *
+         * @param encoded The deflate-encoded response body.
+         * @return A stream of the decompressed bytes.
+         * @throws IOException If the header cannot be read.
+         */
+        @Override
+        public InputStream decode(InputStream encoded) throws IOException {
+            PushbackInputStream stream = new PushbackInputStream(encoded, 2);
+            byte[] header = stream.readNBytes(2);
+            stream.unread(header);
+            boolean zlibWrapped = header.length == 2
+                    && (header[0] & 0x0F) == 8 // Compression method: deflate.
+                    && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+            return new InflaterInputStream(stream, new Inflater(!zlibWrapped), STREAM_BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.nio.AsyncClientConnectionOperator;
+import org.apache.hc.client5.http.nio.ManagedAsyncClientConnection;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.net.NamedEndpoint;
+import org.apache.hc.core5.reactor.ConnectionInitiator;
+import org.apache.hc.core5.util.Timeout;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.Future;
+
+/**
+ * Opens the connections of the async Apache client with the session that wins the race of the
+ * {@link DualStackResolver}. The default operator still sets up the connection and its TLS handshake;
+ * only its connects go through the race.
+ * <br/>
+ * The default operator tries the resolved addresses one after the other. It is given a resolver returning
+ * a single address, so its single connect is the whole race instead of one race per address.
+ */
+public class DualStackAsyncConnectionOperator implements AsyncClientConnectionOperator {
+    private final AsyncClientConnectionOperator _operator; // The default operator, set up with a single address per host.
+    private final DualStackResolver _resolver; // Races the addresses of a host.
+
+    /**
+     * Constructs a new `DualStackAsyncConnectionOperator` instance.
+     *
+     * @param operator The default operator of the client, created with {@link #singleAddress(DnsResolver)}.
+     * @param resolver Races the addresses of a host.
+     */
+    public DualStackAsyncConnectionOperator(AsyncClientConnectionOperator operator, DualStackResolver resolver) {
+        _operator = operator;
+        _resolver = resolver;
+    }
+
+    /**
+     * Creates the resolver of the default operator, which returns only the first address of a host.
+     *
+     * @param resolver The resolver of the client.
+     * @return The resolver for the default operator.
+     */
+    public static DnsResolver singleAddress(DnsResolver resolver) {
+        return new DnsResolver() {
+            @Override
+            public InetAddress[] resolve(String host) throws UnknownHostException {
+                return new InetAddress[]{resolver.resolve(host)[0]};
+            }
+
+            @Override
+            public String resolveCanonicalHostname(String host) throws UnknownHostException {
+                return resolver.resolveCanonicalHostname(host);
+            }
+        };
+    }
+
+    /**
+     * Opens a connection to a host, see {@link #connect(ConnectionInitiator, HttpHost, NamedEndpoint, SocketAddress, Timeout, Object, HttpContext, FutureCallback)}.
+     */
+    @Override
+    public Future<ManagedAsyncClientConnection> connect(ConnectionInitiator initiator, HttpHost host, SocketAddress localAddress, Timeout connectTimeout, Object attachment, FutureCallback<ManagedAsyncClientConnection> callback) {
+        return connect(initiator, host, null, localAddress, connectTimeout, attachment, null, callback);
+    }
+
+    /**
+     * Opens a connection to a host, racing its addresses in place of the single connect of the default operator.
+     *
+     * @param initiator      The I/O reactor opening the sessions.
+     * @param host           The host to connect to.
+     * @param endpoint       The name used for the TLS handshake, or null to use the host.
+     * @param localAddress   The local address to bind to, or null.
+     * @param connectTimeout The connect timeout of the client.
+     * @param attachment     The attachment of the sessions.
+     * @param context        The context of the exchange, holding the {@link TransportRequest}.
+     * @param callback       Receives the connection.
+     * @return The future of the connection.
+     */
+    @Override
+    public Future<ManagedAsyncClientConnection> connect(ConnectionInitiator initiator, HttpHost host, NamedEndpoint endpoint, SocketAddress localAddress,
+                                                        Timeout connectTimeout, Object attachment, HttpContext context, FutureCallback<ManagedAsyncClientConnection> callback) {
+        TransportRequest request = DualStackResolver.getRequest(context);
+        ConnectionInitiator racing = (remoteEndpoint, remoteAddress, local, timeout, sessionAttachment, sessionCallback) -> {
+            if (!(remoteAddress instanceof InetSocketAddress address) || remoteEndpoint == null) {
+                return initiator.connect(remoteEndpoint, remoteAddress, local, timeout, sessionAttachment, sessionCallback);
+            }
+            // The address stands for every address of the host, only its port is used.
+            return _resolver.connect(initiator, remoteEndpoint, address.getPort(), local, timeout, sessionAttachment, request, sessionCallback);
+        };
+        return _operator.connect(racing, host, endpoint, localAddress, connectTimeout, attachment, context, callback);
+    }
+
+    /**
+     * Performs the TLS handshake on an open connection, see {@link AsyncClientConnectionOperator#upgrade(ManagedAsyncClientConnection, HttpHost, Object)}.
+     */
+    @Override
+    public void upgrade(ManagedAsyncClientConnection conn, HttpHost host, Object attachment) {
+        _operator.upgrade(conn, host, attachment);
+    }
+
+    /**
+     * Performs the TLS handshake on an open connection, see {@link AsyncClientConnectionOperator#upgrade(ManagedAsyncClientConnection, HttpHost, NamedEndpoint, Object, HttpContext, FutureCallback)}.
+     */
+    @Override
+    public void upgrade(ManagedAsyncClientConnection conn, HttpHost host, NamedEndpoint endpoint, Object attachment, HttpContext context, FutureCallback<ManagedAsyncClientConnection> callback) {
+        _operator.upgrade(conn, host, endpoint, attachment, context, callback);
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import org.apache.hc.client5.http.SchemePortResolver;
+import org.apache.hc.client5.http.io.HttpClientConnectionOperator;
+import org.apache.hc.client5.http.io.ManagedHttpClientConnection;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.net.NamedEndpoint;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Opens the connections of the classic Apache client with the socket that wins the race of the
+ * {@link DualStackResolver}, and lets the default operator perform the TLS handshake on it.
+ * Connections through a SOCKS proxy are left to the default operator.
+ */
+public class DualStackConnectionOperator implements HttpClientConnectionOperator {
+    private final HttpClientConnectionOperator _operator; // The default operator, performing the TLS handshake.
+    private final DualStackResolver _resolver; // Races the addresses of a host.
+    private final SchemePortResolver _schemePortResolver; // Resolves the port of a host without an explicit port.
+
+    /**
+     * Constructs a new `DualStackConnectionOperator` instance.
+     *
+     * @param operator           The default operator of the client.
+     * @param resolver           Races the addresses of a host.
+     * @param schemePortResolver Resolves the port of a host without an explicit port.
+     */
+    public DualStackConnectionOperator(HttpClientConnectionOperator operator, DualStackResolver resolver, SchemePortResolver schemePortResolver) {
+        _operator = operator;
+        _resolver = resolver;
+        _schemePortResolver = schemePortResolver;
+    }
+
+    /**
+     * Opens a connection to a host, see {@link #connect(ManagedHttpClientConnection, HttpHost, NamedEndpoint, InetSocketAddress, Timeout, SocketConfig, Object, HttpContext)}.
+     */
+    @Override
+    public void connect(ManagedHttpClientConnection conn, HttpHost host, InetSocketAddress localAddress, TimeValue connectTimeout, SocketConfig socketConfig, HttpContext context) throws IOException {
+        connect(conn, host, null, localAddress, connectTimeout == null ? null : Timeout.of(connectTimeout.getDuration(), connectTimeout.getTimeUnit()), socketConfig, null, context);
+    }
+
+    /**
+     * Opens a connection to a host by racing its addresses, binds the winning socket to the connection,
+     * and performs the TLS handshake for `https` hosts.
+     *
+     * @param conn           The connection to bind.
+     * @param host           The host to connect to.
+     * @param endpoint       The name used for the TLS handshake, or null to use the host.
+     * @param localAddress   The local address to bind to, or null.
+     * @param connectTimeout The connect timeout of the client.
+     * @param socketConfig   The options of the socket.
+     * @param attachment     The attachment of the TLS handshake.
+     * @param context        The context of the exchange, holding the {@link TransportRequest}.
+     * @throws IOException If no address accepted a connection in time, the request was cancelled, or the handshake failed.
+     */
+    @Override
+    public void connect(ManagedHttpClientConnection conn, HttpHost host, NamedEndpoint endpoint, InetSocketAddress localAddress, Timeout connectTimeout, SocketConfig socketConfig, Object attachment, HttpContext context) throws IOException {
+        if (socketConfig.getSocksProxyAddress() != null) {
+            _operator.connect(conn, host, endpoint, localAddress, connectTimeout, socketConfig, attachment, context);
+            return;
+        }
+
+        TransportRequest request = DualStackResolver.getRequest(context);
+        int port = _schemePortResolver.resolve(host.getSchemeName(), host);
+        Socket socket = _resolver.connect(host.getHostName(), port, DualStackResolver.getTimeout(connectTimeout, request),
+                () -> request != null && request.isCancelled(), () -> createSocket(socketConfig, localAddress));
+        conn.bind(socket);
+        if (socketConfig.getSoTimeout() != null) {
+            conn.setSocketTimeout(socketConfig.getSoTimeout());
+        }
+        if (URIScheme.HTTPS.same(host.getSchemeName())) {
+            _operator.upgrade(conn, host, endpoint, attachment, context);
+        }
+    }
+
+    /**
+     * Performs the TLS handshake on an open connection, see {@link HttpClientConnectionOperator#upgrade(ManagedHttpClientConnection, HttpHost, HttpContext)}.
+     */
+    @Override
+    public void upgrade(ManagedHttpClientConnection conn, HttpHost host, HttpContext context) throws IOException {
+        _operator.upgrade(conn, host, context);
+    }
+
+    /**
+     * Performs the TLS handshake on an open connection, see {@link HttpClientConnectionOperator#upgrade(ManagedHttpClientConnection, HttpHost, NamedEndpoint, Object, HttpContext)}.
+     */
+    @Override
+    public void upgrade(ManagedHttpClientConnection conn, HttpHost host, NamedEndpoint endpoint, Object attachment, HttpContext context) throws IOException {
+        _operator.upgrade(conn, host, endpoint, attachment, context);
+    }
+
+    /**
+     * Creates the unconnected socket of a racing attempt with the options of the client.
+     *
+     * @param socketConfig The options of the socket.
+     * @param localAddress The local address to bind to, or null.
+     * @return The socket.
+     * @throws IOException If the socket cannot be configured.
+     */
+    private static Socket createSocket(SocketConfig socketConfig, InetSocketAddress localAddress) throws IOException {
+        Socket socket = new Socket();
+        try {
+            if (socketConfig.getSoTimeout() != null) {
+                socket.setSoTimeout(socketConfig.getSoTimeout().toMillisecondsIntBound());
+            }
+            socket.setReuseAddress(socketConfig.isSoReuseAddress());
+            socket.setTcpNoDelay(socketConfig.isTcpNoDelay());
+            socket.setKeepAlive(socketConfig.isSoKeepAlive());
+            if (socketConfig.getRcvBufSize() > 0) {
+                socket.setReceiveBufferSize(socketConfig.getRcvBufSize());
+            }
+            if (socketConfig.getSndBufSize() > 0) {
+                socket.setSendBufferSize(socketConfig.getSndBufSize());
+            }
+            if (socketConfig.getSoLinger() != null && socketConfig.getSoLinger().toMilliseconds() >= 0) {
+                socket.setSoLinger(true, socketConfig.getSoLinger().toSecondsIntBound());
+            }
+            if (localAddress != null) {
+                socket.bind(localAddress);
+            }
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+}
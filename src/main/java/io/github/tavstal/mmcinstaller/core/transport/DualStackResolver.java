@@ -0,0 +1,416 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+import org.apache.hc.core5.concurrent.BasicFuture;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.net.NamedEndpoint;
+import org.apache.hc.core5.reactor.ConnectionInitiator;
+import org.apache.hc.core5.reactor.IOSession;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Connects the Apache clients to hosts with IPv6 and IPv4 addresses over the family that answers first
+ * ("Happy Eyeballs").
+ * <br/>
+ * Every new connection races TCP connects to the addresses of the host, starting with the family that won
+ * last time (or the family the system prefers) and alternating families every {@link #STAGGER_MS} ms, or at
+ * once when an attempt fails. The winning connection is handed to the client and the other attempts are
+ * aborted, so the race costs no extra handshake. The connection operators of the classic and async clients
+ * ({@link DualStackConnectionOperator}, {@link DualStackAsyncConnectionOperator}) run the race, bounded by
+ * the connect timeout and the timeout of the {@link TransportRequest}, and stop it when the request is cancelled.
+ * <br/>
+ * The winning family is remembered for the session, so later races give it a head start and a broken IPv6
+ * (or IPv4) route never makes the client wait for a connect timeout.
+ */
+public class DualStackResolver implements DnsResolver {
+    /**
+     * The attribute of the {@link HttpContext} holding the {@link TransportRequest} a connection is opened for.
+     */
+    public final static String REQUEST_ATTRIBUTE = "io.github.tavstal.mmcinstaller.transport.request";
+    private final static long STAGGER_MS = 250; // Delay before the next address is tried while the previous one is still connecting.
+    private final static long POLL_MS = 50; // Time between two checks of the cancellation of a race.
+    private final static long CONNECT_TIMEOUT_MS = 10_000; // Time allowed for a race when the client sets no connect timeout.
+
+    private final InstallerLogger _logger; // Logger instance for logging resolver-related messages.
+    private final DnsResolver _resolver; // Resolves the addresses of a host.
+    private final Map<String, Boolean> _families = new ConcurrentHashMap<>(); // True if IPv6 won the last race, by host.
+
+    /**
+     * Constructs a new `DualStackResolver` instance using the resolver of the system.
+     */
+    public DualStackResolver() {
+        this(SystemDefaultDnsResolver.INSTANCE);
+    }
+
+    /**
+     * Constructs a new `DualStackResolver` instance.
+     *
+     * @param resolver Resolves the addresses of a host, e.g. a stand-in returning `::1` and `127.0.0.1`.
+     */
+    public DualStackResolver(DnsResolver resolver) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _resolver = resolver;
+    }
+
+    /**
+     * Resolves the addresses of a host, the addresses of the family that won the last race first.
+     *
+     * @param host The host name.
+     * @return The addresses of the host.
+     * @throws UnknownHostException If the host cannot be resolved.
+     */
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        InetAddress[] addresses = _resolver.resolve(host);
+        Boolean ipv6 = _families.get(host);
+        if (ipv6 == null || addresses.length < 2) {
+            return addresses;
+        }
+
+        InetAddress[] ordered = addresses.clone();
+        // Stable, so the order of the system is kept within each family.
+        Arrays.sort(ordered, Comparator.comparing((InetAddress address) -> (address instanceof Inet6Address) != ipv6));
+        return ordered;
+    }
+
+    /**
+     * Resolves the canonical name of a host.
+     *
+     * @param host The host name.
+     * @return The canonical name of the host.
+     * @throws UnknownHostException If the host cannot be resolved.
+     */
+    @Override
+    public String resolveCanonicalHostname(String host) throws UnknownHostException {
+        return _resolver.resolveCanonicalHostname(host);
+    }
+
+    /**
+     * Opens a TCP connection to a host by racing its addresses.
+     *
+     * @param host      The host name.
+     * @param port      The port to connect to.
+     * @param timeoutMs The time allowed for the whole race, in milliseconds.
+     * @param cancelled Returns true when the race should stop.
+     * @param factory   Creates the unconnected socket of an attempt, with the options of the client applied.
+     * @return The connected socket of the first address that accepted the connection.
+     * @throws IOException If no address accepted a connection in time, or the race was cancelled.
+     */
+    public Socket connect(String host, int port, long timeoutMs, BooleanSupplier cancelled, SocketFactory factory) throws IOException {
+        return race(host, timeoutMs, cancelled, address -> new Attempt<>() {
+            private volatile Socket _socket; // The socket of the attempt, null until created.
+            private volatile boolean _aborted; // True once the attempt lost the race.
+
+            @Override
+            public Socket await() throws IOException {
+                Socket socket = factory.create();
+                _socket = socket;
+                try {
+                    if (_aborted) {
+                        throw new InterruptedIOException("The attempt lost the race.");
+                    }
+                    socket.connect(new InetSocketAddress(address, port), (int) Math.min(Integer.MAX_VALUE, timeoutMs));
+                } catch (IOException e) {
+                    closeQuietly(socket);
+                    throw e;
+                }
+                return socket;
+            }
+
+            @Override
+            public void abort() {
+                _aborted = true;
+                Socket socket = _socket;
+                if (socket != null) {
+                    closeQuietly(socket); // Also aborts a connect in progress.
+                }
+            }
+        });
+    }
+
+    /**
+     * Opens a non-blocking connection to a host by racing its addresses through the I/O reactor of the async
+     * client. The race runs on a virtual thread, so the I/O threads are never blocked.
+     *
+     * @param initiator  Opens the sessions of the attempts.
+     * @param endpoint   The host to connect to.
+     * @param port       The port to connect to.
+     * @param local      The local address to bind to, or null.
+     * @param timeout    The connect timeout of the client.
+     * @param attachment The attachment of the sessions.
+     * @param request    The request the connection is opened for, or null.
+     * @param callback   Receives the session of the first address that accepted the connection, or null.
+     * @return The future of the session.
+     */
+    public Future<IOSession> connect(ConnectionInitiator initiator, NamedEndpoint endpoint, int port, SocketAddress local,
+                                     Timeout timeout, Object attachment, TransportRequest request, FutureCallback<IOSession> callback) {
+        BasicFuture<IOSession> future = new BasicFuture<>(callback);
+        long timeoutMs = getTimeout(timeout, request);
+        BooleanSupplier cancelled = () -> future.isCancelled() || (request != null && request.isCancelled());
+        Thread.ofVirtual().name("dual-stack-connect").start(() -> {
+            try {
+                IOSession session = race(endpoint.getHostName(), timeoutMs, cancelled, address -> new Attempt<>() {
+                    private volatile Future<IOSession> _session; // The session being opened, null until started.
+                    private volatile boolean _aborted; // True once the attempt lost the race.
+
+                    @Override
+                    public IOSession await() throws Exception {
+                        _session = initiator.connect(endpoint, new InetSocketAddress(address, port), local, Timeout.ofMilliseconds(timeoutMs), attachment, null);
+                        if (_aborted) {
+                            abort(); // Lost the race while the session was being started.
+                        }
+                        return _session.get();
+                    }
+
+                    @Override
+                    public void abort() {
+                        _aborted = true;
+                        Future<IOSession> session = _session;
+                        if (session != null && !session.cancel(true)) {
+                            try {
+                                session.get().close(CloseMode.IMMEDIATE);
+                            } catch (InterruptedException | ExecutionException | CancellationException ignored) {
+                                // The attempt never connected.
+                            }
+                        }
+                    }
+                });
+                if (!future.completed(session)) {
+                    session.close(CloseMode.IMMEDIATE); // Cancelled after the race was won.
+                }
+            } catch (IOException e) {
+                future.failed(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Calculates the time allowed for a race.
+     *
+     * @param timeout The connect timeout of the client, or null if unset.
+     * @param request The request the connection is opened for, or null.
+     * @return The connect timeout of the client, shortened to the timeout of the request, in milliseconds.
+     */
+    static long getTimeout(Timeout timeout, TransportRequest request) {
+        long timeoutMs = timeout == null || timeout.isDisabled() ? CONNECT_TIMEOUT_MS : timeout.toMilliseconds();
+        if (request != null && request.getTimeout() > 0) {
+            timeoutMs = Math.min(timeoutMs, request.getTimeout());
+        }
+        return timeoutMs;
+    }
+
+    /**
+     * Retrieves the request a connection is opened for.
+     *
+     * @param context The context of the exchange, or null.
+     * @return The request stored by the transport, or null.
+     */
+    static TransportRequest getRequest(HttpContext context) {
+        Object request = context == null ? null : context.getAttribute(REQUEST_ATTRIBUTE);
+        return request instanceof TransportRequest transportRequest ? transportRequest : null;
+    }
+
+    /**
+     * Races connection attempts to the addresses of a host, starting the next attempt after the stagger delay
+     * or when the previous attempt fails. The first connection is returned, every other attempt is aborted.
+     *
+     * @param host      The host name.
+     * @param timeoutMs The time allowed for the whole race, in milliseconds.
+     * @param cancelled Returns true when the race should stop.
+     * @param starter   Creates the attempt of an address.
+     * @param <T>       The type of the connection.
+     * @return The connection of the first address that connected.
+     * @throws IOException If the host cannot be resolved, no address connected in time, or the race was cancelled.
+     */
+    private <T> T race(String host, long timeoutMs, BooleanSupplier cancelled, Function<InetAddress, Attempt<T>> starter) throws IOException {
+        List<InetAddress> addresses = interleave(resolve(host));
+        boolean dualStack = addresses.stream().anyMatch(address -> address instanceof Inet6Address)
+                && addresses.stream().anyMatch(address -> !(address instanceof Inet6Address));
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        CompletionService<Connected<T>> completion = new ExecutorCompletionService<>(executor);
+        Map<InetAddress, Attempt<T>> attempts = new ConcurrentHashMap<>();
+        Connected<T> winner = null;
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            long nextStart = System.nanoTime();
+            int next = 0;
+            int running = 0;
+            Exception lastError = null;
+            while (next < addresses.size() || running > 0) {
+                if (cancelled.getAsBoolean()) {
+                    throw new InterruptedIOException("The connection to " + host + " was cancelled.");
+                }
+                long now = System.nanoTime();
+                if (now >= deadline) {
+                    throw new SocketTimeoutException(String.format("No address of %s connected within %d ms.", host, timeoutMs));
+                }
+                if (next < addresses.size() && now >= nextStart) {
+                    InetAddress address = addresses.get(next++);
+                    Attempt<T> attempt = starter.apply(address);
+                    attempts.put(address, attempt);
+                    completion.submit(() -> new Connected<>(address, attempt.await()));
+                    running++;
+                    nextStart = now + TimeUnit.MILLISECONDS.toNanos(STAGGER_MS);
+                }
+
+                long waitNanos = Math.min(deadline - now, TimeUnit.MILLISECONDS.toNanos(POLL_MS));
+                if (next < addresses.size()) {
+                    waitNanos = Math.min(waitNanos, Math.max(0, nextStart - now));
+                }
+                Future<Connected<T>> done = completion.poll(waitNanos, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    continue; // Check the cancellation, or start the next attempt after the stagger delay.
+                }
+                running--;
+                try {
+                    winner = done.get();
+                } catch (ExecutionException e) {
+                    lastError = e.getCause() instanceof Exception exception ? exception : e;
+                    nextStart = System.nanoTime(); // The next attempt starts at once.
+                    continue;
+                }
+
+                if (dualStack) {
+                    remember(host, winner.address());
+                }
+                return winner.connection();
+            }
+            if (lastError instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new ConnectException(String.format("No address of %s accepted a connection.", host));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting to " + host + ".");
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            for (Map.Entry<InetAddress, Attempt<T>> attempt : attempts.entrySet()) {
+                if (winner == null || !attempt.getKey().equals(winner.address())) {
+                    attempt.getValue().abort();
+                }
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Remembers the family of the address that won a race.
+     *
+     * @param host   The host name.
+     * @param winner The address that connected first.
+     */
+    private void remember(String host, InetAddress winner) {
+        boolean ipv6 = winner instanceof Inet6Address;
+        Boolean previous = _families.put(host, ipv6);
+        if (previous == null || previous != ipv6) {
+            _logger.Debug(String.format("Using %s for %s, %s connected first.", ipv6 ? "IPv6" : "IPv4", host, winner.getHostAddress()));
+        }
+    }
+
+    /**
+     * Orders addresses by alternating families, starting with the family of the first address.
+     *
+     * @param addresses The addresses in order of preference.
+     * @return The interleaved addresses.
+     */
+    private static List<InetAddress> interleave(InetAddress[] addresses) {
+        Deque<InetAddress> preferred = new ArrayDeque<>();
+        Deque<InetAddress> other = new ArrayDeque<>();
+        for (InetAddress address : addresses) {
+            ((address instanceof Inet6Address) == (addresses[0] instanceof Inet6Address) ? preferred : other).add(address);
+        }
+
+        List<InetAddress> interleaved = new ArrayList<>();
+        while (!preferred.isEmpty() || !other.isEmpty()) {
+            if (!preferred.isEmpty()) {
+                interleaved.add(preferred.poll());
+            }
+            if (!other.isEmpty()) {
+                interleaved.add(other.poll());
+            }
+        }
+        return interleaved;
+    }
+
+    /**
+     * Closes a socket, ignoring failures.
+     *
+     * @param socket The socket to close.
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // The attempt is abandoned anyway.
+        }
+    }
+
+    /**
+     * Creates the unconnected sockets of the attempts of a race.
+     */
+    @FunctionalInterface
+    public interface SocketFactory {
+        /**
+         * Creates an unconnected socket.
+         *
+         * @return The socket.
+         * @throws IOException If the socket cannot be created or configured.
+         */
+        Socket create() throws IOException;
+    }
+
+    /**
+     * A connection attempt to a single address.
+     *
+     * @param <T> The type of the connection.
+     */
+    private interface Attempt<T> {
+        /**
+         * Opens the connection, blocking until it is established.
+         *
+         * @return The connection.
+         * @throws Exception If the connection failed.
+         */
+        T await() throws Exception;
+
+        /**
+         * Aborts the attempt, closing its connection if it was already established.
+         */
+        void abort();
+    }
+
+    /**
+     * The connection of an attempt that won a race.
+     *
+     * @param address    The address the attempt connected to.
+     * @param connection The connection.
+     * @param <T>        The type of the connection.
+     */
+    private record Connected<T>(InetAddress address, T connection) {
+    }
+}
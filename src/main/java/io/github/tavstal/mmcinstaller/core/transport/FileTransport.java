@@ -0,0 +1,368 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads files from the local file system or a mounted network share, answering like an HTTP server
+ * would, so local mirrors are used exactly like remote ones.
+ * <br/>
+ * Sources are `file://` URLs or plain paths, e.g. `/mnt/mirror/MesterMC.jar` or `\\server\share\MesterMC.jar`.
+ * Responses carry Content-Length, Last-Modified, `Accept-Ranges: bytes` and an ETag derived from the size
+ * and the modification time. Byte ranges (with If-Range), If-None-Match and If-Modified-Since are honored.
+ */
+public class FileTransport implements Transport {
+    /**
+     * Checks if a URL names a local file, i.e. it is a `file:` URL or has no scheme.
+     * A single letter scheme is a Windows drive, not a scheme.
+     *
+     * @param url The URL.
+     * @return True if the file transport reads the URL.
+     */
+    public static boolean isLocal(String url) {
+        int colon = url.indexOf(':');
+        if (colon < 0 || url.startsWith("\\\\") || url.startsWith("/")) {
+            return true;
+        }
+        String scheme = url.substring(0, colon);
+        return scheme.length() == 1 || scheme.equalsIgnoreCase("file");
+    }
+
+    /**
+     * Converts a local URL to a `file:` URI, so relative URLs can be resolved against it.
+     *
+     * @param url A `file:` URL or a plain path.
+     * @return The URI of the file.
+     * @throws IOException If the URL is not a valid path.
+     */
+    public static URI toUri(String url) throws IOException {
+        return toPath(url).toUri();
+    }
+
+    /**
+     * Reads a file, or its metadata for HEAD requests.
+     *
+     * @param request The request to answer.
+     * @return The response. A missing file is answered with 404, an unsatisfiable range with 416.
+     * @throws IOException If the file cannot be read or the request was cancelled.
+     */
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        if (request.isCancelled()) {
+            throw new InterruptedIOException("The request was cancelled.");
+        }
+
+        Path path = toPath(request.getUrl());
+        if (!Files.isRegularFile(path)) {
+            return new Response(404, Map.of(), null, 0, 0);
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        Instant modified = attributes.lastModifiedTime().toInstant();
+        String etag = String.format("\"%x-%x\"", size, modified.toEpochMilli());
+        String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(modified, ZoneOffset.UTC));
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("etag", etag);
+        headers.put("last-modified", lastModified);
+        headers.put("accept-ranges", "bytes");
+        if (isNotModified(request, etag, modified)) {
+            return new Response(304, headers, null, 0, 0);
+        }
+
+        long start = 0;
+        long end = size - 1;
+        int status = 200;
+        long[] range = parseRange(request.getHeader("Range"), size);
+        String ifRange = request.getHeader("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified))) {
+            if (range[0] >= size) {
+                headers.put("content-range", "bytes */" + size);
+                headers.put("content-length", "0");
+                return new Response(416, headers, null, 0, 0);
+            }
+            start = range[0];
+            end = range[1];
+            status = 206;
+            headers.put("content-range", "bytes " + start + "-" + end + "/" + size);
+        }
+        long length = Math.max(0, end - start + 1);
+        headers.put("content-length", String.valueOf(length));
+
+        if (request.isHead()) {
+            return new Response(status, headers, null, 0, 0);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        // Closing the channel makes a blocked read fail, so a cancelled request stops at once.
+        request.onCancel(() -> {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // The read fails anyway.
+            }
+        });
+        return new Response(status, headers, channel, start, length);
+    }
+
+    /**
+     * Retrieves the name of the transport.
+     *
+     * @return `file`.
+     */
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    /**
+     * Does nothing, files are opened per request.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Converts a URL to a path.
+     *
+     * @param url A `file:` URL or a plain path.
+     * @return The path of the file.
+     * @throws IOException If the URL is not a valid path.
+     */
+    private static Path toPath(String url) throws IOException {
+        try {
+            if (url.regionMatches(true, 0, "file:", 0, 5)) {
+                return Path.of(URI.create(url));
+            }
+            return Path.of(url);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid file URL: " + url, e);
+        }
+    }
+
+    /**
+     * Checks the conditional headers of a request. If-None-Match takes precedence over If-Modified-Since.
+     *
+     * @param request  The request.
+     * @param etag     The ETag of the file.
+     * @param modified The modification time of the file.
+     * @return True if the caller's copy is current.
+     */
+    private static boolean isNotModified(TransportRequest request, String etag, Instant modified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String value = tag.trim();
+                if (value.equals("*") || value.equals(etag) || value.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                Instant since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return modified.getEpochSecond() <= since.getEpochSecond();
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a single byte range of a Range header, including suffix ranges for the last bytes of the file.
+     * Multiple ranges are not supported and are answered with the whole file, like a server ignoring the header.
+     *
+     * @param header The value of the Range header, or null.
+     * @param size   The size of the file in bytes.
+     * @return The first and last offset of the range within the file, a first offset at or beyond the size if the
+     * range cannot be satisfied, or null to send the whole file.
+     */
+    private static long[] parseRange(String header, long size) {
+        if (header == null || !header.toLowerCase(Locale.ROOT).startsWith("bytes=") || header.contains(",")) {
+            return null;
+        }
+        String value = header.substring(6).trim();
+        int dash = value.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = value.substring(0, dash).trim();
+            String last = value.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) {
+                    return null;
+                }
+                return suffix == 0 ? new long[]{size, size} : new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            return start < 0 || end < start ? null : new long[]{start, Math.min(end, size - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A response read from a file.
+     */
+    private static class Response implements TransportResponse {
+        private final int _status; // The status code an HTTP server would send.
+        private final Map<String, String> _headers; // The response headers by lowercase name.
+        private final FileChannel _channel; // The open file, or null if the response has no body.
+        private final long _start; // The offset of the first byte of the body.
+        private final long _length; // The length of the body in bytes.
+        private InputStream _body; // The body, created on first use.
+
+        /**
+         * Constructs a new `Response` instance.
+         *
+         * @param status  The status code.
+         * @param headers The response headers by lowercase name.
+         * @param channel The open file, or null if the response has no body.
+         * @param start   The offset of the first byte of the body.
+         * @param length  The length of the body in bytes.
+         */
+        private Response(int status, Map<String, String> headers, FileChannel channel, long start, long length) {
+            _status = status;
+            _headers = headers;
+            _channel = channel;
+            _start = start;
+            _length = length;
+        }
+
+        /**
+         * Retrieves the status code of the response.
+         *
+         * @return The status code an HTTP server would send.
+         */
+        @Override
+        public int getStatus() {
+            return _status;
+        }
+
+        /**
+         * Retrieves a response header.
+         *
+         * @param name The name of the header, case-insensitive.
+         * @return The value of the header, or null if it was not sent.
+         */
+        @Override
+        public String getHeader(String name) {
+            return _headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        /**
+         * Retrieves the body of the response, limited to the requested range.
+         *
+         * @return The body, empty if the response has no content.
+         * @throws IOException If the file cannot be positioned.
+         */
+        @Override
+        public synchronized InputStream getBody() throws IOException {
+            if (_channel == null) {
+                return InputStream.nullInputStream();
+            }
+            if (_body == null) {
+                _channel.position(_start);
+                _body = new BoundedInputStream(Channels.newInputStream(_channel), _length);
+            }
+            return _body;
+        }
+
+        /**
+         * Closes the file.
+         *
+         * @throws IOException If the file cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (_channel != null) {
+                _channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads at most a given number of bytes from a stream.
+     */
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream _stream; // The stream to read from.
+        private long _remaining; // The number of bytes left to read.
+
+        /**
+         * Constructs a new `BoundedInputStream` instance.
+         *
+         * @param stream The stream to read from.
+         * @param length The number of bytes to read.
+         */
+        private BoundedInputStream(InputStream stream, long length) {
+            _stream = stream;
+            _remaining = length;
+        }
+
+        /**
+         * Reads a single byte.
+         *
+         * @return The byte, or -1 at the end of the range.
+         * @throws IOException If the file cannot be read.
+         */
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        /**
+         * Reads bytes into an array.
+         *
+         * @param buffer The array receiving the bytes.
+         * @param offset The offset in the array.
+         * @param length The maximum number of bytes to read.
+         * @return The number of bytes read, or -1 at the end of the range.
+         * @throws IOException If the file cannot be read.
+         */
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (_remaining <= 0) {
+                return -1;
+            }
+            int bytesRead = _stream.read(buffer, offset, (int) Math.min(length, _remaining));
+            if (bytesRead > 0) {
+                _remaining -= bytesRead;
+            }
+            return bytesRead;
+        }
+
+        /**
+         * Closes the stream.
+         *
+         * @throws IOException If the stream cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            _stream.close();
+        }
+    }
+}
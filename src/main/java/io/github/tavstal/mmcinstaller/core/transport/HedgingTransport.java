@@ -0,0 +1,288 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cuts the tail latency of the first byte by sending a hedged duplicate of a request that has not received
+ * its status and headers within a deadline. Whichever attempt answers first is kept, the other is cancelled.
+ * <br/>
+ * The deadline is a percentile of the recent times to the first byte of the same host, so only the slowest
+ * requests are duplicated and the extra load stays around the share of requests above the percentile.
+ * The duplicate goes to the mirror set with {@link TransportRequest#setHedgeUrl(String, java.util.function.BooleanSupplier)}, or over a second
+ * connection to the same URL otherwise.
+ */
+public class HedgingTransport implements Transport {
+    private final static int SAMPLE_WINDOW = 64; // Number of recent times to the first byte kept per host.
+    private final static int MIN_SAMPLES = 5; // Number of samples needed before the percentile is trusted.
+    private final static long DEFAULT_DELAY_MS = 1000; // Deadline used until enough samples are known.
+    private final static long MIN_DELAY_MS = 50; // Shortest deadline, so fast hosts are not hedged for noise.
+    private final static long MAX_DELAY_MS = 5000; // Longest deadline, so a slow history does not disable hedging.
+
+    private final InstallerLogger _logger; // Logger instance for logging hedging-related messages.
+    private final Transport _transport; // The transport sending every attempt.
+    private final int _percentile; // The percentile of the recent times to the first byte used as deadline.
+    private final Map<String, LatencyWindow> _latencies = new ConcurrentHashMap<>(); // The recent times to the first byte by host.
+
+    /**
+     * Constructs a new `HedgingTransport` instance.
+     *
+     * @param transport  The transport sending every attempt. Closed with this transport.
+     * @param percentile The percentile (1-99) of the recent times to the first byte after which a duplicate is sent.
+     */
+    public HedgingTransport(Transport transport, int percentile) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _transport = transport;
+        _percentile = Math.min(99, Math.max(1, percentile));
+    }
+
+    /**
+     * Sends a request, and a hedged duplicate if no response arrives within the deadline of the host.
+     * Cancelling the request cancels every attempt.
+     *
+     * @param request The request to send.
+     * @return The response that arrived first.
+     * @throws IOException If every attempt failed, or the request was cancelled.
+     */
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        LatencyWindow latency = _latencies.computeIfAbsent(getHost(request.getUrl()), host -> new LatencyWindow());
+        Race race = new Race(request, latency);
+        request.onCancel(race::cancel);
+
+        race.launch(request.getUrl());
+        long delayMs = latency.getDeadline(_percentile);
+        TransportResponse response = race.await(delayMs);
+        if (response != null) {
+            return response;
+        }
+
+        String hedgeUrl = request.admitHedge() ? request.getHedgeUrl() : request.getUrl();
+        _logger.Debug(String.format("No response from %s after %d ms, sending a hedged request to %s.", request.getUrl(), delayMs, hedgeUrl));
+        race.launch(hedgeUrl);
+        return race.await(-1);
+    }
+
+    /**
+     * Retrieves the name of the wrapped transport.
+     *
+     * @return The name of the wrapped transport.
+     */
+    @Override
+    public String getName() {
+        return _transport.getName();
+    }
+
+    /**
+     * Closes the wrapped transport.
+     */
+    @Override
+    public void close() {
+        _transport.close();
+    }
+
+    /**
+     * Retrieves the host the latency of a URL is tracked for.
+     *
+     * @param url The URL.
+     * @return The host and port of the URL, or the URL itself if it has none.
+     */
+    private static String getHost(String url) {
+        try {
+            String authority = URI.create(url).getAuthority();
+            return authority == null ? url : authority;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * The attempts of a single request, the first response of which is handed to the caller.
+     */
+    private class Race {
+        private final TransportRequest _request; // The request of the caller.
+        private final LatencyWindow _latency; // Receives the times to the first byte of the attempts.
+        private final List<TransportRequest> _attempts = new ArrayList<>(); // Every attempt sent.
+        private TransportResponse _winner; // The first response, null until received.
+        private IOException _failure; // The failure of the first failed attempt, or null.
+        private int _running; // The number of attempts still waiting for a response.
+        private boolean _cancelled; // True once the request was cancelled.
+
+        /**
+         * Constructs a new `Race` instance.
+         *
+         * @param request The request of the caller.
+         * @param latency Receives the times to the first byte of the attempts.
+         */
+        private Race(TransportRequest request, LatencyWindow latency) {
+            _request = request;
+            _latency = latency;
+        }
+
+        /**
+         * Sends an attempt on its own virtual thread.
+         *
+         * @param url The URL the attempt is sent to.
+         */
+        private void launch(String url) {
+            TransportRequest attempt = _request.copy(url);
+            synchronized (this) {
+                _attempts.add(attempt);
+                _running++;
+                if (_cancelled) {
+                    attempt.cancel();
+                }
+            }
+            Thread.ofVirtual().name("hedged-request").start(() -> run(attempt));
+        }
+
+        /**
+         * Sends an attempt and offers its response to the caller. A response arriving after the winner is closed.
+         *
+         * @param attempt The attempt to send.
+         */
+        private void run(TransportRequest attempt) {
+            long start = System.nanoTime();
+            TransportResponse response;
+            try {
+                response = _transport.execute(attempt);
+            } catch (IOException e) {
+                synchronized (this) {
+                    _running--;
+                    if (_failure == null) {
+                        _failure = e;
+                    }
+                    notifyAll();
+                }
+                return;
+            }
+            _latency.record(System.nanoTime() - start);
+
+            List<TransportRequest> losers = new ArrayList<>();
+            boolean won;
+            synchronized (this) {
+                _running--;
+                won = _winner == null && !_cancelled;
+                if (won) {
+                    _winner = response;
+                    _request.setServedUrl(attempt.getUrl());
+                    for (TransportRequest other : _attempts) {
+                        if (other != attempt) {
+                            losers.add(other);
+                        }
+                    }
+                }
+                notifyAll();
+            }
+
+            if (!won) {
+                attempt.cancel(); // Closes the connection instead of draining the body.
+                try {
+                    response.close();
+                } catch (IOException ignored) {
+                    // The response is discarded anyway.
+                }
+                return;
+            }
+            for (TransportRequest loser : losers) {
+                loser.cancel();
+            }
+        }
+
+        /**
+         * Waits for the first response.
+         *
+         * @param timeoutMs The longest time to wait in milliseconds, or a negative value to wait until every attempt finished.
+         * @return The first response, or null if none arrived in time while attempts are still running.
+         * @throws IOException If every attempt failed, or the request was cancelled or interrupted.
+         */
+        private synchronized TransportResponse await(long timeoutMs) throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeoutMs));
+            while (_winner == null && _running > 0 && !_cancelled) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (timeoutMs >= 0 && remaining <= 0) {
+                    return null;
+                }
+                try {
+                    wait(timeoutMs < 0 ? 0 : remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    _request.cancel();
+                    throw new InterruptedIOException("Interrupted while waiting for the response.");
+                }
+            }
+            if (_winner != null) {
+                return _winner;
+            }
+            if (_cancelled) {
+                throw new InterruptedIOException("The request was cancelled.");
+            }
+            throw _failure;
+        }
+
+        /**
+         * Cancels every attempt, including the winner.
+         */
+        private void cancel() {
+            List<TransportRequest> attempts;
+            synchronized (this) {
+                _cancelled = true;
+                attempts = new ArrayList<>(_attempts);
+                notifyAll();
+            }
+            for (TransportRequest attempt : attempts) {
+                attempt.cancel();
+            }
+        }
+    }
+
+    /**
+     * The recent times to the first byte of a host.
+     */
+    private static class LatencyWindow {
+        private final long[] _samples = new long[SAMPLE_WINDOW]; // The recent times in nanoseconds, used as a ring.
+        private int _count; // The number of samples recorded, at most the window size.
+        private int _next; // The index the next sample is written to.
+
+        /**
+         * Records the time to the first byte of a response.
+         *
+         * @param nanos The time in nanoseconds.
+         */
+        private synchronized void record(long nanos) {
+            _samples[_next] = nanos;
+            _next = (_next + 1) % _samples.length;
+            _count = Math.min(_count + 1, _samples.length);
+        }
+
+        /**
+         * Computes the time after which a request is hedged.
+         *
+         * @param percentile The percentile of the recent times used as deadline.
+         * @return The deadline in milliseconds.
+         */
+        private long getDeadline(int percentile) {
+            long[] sorted;
+            synchronized (this) {
+                if (_count < MIN_SAMPLES) {
+                    return DEFAULT_DELAY_MS;
+                }
+                sorted = Arrays.copyOf(_samples, _count);
+            }
+            Arrays.sort(sorted);
+            int index = Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percentile / 100.0) - 1);
+            long deadline = TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+            return Math.min(MAX_DELAY_MS, Math.max(MIN_DELAY_MS, deadline));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends the requests with the `java.net.http` client of the JDK, which needs no library in the runtime image
+ * and negotiates HTTP/2 where the server supports it.
+ * <br/>
+ * The client manages its own connection pool, so the connection limits of the other transports do not apply.
+ * It also resolves host names itself, connecting to the first address of the system, so the IPv6/IPv4 racing
+ * of the Apache transports (see {@link DualStackResolver}) does not apply either.
+ */
+public class JdkHttpTransport implements Transport {
+    private final static Duration CONNECT_TIMEOUT = Duration.ofSeconds(10); // Time allowed to establish a connection.
+    // Headers the JDK client sets itself and refuses from the caller.
+    private final static Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final ExecutorService _executor = Executors.newVirtualThreadPerTaskExecutor(); // Runs the tasks of the client.
+    private final HttpClient _client; // The client sending every request.
+
+    /**
+     * Constructs a new `JdkHttpTransport` instance.
+     */
+    public JdkHttpTransport() {
+        _client = HttpClient.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(_executor)
+                .build();
+    }
+
+    /**
+     * Sends a request. Cancelling the request aborts the exchange and closes the body.
+     *
+     * @param request The request to send.
+     * @return The response, holding its connection until closed.
+     * @throws IOException If the request fails or was cancelled.
+     */
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(URI.create(request.getUrl()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URL: " + request.getUrl(), e);
+        }
+        builder.method(request.getMethod(), HttpRequest.BodyPublishers.noBody());
+        if (request.getTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(request.getTimeout()));
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey())) {
+                builder.setHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        CompletableFuture<HttpResponse<InputStream>> future = _client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        request.onCancel(() -> {
+            future.cancel(true);
+            // A body that is already streaming is only stopped by closing it.
+            future.thenAccept(response -> closeQuietly(response.body()));
+        });
+        try {
+            return new Response(future.get());
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("The request was cancelled.");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response.");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException ? ioException : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Retrieves the name of the transport.
+     *
+     * @return `jdk`.
+     */
+    @Override
+    public String getName() {
+        return "jdk";
+    }
+
+    /**
+     * Closes the client and its connections.
+     */
+    @Override
+    public void close() {
+        _client.close();
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Closes a stream, ignoring failures.
+     *
+     * @param stream The stream to close.
+     */
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+            // The exchange is aborted anyway.
+        }
+    }
+
+    /**
+     * A response of the JDK client.
+     *
+     * @param response The response of the client.
+     */
+    private record Response(HttpResponse<InputStream> response) implements TransportResponse {
+        /**
+         * Retrieves the status code of the response.
+         *
+         * @return The HTTP status code.
+         */
+        @Override
+        public int getStatus() {
+            return response.statusCode();
+        }
+
+        /**
+         * Retrieves the first value of a response header.
+         *
+         * @param name The name of the header, case-insensitive.
+         * @return The value of the header, or null if it was not sent.
+         */
+        @Override
+        public String getHeader(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        /**
+         * Retrieves the body of the response.
+         *
+         * @return The body, empty for HEAD requests.
+         */
+        @Override
+        public InputStream getBody() {
+            return response.body();
+        }
+
+        /**
+         * Closes the body. A body that was not read to the end closes its connection.
+         *
+         * @throws IOException If the body cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            response.body().close();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+/**
+ * The metadata of the remote file, as last reported by the server and remembered between runs
+ * by the {@link RemoteMetadataCache}.
+ *
+ * @param contentLength The size of the remote file in bytes, or -1 if unknown.
+ * @param etag          The value of the ETag header, or an empty string if not sent.
+ * @param lastModified  The value of the Last-Modified header, or an empty string if not sent.
+ * @param sha256        The SHA-256 checksum advertised by the server, or an empty string if not sent.
+ */
+public record RemoteMetadata(long contentLength, String etag, String lastModified, String sha256) {
+    /**
+     * Checks if the server can be asked whether the file changed since this metadata was received.
+     *
+     * @return True if an ETag or a Last-Modified date is known.
+     */
+    public boolean isRevalidatable() {
+        return !etag.isEmpty() || !lastModified.isEmpty();
+    }
+}
@@ -0,0 +1,218 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import io.github.tavstal.mmcinstaller.utils.YamlHelper;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Remembers the metadata of the remote files between runs, so the installer knows the size of the file
+ * as soon as it starts instead of waiting for a request.
+ * <br/>
+ * The remembered metadata is revalidated with a conditional HEAD request (If-None-Match and
+ * If-Modified-Since). A 304 response confirms it without a body or new headers to parse; any other
+ * successful response replaces it. The cache is stored as a YAML file:
+ * <pre>
+ * files:
+ *   - url: "https://example.com/MesterMC.jar"
+ *     content_length: 52428800
+ *     etag: "\"5f3a-1c\""
+ *     last_modified: "Tue, 01 Jul 2025 10:00:00 GMT"
+ *     sha256: ""
+ * </pre>
+ */
+public class RemoteMetadataCache {
+    private final InstallerLogger _logger; // Logger instance for logging metadata-related messages.
+    private final File _cacheFile; // The file the metadata is stored in.
+    private final Map<String, RemoteMetadata> _entries = new LinkedHashMap<>(); // The remembered metadata by URL.
+
+    /**
+     * Constructs a new `RemoteMetadataCache` instance and loads the stored metadata.
+     *
+     * @param cacheFile The file the metadata is stored in. A missing or invalid file means an empty cache.
+     */
+    public RemoteMetadataCache(File cacheFile) {
+        _logger = InstallerApplication.getLogger().WithModule(this.getClass());
+        _cacheFile = cacheFile;
+        load();
+    }
+
+    /**
+     * Retrieves the remembered metadata of a file, without contacting the server.
+     *
+     * @param url The URL of the file.
+     * @return The metadata of the last run, or null if the file was never checked.
+     */
+    public synchronized RemoteMetadata get(String url) {
+        return _entries.get(url);
+    }
+
+    /**
+     * Asks the server for the current metadata of a file, conditionally if metadata is remembered,
+     * and remembers the result.
+     *
+     * @param transport  The transport used for the request.
+     * @param url        The URL of the file.
+     * @return The current metadata of the file.
+     * @throws IOException If the request fails or the server answers with an error.
+     */
+    public RemoteMetadata revalidate(Transport transport, String url) throws IOException {
+        RemoteMetadata cached = get(url);
+        TransportRequest request = TransportRequest.head(url);
+        if (cached != null && cached.isRevalidatable()) {
+            if (!cached.etag().isEmpty()) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.etag());
+            }
+            if (!cached.lastModified().isEmpty()) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+            }
+        }
+
+        RemoteMetadata metadata = transport.execute(request, response -> {
+            if (response.getStatus() == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                _logger.Debug("The remembered metadata of " + url + " is still valid.");
+                return cached;
+            }
+            if (response.getStatus() >= 300) {
+                throw new IOException(String.format("Unexpected response %d for %s", response.getStatus(), url));
+            }
+            return parse(response);
+        });
+
+        if (!metadata.equals(cached)) {
+            synchronized (this) {
+                _entries.put(url, metadata);
+            }
+            save();
+        }
+        return metadata;
+    }
+
+    /**
+     * Reads the metadata from the headers of a response.
+     *
+     * @param response The response to a HEAD request.
+     * @return The metadata reported by the server.
+     */
+    private RemoteMetadata parse(TransportResponse response) {
+        long contentLength = -1;
+        String contentLengthHeader = getHeader(response, HttpHeaders.CONTENT_LENGTH);
+        if (!contentLengthHeader.isEmpty()) {
+            try {
+                contentLength = Long.parseLong(contentLengthHeader);
+            } catch (NumberFormatException e) {
+                _logger.Error("Content-Length header value is not a valid number: " + contentLengthHeader);
+            }
+        }
+        return new RemoteMetadata(
+                contentLength,
+                getHeader(response, HttpHeaders.ETAG),
+                getHeader(response, HttpHeaders.LAST_MODIFIED),
+                parseSha256(response)
+        );
+    }
+
+    /**
+     * Reads the SHA-256 checksum advertised by the server, from a `Repr-Digest` or `Digest` header
+     * (base64 encoded) or an `X-Checksum-Sha256` header (hexadecimal).
+     *
+     * @param response The response to a HEAD request.
+     * @return The checksum as a lowercase hexadecimal string, or an empty string if not advertised.
+     */
+    private String parseSha256(TransportResponse response) {
+        String hex = getHeader(response, "X-Checksum-Sha256");
+        if (hex.matches("[0-9a-fA-F]{64}")) {
+            return hex.toLowerCase(Locale.ROOT);
+        }
+
+        for (String name : new String[]{"Repr-Digest", "Digest"}) {
+            for (String digest : getHeader(response, name).split(",")) {
+                int separator = digest.indexOf('=');
+                if (separator < 0 || !digest.substring(0, separator).trim().equalsIgnoreCase("sha-256")) {
+                    continue;
+                }
+                // Repr-Digest wraps the value in colons (structured field byte sequence), Digest does not.
+                String value = digest.substring(separator + 1).trim().replace(":", "");
+                try {
+                    byte[] bytes = Base64.getDecoder().decode(value);
+                    if (bytes.length == 32) {
+                        return HexFormat.of().formatHex(bytes);
+                    }
+                } catch (IllegalArgumentException e) {
+                    _logger.Debug(String.format("Ignoring an invalid %s header: %s", name, digest));
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Reads a header of a response.
+     *
+     * @param response The response.
+     * @param name     The name of the header.
+     * @return The value of the header, or an empty string if not sent.
+     */
+    private static String getHeader(TransportResponse response, String name) {
+        String value = response.getHeader(name);
+        return value == null ? "" : value.trim();
+    }
+
+    /**
+     * Loads the cache file. A missing or invalid file means an empty cache.
+     */
+    private void load() {
+        Map<String, Object> map = YamlHelper.readFromFile(_cacheFile);
+        if (map == null) {
+            return;
+        }
+
+        Object filesObj = YamlHelper.getObject(map, "files", null);
+        if (filesObj instanceof List) {
+            for (Object fileItem : (List<?>) filesObj) {
+                if (fileItem instanceof Map) {
+                    @SuppressWarnings("unchecked") Map<String, Object> fileMap = (Map<String, Object>) fileItem;
+                    _entries.put(YamlHelper.getString(fileMap, "url", ""), new RemoteMetadata(
+                            YamlHelper.getLong(fileMap, "content_length", -1L),
+                            YamlHelper.getString(fileMap, "etag", ""),
+                            YamlHelper.getString(fileMap, "last_modified", ""),
+                            YamlHelper.getString(fileMap, "sha256", "")
+                    ));
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the cache file. Failures are logged, since the cache is only an optimization.
+     */
+    private void save() {
+        List<Map<String, Object>> files = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, RemoteMetadata> entry : _entries.entrySet()) {
+                Map<String, Object> fileMap = new LinkedHashMap<>();
+                fileMap.put("url", entry.getKey());
+                fileMap.put("content_length", entry.getValue().contentLength());
+                fileMap.put("etag", entry.getValue().etag());
+                fileMap.put("last_modified", entry.getValue().lastModified());
+                fileMap.put("sha256", entry.getValue().sha256());
+                files.add(fileMap);
+            }
+        }
+
+        try {
+            File directory = _cacheFile.getParentFile();
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Failed to create " + directory.getAbsolutePath());
+            }
+            YamlHelper.writeToFile(_cacheFile, Map.of("files", files));
+        } catch (IOException e) {
+            _logger.Warn("Failed to save the remote metadata cache: " + e.getMessage());
+        }
+    }
+}
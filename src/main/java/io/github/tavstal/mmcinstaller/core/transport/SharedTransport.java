@@ -0,0 +1,117 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.config.ConfigLoader;
+import io.github.tavstal.mmcinstaller.config.model.DownloadConfig;
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Owns the {@link Transport} shared by every network call of the installer.
+ * <br/>
+ * The HTTP client is picked by `download.transport`, and local files and network shares are always read by
+ * the {@link FileTransport} (see {@link TransportRouter}). Slow requests are hedged by the {@link HedgingTransport}
+ * unless `download.hedge_percentile` is 0. The HTTP clients pool their connections and keep
+ * them alive between requests, so the DNS lookup, TCP handshake and TLS handshake paid by the startup request
+ * are reused by the download.
+ */
+public class SharedTransport {
+    // Holds the shared transport, created by init().
+    private static Transport _transport;
+    private static InstallerLogger _logger;
+
+    /**
+     * Creates the shared transport. The pool allows one connection per download segment to every mirror
+     * (or the artifact connection limit, if higher), plus one for metadata requests, and one connection
+     * per artifact worker on top. Hedging adds a connection per host for the duplicates.
+     * If the transport is already initialized, this method does nothing.
+     */
+    public static synchronized void init() {
+        if (_transport != null)
+            return;
+
+        _logger = InstallerApplication.getLogger().WithModule(SharedTransport.class);
+        DownloadConfig downloadConfig = ConfigLoader.get().download();
+        int maxPerRoute = Math.max(1, Math.max(downloadConfig.segments(), downloadConfig.connectionsPerHost())) + 1;
+        if (downloadConfig.hedgePercentile() > 0) {
+            maxPerRoute++;
+        }
+        int maxTotal = maxPerRoute * Math.max(1, downloadConfig.links().size()) + Math.max(1, downloadConfig.workers());
+        Transport httpTransport = createHttpTransport(downloadConfig.transport(), maxPerRoute, maxTotal);
+        if (httpTransport == null) {
+            _logger.Warn("Unknown transport '" + downloadConfig.transport() + "', using apache.");
+            httpTransport = new ApacheClassicTransport(maxPerRoute, maxTotal);
+        }
+        _transport = new TransportRouter(httpTransport, new FileTransport());
+        if (downloadConfig.hedgePercentile() > 0) {
+            // Wraps the router, so a hedged duplicate may go to a mirror served by the other transport.
+            _transport = new HedgingTransport(_transport, downloadConfig.hedgePercentile());
+        }
+        _logger.Debug(String.format("%s transport initialized with %d connections per host.", httpTransport.getName(), maxPerRoute));
+    }
+
+    /**
+     * Creates an HTTP transport by its name.
+     *
+     * @param name        The name of the transport: `apache`, `apache-async` or `jdk`.
+     * @param maxPerRoute The maximum number of connections to a single host, if the transport has a limit.
+     * @param maxTotal    The maximum number of connections to all hosts, if the transport has a limit.
+     * @return The transport, or null if the name is unknown.
+     */
+    public static Transport createHttpTransport(String name, int maxPerRoute, int maxTotal) {
+        return switch (name == null ? "" : name.trim().toLowerCase(Locale.ROOT)) {
+            case "apache" -> new ApacheClassicTransport(maxPerRoute, maxTotal);
+            case "apache-async" -> new ApacheAsyncTransport(maxPerRoute, maxTotal);
+            case "jdk" -> new JdkHttpTransport();
+            default -> null;
+        };
+    }
+
+    /**
+     * Retrieves the shared transport. The transport must not be closed by the caller.
+     *
+     * @return The shared transport.
+     * @throws IllegalStateException If the transport has not been initialized.
+     */
+    public static Transport getTransport() {
+        if (_transport == null) {
+            throw new IllegalStateException("SharedTransport has not been initialized.");
+        }
+        return _transport;
+    }
+
+    /**
+     * Opens connections to the given URLs in the background, so they are ready in the pool
+     * by the time the download starts. Failures are only logged.
+     *
+     * @param urls The URLs to connect to.
+     */
+    public static void warmUp(List<String> urls) {
+        Transport transport = getTransport();
+        Thread thread = new Thread(() -> {
+            for (String url : urls) {
+                try {
+                    transport.execute(TransportRequest.head(url), response -> null);
+                    _logger.Debug("Warmed up connection to " + url);
+                } catch (IOException e) {
+                    _logger.Debug(String.format("Failed to warm up connection to %s: %s", url, e.getMessage()));
+                }
+            }
+        }, "http-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Closes the shared transport and every pooled connection.
+     */
+    public static synchronized void shutdown() {
+        if (_transport == null)
+            return;
+
+        _transport.close();
+        _transport = null;
+    }
+}
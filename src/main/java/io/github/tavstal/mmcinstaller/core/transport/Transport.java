@@ -0,0 +1,78 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import java.io.IOException;
+
+/**
+ * Sends the requests of the installer to the sources of the files. Every download, metadata and range
+ * request goes through this interface, so the same code reads from HTTP servers and from local mirrors.
+ * <br/>
+ * The requests only use what every source can answer: GET and HEAD, the `Range` and `If-Range` headers for
+ * byte ranges, `If-None-Match` and `If-Modified-Since` for conditional metadata, and a streamed body.
+ * Sources that are not HTTP servers answer with the status codes and headers an HTTP server would send.
+ * <br/>
+ * Implementations:
+ * <ul>
+ *     <li>{@link ApacheClassicTransport}: Apache HttpClient 5 classic (blocking) client.</li>
+ *     <li>{@link ApacheAsyncTransport}: Apache HttpClient 5 async client, bodies streamed to the caller.</li>
+ *     <li>{@link JdkHttpTransport}: the `java.net.http` client of the JDK.</li>
+ *     <li>{@link FileTransport}: `file://` URLs and local or network share paths.</li>
+ * </ul>
+ * {@link TransportRouter} picks one of them by the scheme of the URL.
+ */
+public interface Transport extends AutoCloseable {
+    /**
+     * Sends a request and returns as soon as the status and headers are received.
+     * The body is streamed from the returned response, which must be closed by the caller.
+     *
+     * @param request The request to send.
+     * @return The response.
+     * @throws IOException If the request fails or was cancelled.
+     */
+    TransportResponse execute(TransportRequest request) throws IOException;
+
+    /**
+     * Sends a request and passes the response to a handler. The response is closed once the handler returns,
+     * which lets a finished connection be reused.
+     *
+     * @param request The request to send.
+     * @param handler Processes the response.
+     * @param <T>     The type of the result of the handler.
+     * @return The result of the handler.
+     * @throws IOException If the request fails or the handler throws.
+     */
+    default <T> T execute(TransportRequest request, ResponseHandler<T> handler) throws IOException {
+        try (TransportResponse response = execute(request)) {
+            return handler.handle(response);
+        }
+    }
+
+    /**
+     * Retrieves the name of the transport, used in log messages and benchmarks.
+     *
+     * @return The name of the transport.
+     */
+    String getName();
+
+    /**
+     * Releases the connections and threads of the transport.
+     */
+    @Override
+    void close();
+
+    /**
+     * Processes a response, see {@link #execute(TransportRequest, ResponseHandler)}.
+     *
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    interface ResponseHandler<T> {
+        /**
+         * Processes a response.
+         *
+         * @param response The response. Closed by the caller.
+         * @return The result.
+         * @throws IOException If the response cannot be processed.
+         */
+        T handle(TransportResponse response) throws IOException;
+    }
+}
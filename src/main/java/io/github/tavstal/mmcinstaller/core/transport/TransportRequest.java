@@ -0,0 +1,248 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A GET or HEAD request sent by a {@link Transport}.
+ * <br/>
+ * A request can be cancelled from any thread, also before it is sent: the transport aborts the exchange
+ * and a blocked read of the body fails, so a stalled connection does not keep a thread waiting.
+ */
+public class TransportRequest {
+    private final String _method; // The request method, GET or HEAD.
+    private final String _url; // The URL of the requested file.
+    private final Map<String, String> _headers = new LinkedHashMap<>(); // The request headers by lowercase name.
+    private long _timeoutMs; // Time allowed to connect and to wait for data, or 0 for the default of the transport.
+    private String _hedgeUrl; // A mirror a hedged duplicate may be sent to, or null to duplicate the request itself.
+    private BooleanSupplier _hedgeAdmission; // Decides if the duplicate may go to the mirror when it is launched, or null.
+    private volatile String _servedUrl; // The URL that answered the request, null until it was sent.
+    private Runnable _abortAction; // Aborts the exchange of the transport, null until it is sent.
+    private boolean _cancelled; // True once the request was cancelled.
+
+    /**
+     * Constructs a new `TransportRequest` instance.
+     *
+     * @param method The request method, GET or HEAD.
+     * @param url    The URL of the requested file.
+     */
+    private TransportRequest(String method, String url) {
+        _method = method;
+        _url = url;
+    }
+
+    /**
+     * Creates a GET request.
+     *
+     * @param url The URL of the requested file.
+     * @return The request.
+     */
+    public static TransportRequest get(String url) {
+        return new TransportRequest("GET", url);
+    }
+
+    /**
+     * Creates a HEAD request.
+     *
+     * @param url The URL of the requested file.
+     * @return The request.
+     */
+    public static TransportRequest head(String url) {
+        return new TransportRequest("HEAD", url);
+    }
+
+    /**
+     * Creates a request with the same method, headers and timeout for another URL. The copy is not cancelled
+     * with this request.
+     *
+     * @param url The URL of the requested file.
+     * @return The copy.
+     */
+    public TransportRequest copy(String url) {
+        TransportRequest copy = new TransportRequest(_method, url);
+        copy._headers.putAll(_headers);
+        copy._timeoutMs = _timeoutMs;
+        return copy;
+    }
+
+    /**
+     * Retrieves the request method.
+     *
+     * @return GET or HEAD.
+     */
+    public String getMethod() {
+        return _method;
+    }
+
+    /**
+     * Retrieves the URL of the requested file.
+     *
+     * @return The URL.
+     */
+    public String getUrl() {
+        return _url;
+    }
+
+    /**
+     * Checks if the request has no body in its response.
+     *
+     * @return True for HEAD requests.
+     */
+    public boolean isHead() {
+        return _method.equals("HEAD");
+    }
+
+    /**
+     * Sets a request header, replacing any previous value.
+     *
+     * @param name  The name of the header.
+     * @param value The value of the header.
+     */
+    public void setHeader(String name, String value) {
+        _headers.put(name.toLowerCase(Locale.ROOT), value);
+    }
+
+    /**
+     * Retrieves a request header.
+     *
+     * @param name The name of the header, case-insensitive.
+     * @return The value of the header, or null if it is not set.
+     */
+    public String getHeader(String name) {
+        return _headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Checks if a request header is set.
+     *
+     * @param name The name of the header, case-insensitive.
+     * @return True if the header is set.
+     */
+    public boolean containsHeader(String name) {
+        return _headers.containsKey(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Retrieves every request header.
+     *
+     * @return The headers by lowercase name.
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(_headers);
+    }
+
+    /**
+     * Sets the time allowed to obtain a connection and to wait for the response, replacing the default of the transport.
+     *
+     * @param timeoutMs The timeout in milliseconds, or 0 for the default of the transport.
+     */
+    public void setTimeout(long timeoutMs) {
+        _timeoutMs = Math.max(0, timeoutMs);
+    }
+
+    /**
+     * Retrieves the time allowed to obtain a connection and to wait for the response.
+     *
+     * @return The timeout in milliseconds, or 0 for the default of the transport.
+     */
+    public long getTimeout() {
+        return _timeoutMs;
+    }
+
+    /**
+     * Sets a mirror serving the same file, which a hedged duplicate of the request is sent to
+     * (see {@link HedgingTransport}). Only set it when any mirror may answer, e.g. not for `If-Range` requests.
+     *
+     * @param hedgeUrl  The URL of the mirror, or null to send the duplicate to the same URL.
+     * @param admission Asked once when the duplicate is launched, e.g. the circuit breaker of the mirror; if it
+     *                  returns false the duplicate goes to the same URL instead. Null to always admit the mirror.
+     */
+    public void setHedgeUrl(String hedgeUrl, BooleanSupplier admission) {
+        _hedgeUrl = hedgeUrl;
+        _hedgeAdmission = admission;
+    }
+
+    /**
+     * Retrieves the mirror a hedged duplicate of the request is sent to.
+     *
+     * @return The URL of the mirror, or null to send the duplicate to the same URL.
+     */
+    public String getHedgeUrl() {
+        return _hedgeUrl;
+    }
+
+    /**
+     * Asks if the hedged duplicate may be sent to the mirror now. Only called when the duplicate is launched.
+     *
+     * @return True if the duplicate may go to the mirror, false to send it to the same URL.
+     */
+    boolean admitHedge() {
+        return _hedgeUrl != null && (_hedgeAdmission == null || _hedgeAdmission.getAsBoolean());
+    }
+
+    /**
+     * Retrieves the URL that answered the request, which differs from {@link #getUrl()} when the hedged
+     * duplicate sent to the mirror answered first.
+     *
+     * @return The URL of the response.
+     */
+    public String getServedUrl() {
+        String servedUrl = _servedUrl;
+        return servedUrl == null ? _url : servedUrl;
+    }
+
+    /**
+     * Records the URL that answered the request.
+     *
+     * @param servedUrl The URL of the response.
+     */
+    void setServedUrl(String servedUrl) {
+        _servedUrl = servedUrl;
+    }
+
+    /**
+     * Cancels the request. A request that was not sent yet fails when it is sent, a running exchange is
+     * aborted without reading the rest of the body.
+     */
+    public void cancel() {
+        Runnable abortAction;
+        synchronized (this) {
+            if (_cancelled) {
+                return;
+            }
+            _cancelled = true;
+            abortAction = _abortAction;
+        }
+        if (abortAction != null) {
+            abortAction.run();
+        }
+    }
+
+    /**
+     * Checks if the request was cancelled.
+     *
+     * @return True if {@link #cancel()} was called.
+     */
+    public synchronized boolean isCancelled() {
+        return _cancelled;
+    }
+
+    /**
+     * Sets the action aborting the exchange of the transport. Runs at once if the request is already cancelled.
+     *
+     * @param abortAction The action aborting the exchange.
+     */
+    void onCancel(Runnable abortAction) {
+        boolean cancelled;
+        synchronized (this) {
+            _abortAction = abortAction;
+            cancelled = _cancelled;
+        }
+        if (cancelled) {
+            abortAction.run();
+        }
+    }
+}
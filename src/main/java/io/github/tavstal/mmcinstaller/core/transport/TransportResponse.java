@@ -0,0 +1,60 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A response received by a {@link Transport}. The body is streamed, so it must be read before the response
+ * is closed. Closing a response whose body was not read to the end may discard its connection.
+ */
+public interface TransportResponse extends Closeable {
+    /**
+     * Retrieves the status code of the response.
+     *
+     * @return The HTTP status code, or the code an HTTP server would send for a non-HTTP source.
+     */
+    int getStatus();
+
+    /**
+     * Retrieves the first value of a response header.
+     *
+     * @param name The name of the header, case-insensitive.
+     * @return The value of the header, or null if it was not sent.
+     */
+    String getHeader(String name);
+
+    /**
+     * Retrieves the size of the body as sent, before any content decoding.
+     *
+     * @return The size of the body in bytes, or -1 if unknown.
+     */
+    default long getContentLength() {
+        String value = getHeader("Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Retrieves the content encoding of the body.
+     *
+     * @return The value of the Content-Encoding header, or null if the body is not encoded.
+     */
+    default String getContentEncoding() {
+        return getHeader("Content-Encoding");
+    }
+
+    /**
+     * Retrieves the body of the response. The stream is closed with the response.
+     *
+     * @return The body, empty for HEAD requests and responses without content.
+     * @throws IOException If the body cannot be opened.
+     */
+    InputStream getBody() throws IOException;
+}
@@ -0,0 +1,64 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import java.io.IOException;
+
+/**
+ * Sends every request through the transport serving the scheme of its URL: local files and network shares
+ * through the {@link FileTransport}, everything else through the configured HTTP transport.
+ */
+public class TransportRouter implements Transport {
+    private final Transport _httpTransport; // Serves the HTTP and HTTPS URLs.
+    private final Transport _fileTransport; // Serves the local files and network shares.
+
+    /**
+     * Constructs a new `TransportRouter` instance.
+     *
+     * @param httpTransport Serves the HTTP and HTTPS URLs.
+     * @param fileTransport Serves the local files and network shares.
+     */
+    public TransportRouter(Transport httpTransport, Transport fileTransport) {
+        _httpTransport = httpTransport;
+        _fileTransport = fileTransport;
+    }
+
+    /**
+     * Retrieves the transport serving a URL.
+     *
+     * @param url The URL.
+     * @return The file transport for local URLs, the HTTP transport otherwise.
+     */
+    public Transport route(String url) {
+        return FileTransport.isLocal(url) ? _fileTransport : _httpTransport;
+    }
+
+    /**
+     * Sends a request through the transport serving its URL.
+     *
+     * @param request The request to send.
+     * @return The response.
+     * @throws IOException If the request fails or was cancelled.
+     */
+    @Override
+    public TransportResponse execute(TransportRequest request) throws IOException {
+        return route(request.getUrl()).execute(request);
+    }
+
+    /**
+     * Retrieves the name of the HTTP transport, which serves most requests.
+     *
+     * @return The name of the HTTP transport.
+     */
+    @Override
+    public String getName() {
+        return _httpTransport.getName();
+    }
+
+    /**
+     * Closes both transports.
+     */
+    @Override
+    public void close() {
+        _httpTransport.close();
+        _fileTransport.close();
+    }
+}
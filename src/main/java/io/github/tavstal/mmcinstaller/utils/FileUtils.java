@@ -114,6 +114,22 @@ public class FileUtils extends FallbackLogger {
         });
     }
 
+    /**
+     * Moves a file to the target path, replacing the target if it exists. The move is atomic if the
+     * file system supports it, so the target is never seen half written.
+     *
+     * @param source The path of the file to move.
+     * @param target The path to move the file to.
+     * @throws IOException If an error occurs while moving the file.
+     */
+    public static void moveReplacing(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     /**
      * Computes the SHA-256 checksum of a file.
      *
@@ -142,6 +158,30 @@ public class FileUtils extends FallbackLogger {
         return hexString.toString();
     }
 
+    /**
+     * Retrieves the usable space of the file store a file is, or will be, located on.
+     * The closest existing parent directory is used if the file does not exist yet.
+     *
+     * @param file The file to check.
+     * @return The number of bytes available to this application, or -1 if it could not be determined.
+     */
+    public static long getUsableSpace(File file) {
+        File existing = file.getAbsoluteFile();
+        while (existing != null && !existing.exists()) {
+            existing = existing.getParentFile();
+        }
+        if (existing == null) {
+            return -1;
+        }
+
+        try {
+            return Files.getFileStore(existing.toPath()).getUsableSpace();
+        } catch (IOException e) {
+            log(Level.WARN, "Failed to query the free space of " + existing.getAbsolutePath() + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
     /**
      * Copies a resource from the application's classpath to a specified target directory.
      * If the resource does not exist or the copy operation fails, logs an error.
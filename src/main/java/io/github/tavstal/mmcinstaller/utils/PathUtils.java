@@ -69,6 +69,47 @@ public class PathUtils {
         return installationDir;
     }
 
+    /**
+     * Determines the cache directory of the installer, following OS-specific conventions.
+     * It stores data that can be recreated at any time, like download statistics and cached artifacts.
+     * <ul>
+     *   <li>Windows: `%LOCALAPPDATA%\MesterMC-Installer`, falling back to `APPDATA` or the user's home directory.</li>
+     *   <li>Linux: `$XDG_CACHE_HOME/mestermc-installer`, falling back to `~/.cache/mestermc-installer`.</li>
+     *   <li>macOS: `~/Library/Caches/MesterMC-Installer`.</li>
+     *   <li>Other OS: `~/.mestermc-installer`.</li>
+     * </ul>
+     *
+     * @return A `File` object representing the cache directory. The directory is created if missing.
+     */
+    public static File getInstallerCacheDirectory() {
+        String os = Constants.OS_NAME;
+        String userHome = System.getProperty("user.home");
+        File cacheDir;
+
+        if (os.contains("win")) {
+            String localAppData = System.getenv("LOCALAPPDATA");
+            if (localAppData == null || localAppData.isEmpty()) {
+                localAppData = System.getenv("APPDATA");
+            }
+            cacheDir = new File(localAppData != null && !localAppData.isEmpty() ? localAppData : userHome, "MesterMC-Installer");
+        } else if (os.contains("linux")) {
+            String xdgCacheHome = System.getenv("XDG_CACHE_HOME");
+            if (xdgCacheHome == null || xdgCacheHome.isEmpty()) {
+                xdgCacheHome = userHome + File.separator + ".cache";
+            }
+            cacheDir = new File(xdgCacheHome, "mestermc-installer");
+        } else if (os.contains("mac")) {
+            cacheDir = new File(userHome, "Library" + File.separator + "Caches" + File.separator + "MesterMC-Installer");
+        } else {
+            cacheDir = new File(userHome, ".mestermc-installer");
+        }
+
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            InstallerApplication.getLogger().Warn("Failed to create installer cache directory: " + cacheDir.getAbsolutePath());
+        }
+        return cacheDir;
+    }
+
     /**
      * Retrieves the Start Menu directory for the current user, handling OS-specific conventions.
      * On Windows, uses JNA to get the localized "Programs" folder within the Start Menu.
@@ -5,7 +5,8 @@ import org.slf4j.event.Level;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 
-import java.io.InputStream;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 /**
@@ -74,6 +75,72 @@ public class YamlHelper extends FallbackLogger {
         }
     }
 
+    /**
+     * Reads a YAML file from the file system and converts it into a Map.
+     *
+     * @param file The file to read.
+     * @return A Map containing the parsed YAML data, or null if the file is missing or cannot be parsed.
+     */
+    public static Map<String, Object> readFromFile(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Object yamlObject = _yaml.load(reader);
+            if (!(yamlObject instanceof Map)) {
+                log(Level.WARN, String.format("The content of '%s' is not a Map.", file.getAbsolutePath()));
+                return null;
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> localValue = (Map<String, Object>) yamlObject;
+            return localValue;
+        } catch (Exception ex) {
+            log(Level.ERROR, String.format("Failed to read yaml file: %s", file.getAbsolutePath()));
+            log(Level.ERROR, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads a YAML document from a stream and converts it into a Map. The stream is not closed.
+     *
+     * @param stream The stream to read, encoded in UTF-8.
+     * @param source A description of the stream used in log messages, e.g. its URL.
+     * @return A Map containing the parsed YAML data, or null if the content cannot be parsed.
+     */
+    public static Map<String, Object> readFromStream(InputStream stream, String source) {
+        try {
+            Object yamlObject = _yaml.load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+            if (!(yamlObject instanceof Map)) {
+                log(Level.WARN, String.format("The content of '%s' is not a Map.", source));
+                return null;
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> localValue = (Map<String, Object>) yamlObject;
+            return localValue;
+        } catch (Exception ex) {
+            log(Level.ERROR, String.format("Failed to read yaml from: %s", source));
+            log(Level.ERROR, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a Map to the file system as a YAML document, replacing any existing content.
+     *
+     * @param file The file to write.
+     * @param map  The Map to serialize.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeToFile(File file, Map<String, Object> map) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            _yaml.dump(map, writer);
+        }
+    }
+
     //#region Methods for retrieving values from the Map
 
     /**
@@ -225,6 +292,29 @@ public class YamlHelper extends FallbackLogger {
         return getInteger(map, key, 0);
     }
 
+    /**
+     * Retrieves a Long value from a Map using a dot-separated key.
+     *
+     * @param map          The Map to search.
+     * @param key          The dot-separated key to locate the value.
+     * @param defaultValue The default value to return if the key is not found.
+     * @return The retrieved Long value, or the default value if not found.
+     */
+    public static Long getLong(Map<String, Object> map, String key, long defaultValue) {
+        try {
+            Object result = getObject(map, key, defaultValue);
+            if (result == null) {
+                log(Level.WARN, String.format("The value of the '%s' key is null.%n", key));
+                return defaultValue;
+            }
+            return Long.parseLong(result.toString());
+        } catch (Exception ex) {
+            log(Level.ERROR, String.format("Unknown error happened while getting the long value of the '%s' key.%n", key));
+            log(Level.ERROR,ex.getMessage());
+            return defaultValue;
+        }
+    }
+
     /**
      * Retrieves a Double value from a Map using a dot-separated key.
      *
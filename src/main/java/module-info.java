@@ -6,6 +6,8 @@ module io.github.tavstal.mmcinstaller {
     requires net.synedra.validatorfx;
     requires org.kordamp.ikonli.javafx;
     requires java.logging;
+    requires java.net.http;
+    requires jdk.httpserver;
     requires org.yaml.snakeyaml;
     requires org.apache.httpcomponents.client5.httpclient5;
     requires org.apache.httpcomponents.core5.httpcore5;
@@ -25,4 +27,9 @@ module io.github.tavstal.mmcinstaller {
     opens io.github.tavstal.mmcinstaller.config.model to javafx.fxml;
     exports io.github.tavstal.mmcinstaller.core.platform;
     exports io.github.tavstal.mmcinstaller.core.logging;
+    exports io.github.tavstal.mmcinstaller.core.download;
+    exports io.github.tavstal.mmcinstaller.core.progress;
+    exports io.github.tavstal.mmcinstaller.core.transport;
+
+    uses io.github.tavstal.mmcinstaller.core.transport.ContentDecoder;
 }
\ No newline at end of file
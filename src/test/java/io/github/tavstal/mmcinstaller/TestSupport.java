@@ -0,0 +1,50 @@
+package io.github.tavstal.mmcinstaller;
+
+import io.github.tavstal.mmcinstaller.core.logging.InstallerLogger;
+
+import java.lang.reflect.Field;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Prepares the static state the installer sets up on startup, so components can be tested without the UI,
+ * and holds helpers shared by the tests.
+ */
+public final class TestSupport {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private TestSupport() {
+    }
+
+    /**
+     * Installs the logger returned by {@link InstallerApplication#getLogger()}, unless one is already set.
+     */
+    public static synchronized void initLogger() {
+        if (InstallerApplication.getLogger() != null) {
+            return;
+        }
+        try {
+            Field logger = InstallerApplication.class.getDeclaredField("_logger");
+            logger.setAccessible(true);
+            logger.set(null, new InstallerLogger("Test", null));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to install the logger.", e);
+        }
+    }
+
+    /**
+     * Computes the SHA-256 checksum of data, in the format the installer compares checksums in.
+     *
+     * @param data The data to hash.
+     * @return The checksum as a lowercase hexadecimal string.
+     */
+    public static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+}
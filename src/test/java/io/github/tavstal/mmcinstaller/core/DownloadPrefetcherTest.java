@@ -0,0 +1,190 @@
+package io.github.tavstal.mmcinstaller.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.tavstal.mmcinstaller.TestSupport;
+import io.github.tavstal.mmcinstaller.config.model.DownloadConfig;
+import io.github.tavstal.mmcinstaller.config.model.PeerConfig;
+import io.github.tavstal.mmcinstaller.core.download.BandwidthLimiter;
+import io.github.tavstal.mmcinstaller.core.download.SegmentedDownloader;
+import io.github.tavstal.mmcinstaller.core.transport.ApacheClassicTransport;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link DownloadPrefetcher} hands a finished prefetch from a loopback server over to the installation,
+ * and removes the staged file when it is discarded or claimed unfinished.
+ */
+class DownloadPrefetcherTest {
+    private static final int FILE_SIZE = 256 * 1024;
+
+    @TempDir
+    Path _directory;
+    private static byte[] _payload;
+    private static String _sha256;
+    private static HttpServer _server;
+    private static Transport _transport;
+    private static ExecutorService _serverExecutor;
+    private static volatile CountDownLatch _heldStarted; // Counted down when the held body started.
+    private static volatile CountDownLatch _release; // Lets the held body finish.
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        TestSupport.initLogger();
+        _payload = new byte[FILE_SIZE];
+        new Random(19).nextBytes(_payload);
+        _sha256 = TestSupport.sha256(_payload);
+
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 16);
+        _server.createContext("/file.bin", exchange -> serve(exchange, false));
+        _server.createContext("/held.bin", exchange -> serve(exchange, true));
+        _serverExecutor = Executors.newCachedThreadPool();
+        _server.setExecutor(_serverExecutor);
+        _server.start();
+        _transport = new ApacheClassicTransport(2, 4);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (_transport != null) {
+            _transport.close();
+        }
+        if (_server != null) {
+            _server.stop(0);
+        }
+        if (_serverExecutor != null) {
+            _serverExecutor.shutdownNow();
+        }
+    }
+
+    @BeforeEach
+    void resetServer() {
+        _heldStarted = new CountDownLatch(1);
+        _release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void releaseHeldBody() {
+        _release.countDown();
+    }
+
+    @Test
+    void finishedPrefetchIsMovedToTheOutputFile() throws Exception {
+        DownloadPrefetcher prefetcher = newPrefetcher();
+        prefetcher.start(config("/file.bin"));
+        awaitFinished(prefetcher);
+
+        File output = _directory.resolve("install").resolve("prefetch.bin").toFile();
+        assertTrue(output.getParentFile().mkdirs());
+        assertEquals(_sha256, prefetcher.claim(output, true));
+        assertArrayEquals(_payload, Files.readAllBytes(output.toPath()));
+        assertStagingEmpty();
+        assertNull(prefetcher.claim(output, true), "A prefetch is claimed only once.");
+    }
+
+    @Test
+    void discardedPrefetchDeletesTheStagedFile() throws Exception {
+        DownloadPrefetcher prefetcher = newPrefetcher();
+        prefetcher.start(config("/file.bin"));
+        awaitFinished(prefetcher);
+        assertTrue(_directory.resolve("cache").resolve("prefetch").resolve("prefetch.bin").toFile().isFile());
+
+        prefetcher.discard();
+
+        assertStagingEmpty();
+        File output = _directory.resolve("prefetch.bin").toFile();
+        assertNull(prefetcher.claim(output, true));
+        assertFalse(output.exists());
+    }
+
+    @Test
+    void unfinishedPrefetchClaimedWithoutItsPartialIsDeleted() throws Exception {
+        DownloadPrefetcher prefetcher = newPrefetcher();
+        prefetcher.start(config("/held.bin"));
+        assertTrue(_heldStarted.await(10, TimeUnit.SECONDS));
+
+        File output = _directory.resolve("prefetch.bin").toFile();
+        assertNull(prefetcher.claim(output, false));
+
+        assertFalse(prefetcher.isFinished());
+        assertFalse(output.exists());
+        assertFalse(SegmentedDownloader.getPartFile(output).exists());
+        assertStagingEmpty();
+    }
+
+    private DownloadPrefetcher newPrefetcher() {
+        return new DownloadPrefetcher(_transport, _directory.resolve("cache").toFile(), new BandwidthLimiter(0), null);
+    }
+
+    private static DownloadConfig config(String path) {
+        return new DownloadConfig("http://127.0.0.1:" + _server.getAddress().getPort() + path, "prefetch.bin", _sha256, 4,
+                List.of(), 0, "", 1, 1, 0, "", true, new PeerConfig(false, 0, false, List.of()), "apache", 0);
+    }
+
+    private static void awaitFinished(DownloadPrefetcher prefetcher) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!prefetcher.isFinished()) {
+            assertTrue(System.nanoTime() < deadline, "The prefetch did not finish.");
+            Thread.sleep(20);
+        }
+    }
+
+    private void assertStagingEmpty() {
+        String[] staged = _directory.resolve("cache").resolve("prefetch").toFile().list();
+        assertNotNull(staged);
+        assertEquals(List.of(), List.of(staged));
+    }
+
+    /**
+     * Serves the payload without range support. A held body stops halfway until it is released.
+     *
+     * @param exchange The exchange.
+     * @param held     True to hold the body back halfway.
+     * @throws IOException If the response cannot be sent.
+     */
+    private static void serve(HttpExchange exchange, boolean held) throws IOException {
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(FILE_SIZE));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.sendResponseHeaders(200, FILE_SIZE);
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (held) {
+                os.write(_payload, 0, FILE_SIZE / 2);
+                os.flush();
+                _heldStarted.countDown();
+                _release.await(10, TimeUnit.SECONDS);
+                os.write(_payload, FILE_SIZE / 2, FILE_SIZE - FILE_SIZE / 2);
+            } else {
+                os.write(_payload);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.TestSupport;
+import io.github.tavstal.mmcinstaller.utils.YamlHelper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the {@link ArtifactCache}: placing cached files, discarding corrupted ones, the least recently
+ * used eviction and the index shared by several cache instances.
+ */
+class ArtifactCacheTest {
+    private static final int FILE_SIZE = 1000;
+
+    @TempDir
+    Path _directory;
+
+    @BeforeAll
+    static void setUp() {
+        TestSupport.initLogger();
+    }
+
+    @Test
+    void storedFileIsMaterializedWithItsContent() throws Exception {
+        ArtifactCache cache = new ArtifactCache(_directory.resolve("cache").toFile(), 10 * FILE_SIZE);
+        byte[] data = randomData(1);
+        File source = write("source.bin", data);
+
+        cache.store(TestSupport.sha256(data), source);
+        File target = _directory.resolve("install/lib/target.bin").toFile();
+
+        assertTrue(cache.materialize(TestSupport.sha256(data).toUpperCase(), target), "Checksums are not case sensitive.");
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+        assertFalse(new File(target.getPath() + ".cache").exists());
+    }
+
+    @Test
+    void unknownFileIsAMiss() {
+        ArtifactCache cache = new ArtifactCache(_directory.resolve("cache").toFile(), 10 * FILE_SIZE);
+
+        assertFalse(cache.materialize("0".repeat(64), _directory.resolve("missing.bin").toFile()));
+        assertFalse(cache.materialize("not a checksum", _directory.resolve("invalid.bin").toFile()));
+    }
+
+    @Test
+    void disabledCacheStoresNothing() throws Exception {
+        File directory = _directory.resolve("cache").toFile();
+        ArtifactCache cache = new ArtifactCache(directory, 0);
+        byte[] data = randomData(2);
+
+        cache.store(TestSupport.sha256(data), write("source.bin", data));
+
+        assertFalse(directory.exists());
+        assertFalse(cache.materialize(TestSupport.sha256(data), _directory.resolve("target.bin").toFile()));
+    }
+
+    @Test
+    void corruptedBlobIsDiscarded() throws Exception {
+        File directory = _directory.resolve("cache").toFile();
+        ArtifactCache cache = new ArtifactCache(directory, 10 * FILE_SIZE);
+        byte[] data = randomData(3);
+        String key = TestSupport.sha256(data);
+        cache.store(key, write("source.bin", data));
+
+        Path blob = directory.toPath().resolve(key.substring(0, 2)).resolve(key);
+        Files.delete(blob); // Replaced instead of modified, so the hard linked source stays intact.
+        Files.write(blob, randomData(4));
+        File target = _directory.resolve("target.bin").toFile();
+
+        assertFalse(cache.materialize(key, target));
+        assertFalse(target.exists());
+        assertFalse(Files.exists(blob));
+    }
+
+    @Test
+    void leastRecentlyUsedBlobsAreEvicted() throws Exception {
+        File directory = _directory.resolve("cache").toFile();
+        ArtifactCache cache = new ArtifactCache(directory, 2 * FILE_SIZE + FILE_SIZE / 2);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            byte[] data = randomData(10 + i);
+            keys.add(TestSupport.sha256(data));
+            cache.store(keys.get(i), write("source" + i + ".bin", data));
+            Thread.sleep(5); // Distinct times of use.
+        }
+        assertTrue(cache.materialize(keys.get(0), _directory.resolve("used.bin").toFile()));
+
+        cache.flush();
+
+        assertTrue(cache.materialize(keys.get(0), _directory.resolve("first.bin").toFile()), "Used last, so kept.");
+        assertFalse(cache.materialize(keys.get(1), _directory.resolve("second.bin").toFile()), "Used first, so evicted.");
+        assertTrue(cache.materialize(keys.get(2), _directory.resolve("third.bin").toFile()));
+        assertEquals(2, readIndex(directory).size());
+    }
+
+    @Test
+    void concurrentFlushesKeepTheIndexConsistent() throws Exception {
+        File directory = _directory.resolve("cache").toFile();
+        long maxBytes = 5L * FILE_SIZE;
+        // Every instance stands for another installer process sharing the cache.
+        List<ArtifactCache> caches = List.of(new ArtifactCache(directory, maxBytes), new ArtifactCache(directory, maxBytes));
+
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 16; i++) {
+                int seed = 100 + i;
+                ArtifactCache cache = caches.get(i % caches.size());
+                futures.add(executor.submit(() -> {
+                    byte[] data = randomData(seed);
+                    cache.store(TestSupport.sha256(data), write("source" + seed + ".bin", data));
+                    cache.flush();
+                    return null;
+                }));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        caches.get(0).flush();
+
+        List<Map<String, Object>> index = readIndex(directory);
+        assertEquals(5, index.size(), "The cache is filled up to its cap: " + index);
+        long total = 0;
+        for (Map<String, Object> entry : index) {
+            String key = YamlHelper.getString(entry, "sha256", "");
+            assertTrue(new File(new File(directory, key.substring(0, 2)), key).isFile(), "Indexed blob exists: " + key);
+            total += YamlHelper.getLong(entry, "size", 0L);
+        }
+        assertTrue(total <= maxBytes);
+    }
+
+    private File write(String name, byte[] data) throws Exception {
+        Path file = _directory.resolve("sources").resolve(name);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, data).toFile();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> readIndex(File directory) {
+        Map<String, Object> index = YamlHelper.readFromFile(new File(directory, "index.yml"));
+        assertNotNull(index);
+        return (List<Map<String, Object>>) index.get("entries");
+    }
+
+    private static byte[] randomData(int seed) {
+        byte[] data = new byte[FILE_SIZE];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.tavstal.mmcinstaller.TestSupport;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.ApacheClassicTransport;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the {@link ArtifactScheduler} against a loopback server serving small artifacts.
+ */
+class ArtifactSchedulerTest {
+    private static final int ARTIFACTS = 6;
+
+    @TempDir
+    static Path _directory;
+    private static HttpServer _server;
+    private static ExecutorService _serverExecutor;
+    private static final Map<String, byte[]> _artifacts = new HashMap<>();
+    private static final List<String> _methods = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        TestSupport.initLogger();
+        Random random = new Random(3);
+        for (int i = 0; i < ARTIFACTS; i++) {
+            byte[] data = new byte[1000 + random.nextInt(50_000)];
+            random.nextBytes(data);
+            _artifacts.put("/artifact" + i + ".bin", data);
+        }
+
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 16);
+        _server.createContext("/", ArtifactSchedulerTest::serve);
+        _serverExecutor = Executors.newCachedThreadPool();
+        _server.setExecutor(_serverExecutor);
+        _server.start();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (_server != null) {
+            _server.stop(0);
+        }
+        if (_serverExecutor != null) {
+            _serverExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void artifactsWithKnownSizeAreNotProbed() throws Exception {
+        List<ManifestEntry> entries = new ArrayList<>();
+        for (Map.Entry<String, byte[]> artifact : _artifacts.entrySet()) {
+            entries.add(new ManifestEntry("http://127.0.0.1:" + _server.getAddress().getPort() + artifact.getKey(),
+                    artifact.getValue().length, TestSupport.sha256(artifact.getValue()), "lib" + artifact.getKey(), 0));
+        }
+        File baseDirectory = _directory.resolve("install").toFile();
+
+        try (Transport transport = new ApacheClassicTransport(4, 8);
+             ProgressTracker progress = new ProgressTracker(snapshot -> {})) {
+            ArtifactScheduler scheduler = new ArtifactScheduler(transport, new BandwidthLimiter(0), 3, 2, 4, null, null, progress, () -> false);
+            assertTrue(scheduler.install(new DownloadManifest(entries), baseDirectory));
+        }
+
+        for (Map.Entry<String, byte[]> artifact : _artifacts.entrySet()) {
+            assertArrayEquals(artifact.getValue(), Files.readAllBytes(new File(baseDirectory, "lib" + artifact.getKey()).toPath()));
+        }
+        assertFalse(_methods.contains("HEAD"), "Artifacts with a known size must not be probed: " + _methods);
+        assertEquals(ARTIFACTS, _methods.size());
+    }
+
+    /**
+     * Serves an artifact and records the method of the request.
+     */
+    private static void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            _methods.add(exchange.getRequestMethod());
+            byte[] data = _artifacts.get(exchange.getRequestURI().getPath());
+            if (data == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            boolean head = exchange.getRequestMethod().equals("HEAD");
+            exchange.sendResponseHeaders(200, head ? -1 : data.length);
+            if (!head) {
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(data);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the token bucket of the {@link BandwidthLimiter}: the rate it enforces, and how waiting connections
+ * react to rate changes, cancellation and interrupts.
+ */
+class BandwidthLimiterTest {
+    @Test
+    void unlimitedRateNeverWaits() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.acquire(1024 * 1024, () -> false));
+        }
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void negativeRateMeansUnlimited() {
+        assertEquals(0, new BandwidthLimiter(-5).getRate());
+    }
+
+    @Test
+    void chunksAreSpreadOverTheRate() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(1_000_000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.acquire(100_000, () -> false));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The first chunk is granted at once, the nine others have to wait for their tokens.
+        assertTrue(elapsedMillis >= 850, "Finished too early: " + elapsedMillis + " ms");
+        assertTrue(elapsedMillis < 5000, "Finished too late: " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void cancelledWaitReturnsFalse() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(1);
+        assertTrue(limiter.acquire(1000, () -> false)); // The bucket is now 1000 seconds in debt.
+
+        assertFalse(limiter.acquire(1, () -> true));
+    }
+
+    @Test
+    void waitingConnectionPicksUpRateChange() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(1);
+        assertTrue(limiter.acquire(1000, () -> false));
+
+        CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire(1, () -> false);
+            } catch (InterruptedIOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        limiter.setRate(0);
+
+        assertTrue(waiting.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void interruptedWaitThrows() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(1);
+        assertTrue(limiter.acquire(1000, () -> false));
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedIOException.class, () -> limiter.acquire(1, () -> false));
+            assertTrue(Thread.currentThread().isInterrupted(), "The interrupt flag is kept for the caller.");
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.TestSupport;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.FileTransport;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import io.github.tavstal.mmcinstaller.core.transport.TransportRequest;
+import io.github.tavstal.mmcinstaller.core.transport.TransportResponse;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link BlockDeltaDownloader} finds the blocks of the new version in an old copy, even when
+ * data was inserted before them, and only downloads the rest. The new version is served from a local file.
+ */
+class BlockDeltaDownloaderTest {
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path _directory;
+
+    @BeforeAll
+    static void setUp() {
+        TestSupport.initLogger();
+    }
+
+    @Test
+    void shiftedBlocksAreReused() throws Exception {
+        byte[] newVersion = randomData(40 * BLOCK_SIZE + 123, 1);
+        // The old copy lacks the first 1000 bytes and has a different block in the middle.
+        byte[] oldCopy = Arrays.copyOfRange(newVersion, 1000, newVersion.length);
+        Arrays.fill(oldCopy, 20 * BLOCK_SIZE, 21 * BLOCK_SIZE, (byte) 7);
+
+        long downloaded = update(newVersion, oldCopy);
+
+        // The blocks touching the missing prefix, the changed block and the short last block are downloaded.
+        assertTrue(downloaded < 6 * BLOCK_SIZE, "Downloaded " + downloaded + " bytes");
+    }
+
+    @Test
+    void identicalCopyOnlyDownloadsTheLastBlock() throws Exception {
+        byte[] newVersion = randomData(10 * BLOCK_SIZE + 10, 2);
+
+        assertEquals(10, update(newVersion, newVersion.clone()));
+    }
+
+    @Test
+    void unrelatedCopyDownloadsEverything() throws Exception {
+        byte[] newVersion = randomData(8 * BLOCK_SIZE, 3);
+
+        assertEquals(newVersion.length, update(newVersion, randomData(8 * BLOCK_SIZE, 4)));
+    }
+
+    @Test
+    void staleChecksumsAreRejected() throws Exception {
+        byte[] newVersion = randomData(4 * BLOCK_SIZE, 5);
+        Path remote = _directory.resolve("remote.bin");
+        Files.write(remote, Arrays.copyOf(newVersion, newVersion.length - 1));
+        File local = _directory.resolve("local.bin").toFile();
+        Files.write(local.toPath(), newVersion);
+
+        try (Transport transport = new FileTransport(); ProgressTracker progress = new ProgressTracker(snapshot -> {})) {
+            BlockDeltaDownloader downloader = new BlockDeltaDownloader(transport, remote.toUri().toString(), checksumsOf(newVersion),
+                    local, local, "", 2, progress, new BandwidthLimiter(0), () -> false);
+            assertThrows(IOException.class, downloader::download);
+        }
+        assertArrayEquals(newVersion, Files.readAllBytes(local.toPath()));
+    }
+
+    /**
+     * Updates the old copy to the new version and checks the result.
+     *
+     * @return The number of body bytes downloaded.
+     */
+    private long update(byte[] newVersion, byte[] oldCopy) throws Exception {
+        Path remote = _directory.resolve("remote.bin");
+        Files.write(remote, newVersion);
+        File local = _directory.resolve("local.bin").toFile();
+        Files.write(local.toPath(), oldCopy);
+
+        CountingTransport transport = new CountingTransport();
+        try (transport; ProgressTracker progress = new ProgressTracker(snapshot -> {})) {
+            BlockDeltaDownloader downloader = new BlockDeltaDownloader(transport, remote.toUri().toString(), checksumsOf(newVersion),
+                    local, local, TestSupport.sha256(newVersion), 2, progress, new BandwidthLimiter(0), () -> false);
+            assertTrue(downloader.download());
+            assertEquals(TestSupport.sha256(newVersion), downloader.getChecksum());
+        }
+        assertArrayEquals(newVersion, Files.readAllBytes(local.toPath()));
+        return transport._bytes.get();
+    }
+
+    /**
+     * Computes the block checksums a server would publish for a file.
+     */
+    private static BlockChecksums checksumsOf(byte[] data) throws Exception {
+        int blockCount = (data.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] weak = new int[blockCount];
+        List<byte[]> strong = new ArrayList<>();
+        for (int i = 0; i < blockCount; i++) {
+            int start = i * BLOCK_SIZE;
+            int length = Math.min(BLOCK_SIZE, data.length - start);
+            weak[i] = RollingChecksum.of(data, start, length);
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, start, length);
+            strong.add(digest.digest());
+        }
+        return new BlockChecksums(data.length, BLOCK_SIZE, weak, strong);
+    }
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * A file transport counting the body bytes of the range responses, except the one-byte probe of the file size.
+     */
+    private static class CountingTransport extends FileTransport {
+        private final AtomicLong _bytes = new AtomicLong();
+
+        @Override
+        public TransportResponse execute(TransportRequest request) throws IOException {
+            TransportResponse response = super.execute(request);
+            if (response.getStatus() == 206 && !"bytes=0-0".equals(request.getHeader("Range"))) {
+                _bytes.addAndGet(response.getContentLength());
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the Merkle root and the parsing of a {@link ChunkManifest}.
+ */
+class ChunkManifestTest {
+    private static final HexFormat HEX = HexFormat.of();
+
+    @Test
+    void rootOfSingleLeafIsTheLeaf() {
+        byte[] leaf = sha256(new byte[]{1});
+
+        assertArrayEquals(leaf, ChunkManifest.computeRoot(List.of(leaf)));
+    }
+
+    @Test
+    void rootOfEmptyListIsHashOfNothing() {
+        assertArrayEquals(sha256(new byte[0]), ChunkManifest.computeRoot(List.of()));
+    }
+
+    @Test
+    void oddLeafIsCarriedUpUnchanged() {
+        byte[] a = sha256(new byte[]{1});
+        byte[] b = sha256(new byte[]{2});
+        byte[] c = sha256(new byte[]{3});
+
+        // root = H(H(a | b) | c), c has no sibling on the first level.
+        byte[] expected = sha256(concat(sha256(concat(a, b)), c));
+        assertArrayEquals(expected, ChunkManifest.computeRoot(List.of(a, b, c)));
+    }
+
+    @Test
+    void rootOfFourLeavesIsBalanced() {
+        byte[] a = sha256(new byte[]{1});
+        byte[] b = sha256(new byte[]{2});
+        byte[] c = sha256(new byte[]{3});
+        byte[] d = sha256(new byte[]{4});
+
+        byte[] expected = sha256(concat(sha256(concat(a, b)), sha256(concat(c, d))));
+        assertArrayEquals(expected, ChunkManifest.computeRoot(List.of(a, b, c, d)));
+    }
+
+    @Test
+    void validManifestIsParsed() throws IOException {
+        byte[] data = new byte[2500];
+        new Random(9).nextBytes(data);
+        List<byte[]> chunks = chunkHashes(data, 1000);
+
+        ChunkManifest manifest = ChunkManifest.parse(toMap(data.length, 1000, chunks, ChunkManifest.computeRoot(chunks)));
+
+        assertEquals(3, manifest.getChunkCount());
+        assertEquals(2000, manifest.getChunkStart(2));
+        assertEquals(500, manifest.getChunkLength(2));
+        assertEquals(1, manifest.getChunkIndex(1999));
+        assertTrue(manifest.verify(2, ByteBuffer.wrap(data, 2000, 500)));
+        assertFalse(manifest.verify(1, ByteBuffer.wrap(data, 2000, 500)));
+    }
+
+    @Test
+    void changedChunkListIsRejected() {
+        byte[] data = new byte[2500];
+        new Random(9).nextBytes(data);
+        List<byte[]> chunks = chunkHashes(data, 1000);
+        byte[] root = ChunkManifest.computeRoot(chunks);
+        List<byte[]> swapped = List.of(chunks.get(1), chunks.get(0), chunks.get(2));
+
+        assertThrows(IOException.class, () -> ChunkManifest.parse(toMap(data.length, 1000, swapped, root)));
+    }
+
+    @Test
+    void truncatedChunkListIsRejected() {
+        byte[] data = new byte[2500];
+        List<byte[]> chunks = chunkHashes(data, 1000);
+
+        assertThrows(IOException.class, () -> ChunkManifest.parse(toMap(data.length, 1000, chunks.subList(0, 2), ChunkManifest.computeRoot(chunks.subList(0, 2)))));
+    }
+
+    private static Map<String, Object> toMap(long size, int chunkSize, List<byte[]> chunks, byte[] root) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", size);
+        map.put("chunk_size", chunkSize);
+        map.put("root", HEX.formatHex(root));
+        map.put("chunks", chunks.stream().map(HEX::formatHex).toList());
+        return map;
+    }
+
+    private static List<byte[]> chunkHashes(byte[] data, int chunkSize) {
+        List<byte[]> hashes = new ArrayList<>();
+        for (int start = 0; start < data.length; start += chunkSize) {
+            hashes.add(sha256(Arrays.copyOfRange(data, start, Math.min(data.length, start + chunkSize))));
+        }
+        return hashes;
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
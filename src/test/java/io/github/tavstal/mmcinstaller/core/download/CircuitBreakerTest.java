@@ -0,0 +1,90 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the transitions of a {@link CircuitBreaker} between closed, open and half-open.
+ */
+class CircuitBreakerTest {
+    private static final long OPEN_MILLIS = 50;
+
+    @Test
+    void opensAfterFailuresInARow() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60_000);
+
+        assertFalse(breaker.recordFailure());
+        assertFalse(breaker.recordFailure());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.recordFailure());
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60_000);
+
+        breaker.recordFailure();
+        breaker.recordSuccess();
+
+        assertFalse(breaker.recordFailure());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void singleTrialAfterCoolDown() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS * 2);
+
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest(), "Only one trial request may be in flight.");
+    }
+
+    @Test
+    void successfulTrialCloses() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS * 2);
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordSuccess();
+
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void failedTrialOpensAgain() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS * 2);
+        assertTrue(breaker.allowRequest());
+
+        assertTrue(breaker.recordFailure());
+
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void releasedTrialCanBeTakenAgain() throws InterruptedException {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_MILLIS * 2);
+        assertTrue(breaker.allowRequest());
+
+        breaker.releaseTrial();
+
+        assertTrue(breaker.allowRequest());
+    }
+
+    /**
+     * Creates a breaker with a short cool-down and opens it.
+     */
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker(1, OPEN_MILLIS);
+        assertTrue(breaker.recordFailure());
+        assertFalse(breaker.allowRequest());
+        return breaker;
+    }
+}
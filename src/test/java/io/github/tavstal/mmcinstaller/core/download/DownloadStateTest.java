@@ -0,0 +1,154 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the range bookkeeping of {@link DownloadState}: handing out, splitting and claiming byte ranges,
+ * and saving and loading the sidecar file.
+ */
+class DownloadStateTest {
+    private static final RemoteFileInfo INFO = new RemoteFileInfo(1000, true, "\"v1\"", "");
+
+    @TempDir
+    static Path _directory;
+
+    @Test
+    void createCoversTheWholeFile() {
+        DownloadState state = DownloadState.create("https://example.com/file", INFO, 3);
+
+        List<DownloadState.Segment> segments = state.getSegments();
+        assertEquals(3, segments.size());
+        assertEquals(0, segments.get(0).getStart());
+        assertEquals(332, segments.get(0).getEnd());
+        assertEquals(333, segments.get(1).getStart());
+        assertEquals(666, segments.get(2).getStart());
+        assertEquals(999, segments.get(2).getEnd());
+    }
+
+    @Test
+    void unassignedSegmentsAreHandedOutFirst() {
+        DownloadState state = DownloadState.create("https://example.com/file", INFO, 2);
+
+        assertSame(state.getSegments().get(0), state.acquireSegment(100));
+        assertSame(state.getSegments().get(1), state.acquireSegment(100));
+        assertEquals(2, state.getSegments().size());
+    }
+
+    @Test
+    void largestRemainingSegmentIsSplitInHalf() {
+        DownloadState state = DownloadState.create("https://example.com/file", INFO, 2);
+        DownloadState.Segment first = state.acquireSegment(100);
+        DownloadState.Segment second = state.acquireSegment(100);
+        second.advance(300); // 200 bytes left in the second range, 500 in the first.
+
+        DownloadState.Segment tail = state.acquireSegment(100);
+
+        assertEquals(250, tail.getStart());
+        assertEquals(499, tail.getEnd());
+        assertEquals(249, first.getEnd());
+        assertEquals(List.of(first, tail, second), state.getSegments());
+    }
+
+    @Test
+    void claimedBytesAreNotSplitOff() {
+        DownloadState state = DownloadState.create("https://example.com/file", INFO, 1);
+        DownloadState.Segment segment = state.acquireSegment(100);
+        assertEquals(600, segment.claim(0, 600)); // The writer is about to write the first 600 bytes.
+
+        DownloadState.Segment tail = state.acquireSegment(100);
+
+        assertEquals(800, tail.getStart());
+        assertEquals(799, segment.getEnd());
+        // A write past the new end is cut short.
+        assertEquals(200, segment.claim(600, 400));
+    }
+
+    @Test
+    void smallSegmentsAreNotSplit() {
+        DownloadState state = DownloadState.create("https://example.com/file", INFO, 1);
+        state.acquireSegment(600);
+
+        assertNull(state.acquireSegment(600));
+    }
+
+    @Test
+    void releasedSegmentIsHandedOutAgain() {
+        DownloadState state = DownloadState.create("https://example.com/file", INFO, 1);
+        DownloadState.Segment segment = state.acquireSegment(1000);
+        segment.advance(10);
+        state.releaseSegment(segment);
+
+        DownloadState.Segment again = state.acquireSegment(1000);
+        assertSame(segment, again);
+        assertEquals(10, again.getNextOffset());
+    }
+
+    @Test
+    void completeFileHasNothingLeft() {
+        DownloadState state = DownloadState.create("https://example.com/file", INFO, 2);
+        for (DownloadState.Segment segment : state.getSegments()) {
+            segment.advance(segment.getRemaining());
+            assertTrue(segment.isComplete());
+        }
+
+        assertNull(state.acquireSegment(1));
+        assertEquals(1000, state.getDownloadedBytes());
+    }
+
+    @Test
+    void savedStateIsLoadedAndMatches() throws Exception {
+        File stateFile = _directory.resolve("file.part.state").toFile();
+        DownloadState state = DownloadState.create("https://example.com/file", INFO, 2);
+        state.getSegments().get(0).advance(123);
+        state.save(stateFile);
+
+        DownloadState loaded = DownloadState.load(stateFile);
+
+        assertNotNull(loaded);
+        assertEquals(123, loaded.getDownloadedBytes());
+        assertEquals(123, loaded.getSegments().get(0).getNextOffset());
+        assertEquals(2, loaded.getSegments().size());
+        assertTrue(loaded.matches("https://example.com/file", INFO));
+        assertFalse(loaded.matches("https://example.com/file", new RemoteFileInfo(1000, true, "\"v2\"", "")));
+        assertFalse(loaded.matches("https://example.com/file", new RemoteFileInfo(1001, true, "\"v1\"", "")));
+        assertFalse(loaded.matches("https://example.com/other", INFO));
+        assertEquals("\"v1\"", loaded.getValidator());
+    }
+
+    @Test
+    void corruptSidecarIsIgnored() throws Exception {
+        File stateFile = _directory.resolve("corrupt.part.state").toFile();
+        DownloadState state = DownloadState.create("https://example.com/file", INFO, 1);
+        state.save(stateFile);
+        Files.writeString(stateFile.toPath(), Files.readString(stateFile.toPath()).replace("end: 999", "end: 5000"));
+
+        assertNull(DownloadState.load(stateFile));
+        assertNull(DownloadState.load(_directory.resolve("missing.part.state").toFile()));
+    }
+
+    @Test
+    void weakValidatorIsNeverResumed() {
+        RemoteFileInfo weak = new RemoteFileInfo(1000, true, "W/\"v1\"", "");
+        DownloadState state = DownloadState.create("https://example.com/file", weak, 1);
+
+        assertFalse(state.matches("https://example.com/file", weak));
+        assertNull(state.getValidator());
+    }
+
+    @Test
+    void lastModifiedIsUsedWithoutStrongETag() {
+        RemoteFileInfo info = new RemoteFileInfo(1000, true, "W/\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT");
+        DownloadState state = DownloadState.create("https://example.com/file", info, 1);
+
+        assertTrue(state.matches("https://example.com/file", info));
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", state.getValidator());
+    }
+}
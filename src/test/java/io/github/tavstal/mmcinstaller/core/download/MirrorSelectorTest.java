@@ -0,0 +1,59 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.TestSupport;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the ordering of the {@link MirrorSelector} from its history. The history is known in every test,
+ * so no mirror is probed and no transport is needed.
+ */
+class MirrorSelectorTest {
+    private static final List<String> MIRRORS = List.of("https://a.example/file", "https://b.example/file", "https://c.example/file");
+
+    @TempDir
+    static Path _directory;
+
+    @BeforeAll
+    static void setUp() {
+        TestSupport.initLogger();
+    }
+
+    @Test
+    void unknownMirrorGetsTheAverageScore() {
+        MirrorSelector selector = new MirrorSelector(MIRRORS, null);
+        selector.recordSuccess(MIRRORS.get(0), 1_000, 1_000_000_000L);
+        selector.recordSuccess(MIRRORS.get(1), 100_000, 1_000_000_000L);
+
+        assertEquals(List.of(MIRRORS.get(1), MIRRORS.get(2), MIRRORS.get(0)), selector.rank(null));
+    }
+
+    @Test
+    void failedMirrorIsTriedLast() {
+        MirrorSelector selector = new MirrorSelector(MIRRORS, null);
+        selector.recordSuccess(MIRRORS.get(0), 100_000, 1_000_000_000L);
+        selector.recordFailure(MIRRORS.get(0));
+
+        assertEquals(List.of(MIRRORS.get(1), MIRRORS.get(2), MIRRORS.get(0)), selector.rank(null));
+    }
+
+    @Test
+    void historyIsSavedAndLoaded() {
+        File historyFile = _directory.resolve("mirrors.yml").toFile();
+        MirrorSelector selector = new MirrorSelector(MIRRORS, historyFile);
+        selector.recordSuccess(MIRRORS.get(2), 100_000, 1_000_000_000L);
+        selector.recordSuccess(MIRRORS.get(1), 1_000, 1_000_000_000L);
+
+        assertTrue(historyFile.isFile());
+        assertFalse(new File(historyFile.getParentFile(), historyFile.getName() + ".tmp").exists());
+        MirrorSelector reloaded = new MirrorSelector(MIRRORS, historyFile);
+        assertEquals(List.of(MIRRORS.get(2), MIRRORS.get(0), MIRRORS.get(1)), reloaded.rank(null));
+    }
+}
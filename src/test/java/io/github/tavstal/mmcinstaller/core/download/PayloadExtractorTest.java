@@ -0,0 +1,99 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.TestSupport;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressSnapshot;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the {@link PayloadExtractor} with the payload embedded in the test resources.
+ */
+class PayloadExtractorTest {
+    private static EmbeddedPayload _payload;
+    private static byte[] _content;
+
+    @TempDir
+    Path _directory;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        TestSupport.initLogger();
+        _payload = EmbeddedPayload.find();
+        assertNotNull(_payload, "The test resources embed a payload.");
+        try (InputStream is = _payload.open()) {
+            _content = is.readAllBytes();
+        }
+    }
+
+    @Test
+    void payloadIsDescribedByItsResource() {
+        assertEquals("MesterMC.jar", _payload.fileName());
+        assertEquals(_content.length, _payload.size());
+    }
+
+    @Test
+    void payloadIsExtractedAndVerified() throws Exception {
+        File output = _directory.resolve(_payload.fileName()).toFile();
+        AtomicReference<ProgressSnapshot> reported = new AtomicReference<>();
+
+        PayloadExtractor extractor;
+        try (ProgressTracker progress = new ProgressTracker(reported::set)) {
+            extractor = new PayloadExtractor(_payload, output, progress, () -> false);
+            assertTrue(extractor.extract());
+        }
+
+        assertArrayEquals(_content, Files.readAllBytes(output.toPath()));
+        assertEquals(_payload.sha256(), extractor.getChecksum());
+        assertEquals(_payload.size(), reported.get().downloadedBytes());
+        assertFalse(SegmentedDownloader.getPartFile(output).exists());
+    }
+
+    @Test
+    void corruptPayloadKeepsTheOutputFile() throws Exception {
+        File output = _directory.resolve(_payload.fileName()).toFile();
+        Files.writeString(output.toPath(), "previous version");
+        EmbeddedPayload corrupt = new EmbeddedPayload(_payload.fileName(), _payload.size(), "0".repeat(64));
+
+        PayloadExtractor extractor = new PayloadExtractor(corrupt, output, new ProgressTracker(snapshot -> {}), () -> false);
+
+        IOException error = assertThrows(IOException.class, extractor::extract);
+        assertTrue(error.getMessage().contains(_payload.sha256()), error.getMessage());
+        assertEquals("previous version", Files.readString(output.toPath()));
+        assertFalse(SegmentedDownloader.getPartFile(output).exists());
+    }
+
+    @Test
+    void truncatedPayloadIsRejected() {
+        File output = _directory.resolve(_payload.fileName()).toFile();
+        EmbeddedPayload larger = new EmbeddedPayload(_payload.fileName(), _payload.size() + 1, _payload.sha256());
+
+        PayloadExtractor extractor = new PayloadExtractor(larger, output, new ProgressTracker(snapshot -> {}), () -> false);
+
+        assertThrows(EOFException.class, extractor::extract);
+        assertFalse(output.exists());
+        assertFalse(SegmentedDownloader.getPartFile(output).exists());
+    }
+
+    @Test
+    void cancelledExtractionReturnsFalse() throws Exception {
+        File output = _directory.resolve(_payload.fileName()).toFile();
+
+        PayloadExtractor extractor = new PayloadExtractor(_payload, output, new ProgressTracker(snapshot -> {}), () -> true);
+
+        assertFalse(extractor.extract());
+        assertFalse(output.exists());
+        assertFalse(SegmentedDownloader.getPartFile(output).exists());
+    }
+}
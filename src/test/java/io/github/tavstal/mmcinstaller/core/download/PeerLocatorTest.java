@@ -0,0 +1,86 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.TestSupport;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.ApacheClassicTransport;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link PeerLocator} finds a {@link PeerCacheServer} by discovery and by its configured address,
+ * skips the installer's own server, and fetches and verifies a file from a peer.
+ */
+class PeerLocatorTest {
+    @TempDir
+    static Path _directory;
+    private static byte[] _payload;
+    private static String _sha256;
+    private static PeerCacheServer _server;
+    private static Transport _transport;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        TestSupport.initLogger();
+        _payload = new byte[512 * 1024];
+        new Random(21).nextBytes(_payload);
+        _sha256 = TestSupport.sha256(_payload);
+        File source = _directory.resolve("source.bin").toFile();
+        Files.write(source.toPath(), _payload);
+
+        ArtifactCache cache = new ArtifactCache(_directory.resolve("cache").toFile(), 64L * 1024 * 1024);
+        cache.store(_sha256, source);
+        _server = new PeerCacheServer(cache, 0);
+        _server.start();
+        _transport = new ApacheClassicTransport(2, 4);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (_server != null) {
+            _server.close();
+        }
+        if (_transport != null) {
+            _transport.close();
+        }
+    }
+
+    @Test
+    void fetchesFromADiscoveredPeer() throws IOException {
+        PeerLocator locator = new PeerLocator(_transport, List.of(), _server.getPort(), 0);
+        String url = "http://127.0.0.1:" + _server.getPort() + PeerCacheServer.PATH_PREFIX + _sha256;
+        assertTrue(locator.locate(_sha256).contains(url));
+
+        File target = _directory.resolve("fetched.bin").toFile();
+        try (ProgressTracker progress = new ProgressTracker(snapshot -> {
+        })) {
+            assertTrue(locator.fetch(_sha256, target, progress, new BandwidthLimiter(0), () -> false));
+        }
+        assertArrayEquals(_payload, Files.readAllBytes(target.toPath()));
+        assertFalse(new File(target.getParentFile(), target.getName() + ".peer").exists(), "The staged file is removed.");
+    }
+
+    @Test
+    void skipsTheOwnServer() {
+        PeerLocator locator = new PeerLocator(_transport, List.of(), _server.getPort(), _server.getPort());
+        assertEquals(List.of(), locator.locate(_sha256));
+    }
+
+    @Test
+    void skipsPeersWithoutTheFile() {
+        PeerLocator locator = new PeerLocator(_transport, List.of("127.0.0.1:" + _server.getPort()), 0, 0);
+        assertEquals(List.of(), locator.locate("0".repeat(64)));
+        assertEquals(1, locator.locate(_sha256).size());
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the attempt limit and the jittered exponential delays of {@link RetryPolicy}.
+ */
+class RetryPolicyTest {
+    @Test
+    void attemptsAreLimited() {
+        RetryPolicy policy = new RetryPolicy(3, 10, 100);
+
+        assertTrue(policy.canRetry(1));
+        assertTrue(policy.canRetry(2));
+        assertFalse(policy.canRetry(3));
+    }
+
+    @Test
+    void delayStaysBelowTheExponentialCeiling() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.getDelayMillis(1) <= 100);
+            assertTrue(policy.getDelayMillis(3) <= 400);
+            assertTrue(policy.getDelayMillis(8) <= 1000);
+            assertTrue(policy.getDelayMillis(Integer.MAX_VALUE) <= 1000);
+        }
+    }
+
+    @Test
+    void delayIsJittered() {
+        RetryPolicy policy = new RetryPolicy(10, 1000, 1000);
+
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.getDelayMillis(1);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue(min < 250 && max > 750, "Delays between " + min + " and " + max);
+    }
+
+    @Test
+    void backOffStopsWhenCancelled() throws InterruptedIOException {
+        RetryPolicy policy = new RetryPolicy(10, 60_000, 60_000);
+
+        long start = System.nanoTime();
+        assertFalse(policy.backOff(1, () -> System.nanoTime() - start > 50_000_000L));
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+    }
+
+    @Test
+    void backOffThrowsWhenInterrupted() {
+        RetryPolicy policy = new RetryPolicy(10, 60_000, 60_000);
+
+        Thread.currentThread().interrupt();
+        try {
+            // A zero delay can be drawn, in which case there is nothing to interrupt.
+            while (policy.backOff(1, () -> false)) {
+                Thread.currentThread().interrupt();
+            }
+            fail("The back-off returned false without being cancelled.");
+        } catch (InterruptedIOException e) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+}
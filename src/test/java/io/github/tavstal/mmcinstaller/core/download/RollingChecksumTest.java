@@ -0,0 +1,51 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that rolling the {@link RollingChecksum} gives the same value as computing it from scratch.
+ */
+class RollingChecksumTest {
+    @Test
+    void rollMatchesFreshChecksum() {
+        byte[] data = new byte[64 * 1024];
+        new Random(5).nextBytes(data);
+        int length = 2048;
+
+        RollingChecksum rolling = new RollingChecksum(length);
+        rolling.reset(data, 0);
+        for (int offset = 0; offset + length < data.length; offset++) {
+            assertEquals(RollingChecksum.of(data, offset, length), rolling.getValue(), "Window at offset " + offset);
+            rolling.roll(data[offset], data[offset + length]);
+        }
+    }
+
+    @Test
+    void sumsWrapAroundWithoutLosingTheWindow() {
+        // 0xFF bytes make both sums overflow 16 bits, which must not change the rolled value.
+        byte[] data = new byte[10_000];
+        Arrays.fill(data, (byte) 0xFF);
+        data[5000] = 0;
+        int length = 4096;
+
+        RollingChecksum rolling = new RollingChecksum(length);
+        rolling.reset(data, 0);
+        for (int offset = 0; offset + length < data.length; offset++) {
+            rolling.roll(data[offset], data[offset + length]);
+        }
+        assertEquals(RollingChecksum.of(data, data.length - length, length), rolling.getValue());
+    }
+
+    @Test
+    void valueCombinesBothSums() {
+        byte[] data = {1, 2, 3};
+
+        // a = 1 + 2 + 3 = 6, b = 3 * 1 + 2 * 2 + 1 * 3 = 10
+        assertEquals(10 << 16 | 6, RollingChecksum.of(data, 0, 3));
+    }
+}
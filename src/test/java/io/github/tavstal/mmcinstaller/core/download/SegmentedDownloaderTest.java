@@ -0,0 +1,329 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.tavstal.mmcinstaller.TestSupport;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressSnapshot;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.ApacheClassicTransport;
+import io.github.tavstal.mmcinstaller.core.transport.Transport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the {@link SegmentedDownloader} against a loopback server, with and without range support.
+ */
+class SegmentedDownloaderTest {
+    private static final int FILE_SIZE = 3 * 1024 * 1024 + 123;
+    private static final String ETAG = "\"v1\"";
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    @TempDir
+    static Path _directory;
+    private static byte[] _payload;
+    private static HttpServer _server;
+    private static Transport _transport;
+    private static ExecutorService _serverExecutor;
+    private static final List<String> _ranges = Collections.synchronizedList(new ArrayList<>());
+    private static final List<String> _dataRequests = Collections.synchronizedList(new ArrayList<>());
+    private static final AtomicInteger _changingProbes = new AtomicInteger();
+    private static final AtomicInteger _corruptOffset = new AtomicInteger(-1); // The byte flipped in the next response containing it, or -1.
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        TestSupport.initLogger();
+        _payload = new byte[FILE_SIZE];
+        new Random(11).nextBytes(_payload);
+
+        byte[] stale = new byte[FILE_SIZE];
+        new Random(12).nextBytes(stale);
+
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 16);
+        _server.createContext("/ranged.bin", exchange -> serve(exchange, new Resource(true, ETAG, _payload, false)));
+        _server.createContext("/mirror/ranged.bin", exchange -> serve(exchange, new Resource(true, ETAG, _payload, false)));
+        _server.createContext("/stale.bin", exchange -> serve(exchange, new Resource(true, "\"v0\"", stale, false)));
+        _server.createContext("/broken.bin", exchange -> serve(exchange, new Resource(true, ETAG, _payload, true)));
+        _server.createContext("/plain.bin", exchange -> serve(exchange, new Resource(false, ETAG, _payload, false)));
+        _server.createContext("/changing.bin", exchange -> {
+            // The first probe still sees the previous version, which is replaced before any data is requested.
+            boolean previous = exchange.getRequestMethod().equals("HEAD") && _changingProbes.getAndIncrement() == 0;
+            serve(exchange, previous ? new Resource(true, "\"v0\"", stale, false) : new Resource(true, ETAG, _payload, false));
+        });
+        _serverExecutor = Executors.newCachedThreadPool();
+        _server.setExecutor(_serverExecutor);
+        _server.start();
+        _transport = new ApacheClassicTransport(4, 8);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (_transport != null) {
+            _transport.close();
+        }
+        if (_server != null) {
+            _server.stop(0);
+        }
+        if (_serverExecutor != null) {
+            _serverExecutor.shutdownNow();
+        }
+    }
+
+    @BeforeEach
+    void clearRequests() {
+        _ranges.clear();
+        _dataRequests.clear();
+        _corruptOffset.set(-1);
+    }
+
+    @Test
+    void rangesAreFetchedInParallelAndJoined() throws Exception {
+        File output = _directory.resolve("ranged.bin").toFile();
+        AtomicReference<ProgressSnapshot> reported = new AtomicReference<>();
+
+        SegmentedDownloader downloader;
+        try (ProgressTracker progress = new ProgressTracker(reported::set)) {
+            downloader = newDownloader("/ranged.bin", output, progress, () -> false);
+            assertTrue(downloader.download());
+        }
+
+        assertArrayEquals(_payload, Files.readAllBytes(output.toPath()));
+        assertEquals(FILE_SIZE, reported.get().downloadedBytes());
+        assertEquals(3, _ranges.size(), "One range per started megabyte: " + _ranges);
+        assertEquals(TestSupport.sha256(_payload), downloader.getChecksum());
+    }
+
+    @Test
+    void partialDownloadIsResumed() throws Exception {
+        File output = _directory.resolve("resumed.bin").toFile();
+        DownloadState state = DownloadState.create(url("/ranged.bin"), new RemoteFileInfo(FILE_SIZE, true, ETAG, ""), 3);
+        state.getSegments().get(0).advance(1000);
+        state.save(new File(output.getPath() + ".part.state"));
+        byte[] part = new byte[FILE_SIZE];
+        System.arraycopy(_payload, 0, part, 0, 1000);
+        Files.write(Path.of(output.getPath() + ".part"), part);
+
+        SegmentedDownloader downloader = newDownloader("/ranged.bin", output, () -> false);
+
+        assertTrue(downloader.download());
+        assertArrayEquals(_payload, Files.readAllBytes(output.toPath()));
+        assertTrue(_ranges.stream().anyMatch(range -> range.startsWith("bytes=1000-")), "The first range continues at byte 1000: " + _ranges);
+        assertTrue(_ranges.stream().noneMatch(range -> range.startsWith("bytes=0-")), "The present bytes are not fetched again: " + _ranges);
+        assertEquals(TestSupport.sha256(_payload), downloader.getChecksum(), "The resumed bytes are hashed from the part file.");
+        assertFalse(new File(output.getPath() + ".part").exists());
+        assertFalse(new File(output.getPath() + ".part.state").exists());
+    }
+
+    @Test
+    void rangesAreStripedAcrossMirrors() throws Exception {
+        File output = _directory.resolve("striped.bin").toFile();
+
+        SegmentedDownloader downloader = newDownloader(List.of("/ranged.bin", "/mirror/ranged.bin"), output, () -> false);
+
+        assertTrue(downloader.download());
+        assertArrayEquals(_payload, Files.readAllBytes(output.toPath()));
+        assertTrue(_dataRequests.contains("/ranged.bin"), "The primary link serves ranges: " + _dataRequests);
+        assertTrue(_dataRequests.contains("/mirror/ranged.bin"), "The mirror serves ranges: " + _dataRequests);
+        assertEquals(TestSupport.sha256(_payload), downloader.getChecksum());
+    }
+
+    @Test
+    void mirrorWithAnotherVersionIsLeftOut() throws Exception {
+        File output = _directory.resolve("stale.bin").toFile();
+
+        SegmentedDownloader downloader = newDownloader(List.of("/ranged.bin", "/stale.bin"), output, () -> false);
+
+        assertTrue(downloader.download());
+        assertArrayEquals(_payload, Files.readAllBytes(output.toPath()));
+        assertFalse(_dataRequests.contains("/stale.bin"), "The outdated mirror must not serve ranges: " + _dataRequests);
+    }
+
+    @Test
+    void rangesOfFailedMirrorMoveToTheOthers() throws Exception {
+        File output = _directory.resolve("failover.bin").toFile();
+
+        SegmentedDownloader downloader = newDownloader(List.of("/ranged.bin", "/broken.bin"), output, () -> false);
+
+        assertTrue(downloader.download());
+        assertArrayEquals(_payload, Files.readAllBytes(output.toPath()));
+        assertTrue(_dataRequests.contains("/broken.bin"), "The broken mirror was used before it failed: " + _dataRequests);
+    }
+
+    @Test
+    void fileChangedAfterTheProbeIsProbedAgain() throws Exception {
+        File output = _directory.resolve("changing.bin").toFile();
+
+        SegmentedDownloader downloader = newDownloader("/changing.bin", output, () -> false);
+
+        assertTrue(downloader.download());
+        assertArrayEquals(_payload, Files.readAllBytes(output.toPath()));
+        assertEquals(2, _changingProbes.get(), "The restart probes the new version.");
+        assertEquals(TestSupport.sha256(_payload), downloader.getChecksum());
+    }
+
+    @Test
+    void corruptChunkIsFetchedAgainAlone() throws Exception {
+        File output = _directory.resolve("corrupt.bin").toFile();
+        int chunkSize = 256 * 1024;
+        List<byte[]> chunkHashes = new ArrayList<>();
+        for (int start = 0; start < FILE_SIZE; start += chunkSize) {
+            byte[] chunk = Arrays.copyOfRange(_payload, start, Math.min(FILE_SIZE, start + chunkSize));
+            chunkHashes.add(HexFormat.of().parseHex(TestSupport.sha256(chunk)));
+        }
+        ChunkManifest manifest = new ChunkManifest(FILE_SIZE, chunkSize, chunkHashes);
+        int corruptChunk = 5;
+        _corruptOffset.set(corruptChunk * chunkSize + 100);
+        MirrorSelector mirrors = new MirrorSelector(List.of(url("/ranged.bin")), new File(output.getPath() + ".mirrors.yml"));
+
+        SegmentedDownloader downloader = new SegmentedDownloader(_transport, mirrors, output, 4, manifest,
+                new ProgressTracker(snapshot -> {}), new BandwidthLimiter(0), () -> false);
+
+        assertTrue(downloader.download());
+        assertEquals(-1, _corruptOffset.get(), "The server corrupted a response.");
+        assertArrayEquals(_payload, Files.readAllBytes(output.toPath()));
+        assertEquals(TestSupport.sha256(_payload), downloader.getChecksum());
+        String chunkRange = String.format("bytes=%d-%d", corruptChunk * chunkSize, (corruptChunk + 1) * chunkSize - 1);
+        assertEquals(4, _ranges.size(), "The three segments and the corrupt chunk: " + _ranges);
+        assertEquals(chunkRange, _ranges.getLast(), "Only the corrupt chunk is fetched again: " + _ranges);
+        assertEquals(1, Collections.frequency(_ranges, chunkRange));
+    }
+
+    @Test
+    void serverWithoutRangesIsDownloadedInOneStream() throws Exception {
+        File output = _directory.resolve("plain.bin").toFile();
+
+        SegmentedDownloader downloader = newDownloader("/plain.bin", output, () -> false);
+
+        assertTrue(downloader.download());
+        assertArrayEquals(_payload, Files.readAllBytes(output.toPath()));
+        assertTrue(_ranges.isEmpty(), "No range may be requested: " + _ranges);
+        assertEquals(TestSupport.sha256(_payload), downloader.getChecksum());
+    }
+
+    @Test
+    void cancelledDownloadReturnsFalse() throws Exception {
+        File output = _directory.resolve("cancelled.bin").toFile();
+
+        SegmentedDownloader downloader = newDownloader("/ranged.bin", output, () -> true);
+
+        assertFalse(downloader.download());
+    }
+
+    /**
+     * Creates a downloader for a file of the loopback server.
+     */
+    private static SegmentedDownloader newDownloader(String path, File output, ProgressTracker progress, BooleanSupplier cancelled) {
+        return newDownloader(List.of(path), output, progress, cancelled);
+    }
+
+    /**
+     * Creates a downloader for a file served by several paths of the loopback server, the first one being the primary link.
+     * Every output file gets its own mirror history, so the tests do not influence each other.
+     */
+    private static SegmentedDownloader newDownloader(List<String> paths, File output, ProgressTracker progress, BooleanSupplier cancelled) {
+        MirrorSelector mirrors = new MirrorSelector(paths.stream().map(SegmentedDownloaderTest::url).toList(),
+                new File(output.getPath() + ".mirrors.yml"));
+        return new SegmentedDownloader(_transport, mirrors, output, 4, null, progress, new BandwidthLimiter(0), cancelled);
+    }
+
+    /**
+     * Creates a downloader for a file served by several paths of the loopback server, whose progress is not observed.
+     */
+    private static SegmentedDownloader newDownloader(List<String> paths, File output, BooleanSupplier cancelled) {
+        return newDownloader(paths, output, new ProgressTracker(snapshot -> {}), cancelled);
+    }
+
+    /**
+     * Creates a downloader for a file of the loopback server, whose progress is not observed.
+     */
+    private static SegmentedDownloader newDownloader(String path, File output, BooleanSupplier cancelled) {
+        return newDownloader(path, output, new ProgressTracker(snapshot -> {}), cancelled);
+    }
+
+    private static String url(String path) {
+        return "http://127.0.0.1:" + _server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Serves a file. With range support the requested range is answered with 206 unless the If-Range
+     * validator does not match, otherwise the range is ignored. A broken resource fails every request
+     * for data, which carries an If-Range header, but answers the probes. The byte at the corrupt offset
+     * is flipped in the first response containing it.
+     */
+    private static void serve(HttpExchange exchange, Resource resource) throws IOException {
+        try (exchange) {
+            byte[] data = resource.data();
+            int offset = 0;
+            int length = data.length;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            if (ifRange != null) {
+                _dataRequests.add(exchange.getRequestURI().getPath());
+                if (resource.broken()) {
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+            }
+            if (resource.ranges() && matcher != null && matcher.matches() && (ifRange == null || ifRange.equals(resource.etag()))) {
+                _ranges.add(range);
+                offset = Integer.parseInt(matcher.group(1));
+                int end = matcher.group(2).isEmpty() ? data.length - 1 : Math.min(data.length - 1, Integer.parseInt(matcher.group(2)));
+                length = end - offset + 1;
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", offset, end, data.length));
+            }
+            if (resource.ranges()) {
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            }
+            exchange.getResponseHeaders().set("ETag", resource.etag());
+
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.getResponseHeaders().set("Content-Length", Integer.toString(length));
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            int corrupt = _corruptOffset.get();
+            if (corrupt >= offset && corrupt < offset + length && _corruptOffset.compareAndSet(corrupt, -1)) {
+                data = data.clone();
+                data[corrupt] ^= (byte) 0xFF;
+            }
+            exchange.sendResponseHeaders(status, length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(data, offset, length);
+            }
+        }
+    }
+
+    /**
+     * A file served by the loopback server.
+     *
+     * @param ranges Whether range requests are supported.
+     * @param etag   The ETag of the file.
+     * @param data   The content of the file.
+     * @param broken Whether requests for data fail.
+     */
+    private record Resource(boolean ranges, String etag, byte[] data, boolean broken) {
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link StallWatchdog} aborts a body trickling below the minimum rate, and leaves a slow but
+ * steady body alone even while the reader waits for a buffer that takes longer than a window to fill.
+ * The bodies are metered like the downloader's, so the watch is fed on every read.
+ */
+class StallWatchdogTest {
+    private static final long WINDOW_MS = 500; // Short window, the checks still run once per second.
+    private static final long MIN_BYTES_PER_SECOND = 8 * 1024; // The downloader's default threshold.
+    private static final int BUFFER_SIZE = 64 * 1024; // Filled by the reader before it continues, like the copy buffer.
+
+    @Test
+    void tricklingBodyIsAborted() {
+        try (StallWatchdog watchdog = new StallWatchdog(WINDOW_MS, () -> MIN_BYTES_PER_SECOND)) {
+            SlowBody body = new SlowBody(64, 100, 64 * 100); // 640 bytes per second for 10 seconds.
+            AtomicInteger stalls = new AtomicInteger();
+            StallWatchdog.Watch watch = watchdog.watch(() -> {
+                stalls.incrementAndGet();
+                body.abort();
+            });
+
+            long startNanos = System.nanoTime();
+            assertThrows(IOException.class, () -> readAll(meter(body, watch)));
+            assertTrue(watch.isStalled());
+            assertEquals(1, stalls.get());
+            assertTrue(System.nanoTime() - startNanos < 5_000_000_000L, "The stall is found within a few checks.");
+        }
+    }
+
+    @Test
+    void slowButSteadyBodyIsNotAborted() throws IOException {
+        try (StallWatchdog watchdog = new StallWatchdog(WINDOW_MS, () -> MIN_BYTES_PER_SECOND)) {
+            SlowBody body = new SlowBody(2048, 50, 96 * 1024); // 40 KB per second, a buffer takes 1.6 seconds.
+            StallWatchdog.Watch watch = watchdog.watch(body::abort);
+
+            assertEquals(96 * 1024, readAll(meter(body, watch)));
+            assertFalse(watch.isStalled());
+            watch.close();
+        }
+    }
+
+    /**
+     * Meters a body and feeds every read to the watch.
+     *
+     * @param body  The body.
+     * @param watch The watch of the connection.
+     * @return The metered body.
+     */
+    private static InputStream meter(InputStream body, StallWatchdog.Watch watch) {
+        return new MeteredInputStream(body, watch::addBytes, new BandwidthLimiter(0), () -> false);
+    }
+
+    /**
+     * Reads a body to its end, a full buffer at a time.
+     *
+     * @param is The body.
+     * @return The number of bytes read.
+     * @throws IOException If reading fails.
+     */
+    private static long readAll(InputStream is) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = is.readNBytes(buffer, 0, buffer.length)) > 0) {
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * A body returning a few bytes per read after a fixed delay, until it is aborted.
+     */
+    private static class SlowBody extends InputStream {
+        private final int _bytesPerRead; // Bytes returned by every read.
+        private final long _delayMillis; // Time every read waits before returning.
+        private int _remaining; // Bytes left in the body.
+        private volatile boolean _aborted; // Set when the connection was aborted.
+
+        /**
+         * Constructs a new `SlowBody` instance.
+         *
+         * @param bytesPerRead Bytes returned by every read.
+         * @param delayMillis  Time every read waits before returning.
+         * @param length       The length of the body.
+         */
+        private SlowBody(int bytesPerRead, long delayMillis, int length) {
+            _bytesPerRead = bytesPerRead;
+            _delayMillis = delayMillis;
+            _remaining = length;
+        }
+
+        /**
+         * Aborts the body, like aborting the request of a connection.
+         */
+        private void abort() {
+            _aborted = true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                Thread.sleep(_delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted.", e);
+            }
+            if (_aborted) {
+                throw new IOException("Aborted.");
+            }
+            if (_remaining == 0) {
+                return -1;
+            }
+            int count = Math.min(Math.min(length, _bytesPerRead), _remaining);
+            _remaining -= count;
+            return count;
+        }
+    }
+}
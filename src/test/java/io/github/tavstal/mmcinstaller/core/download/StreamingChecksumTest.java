@@ -0,0 +1,102 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.TestSupport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link StreamingChecksum} produces the checksum of the whole file, whatever order the
+ * segments are written in.
+ */
+class StreamingChecksumTest {
+    private static final int FILE_SIZE = 300_000;
+
+    @TempDir
+    Path _directory;
+
+    @Test
+    void sequentialUpdatesHashTheWholeFile() throws Exception {
+        byte[] data = randomData();
+        StreamingChecksum checksum = new StreamingChecksum();
+        for (int offset = 0; offset < data.length; offset += 7000) {
+            checksum.update(offset, ByteBuffer.wrap(data, offset, Math.min(7000, data.length - offset)));
+        }
+
+        assertEquals(data.length, checksum.getHashedBytes());
+        assertEquals(TestSupport.sha256(data), checksum.getChecksum());
+    }
+
+    @Test
+    void sequentialUpdateWithGapIsRejected() {
+        StreamingChecksum checksum = new StreamingChecksum();
+
+        assertThrows(IllegalStateException.class, () -> checksum.update(10, ByteBuffer.allocate(10)));
+    }
+
+    @Test
+    void segmentsWrittenOutOfOrderAreReadBack() throws Exception {
+        byte[] data = randomData();
+        DownloadState state = DownloadState.create("https://example.com/file", new RemoteFileInfo(FILE_SIZE, true, "\"v1\"", ""), 3);
+        List<DownloadState.Segment> segments = state.getSegments();
+        try (FileChannel channel = FileChannel.open(_directory.resolve("file.part"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            StreamingChecksum checksum = new StreamingChecksum(channel, segments);
+            write(channel, checksum, segments.get(2), data);
+            write(channel, checksum, segments.get(1), data);
+            assertEquals(0, checksum.getHashedBytes());
+
+            write(channel, checksum, segments.get(0), data);
+
+            assertEquals(FILE_SIZE, checksum.getHashedBytes());
+            assertEquals(TestSupport.sha256(data), checksum.getChecksum());
+        }
+    }
+
+    @Test
+    void dataOfResumedDownloadIsHashedFirst() throws Exception {
+        byte[] data = randomData();
+        Path file = _directory.resolve("resumed.part");
+        Files.write(file, data);
+        DownloadState state = DownloadState.create("https://example.com/file", new RemoteFileInfo(FILE_SIZE, true, "\"v1\"", ""), 2);
+        DownloadState.Segment first = state.getSegments().get(0);
+        first.advance(first.getEnd() - first.getStart() + 1 - 100);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            StreamingChecksum checksum = new StreamingChecksum(channel, state.getSegments());
+            assertEquals(first.getNextOffset(), checksum.getHashedBytes());
+
+            write(channel, checksum, first, data);
+            write(channel, checksum, state.getSegments().get(1), data);
+
+            assertEquals(TestSupport.sha256(data), checksum.getChecksum());
+        }
+    }
+
+    /**
+     * Writes the missing part of a segment in small chunks, the way a connection does.
+     */
+    private static void write(FileChannel channel, StreamingChecksum checksum, DownloadState.Segment segment, byte[] data) throws Exception {
+        while (!segment.isComplete()) {
+            long position = segment.getNextOffset();
+            int length = (int) Math.min(4096, segment.getEnd() - position + 1);
+            channel.write(ByteBuffer.wrap(data, (int) position, length), position);
+            segment.advance(length);
+            checksum.update(position, ByteBuffer.wrap(data, (int) position, length));
+        }
+    }
+
+    private static byte[] randomData() {
+        byte[] data = new byte[FILE_SIZE];
+        new Random(11).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,373 @@
+package io.github.tavstal.mmcinstaller.core.download;
+
+import io.github.tavstal.mmcinstaller.TestSupport;
+import io.github.tavstal.mmcinstaller.core.progress.ProgressTracker;
+import io.github.tavstal.mmcinstaller.core.transport.FileTransport;
+import io.github.tavstal.mmcinstaller.core.transport.TransportRequest;
+import io.github.tavstal.mmcinstaller.core.transport.TransportResponse;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link ZipDeltaUpdater} assembles the new version of a jar from the unchanged entries of the
+ * installed one and only downloads the rest. The new version is served from a local file. The jars are
+ * written by {@link ZipOutputStream}, or by hand where the layout of the entries matters.
+ */
+class ZipDeltaUpdaterTest {
+    private static final long TIME = 1_700_000_000_000L; // Modification time of the entries written by ZipOutputStream.
+    private static final int DOS_TIME = 0x5A2B6C3D; // Modification time and date of the entries written by hand.
+    private static final int TAIL_SIZE = 22 + 0xFFFF; // The updater reads the end of central directory record and the longest comment.
+
+    @TempDir
+    Path _directory;
+
+    @BeforeAll
+    static void setUp() {
+        TestSupport.initLogger();
+    }
+
+    @Test
+    void changedEntriesAreDownloadedAndTheRestIsReused() throws Exception {
+        ZipItem stored = new ZipItem("lib/stored.bin", randomData(100_000, 1), ZipEntry.STORED, false);
+        ZipItem deflated = new ZipItem("lib/deflated.txt", textData(150_000, 3), ZipEntry.DEFLATED, false);
+        ZipItem described = new ZipItem("lib/described.txt", textData(100_000, 4), ZipEntry.DEFLATED, true);
+        byte[] oldJar = jar("", stored, new ZipItem("config.txt", textData(2000, 2), ZipEntry.DEFLATED, false),
+                deflated, described, new ZipItem("removed.bin", randomData(500, 6), ZipEntry.STORED, false));
+        byte[] newJar = jar("new version", stored, new ZipItem("config.txt", textData(2000, 5), ZipEntry.DEFLATED, false),
+                deflated, described, new ZipItem("added.bin", randomData(1000, 7), ZipEntry.STORED, false));
+
+        CountingTransport transport = update(oldJar, newJar);
+
+        assertEquals(2, transport._ranges.size(), "The changed and the added entry: " + transport._ranges);
+        assertTrue(transport._bytes.get() < 8 * 1024, "Downloaded " + transport._bytes.get() + " bytes");
+    }
+
+    @Test
+    void centralDirectoryBeyondTheTailIsDownloaded() throws Exception {
+        List<ZipItem> oldItems = new ArrayList<>();
+        List<ZipItem> newItems = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            ZipItem item = new ZipItem(String.format("assets/minecraft/textures/block/generated_texture_%04d.png", i), randomData(100, i), ZipEntry.STORED, false);
+            oldItems.add(item);
+            newItems.add(i == 700 ? new ZipItem(item.name(), randomData(100, -1), ZipEntry.STORED, false) : item);
+        }
+        // The comment contains the signature of the record, which must not be mistaken for it.
+        String comment = "PK\u0005\u0006 is part of the comment";
+        byte[] oldJar = jar("", oldItems.toArray(ZipItem[]::new));
+        byte[] newJar = jar(comment, newItems.toArray(ZipItem[]::new));
+        int commentLength = comment.getBytes(StandardCharsets.UTF_8).length;
+        long directoryOffset = Integer.toUnsignedLong(ByteBuffer.wrap(newJar).order(ByteOrder.LITTLE_ENDIAN).getInt(newJar.length - commentLength - 22 + 16));
+        assertTrue(directoryOffset < newJar.length - TAIL_SIZE, "The central directory starts before the tail.");
+
+        CountingTransport transport = update(oldJar, newJar);
+
+        assertTrue(transport._ranges.contains("bytes=" + directoryOffset + "-" + (newJar.length - TAIL_SIZE - 1)), "The start of the directory: " + transport._ranges);
+        assertEquals(2, transport._ranges.size(), "The directory and the changed entry: " + transport._ranges);
+    }
+
+    @Test
+    void nearbyChangedEntriesAreMergedIntoOneRequest() throws Exception {
+        ZipItem unchanged = new ZipItem("b.bin", randomData(5000, 11), ZipEntry.STORED, false);
+        ZipItem large = new ZipItem("d.bin", randomData(200_000, 13), ZipEntry.STORED, false);
+        byte[] oldJar = jar("", new ZipItem("a.bin", randomData(5000, 10), ZipEntry.STORED, false), unchanged,
+                new ZipItem("c.bin", randomData(5000, 12), ZipEntry.STORED, false), large);
+        byte[] newJar = jar("", new ZipItem("a.bin", randomData(5000, 20), ZipEntry.STORED, false), unchanged,
+                new ZipItem("c.bin", randomData(5000, 21), ZipEntry.STORED, false), large);
+
+        CountingTransport transport = update(oldJar, newJar);
+
+        // The unchanged entry in between is downloaded with them rather than copied.
+        assertEquals(1, transport._ranges.size(), "One request for the three entries: " + transport._ranges);
+        assertTrue(transport._ranges.getFirst().startsWith("bytes=0-"), transport._ranges.getFirst());
+        assertTrue(transport._bytes.get() >= 15_000 && transport._bytes.get() < 16_000, "Downloaded " + transport._bytes.get() + " bytes");
+    }
+
+    @Test
+    void dataDescriptorsAreRebuiltWithAndWithoutSignature() throws Exception {
+        byte[] text = textData(100_000, 30);
+        byte[] random = randomData(100_000, 31);
+        byte[] oldJar = rawJar(RawEntry.of("text.txt", text, true, 16), RawEntry.of("random.bin", random, false, 12),
+                RawEntry.of("changed.bin", randomData(2000, 32), false, 0));
+        byte[] newJar = rawJar(RawEntry.of("text.txt", text, true, 12), RawEntry.of("random.bin", random, false, 16),
+                RawEntry.of("changed.bin", randomData(2000, 33), false, 0));
+
+        CountingTransport transport = update(oldJar, newJar);
+
+        assertEquals(1, transport._ranges.size(), "Only the changed entry: " + transport._ranges);
+        assertTrue(transport._bytes.get() < 4096, "Downloaded " + transport._bytes.get() + " bytes");
+    }
+
+    @Test
+    void localHeaderIsRebuiltFromTheCentralDirectory() throws Exception {
+        byte[] data = randomData(100_000, 40);
+        byte[] extra = {(byte) 0xFE, (byte) 0xCA, 4, 0, 1, 2, 3, 4};
+        // The installed entry was written at another time, with an extra field and behind another entry.
+        byte[] oldJar = rawJar(RawEntry.of("prefix.bin", randomData(3000, 41), false, 0),
+                RawEntry.of("data.bin", data, false, 0).withTime(DOS_TIME + 1, DOS_TIME + 1).withExtra(extra, extra));
+        byte[] newJar = rawJar(RawEntry.of("data.bin", data, false, 0));
+
+        CountingTransport transport = update(oldJar, newJar);
+
+        assertTrue(transport._ranges.isEmpty(), "Nothing but the tail is downloaded: " + transport._ranges);
+    }
+
+    @Test
+    void entryWhoseLocalHeaderHasAnotherLengthIsDownloaded() throws Exception {
+        byte[] data = randomData(100_000, 50);
+        byte[] other = randomData(100_000, 51);
+        byte[] extra = {(byte) 0xFE, (byte) 0xCA, 4, 0, 1, 2, 3, 4};
+        byte[] oldJar = rawJar(RawEntry.of("data.bin", data, false, 0), RawEntry.of("other.bin", other, false, 0));
+        // The local header carries an extra field the central directory does not, so it cannot be rebuilt.
+        byte[] newJar = rawJar(RawEntry.of("data.bin", data, false, 0).withExtra(extra, new byte[0]), RawEntry.of("other.bin", other, false, 0));
+
+        CountingTransport transport = update(oldJar, newJar);
+
+        assertEquals(1, transport._ranges.size(), transport._ranges.toString());
+        assertTrue(transport._ranges.getFirst().startsWith("bytes=0-"), transport._ranges.getFirst());
+        assertTrue(transport._bytes.get() >= data.length && transport._bytes.get() < data.length + 1000, "Downloaded " + transport._bytes.get() + " bytes");
+    }
+
+    @Test
+    void localHeaderDifferingFromTheCentralDirectoryFailsTheUpdate() throws Exception {
+        byte[] data = randomData(100_000, 60);
+        byte[] oldJar = rawJar(RawEntry.of("data.bin", data, false, 0));
+        // Same length, other content: only the checksum of the result can tell.
+        byte[] newJar = rawJar(RawEntry.of("data.bin", data, false, 0).withTime(DOS_TIME + 1, DOS_TIME));
+        Path remote = _directory.resolve("remote.jar");
+        Files.write(remote, newJar);
+        File local = _directory.resolve("local.jar").toFile();
+        Files.write(local.toPath(), oldJar);
+
+        try (FileTransport transport = new FileTransport(); ProgressTracker progress = new ProgressTracker(snapshot -> {})) {
+            ZipDeltaUpdater updater = new ZipDeltaUpdater(transport, remote.toUri().toString(), local, local, TestSupport.sha256(newJar),
+                    2, progress, new BandwidthLimiter(0), () -> false);
+            IOException error = assertThrows(IOException.class, updater::update);
+            assertTrue(error.getMessage().contains(TestSupport.sha256(newJar)), error.getMessage());
+        }
+        assertArrayEquals(oldJar, Files.readAllBytes(local.toPath()), "The installed file is kept for the full download.");
+        assertFalse(new File(local.getPath() + ".delta").exists());
+    }
+
+    @Test
+    void directoryOffsetBeyondItsEndRecordFailsTheUpdate() throws Exception {
+        byte[] valid = rawJar(RawEntry.of("data.bin", randomData(1000, 70), false, 0));
+        byte[] invalid = valid.clone();
+        ByteBuffer.wrap(invalid).order(ByteOrder.LITTLE_ENDIAN).putInt(invalid.length - 6, invalid.length + 1000);
+
+        assertThrows(IOException.class, () -> update(valid, invalid), "Remote file");
+        assertThrows(IOException.class, () -> update(invalid, valid), "Installed file");
+    }
+
+    /**
+     * Updates the installed jar to the new version and checks the result.
+     *
+     * @return The transport, holding the downloaded ranges.
+     */
+    private CountingTransport update(byte[] oldJar, byte[] newJar) throws Exception {
+        Path remote = _directory.resolve("remote.jar");
+        Files.write(remote, newJar);
+        File local = _directory.resolve("local.jar").toFile();
+        Files.write(local.toPath(), oldJar);
+        assertTrue(ZipDeltaUpdater.isZipFile(local));
+
+        CountingTransport transport = new CountingTransport();
+        try (transport; ProgressTracker progress = new ProgressTracker(snapshot -> {})) {
+            ZipDeltaUpdater updater = new ZipDeltaUpdater(transport, remote.toUri().toString(), local, local, TestSupport.sha256(newJar),
+                    2, progress, new BandwidthLimiter(0), () -> false);
+            assertTrue(updater.update());
+            assertEquals(TestSupport.sha256(newJar), updater.getChecksum());
+        }
+        assertArrayEquals(newJar, Files.readAllBytes(local.toPath()));
+        assertFalse(new File(local.getPath() + ".delta").exists());
+        return transport;
+    }
+
+    /**
+     * Writes a jar with {@link ZipOutputStream}. Deflated entries get a data descriptor unless their sizes are set up front.
+     */
+    private static byte[] jar(String comment, ZipItem... items) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.setComment(comment);
+            for (ZipItem item : items) {
+                ZipEntry entry = new ZipEntry(item.name());
+                entry.setTime(TIME);
+                entry.setMethod(item.method());
+                if (!item.descriptor()) {
+                    entry.setSize(item.data().length);
+                    entry.setCompressedSize(item.method() == ZipEntry.STORED ? item.data().length : deflate(item.data()).length);
+                    entry.setCrc(crc(item.data()));
+                }
+                zip.putNextEntry(entry);
+                zip.write(item.data());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a zip file by hand, so the local headers and data descriptors can be chosen freely.
+     */
+    private static byte[] rawJar(RawEntry... entries) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        for (RawEntry entry : entries) {
+            byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+            byte[] data = entry.deflate() ? deflate(entry.data()) : entry.data();
+            int flags = entry.descriptorLength() > 0 ? 0x08 : 0;
+            int method = entry.deflate() ? ZipEntry.DEFLATED : ZipEntry.STORED;
+            int crc = (int) crc(entry.data());
+            int offset = out.size();
+
+            boolean sizesInHeader = entry.descriptorLength() == 0;
+            out.writeBytes(littleEndian(30).putInt(0x04034b50).putShort((short) 20).putShort((short) flags).putShort((short) method)
+                    .putInt(entry.localTime()).putInt(sizesInHeader ? crc : 0).putInt(sizesInHeader ? data.length : 0)
+                    .putInt(sizesInHeader ? entry.data().length : 0).putShort((short) name.length).putShort((short) entry.localExtra().length).array());
+            out.writeBytes(name);
+            out.writeBytes(entry.localExtra());
+            out.writeBytes(data);
+            if (entry.descriptorLength() == 16) {
+                out.writeBytes(littleEndian(4).putInt(0x08074b50).array());
+            }
+            if (entry.descriptorLength() > 0) {
+                out.writeBytes(littleEndian(12).putInt(crc).putInt(data.length).putInt(entry.data().length).array());
+            }
+
+            directory.writeBytes(littleEndian(46).putInt(0x02014b50).putShort((short) 20).putShort((short) 20).putShort((short) flags)
+                    .putShort((short) method).putInt(entry.centralTime()).putInt(crc).putInt(data.length).putInt(entry.data().length)
+                    .putShort((short) name.length).putShort((short) entry.centralExtra().length).putShort((short) 0)
+                    .putShort((short) 0).putShort((short) 0).putInt(0).putInt(offset).array());
+            directory.writeBytes(name);
+            directory.writeBytes(entry.centralExtra());
+        }
+
+        int directoryOffset = out.size();
+        out.writeBytes(directory.toByteArray());
+        out.writeBytes(littleEndian(22).putInt(0x06054b50).putShort((short) 0).putShort((short) 0).putShort((short) entries.length)
+                .putShort((short) entries.length).putInt(directory.size()).putInt(directoryOffset).putShort((short) 0).array());
+        return out.toByteArray();
+    }
+
+    private static ByteBuffer littleEndian(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Compresses data the way {@link ZipOutputStream} does.
+     */
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Creates compressible data, so deflated entries differ in size from their content.
+     */
+    private static byte[] textData(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return data;
+    }
+
+    /**
+     * An entry of a jar written by {@link ZipOutputStream}.
+     *
+     * @param name       The name of the entry.
+     * @param data       The content of the entry.
+     * @param method     The compression method.
+     * @param descriptor Whether the sizes follow the data in a data descriptor.
+     */
+    private record ZipItem(String name, byte[] data, int method, boolean descriptor) {
+    }
+
+    /**
+     * An entry of a zip file written by hand.
+     *
+     * @param name             The name of the entry.
+     * @param data             The content of the entry.
+     * @param deflate          Whether the content is deflated.
+     * @param descriptorLength The length of the data descriptor: 0 for none, 12 without and 16 with its signature.
+     * @param localTime        The modification time and date in the local header.
+     * @param centralTime      The modification time and date in the central directory.
+     * @param localExtra       The extra field of the local header.
+     * @param centralExtra     The extra field of the central directory.
+     */
+    private record RawEntry(String name, byte[] data, boolean deflate, int descriptorLength, int localTime, int centralTime,
+                            byte[] localExtra, byte[] centralExtra) {
+        static RawEntry of(String name, byte[] data, boolean deflate, int descriptorLength) {
+            return new RawEntry(name, data, deflate, descriptorLength, DOS_TIME, DOS_TIME, new byte[0], new byte[0]);
+        }
+
+        RawEntry withTime(int local, int central) {
+            return new RawEntry(name, data, deflate, descriptorLength, local, central, localExtra, centralExtra);
+        }
+
+        RawEntry withExtra(byte[] local, byte[] central) {
+            return new RawEntry(name, data, deflate, descriptorLength, localTime, centralTime, local, central);
+        }
+    }
+
+    /**
+     * A file transport recording the range requests and their body bytes, except the read of the tail.
+     */
+    private static class CountingTransport extends FileTransport {
+        private final List<String> _ranges = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicLong _bytes = new AtomicLong();
+
+        @Override
+        public TransportResponse execute(TransportRequest request) throws IOException {
+            TransportResponse response = super.execute(request);
+            String range = request.getHeader("Range");
+            if (response.getStatus() == 206 && !range.startsWith("bytes=-")) {
+                _ranges.add(range);
+                _bytes.addAndGet(response.getContentLength());
+            }
+            return response;
+        }
+    }
+}
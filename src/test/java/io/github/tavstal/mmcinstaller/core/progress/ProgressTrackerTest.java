@@ -0,0 +1,86 @@
+package io.github.tavstal.mmcinstaller.core.progress;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link ProgressTracker} publishes snapshots at its sample interval no matter how often bytes are
+ * reported, and that its moving average and ETA settle on a steady rate. The rate is measured with an injected
+ * clock, so the samples are exact.
+ */
+class ProgressTrackerTest {
+    private static final long STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(ProgressTracker.SAMPLE_INTERVAL_MS);
+
+    @Test
+    void snapshotsAreThrottledToTheSampleInterval() {
+        AtomicInteger snapshots = new AtomicInteger();
+        AtomicReference<ProgressSnapshot> last = new AtomicReference<>();
+        ProgressTracker tracker = new ProgressTracker(snapshot -> {
+            snapshots.incrementAndGet();
+            last.set(snapshot);
+        });
+        tracker.reset(0, Long.MAX_VALUE);
+        tracker.setPhase(ProgressPhase.DOWNLOADING, 0);
+        tracker.start();
+
+        long reports = 0;
+        long startNanos = System.nanoTime();
+        while (System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(1)) {
+            tracker.addBytes(1);
+            reports++;
+        }
+        tracker.close();
+
+        // One snapshot per interval during the second, and the final one when closed.
+        long expected = TimeUnit.SECONDS.toMillis(1) / ProgressTracker.SAMPLE_INTERVAL_MS + 1;
+        assertTrue(snapshots.get() >= 2 && snapshots.get() <= expected + 1,
+                snapshots.get() + " snapshots for " + reports + " reports");
+        assertEquals(reports, last.get().downloadedBytes(), "The final snapshot holds every reported byte.");
+    }
+
+    @Test
+    void averageSpeedAndEtaConvergeOnASteadyRate() {
+        AtomicLong clock = new AtomicLong();
+        List<ProgressSnapshot> snapshots = new ArrayList<>();
+        ProgressTracker tracker = new ProgressTracker(snapshots::add, () -> 0, clock::get);
+        long totalBytes = 100L * 1024 * 1024;
+        long bytesPerStep = 200 * 1024;
+        double rate = bytesPerStep * 1_000_000_000.0 / STEP_NANOS;
+        tracker.reset(0, totalBytes);
+        tracker.setPhase(ProgressPhase.DOWNLOADING, 0);
+
+        // A burst first, like buffered data arriving at once, then a steady rate.
+        tracker.addBytes(10 * bytesPerStep);
+        clock.addAndGet(STEP_NANOS);
+        tracker.sample();
+        for (int i = 0; i < 40; i++) {
+            tracker.addBytes(bytesPerStep);
+            clock.addAndGet(STEP_NANOS);
+            tracker.sample();
+        }
+
+        ProgressSnapshot first = snapshots.getFirst();
+        ProgressSnapshot last = snapshots.getLast();
+        assertEquals(10 * rate, first.bytesPerSecond(), 1e-6 * rate);
+        assertEquals(10 * rate, first.averageBytesPerSecond(), 1e-6 * rate, "The first sample starts the average.");
+        for (int i = 1; i < snapshots.size(); i++) {
+            assertEquals(rate, snapshots.get(i).bytesPerSecond(), 1e-6 * rate);
+            assertTrue(snapshots.get(i).averageBytesPerSecond() < snapshots.get(i - 1).averageBytesPerSecond(),
+                    "The average decays towards the steady rate.");
+        }
+        assertEquals(rate, last.averageBytesPerSecond(), 0.01 * rate);
+
+        assertEquals(50 * bytesPerStep, last.downloadedBytes());
+        long expectedEta = (long) Math.ceil((totalBytes - last.downloadedBytes()) / rate);
+        assertTrue(last.etaSeconds() <= expectedEta && last.etaSeconds() >= expectedEta - 1, "ETA of " + last.etaSeconds() + " s");
+        assertTrue(first.etaSeconds() < expectedEta / 5, "The burst makes the first ETA optimistic.");
+    }
+}
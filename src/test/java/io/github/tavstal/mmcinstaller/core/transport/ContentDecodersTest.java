@@ -0,0 +1,105 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the built-in content codings of {@link ContentDecoders} and how `Content-Encoding` values are parsed.
+ */
+class ContentDecodersTest {
+    private static final byte[] DATA = sampleData();
+
+    @Test
+    void builtInCodingsAreAccepted() {
+        String acceptEncoding = ContentDecoders.getAcceptEncoding();
+
+        assertTrue(acceptEncoding.contains("gzip"), acceptEncoding);
+        assertTrue(acceptEncoding.contains("deflate"), acceptEncoding);
+    }
+
+    @Test
+    void identityBodyIsPassedThrough() throws Exception {
+        InputStream body = new ByteArrayInputStream(DATA);
+
+        assertTrue(ContentDecoders.isIdentity(null));
+        assertTrue(ContentDecoders.isIdentity(" "));
+        assertTrue(ContentDecoders.isIdentity(" Identity "));
+        assertFalse(ContentDecoders.isIdentity("gzip"));
+        assertSame(body, ContentDecoders.decode(null, body));
+    }
+
+    @Test
+    void gzipBodyIsDecoded() throws Exception {
+        assertArrayEquals(DATA, decode("gzip", gzip(DATA)));
+        assertArrayEquals(DATA, decode("x-gzip", gzip(DATA)));
+        assertArrayEquals(DATA, decode("GZIP", gzip(DATA)));
+    }
+
+    @Test
+    void zlibWrappedDeflateBodyIsDecoded() throws Exception {
+        assertArrayEquals(DATA, decode("deflate", deflate(DATA, false)));
+    }
+
+    @Test
+    void rawDeflateBodyIsDecoded() throws Exception {
+        assertArrayEquals(DATA, decode("deflate", deflate(DATA, true)));
+    }
+
+    @Test
+    void stackedCodingsAreUndoneInReverseOrder() throws Exception {
+        byte[] encoded = gzip(deflate(DATA, false)); // Content-Encoding: deflate, gzip
+
+        assertArrayEquals(DATA, decode("deflate, identity, gzip", encoded));
+    }
+
+    @Test
+    void unsupportedCodingIsRejected() {
+        IOException error = assertThrows(IOException.class, () -> decode("gzip, br2", gzip(DATA)));
+
+        assertTrue(error.getMessage().contains("br2"), error.getMessage());
+    }
+
+    private static byte[] decode(String contentEncoding, byte[] body) throws IOException {
+        try (InputStream decoded = ContentDecoders.decode(contentEncoding, new ByteArrayInputStream(body))) {
+            return decoded.readAllBytes();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates compressible data that is larger than the buffers of the decoders.
+     */
+    private static byte[] sampleData() {
+        Random random = new Random(5);
+        byte[] data = new byte[200_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import io.github.tavstal.mmcinstaller.TestSupport;
+import org.apache.hc.client5.http.DnsResolver;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DualStackResolverTest {
+    private static final String HOST = "dual-stack.test";
+    private static InetAddress _ipv6;
+    private static InetAddress _ipv4;
+
+    @BeforeAll
+    static void setUp() throws UnknownHostException {
+        TestSupport.initLogger();
+        _ipv6 = InetAddress.getByName("::1");
+        _ipv4 = InetAddress.getByName("127.0.0.1");
+    }
+
+    @Test
+    void connectsToTheListeningFamilyAndRemembersIt() throws IOException {
+        // Only IPv4 listens, the IPv6 address is tried first and refused.
+        try (ServerSocket server = new ServerSocket(0, 50, _ipv4)) {
+            DualStackResolver resolver = new DualStackResolver(new StubResolver(_ipv6, _ipv4));
+            try (Socket socket = resolver.connect(HOST, server.getLocalPort(), 5000, () -> false, Socket::new)) {
+                assertTrue(socket.isConnected());
+                assertEquals(_ipv4, socket.getInetAddress());
+            }
+            assertArrayEquals(new InetAddress[]{_ipv4, _ipv6}, resolver.resolve(HOST));
+        }
+    }
+
+    @Test
+    void keepsTheSystemOrderWhenThePreferredFamilyWins() throws IOException {
+        ServerSocket server;
+        try {
+            server = new ServerSocket(0, 50, _ipv6);
+        } catch (IOException e) {
+            assumeTrue(false, "IPv6 loopback is not available.");
+            return;
+        }
+        try (server) {
+            DualStackResolver resolver = new DualStackResolver(new StubResolver(_ipv4, _ipv6));
+            assertArrayEquals(new InetAddress[]{_ipv4, _ipv6}, resolver.resolve(HOST));
+            try (Socket socket = resolver.connect(HOST, server.getLocalPort(), 5000, () -> false, Socket::new)) {
+                assertEquals(_ipv6, socket.getInetAddress());
+            }
+            assertArrayEquals(new InetAddress[]{_ipv6, _ipv4}, resolver.resolve(HOST));
+        }
+    }
+
+    @Test
+    void failsWhenNoAddressListens() throws IOException {
+        int port;
+        try (ServerSocket server = new ServerSocket(0, 50, _ipv4)) {
+            port = server.getLocalPort();
+        }
+        DualStackResolver resolver = new DualStackResolver(new StubResolver(_ipv6, _ipv4));
+        assertThrows(IOException.class, () -> resolver.connect(HOST, port, 5000, () -> false, Socket::new));
+        assertArrayEquals(new InetAddress[]{_ipv6, _ipv4}, resolver.resolve(HOST), "No family won, the order is unchanged.");
+    }
+
+    @Test
+    void stopsWhenCancelled() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 50, _ipv4)) {
+            DualStackResolver resolver = new DualStackResolver(new StubResolver(_ipv6, _ipv4));
+            assertThrows(InterruptedIOException.class, () -> resolver.connect(HOST, server.getLocalPort(), 5000, () -> true, Socket::new));
+        }
+    }
+
+    @Test
+    void shortensTheConnectTimeoutToTheRequestTimeout() {
+        TransportRequest request = TransportRequest.head("http://" + HOST + "/");
+        request.setTimeout(2000);
+        assertEquals(2000, DualStackResolver.getTimeout(org.apache.hc.core5.util.Timeout.ofSeconds(10), request));
+        assertEquals(10_000, DualStackResolver.getTimeout(org.apache.hc.core5.util.Timeout.ofSeconds(10), null));
+    }
+
+    /**
+     * Resolves every host to fixed addresses.
+     */
+    private record StubResolver(InetAddress... addresses) implements DnsResolver {
+        @Override
+        public InetAddress[] resolve(String host) {
+            return addresses.clone();
+        }
+
+        @Override
+        public String resolveCanonicalHostname(String host) {
+            return host;
+        }
+    }
+}
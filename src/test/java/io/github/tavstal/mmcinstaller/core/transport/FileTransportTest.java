@@ -0,0 +1,157 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link FileTransport} answers range, conditional and HEAD requests the way an HTTP server would.
+ */
+class FileTransportTest {
+    private static final int FILE_SIZE = 1000;
+
+    @TempDir
+    static Path _directory;
+    private static byte[] _data;
+    private static String _url;
+    private static FileTransport _transport;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        _data = new byte[FILE_SIZE];
+        new Random(13).nextBytes(_data);
+        Path file = _directory.resolve("file.bin");
+        Files.write(file, _data);
+        _url = file.toUri().toString();
+        _transport = new FileTransport();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        _transport.close();
+    }
+
+    @Test
+    void wholeFileWithoutRange() throws IOException {
+        Result result = get(null);
+
+        assertEquals(200, result.status);
+        assertArrayEquals(_data, result.body);
+        assertNull(result.contentRange);
+    }
+
+    @Test
+    void closedRange() throws IOException {
+        Result result = get("bytes=10-19");
+
+        assertEquals(206, result.status);
+        assertEquals("bytes 10-19/1000", result.contentRange);
+        assertArrayEquals(Arrays.copyOfRange(_data, 10, 20), result.body);
+    }
+
+    @Test
+    void openRangeAndRangePastTheEnd() throws IOException {
+        assertArrayEquals(Arrays.copyOfRange(_data, 990, FILE_SIZE), get("bytes=990-").body);
+
+        Result result = get("bytes=995-5000");
+        assertEquals("bytes 995-999/1000", result.contentRange);
+        assertArrayEquals(Arrays.copyOfRange(_data, 995, FILE_SIZE), result.body);
+    }
+
+    @Test
+    void suffixRange() throws IOException {
+        Result result = get("bytes=-100");
+
+        assertEquals(206, result.status);
+        assertEquals("bytes 900-999/1000", result.contentRange);
+        assertArrayEquals(Arrays.copyOfRange(_data, 900, FILE_SIZE), result.body);
+        assertArrayEquals(_data, get("bytes=-5000").body);
+    }
+
+    @Test
+    void unsatisfiableRange() throws IOException {
+        Result result = get("bytes=1000-");
+        assertEquals(416, result.status);
+        assertEquals("bytes */1000", result.contentRange);
+
+        assertEquals(416, get("bytes=-0").status);
+    }
+
+    @Test
+    void invalidOrMultipleRangesSendTheWholeFile() throws IOException {
+        assertEquals(200, get("bytes=0-1,5-6").status);
+        assertEquals(200, get("bytes=20-10").status);
+        assertEquals(200, get("bytes=a-b").status);
+        assertEquals(200, get("items=0-1").status);
+    }
+
+    @Test
+    void ifRangeWithOldValidatorSendsTheWholeFile() throws IOException {
+        String etag = head().getHeader("ETag");
+
+        TransportRequest current = TransportRequest.get(_url);
+        current.setHeader("Range", "bytes=0-9");
+        current.setHeader("If-Range", etag);
+        assertEquals(206, status(current));
+
+        TransportRequest changed = TransportRequest.get(_url);
+        changed.setHeader("Range", "bytes=0-9");
+        changed.setHeader("If-Range", "\"old\"");
+        assertEquals(200, status(changed));
+    }
+
+    @Test
+    void headAndConditionalRequests() throws IOException {
+        TransportResponse head = head();
+        assertEquals(200, head.getStatus());
+        assertEquals(FILE_SIZE, head.getContentLength());
+        assertEquals("bytes", head.getHeader("Accept-Ranges"));
+
+        TransportRequest conditional = TransportRequest.get(_url);
+        conditional.setHeader("If-None-Match", head.getHeader("ETag"));
+        assertEquals(304, status(conditional));
+    }
+
+    @Test
+    void missingFile() throws IOException {
+        assertEquals(404, status(TransportRequest.get(_directory.resolve("missing.bin").toUri().toString())));
+    }
+
+    private static Result get(String range) throws IOException {
+        TransportRequest request = TransportRequest.get(_url);
+        if (range != null) {
+            request.setHeader("Range", range);
+        }
+        return _transport.execute(request, response -> {
+            try (InputStream body = response.getBody()) {
+                return new Result(response.getStatus(), response.getHeader("Content-Range"), body.readAllBytes());
+            }
+        });
+    }
+
+    private static TransportResponse head() throws IOException {
+        try (TransportResponse response = _transport.execute(TransportRequest.head(_url))) {
+            return response;
+        }
+    }
+
+    private static int status(TransportRequest request) throws IOException {
+        return _transport.execute(request, TransportResponse::getStatus);
+    }
+
+    /**
+     * The parts of a response the tests look at.
+     */
+    private record Result(int status, String contentRange, byte[] body) {
+    }
+}
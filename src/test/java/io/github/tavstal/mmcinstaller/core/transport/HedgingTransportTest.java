@@ -0,0 +1,256 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.tavstal.mmcinstaller.TestSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the {@link HedgingTransport} against a loopback server whose first answer to the primary URL is held back.
+ */
+class HedgingTransportTest {
+    private static final long DELAYED_MS = 150; // Time the delayed handler waits before answering.
+    private static final long DEFAULT_DEADLINE_MS = 1000; // Deadline of a host without enough samples.
+
+    private static HttpServer _server;
+    private static ExecutorService _serverExecutor;
+    private static final AtomicInteger _primaryRequests = new AtomicInteger();
+    private static final AtomicInteger _mirrorRequests = new AtomicInteger();
+    private static volatile long _primaryArrivalNanos;
+    private static volatile long _mirrorArrivalNanos;
+    private static volatile CountDownLatch _release; // Lets the held back primary answer.
+    private static volatile CountDownLatch _primaryAborted; // Counted down when the held back answer finds its connection closed.
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        TestSupport.initLogger();
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 16);
+        _server.createContext("/delayed", exchange -> {
+            sleep(DELAYED_MS);
+            respond(exchange, "delayed");
+        });
+        _server.createContext("/primary", HedgingTransportTest::servePrimary);
+        _server.createContext("/mirror", exchange -> {
+            _mirrorArrivalNanos = System.nanoTime();
+            _mirrorRequests.incrementAndGet();
+            respond(exchange, "mirror");
+        });
+        _serverExecutor = Executors.newCachedThreadPool();
+        _server.setExecutor(_serverExecutor);
+        _server.start();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (_server != null) {
+            _server.stop(0);
+        }
+        if (_serverExecutor != null) {
+            _serverExecutor.shutdownNow();
+        }
+    }
+
+    @BeforeEach
+    void resetServer() {
+        _primaryRequests.set(0);
+        _mirrorRequests.set(0);
+        _release = new CountDownLatch(1);
+        _primaryAborted = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void releasePrimary() {
+        _release.countDown();
+    }
+
+    @Test
+    void hedgeIsSentAfterThePercentileDeadlineAndTheLoserIsCancelled() throws Exception {
+        RecordingTransport recording = new RecordingTransport(new ApacheClassicTransport(4, 8));
+        try (HedgingTransport transport = new HedgingTransport(recording, 50)) {
+            for (int i = 0; i < 8; i++) {
+                assertEquals("delayed", get(transport, TransportRequest.get(url("/delayed"))));
+            }
+            assertEquals(0, _mirrorRequests.get(), "The delayed requests answer before the default deadline.");
+            recording._attempts.clear();
+
+            AtomicInteger admissions = new AtomicInteger();
+            TransportRequest request = TransportRequest.get(url("/primary"));
+            request.setHedgeUrl(url("/mirror"), () -> {
+                admissions.incrementAndGet();
+                return true;
+            });
+            assertEquals("mirror", get(transport, request));
+
+            long hedgeDelayMs = TimeUnit.NANOSECONDS.toMillis(_mirrorArrivalNanos - _primaryArrivalNanos);
+            assertTrue(hedgeDelayMs >= DELAYED_MS - 20 && hedgeDelayMs < DEFAULT_DEADLINE_MS,
+                    "The hedge follows the median of the recent requests, sent after " + hedgeDelayMs + " ms.");
+            assertEquals(url("/mirror"), request.getServedUrl());
+            assertEquals(1, admissions.get(), "The breaker is asked once, when the hedge is sent.");
+            assertEquals(2, recording._attempts.size());
+            assertCancelled(recording._attempts.getFirst(), "The primary attempt lost the race.");
+        }
+
+        _release.countDown();
+        assertTrue(_primaryAborted.await(5, TimeUnit.SECONDS), "The connection of the primary attempt is closed.");
+        assertEquals(1, _primaryRequests.get());
+    }
+
+    @Test
+    void noHedgeIsSentBeforeTheDeadline() throws Exception {
+        RecordingTransport recording = new RecordingTransport(new ApacheClassicTransport(4, 8));
+        try (HedgingTransport transport = new HedgingTransport(recording, 50)) {
+            AtomicInteger admissions = new AtomicInteger();
+            TransportRequest request = TransportRequest.get(url("/delayed"));
+            request.setHedgeUrl(url("/mirror"), () -> {
+                admissions.incrementAndGet();
+                return true;
+            });
+
+            assertEquals("delayed", get(transport, request));
+            assertEquals(url("/delayed"), request.getServedUrl());
+            assertEquals(1, recording._attempts.size());
+            assertEquals(0, admissions.get(), "The breaker is not asked without a hedge.");
+            assertEquals(0, _mirrorRequests.get());
+        }
+    }
+
+    @Test
+    void hedgeUsesTheMirrorOnlyWhenItsBreakerAllowsIt() throws Exception {
+        RecordingTransport recording = new RecordingTransport(new ApacheClassicTransport(4, 8));
+        try (HedgingTransport transport = new HedgingTransport(recording, 50)) {
+            AtomicInteger admissions = new AtomicInteger();
+            TransportRequest request = TransportRequest.get(url("/primary"));
+            request.setHedgeUrl(url("/mirror"), () -> {
+                admissions.incrementAndGet();
+                return false;
+            });
+
+            assertEquals("primary", get(transport, request), "The duplicate goes to the primary URL again.");
+            assertEquals(url("/primary"), request.getServedUrl());
+            assertEquals(1, admissions.get());
+            assertEquals(0, _mirrorRequests.get());
+            assertEquals(2, _primaryRequests.get());
+            assertCancelled(recording._attempts.getFirst(), "The held back attempt lost the race.");
+        }
+    }
+
+    /**
+     * Holds back the first answer to the primary URL until released, then streams a body until the write
+     * fails because the client closed the connection. Later requests are answered at once.
+     *
+     * @param exchange The exchange.
+     * @throws IOException If the response cannot be sent.
+     */
+    private static void servePrimary(HttpExchange exchange) throws IOException {
+        if (_primaryRequests.getAndIncrement() > 0) {
+            respond(exchange, "primary");
+            return;
+        }
+
+        _primaryArrivalNanos = System.nanoTime();
+        try {
+            _release.await(10, TimeUnit.SECONDS);
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream os = exchange.getResponseBody();
+            byte[] chunk = new byte[64 * 1024];
+            for (int i = 0; i < 500; i++) {
+                os.write(chunk);
+                os.flush();
+                Thread.sleep(10);
+            }
+        } catch (IOException e) {
+            _primaryAborted.countDown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, data.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(data);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String url(String path) {
+        return "http://127.0.0.1:" + _server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Waits for an attempt to be cancelled. The winner of a race cancels the losers after handing its response over.
+     *
+     * @param attempt The attempt that lost the race.
+     * @param message The message of the failed assertion.
+     * @throws InterruptedException If the wait is interrupted.
+     */
+    private static void assertCancelled(TransportRequest attempt, String message) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!attempt.isCancelled()) {
+            assertTrue(System.nanoTime() < deadline, message);
+            Thread.sleep(10);
+        }
+    }
+
+    private static String get(Transport transport, TransportRequest request) throws IOException {
+        return transport.execute(request, response -> new String(response.getBody().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A transport recording every attempt it sends.
+     */
+    private static class RecordingTransport implements Transport {
+        private final Transport _transport;
+        private final List<TransportRequest> _attempts = Collections.synchronizedList(new ArrayList<>());
+
+        private RecordingTransport(Transport transport) {
+            _transport = transport;
+        }
+
+        @Override
+        public TransportResponse execute(TransportRequest request) throws IOException {
+            _attempts.add(request);
+            return _transport.execute(request);
+        }
+
+        @Override
+        public String getName() {
+            return _transport.getName();
+        }
+
+        @Override
+        public void close() {
+            _transport.close();
+        }
+    }
+}
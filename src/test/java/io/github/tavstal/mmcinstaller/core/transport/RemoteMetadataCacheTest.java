@@ -0,0 +1,132 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.tavstal.mmcinstaller.TestSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that {@link RemoteMetadataCache} revalidates the remembered metadata with a conditional request
+ * against a loopback server, keeping it on a 304 response and replacing it on a 200 response.
+ */
+class RemoteMetadataCacheTest {
+    private static final String LAST_MODIFIED = "Tue, 01 Jul 2025 10:00:00 GMT";
+
+    @TempDir
+    Path _directory;
+    private static HttpServer _server;
+    private static Transport _transport;
+    private static ExecutorService _serverExecutor;
+    private static final List<String> _conditions = Collections.synchronizedList(new ArrayList<>()); // The If-None-Match header of every request, or "-".
+    private static final List<Integer> _statuses = Collections.synchronizedList(new ArrayList<>()); // The status of every response.
+    private static volatile String _etag; // The current version of the served file.
+    private static volatile int _length; // The current size of the served file.
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        TestSupport.initLogger();
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 16);
+        _server.createContext("/file.bin", RemoteMetadataCacheTest::serve);
+        _serverExecutor = Executors.newCachedThreadPool();
+        _server.setExecutor(_serverExecutor);
+        _server.start();
+        _transport = new ApacheClassicTransport(2, 4);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (_transport != null) {
+            _transport.close();
+        }
+        if (_server != null) {
+            _server.stop(0);
+        }
+        if (_serverExecutor != null) {
+            _serverExecutor.shutdownNow();
+        }
+    }
+
+    @BeforeEach
+    void resetServer() {
+        _conditions.clear();
+        _statuses.clear();
+        _etag = "\"v1\"";
+        _length = 1000;
+    }
+
+    @Test
+    void notModifiedKeepsTheRememberedMetadata() throws IOException {
+        File cacheFile = _directory.resolve("metadata.yml").toFile();
+        RemoteMetadata first = new RemoteMetadataCache(cacheFile).revalidate(_transport, url());
+        assertEquals(new RemoteMetadata(1000, "\"v1\"", LAST_MODIFIED, ""), first);
+
+        // A new instance starts from the stored file, like the next run of the installer.
+        RemoteMetadataCache cache = new RemoteMetadataCache(cacheFile);
+        assertEquals(first, cache.get(url()));
+        assertEquals(first, cache.revalidate(_transport, url()));
+
+        assertEquals(List.of("-", "\"v1\""), _conditions);
+        assertEquals(List.of(200, 304), _statuses);
+        assertEquals(first, new RemoteMetadataCache(cacheFile).get(url()));
+    }
+
+    @Test
+    void changedFileReplacesTheRememberedMetadata() throws IOException {
+        File cacheFile = _directory.resolve("metadata.yml").toFile();
+        RemoteMetadataCache cache = new RemoteMetadataCache(cacheFile);
+        cache.revalidate(_transport, url());
+
+        _etag = "\"v2\"";
+        _length = 2000;
+        RemoteMetadata changed = cache.revalidate(_transport, url());
+
+        assertEquals(new RemoteMetadata(2000, "\"v2\"", LAST_MODIFIED, ""), changed);
+        assertEquals(List.of("-", "\"v1\""), _conditions);
+        assertEquals(List.of(200, 200), _statuses);
+        assertEquals(changed, cache.get(url()));
+        assertEquals(changed, new RemoteMetadataCache(cacheFile).get(url()), "The replaced metadata is stored.");
+    }
+
+    /**
+     * Answers a HEAD request for the served file, with 304 if the client already holds the current version.
+     *
+     * @param exchange The exchange.
+     * @throws IOException If the response cannot be sent.
+     */
+    private static void serve(HttpExchange exchange) throws IOException {
+        String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+        _conditions.add(condition == null ? "-" : condition);
+        exchange.getResponseHeaders().set("ETag", _etag);
+        exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+        if (_etag.equals(condition)) {
+            _statuses.add(304);
+            exchange.sendResponseHeaders(304, -1);
+        } else {
+            _statuses.add(200);
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(_length));
+            exchange.sendResponseHeaders(200, -1);
+        }
+        exchange.close();
+    }
+
+    private static String url() {
+        return "http://127.0.0.1:" + _server.getAddress().getPort() + "/file.bin";
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.tavstal.mmcinstaller.core.transport;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.tavstal.mmcinstaller.InstallerApplication;
+import io.github.tavstal.mmcinstaller.TestSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the transports on a loopback server: the throughput of full downloads and the latency of small
+ * range requests over a kept-alive connection. The numbers are logged, only the responses are asserted.
+ * Tagged as a benchmark, so it only runs with `gradle benchmark`.
+ * <br/>
+ * The HTTP server only listens on IPv4 while `localhost` may resolve to `::1` first, so the Apache transports
+ * also go through the dual-stack race.
+ */
+@Tag("benchmark")
+class TransportBenchmarkTest {
+    private static final int PAYLOAD_SIZE = 16 * 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int DOWNLOAD_ROUNDS = 5;
+    private static final int RANGE_ROUNDS = 200;
+    private static final int RANGE_SIZE = 4096;
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    @TempDir
+    static Path _directory;
+    private static byte[] _payload;
+    private static byte[] _digest;
+    private static HttpServer _server;
+    private static ExecutorService _serverExecutor;
+    private static String _noDelay; // The previous value of the no-delay property of the HTTP server.
+    private static String _httpUrl;
+    private static String _fileUrl;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        TestSupport.initLogger();
+        _payload = new byte[PAYLOAD_SIZE];
+        new Random(42).nextBytes(_payload);
+        _digest = sha256(_payload);
+        Path file = _directory.resolve("payload.bin");
+        Files.write(file, _payload);
+        _fileUrl = file.toUri().toString();
+
+        // Small responses are not held back by Nagle's algorithm. Read when the server is created.
+        _noDelay = System.setProperty("sun.net.httpserver.nodelay", "true");
+        _server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 64);
+        _server.createContext("/payload.bin", TransportBenchmarkTest::serve);
+        _serverExecutor = Executors.newCachedThreadPool();
+        _server.setExecutor(_serverExecutor);
+        _server.start();
+        _httpUrl = "http://localhost:" + _server.getAddress().getPort() + "/payload.bin";
+    }
+
+    @AfterAll
+    static void tearDown() {
+        if (_server != null) {
+            _server.stop(0);
+        }
+        if (_serverExecutor != null) {
+            _serverExecutor.shutdownNow();
+        }
+        if (_noDelay == null) {
+            System.clearProperty("sun.net.httpserver.nodelay");
+        } else {
+            System.setProperty("sun.net.httpserver.nodelay", _noDelay);
+        }
+    }
+
+    @TestFactory
+    Stream<DynamicTest> compareTransports() {
+        return Stream.of(
+                DynamicTest.dynamicTest("apache", () -> benchmark(new ApacheClassicTransport(4, 8), _httpUrl)),
+                DynamicTest.dynamicTest("apache-async", () -> benchmark(new ApacheAsyncTransport(4, 8), _httpUrl)),
+                DynamicTest.dynamicTest("jdk", () -> benchmark(new JdkHttpTransport(), _httpUrl)),
+                DynamicTest.dynamicTest("file", () -> benchmark(new FileTransport(), _fileUrl))
+        );
+    }
+
+    /**
+     * Downloads the payload and reads small ranges of it, and logs the throughput and latencies.
+     */
+    private static void benchmark(Transport transport, String url) throws Exception {
+        try (transport) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                assertArrayEquals(_digest, download(transport, url));
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < DOWNLOAD_ROUNDS; i++) {
+                assertArrayEquals(_digest, download(transport, url));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double throughput = (double) PAYLOAD_SIZE * DOWNLOAD_ROUNDS / (1024 * 1024) / seconds;
+
+            long[] latencies = new long[RANGE_ROUNDS];
+            Random random = new Random(7);
+            for (int i = 0; i < RANGE_ROUNDS; i++) {
+                int offset = random.nextInt(PAYLOAD_SIZE - RANGE_SIZE);
+                long rangeStart = System.nanoTime();
+                byte[] range = readRange(transport, url, offset);
+                latencies[i] = System.nanoTime() - rangeStart;
+                assertArrayEquals(Arrays.copyOfRange(_payload, offset, offset + RANGE_SIZE), range);
+            }
+            Arrays.sort(latencies);
+            InstallerApplication.getLogger().WithModule(TransportBenchmarkTest.class).Info(String.format(
+                    "%s: download %.1f MB/s, range p50/p99 %d/%d us", transport.getName(), throughput,
+                    TimeUnit.NANOSECONDS.toMicros(latencies[RANGE_ROUNDS / 2]),
+                    TimeUnit.NANOSECONDS.toMicros(latencies[RANGE_ROUNDS * 99 / 100])));
+        }
+    }
+
+    /**
+     * Downloads the whole payload through a transport.
+     *
+     * @return The SHA-256 of the body.
+     */
+    private static byte[] download(Transport transport, String url) throws IOException {
+        return transport.execute(TransportRequest.get(url), response -> {
+            assertEquals(200, response.getStatus());
+            MessageDigest digest = newDigest();
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream body = response.getBody()) {
+                int read;
+                while ((read = body.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return digest.digest();
+        });
+    }
+
+    /**
+     * Reads a range of the payload through a transport.
+     */
+    private static byte[] readRange(Transport transport, String url, int offset) throws IOException {
+        TransportRequest request = TransportRequest.get(url);
+        request.setHeader("Range", "bytes=" + offset + "-" + (offset + RANGE_SIZE - 1));
+        return transport.execute(request, response -> {
+            assertEquals(206, response.getStatus());
+            try (InputStream body = response.getBody()) {
+                return body.readAllBytes();
+            }
+        });
+    }
+
+    /**
+     * Serves the payload, or the requested range of it.
+     */
+    private static void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            int offset = 0;
+            int length = PAYLOAD_SIZE;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher != null && matcher.matches()) {
+                offset = Integer.parseInt(matcher.group(1));
+                length = Math.min(PAYLOAD_SIZE - 1, Integer.parseInt(matcher.group(2))) - offset + 1;
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", String.format("bytes %d-%d/%d", offset, offset + length - 1, PAYLOAD_SIZE));
+            }
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            boolean head = exchange.getRequestMethod().equals("HEAD");
+            exchange.sendResponseHeaders(status, head ? -1 : length);
+            if (!head) {
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(_payload, offset, length);
+                }
+            }
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        return newDigest().digest(data);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}